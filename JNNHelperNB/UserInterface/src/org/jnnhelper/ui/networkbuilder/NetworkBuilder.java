@@ -314,6 +314,8 @@ public final class NetworkBuilder extends javax.swing.JPanel implements LookupLi
             AbstractActivation act = (AbstractActivation) tblNetworkDesign.getValueAt(0, 2);
             nn.getOutputLayer().setActivationFunction(act);
 
+            //the layers are connected once, after all are added...
+            nn.beginTopologyEdit();
             for (int i = 0; i < hiddenLayerIndex; i++)
             {
                 Integer numNeurons = Integer.parseInt(
@@ -324,6 +326,7 @@ public final class NetworkBuilder extends javax.swing.JPanel implements LookupLi
                 hiddenLayer.setActivationFunction(act);
                 nn.addLayer(hiddenLayer);
             }
+            nn.endTopologyEdit();
             Configuration.getInstance().setNeuralNetwork(nn);
 
             isUpdateRequired = true;
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.benchmark;
+
+import java.util.Random;
+import jneuralnet.core.activation.AbstractActivation;
+import jneuralnet.core.activation.FastLogisticSigmoid;
+import jneuralnet.core.activation.FastSigmoid;
+import jneuralnet.core.activation.LogisticSigmoid;
+import jneuralnet.core.activation.Sigmoid;
+
+/**
+ * Compares the fast activation functions with the exact ones they
+ * approximate: the largest absolute error of the activation and of its
+ * derivative over a fine grid of inputs, and the time taken to activate
+ * a layer's worth of values in bulk and one value at a time. Run it as
+ *
+ * <pre>
+ * java jneuralnet.benchmark.ActivationBenchmark [values]
+ * </pre>
+ *
+ * @author Ragha
+ * @see FastLogisticSigmoid
+ * @see FastSigmoid
+ * @version 1.0
+ */
+public class ActivationBenchmark
+{
+    private static final double GRID_RANGE = 20.0;
+    private static final double GRID_STEP = 1e-4;
+    private static final int REPEATS = 50;
+
+    public static void main(String args[])
+    {
+        int numValues = 4096;
+        if(args.length == 1)
+            numValues = Integer.parseInt(args[0]);
+
+        Random rand = new Random(1);
+        double values[] = new double[numValues];
+        for(int i=0; i<numValues; i++)
+            values[i] = rand.nextGaussian() * 2;
+
+        AbstractActivation pairs[][] = {
+            { new LogisticSigmoid(), new FastLogisticSigmoid() },
+            { new Sigmoid(), new FastSigmoid() }
+        };
+
+        System.out.println("activation            max error  derivative error  "
+                + "bulk ns/value  single ns/value");
+        for(AbstractActivation pair[] : pairs)
+        {
+            double errors[] = getMaxErrors(pair[0], pair[1]);
+            for(int k=0; k<2; k++)
+            {
+                System.out.println(String.format("%-21s %9.2e %17.2e %14.2f %16.2f",
+                        pair[k].getName(), k == 0 ? 0.0 : errors[0],
+                        k == 0 ? 0.0 : errors[1],
+                        measureBulk(pair[k], values), measureSingle(pair[k], values)));
+            }
+        }
+    }
+
+    /**
+     * @return The largest absolute error of the activation and of the
+     * derivative of the approximation over the grid.
+     */
+    private static double[] getMaxErrors(AbstractActivation exact,
+            AbstractActivation approx)
+    {
+        double errors[] = new double[2];
+        for(double x=-GRID_RANGE; x<=GRID_RANGE; x+=GRID_STEP)
+        {
+            errors[0] = Math.max(errors[0],
+                    Math.abs(exact.activate(x) - approx.activate(x)));
+            errors[1] = Math.max(errors[1], Math.abs(
+                    exact.activationDerviative(x) - approx.activationDerviative(x)));
+        }
+        return errors;
+    }
+
+    /**
+     * @return The nanoseconds per value taken by the bulk activation.
+     */
+    private static double measureBulk(AbstractActivation act, double values[])
+    {
+        double buffer[] = new double[values.length];
+        long best = Long.MAX_VALUE;
+        for(int rep=0; rep<REPEATS; rep++)
+        {
+            System.arraycopy(values, 0, buffer, 0, values.length);
+            long start = System.nanoTime();
+            act.activate(buffer, 0, buffer.length);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return (double) best / values.length;
+    }
+
+    /**
+     * @return The nanoseconds per value taken by the primitive activation.
+     */
+    private static double measureSingle(AbstractActivation act, double values[])
+    {
+        long best = Long.MAX_VALUE;
+        double sink = 0.0;
+        for(int rep=0; rep<REPEATS; rep++)
+        {
+            long start = System.nanoTime();
+            for(int i=0; i<values.length; i++)
+                sink += act.activate(values[i]);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        if(sink == Double.MIN_VALUE)
+            System.out.print("");
+        return (double) best / values.length;
+    }
+}
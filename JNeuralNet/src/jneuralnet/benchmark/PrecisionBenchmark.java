@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.benchmark;
+
+import java.util.Random;
+import jneuralnet.core.ActivationContext;
+import jneuralnet.core.CompiledNetwork;
+import jneuralnet.core.NeuralNetwork;
+import jneuralnet.core.NeuronLayer;
+import jneuralnet.core.Precision;
+import jneuralnet.core.learning.BackPropagation;
+import org.apache.commons.lang.SerializationUtils;
+
+/**
+ * Measures the inference and training throughput of a network in every
+ * {@link Precision}. Run it as
+ *
+ * <pre>
+ * java jneuralnet.benchmark.PrecisionBenchmark [inputs hidden outputs patterns]
+ * </pre>
+ *
+ * <p>The same random weights are used for every precision, the reported
+ * error is the largest difference of the outputs from the double
+ * precision outputs.
+ *
+ * @author Ragha
+ * @see Precision
+ * @version 1.0
+ */
+public class PrecisionBenchmark
+{
+    private static final int REPEATS = 5;
+
+    public static void main(String args[])
+    {
+        int inputs = 512, hidden = 512, outputs = 16, patterns = 2000;
+        if(args.length == 4)
+        {
+            inputs = Integer.parseInt(args[0]);
+            hidden = Integer.parseInt(args[1]);
+            outputs = Integer.parseInt(args[2]);
+            patterns = Integer.parseInt(args[3]);
+        }
+
+        Random rand = new Random(1);
+        double data[] = new double[patterns * inputs];
+        for(int i=0; i<data.length; i++)
+            data[i] = rand.nextDouble() * 2 - 1;
+        double expected[] = new double[outputs];
+        for(int i=0; i<outputs; i++)
+            expected[i] = rand.nextDouble() - 0.5;
+
+        NeuralNetwork base = new NeuralNetwork(inputs, outputs);
+        base.addLayer(new NeuronLayer(hidden));
+        double reference[] = new double[patterns * outputs];
+        base.compile().getOutputs(data, patterns, reference, null);
+
+        System.out.println(inputs + "-" + hidden + "-" + outputs + " network, "
+                + patterns + " patterns");
+        System.out.println("precision                  weights(KB)  single(pat/s)"
+                + "  batch(pat/s)  train(pat/s)  max error");
+
+        for(Precision p : Precision.values())
+        {
+            //every precision starts from the same weights...
+            NeuralNetwork net = (NeuralNetwork) SerializationUtils.clone(base);
+            net.setPrecision(p);
+            CompiledNetwork cn = net.compile();
+
+            double out[] = new double[patterns * outputs];
+            cn.getOutputs(data, patterns, out, null);
+            double maxError = 0.0;
+            for(int i=0; i<out.length; i++)
+                maxError = Math.max(maxError, Math.abs(out[i] - reference[i]));
+
+            long weightBytes = (long) (inputs * hidden + hidden * outputs)
+                    * (p.isFloatStorage() ? 4 : 8);
+
+            double single = measureSingle(cn, data, patterns, inputs, outputs);
+            double batch = measureBatch(cn, data, patterns, outputs);
+            double train = measureTraining(net, data, patterns, inputs, expected);
+
+            System.out.println(String.format("%-26s %11d %14.0f %13.0f %13.0f  %.2e",
+                    p, weightBytes / 1024, single, batch, train, maxError));
+        }
+    }
+
+    /**
+     * @return The patterns per second fed forward one at a time.
+     */
+    private static double measureSingle(CompiledNetwork cn, double data[],
+            int patterns, int inputs, int outputs)
+    {
+        double in[] = new double[inputs];
+        double out[] = new double[outputs];
+        long best = Long.MAX_VALUE;
+        for(int rep=0; rep<REPEATS; rep++)
+        {
+            long start = System.nanoTime();
+            for(int p=0; p<patterns; p++)
+            {
+                System.arraycopy(data, p * inputs, in, 0, inputs);
+                cn.getOutput(in, out);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return patterns * 1e9 / best;
+    }
+
+    /**
+     * @return The patterns per second fed forward as a single batch.
+     */
+    private static double measureBatch(CompiledNetwork cn, double data[],
+            int patterns, int outputs)
+    {
+        double out[] = new double[patterns * outputs];
+        long best = Long.MAX_VALUE;
+        for(int rep=0; rep<REPEATS; rep++)
+        {
+            long start = System.nanoTime();
+            cn.getOutputs(data, patterns, out, null);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return patterns * 1e9 / best;
+    }
+
+    /**
+     * @return The patterns per second trained by back propagation.
+     */
+    private static double measureTraining(NeuralNetwork net, double data[],
+            int patterns, int inputs, double expected[])
+    {
+        BackPropagation bp = new BackPropagation();
+        ActivationContext ctx = new ActivationContext(net);
+        double in[] = new double[inputs];
+        long best = Long.MAX_VALUE;
+        for(int rep=0; rep<REPEATS; rep++)
+        {
+            long start = System.nanoTime();
+            for(int p=0; p<patterns; p++)
+            {
+                System.arraycopy(data, p * inputs, in, 0, inputs);
+                net.getOutputOnPreprocessedData(in, ctx);
+                bp.trainNet(net, ctx, expected);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return patterns * 1e9 / best;
+    }
+}
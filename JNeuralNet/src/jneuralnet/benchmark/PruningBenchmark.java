@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.benchmark;
+
+import java.util.Random;
+import jneuralnet.core.CompiledNetwork;
+import jneuralnet.core.DenseLayer;
+import jneuralnet.core.NeuralNetwork;
+import jneuralnet.core.NeuronLayer;
+import jneuralnet.core.pruning.MagnitudePruner;
+import jneuralnet.core.pruning.PruningReport;
+import jneuralnet.core.training.TrainingPattern;
+import jneuralnet.core.training.TrainingSet;
+import org.apache.commons.lang.SerializationUtils;
+
+/**
+ * Trains a network on a synthetic regression task, prunes it to several
+ * sparsities and reports the error before and after pruning and fine
+ * tuning, along with the operations per prediction and the inference
+ * throughput of the compiled network. Run it as
+ *
+ * <pre>
+ * java jneuralnet.benchmark.PruningBenchmark [inputs hidden outputs patterns epochs]
+ * </pre>
+ *
+ * <p>The targets are produced by a small random network, so the
+ * benchmarked network has many more weights than the task needs.
+ *
+ * @author Ragha
+ * @see MagnitudePruner
+ * @version 1.0
+ */
+public class PruningBenchmark
+{
+    private static final double SPARSITIES[] = { 0.5, 0.7, 0.8, 0.9 };
+    private static final int FINE_TUNE_EPOCHS = 5;
+    private static final int REPEATS = 20;
+    private static final int TARGET_HIDDEN = 8;
+    private static final double LEARNING_RATE = 0.01;
+
+    public static void main(String args[])
+    {
+        int inputs = 64, hidden = 256, outputs = 4, patterns = 1000, epochs = 30;
+        if(args.length == 5)
+        {
+            inputs = Integer.parseInt(args[0]);
+            hidden = Integer.parseInt(args[1]);
+            outputs = Integer.parseInt(args[2]);
+            patterns = Integer.parseInt(args[3]);
+            epochs = Integer.parseInt(args[4]);
+        }
+
+        Random rand = new Random(1);
+        NeuralNetwork target = new NeuralNetwork(inputs, outputs);
+        target.addLayer(new NeuronLayer(TARGET_HIDDEN));
+        target.getHiddenLayers().get(0).getDenseLayer().randomize(-0.3, 0.3);
+        TrainingSet trainingSet = createSet(target, patterns, rand);
+        TrainingSet testSet = createSet(target, patterns, rand);
+        double data[] = new double[patterns * inputs];
+        double row[] = new double[inputs];
+        for(int p=0; p<patterns; p++)
+        {
+            testSet.getTrainingPattern(p).getInputData(row);
+            System.arraycopy(row, 0, data, p * inputs, inputs);
+        }
+
+        NeuralNetwork base = new NeuralNetwork(inputs, outputs);
+        base.addLayer(new NeuronLayer(hidden));
+        for(DenseLayer layer : new DenseLayer[] {
+            base.getHiddenLayers().get(0).getDenseLayer(),
+            base.getOutputLayer().getDenseLayer() })
+        {
+            layer.randomize(-0.1, 0.1);
+            for(int param=0; param<layer.getNumParameters(); param++)
+                layer.setLearningRate(param, LEARNING_RATE);
+        }
+        new MagnitudePruner().fineTune(base, trainingSet, epochs);
+
+        System.out.println(inputs + "-" + hidden + "-" + outputs + " network, "
+                + patterns + " patterns, " + epochs + " epochs");
+        double denseRate = measure(base.compile(), data, patterns, outputs);
+        System.out.println(String.format("unpruned: test error %.6f, %.0f pat/s",
+                getError(base, testSet), denseRate));
+        System.out.println("sparsity  flops(x fewer)  pruned error  "
+                + "fine tuned error  pat/s  speedup");
+
+        for(double sparsity : SPARSITIES)
+        {
+            NeuralNetwork net = (NeuralNetwork) SerializationUtils.clone(base);
+            MagnitudePruner pruner = new MagnitudePruner();
+            pruner.setSparsity(sparsity);
+            PruningReport report = pruner.prune(net, testSet);
+            pruner.fineTune(net, trainingSet, FINE_TUNE_EPOCHS);
+
+            double rate = measure(net.compile(), data, patterns, outputs);
+            System.out.println(String.format("%8.2f %15.2f %13.6f %17.6f %6.0f %7.2fx",
+                    report.getSparsity(), report.getFlopReduction(),
+                    report.getErrorAfter(), getError(net, testSet),
+                    rate, rate / denseRate));
+        }
+    }
+
+    /**
+     * Creates patterns with random inputs and the outputs of the target network.
+     */
+    private static TrainingSet createSet(NeuralNetwork target, int patterns, Random rand)
+    {
+        TrainingSet ts = new TrainingSet();
+        for(int p=0; p<patterns; p++)
+        {
+            Double in[] = new Double[target.getNumInputs()];
+            for(int i=0; i<in.length; i++)
+                in[i] = rand.nextDouble() * 2 - 1;
+            Double out[] = target.getOutput(in);
+            for(int i=0; i<out.length; i++)
+                out[i] *= 0.8;
+            ts.add(new TrainingPattern(in, out));
+        }
+        return ts;
+    }
+
+    /**
+     * @return The mean error of the network on the set.
+     */
+    private static double getError(NeuralNetwork net, TrainingSet ts)
+    {
+        double error = 0.0;
+        for(Double e : net.getPerformanceOnTrainingSet(ts, true).values())
+            error += e;
+        return error / ts.getPatternSetSize();
+    }
+
+    /**
+     * @return The patterns per second fed forward as a single batch.
+     */
+    private static double measure(CompiledNetwork cn, double data[],
+            int patterns, int outputs)
+    {
+        double out[] = new double[patterns * outputs];
+        long best = Long.MAX_VALUE;
+        for(int rep=0; rep<REPEATS; rep++)
+        {
+            long start = System.nanoTime();
+            cn.getOutputs(data, patterns, out, null);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return patterns * 1e9 / best;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import jneuralnet.core.ActivationContext;
+import jneuralnet.core.CompiledNetwork;
+import jneuralnet.core.DenseLayer;
+import jneuralnet.core.NeuralNetwork;
+import jneuralnet.core.NeuronLayer;
+import jneuralnet.core.QuantizationReport;
+import jneuralnet.core.QuantizedNetwork;
+import jneuralnet.core.learning.AbstractLearningAlgo;
+import jneuralnet.core.training.TrainingPattern;
+import jneuralnet.core.training.TrainingSet;
+
+/**
+ * Trains a network on a synthetic regression task, quantizes it to 8 bits
+ * with a scale per layer and with a scale per neuron and reports the
+ * accuracy and memory of the quantized networks against the original one,
+ * along with the size of the saved network and the inference throughput.
+ * Run it as
+ *
+ * <pre>
+ * java jneuralnet.benchmark.QuantizationBenchmark [inputs hidden outputs patterns epochs]
+ * </pre>
+ *
+ * @author Ragha
+ * @see QuantizedNetwork
+ * @version 1.0
+ */
+public class QuantizationBenchmark
+{
+    private static final int REPEATS = 20;
+    private static final int TARGET_HIDDEN = 8;
+    private static final double LEARNING_RATE = 0.01;
+
+    public static void main(String args[]) throws IOException
+    {
+        int inputs = 64, hidden = 512, outputs = 4, patterns = 1000, epochs = 30;
+        if(args.length == 5)
+        {
+            inputs = Integer.parseInt(args[0]);
+            hidden = Integer.parseInt(args[1]);
+            outputs = Integer.parseInt(args[2]);
+            patterns = Integer.parseInt(args[3]);
+            epochs = Integer.parseInt(args[4]);
+        }
+
+        Random rand = new Random(1);
+        NeuralNetwork target = new NeuralNetwork(inputs, outputs);
+        target.addLayer(new NeuronLayer(TARGET_HIDDEN));
+        target.getHiddenLayers().get(0).getDenseLayer().randomize(-0.3, 0.3);
+        TrainingSet trainingSet = createSet(target, patterns, rand);
+        TrainingSet testSet = createSet(target, patterns, rand);
+        double data[] = new double[patterns * inputs];
+        double row[] = new double[inputs];
+        for(int p=0; p<patterns; p++)
+        {
+            testSet.getTrainingPattern(p).getInputData(row);
+            System.arraycopy(row, 0, data, p * inputs, inputs);
+        }
+
+        NeuralNetwork net = new NeuralNetwork(inputs, outputs);
+        net.addLayer(new NeuronLayer(hidden));
+        for(DenseLayer layer : new DenseLayer[] {
+            net.getHiddenLayers().get(0).getDenseLayer(),
+            net.getOutputLayer().getDenseLayer() })
+        {
+            layer.randomize(-0.1, 0.1);
+            for(int param=0; param<layer.getNumParameters(); param++)
+                layer.setLearningRate(param, LEARNING_RATE);
+        }
+        train(net, trainingSet, epochs);
+
+        System.out.println(inputs + "-" + hidden + "-" + outputs + " network, "
+                + patterns + " patterns, " + epochs + " epochs");
+        double floatRate = measure(net.compile(), data, patterns, outputs);
+        System.out.println(String.format("double: %.0f pat/s", floatRate));
+
+        for(boolean perRow : new boolean[] { false, true })
+        {
+            QuantizedNetwork qn = QuantizedNetwork.quantize(net, trainingSet, perRow);
+            QuantizationReport report = qn.compareWith(net, testSet);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            qn.save(out);
+            QuantizedNetwork loaded = QuantizedNetwork.load(
+                    new ByteArrayInputStream(out.toByteArray()));
+            if(!Arrays.equals(loaded.getOutput(row), qn.getOutput(row)))
+                throw new IllegalStateException("Loaded network differs from the saved one");
+
+            double rate = measure(qn.getCompiledNetwork(), data, patterns, outputs);
+            System.out.println();
+            System.out.println("int8, " + (perRow ? "per neuron" : "per layer")
+                    + String.format(" scales: %.0f pat/s (%.2fx), saved in %d bytes",
+                    rate, rate / floatRate, out.size()));
+            System.out.println(report);
+        }
+    }
+
+    /**
+     * Trains the network pattern by pattern with its learning algo.
+     */
+    private static void train(NeuralNetwork net, TrainingSet ts, int epochs)
+    {
+        AbstractLearningAlgo algo = net.getTeacher().getLearningAlgo();
+        ActivationContext ctx = net.getActivationContext();
+        double input[] = new double[net.getNumInputs()];
+        double expected[] = new double[net.getNumOutputs()];
+        for(int epoch=0; epoch<epochs; epoch++)
+        {
+            ts.shuffle();
+            for(TrainingPattern tp : ts.getTrainingPatterns())
+            {
+                tp.getInputData(input);
+                tp.getOutputData(expected);
+                net.getOutputOnPreprocessedData(input, ctx);
+                algo.trainNet(net, ctx, expected);
+            }
+        }
+    }
+
+    /**
+     * Creates patterns with random inputs and the outputs of the target network.
+     */
+    private static TrainingSet createSet(NeuralNetwork target, int patterns, Random rand)
+    {
+        TrainingSet ts = new TrainingSet();
+        for(int p=0; p<patterns; p++)
+        {
+            Double in[] = new Double[target.getNumInputs()];
+            for(int i=0; i<in.length; i++)
+                in[i] = rand.nextDouble() * 2 - 1;
+            Double out[] = target.getOutput(in);
+            for(int i=0; i<out.length; i++)
+                out[i] *= 0.8;
+            ts.add(new TrainingPattern(in, out));
+        }
+        return ts;
+    }
+
+    /**
+     * @return The patterns per second fed forward as a single batch.
+     */
+    private static double measure(CompiledNetwork cn, double data[],
+            int patterns, int outputs)
+    {
+        double out[] = new double[patterns * outputs];
+        long best = Long.MAX_VALUE;
+        for(int rep=0; rep<REPEATS; rep++)
+        {
+            long start = System.nanoTime();
+            cn.getOutputs(data, patterns, out, null);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return patterns * 1e9 / best;
+    }
+}
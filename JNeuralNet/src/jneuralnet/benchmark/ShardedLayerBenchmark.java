@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+import jneuralnet.core.DenseLayer;
+import jneuralnet.core.NeuralNetwork;
+import jneuralnet.core.NeuronLayer;
+import jneuralnet.core.activation.AbstractActivation;
+import jneuralnet.core.distributed.ShardedLayer;
+
+/**
+ * Measures the latency of a wide layer computed in this process and sharded
+ * across worker processes on the local machine: the median time of a
+ * forward pass, and of a backward pass computing the deltas, summing the
+ * gradients and propagating the errors to the inputs. The largest
+ * differences of the sharded outputs and input errors from the local ones
+ * are reported too. Run it as
+ *
+ * <pre>
+ * java jneuralnet.benchmark.ShardedLayerBenchmark [inputs neurons shards repeats]
+ * </pre>
+ *
+ * every power of two below the number of shards being measured as well.
+ *
+ * @author Ragha
+ * @see ShardedLayer
+ * @version 1.0
+ */
+public class ShardedLayerBenchmark
+{
+    private static final int WARMUP = 20;
+
+    public static void main(String args[]) throws Exception
+    {
+        int inputs = 256, neurons = 16384, maxShards = 4, repeats = 200;
+        if(args.length == 4)
+        {
+            inputs = Integer.parseInt(args[0]);
+            neurons = Integer.parseInt(args[1]);
+            maxShards = Integer.parseInt(args[2]);
+            repeats = Integer.parseInt(args[3]);
+        }
+
+        NeuralNetwork net = new NeuralNetwork(inputs, neurons);
+        NeuronLayer layer = net.getOutputLayer();
+        Random rand = new Random(1);
+        double input[] = new double[inputs];
+        double errors[] = new double[neurons];
+        for(int i=0; i<inputs; i++)
+            input[i] = rand.nextDouble();
+        for(int n=0; n<neurons; n++)
+            errors[n] = rand.nextGaussian() * 0.1;
+
+        double expectedOutput[] = new double[neurons];
+        double expectedInputErrors[] = new double[inputs];
+        long times[][] = measureLocal(layer, input, errors, repeats,
+                expectedOutput, expectedInputErrors);
+
+        System.out.println(String.format("%d inputs x %d neurons, median of %d",
+                inputs, neurons, repeats));
+        System.out.println("shards  forward us  backward us  output diff  input error diff");
+        System.out.println(String.format("local   %10.1f  %11.1f  %11s  %16s",
+                median(times[0]), median(times[1]), "-", "-"));
+
+        for(int shards=1; shards<=maxShards; shards=shards < maxShards
+                ? Math.min(shards * 2, maxShards) : shards + 1)
+        {
+            double output[] = new double[neurons];
+            double inputErrors[] = new double[inputs];
+            ShardedLayer sharded = new ShardedLayer(layer, shards,
+                    net.getTeacher().getLearningAlgo());
+            sharded.start();
+            try
+            {
+                times = measureSharded(sharded, input, errors, repeats,
+                        output, inputErrors);
+            }
+            finally
+            {
+                sharded.close();
+            }
+            System.out.println(String.format("%-7d %10.1f  %11.1f  %11.2e  %16.2e",
+                    shards, median(times[0]), median(times[1]),
+                    getMaxDiff(expectedOutput, output),
+                    getMaxDiff(expectedInputErrors, inputErrors)));
+        }
+    }
+
+    /**
+     * @return The nanoseconds taken by every forward and backward pass
+     * in this process.
+     */
+    private static long[][] measureLocal(NeuronLayer layer, double input[],
+            double errors[], int repeats, double output[], double inputErrors[])
+    {
+        DenseLayer dense = layer.getDenseLayer();
+        int numInputs = input.length;
+        int numWeights = output.length * numInputs;
+        double sums[] = new double[output.length];
+        double deltas[] = new double[output.length];
+        double gradients[] = new double[dense.getNumParameters()];
+        long times[][] = new long[2][repeats];
+
+        for(int rep=-WARMUP; rep<repeats; rep++)
+        {
+            long start = System.nanoTime();
+            dense.computeSums(input, sums);
+            for(int n=0; n<output.length; n++)
+                output[n] = layer.getNeurons().get(n).getActivation().activate(sums[n]);
+            long forward = System.nanoTime();
+
+            //the same work as a worker of a sharded layer does...
+            int param = 0;
+            for(int n=0; n<output.length; n++)
+            {
+                AbstractActivation act = layer.getNeurons().get(n).getActivation();
+                double delta = errors[n] * act.derivative(sums[n], output[n]);
+                deltas[n] = delta;
+                for(int i=0; i<numInputs; i++, param++)
+                    gradients[param] += delta * input[i];
+                gradients[numWeights + n] -= delta;
+            }
+            dense.propagateDeltas(deltas, inputErrors);
+            long backward = System.nanoTime();
+
+            if(rep >= 0)
+            {
+                times[0][rep] = forward - start;
+                times[1][rep] = backward - forward;
+            }
+        }
+        return times;
+    }
+
+    /**
+     * @return The nanoseconds taken by every forward and backward pass
+     * of the sharded layer.
+     */
+    private static long[][] measureSharded(ShardedLayer sharded, double input[],
+            double errors[], int repeats, double output[], double inputErrors[])
+            throws Exception
+    {
+        long times[][] = new long[2][repeats];
+        for(int rep=-WARMUP; rep<repeats; rep++)
+        {
+            long start = System.nanoTime();
+            sharded.forward(input, output);
+            long forward = System.nanoTime();
+            sharded.backward(errors, inputErrors);
+            long backward = System.nanoTime();
+
+            if(rep >= 0)
+            {
+                times[0][rep] = forward - start;
+                times[1][rep] = backward - forward;
+            }
+        }
+        return times;
+    }
+
+    /**
+     * @return The median of the times, in microseconds.
+     */
+    private static double median(long times[])
+    {
+        long sorted[] = times.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2] / 1000.0;
+    }
+
+    private static double getMaxDiff(double expected[], double actual[])
+    {
+        double max = 0.0;
+        for(int i=0; i<expected.length; i++)
+            max = Math.max(max, Math.abs(expected[i] - actual[i]));
+        return max;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import jneuralnet.core.DenseLayer;
+import jneuralnet.core.NeuralNetwork;
+import jneuralnet.core.NeuronLayer;
+import jneuralnet.core.learning.AbstractLearningAlgo;
+import jneuralnet.core.learning.BackPropagation;
+import jneuralnet.core.training.AbstractTrainingMode;
+import jneuralnet.core.training.DataParallelTraining;
+import jneuralnet.core.training.EpochError;
+import jneuralnet.core.training.HogwildTraining;
+import jneuralnet.core.training.PipelinedTraining;
+import jneuralnet.core.training.SerialTraining;
+import jneuralnet.core.training.Teacher;
+import jneuralnet.core.training.TrainingPattern;
+import org.apache.commons.lang.SerializationUtils;
+
+/**
+ * Trains the same network on a synthetic regression task in every training
+ * mode and reports the time per epoch, the throughput, the speedup over
+ * serial training with the same batch size and the training error reached.
+ * Run it as
+ *
+ * <pre>
+ * java jneuralnet.benchmark.TrainingModeBenchmark [inputs hidden outputs patterns epochs batch threads density]
+ * </pre>
+ *
+ * <p>The density is the fraction of the inputs of a pattern that are not
+ * zero, sparse inputs being where {@link HogwildTraining} pays off.
+ *
+ * <p>The learning rate of the batch modes is that of online training
+ * divided by the batch size, the gradients being summed over a batch.
+ * Every mode sees the patterns in the same orders.
+ *
+ * @author Ragha
+ * @see AbstractTrainingMode
+ * @version 1.0
+ */
+public class TrainingModeBenchmark
+{
+    private static final double LEARNING_RATE = 0.05;
+    private static final int TARGET_HIDDEN = 8;
+
+    public static void main(String args[])
+    {
+        int inputs = 64, hidden = 256, outputs = 8, patterns = 20000, epochs = 5;
+        int batch = 500, threads = Runtime.getRuntime().availableProcessors();
+        double density = 1.0;
+        if(args.length == 8)
+        {
+            inputs = Integer.parseInt(args[0]);
+            hidden = Integer.parseInt(args[1]);
+            outputs = Integer.parseInt(args[2]);
+            patterns = Integer.parseInt(args[3]);
+            epochs = Integer.parseInt(args[4]);
+            batch = Integer.parseInt(args[5]);
+            threads = Integer.parseInt(args[6]);
+            density = Double.parseDouble(args[7]);
+        }
+
+        Random rand = new Random(1);
+        NeuralNetwork target = new NeuralNetwork(inputs, outputs);
+        target.addLayer(new NeuronLayer(TARGET_HIDDEN));
+        target.getHiddenLayers().get(0).getDenseLayer().randomize(-0.3, 0.3);
+        List<TrainingPattern> set = new ArrayList<TrainingPattern>();
+        for(int p=0; p<patterns; p++)
+        {
+            Double in[] = new Double[inputs];
+            for(int i=0; i<inputs; i++)
+                in[i] = rand.nextDouble() < density ? rand.nextDouble() * 2 - 1 : 0.0;
+            Double out[] = target.getOutput(in);
+            for(int i=0; i<out.length; i++)
+                out[i] *= 0.8;
+            set.add(new TrainingPattern(in, out));
+        }
+
+        NeuralNetwork base = new NeuralNetwork(inputs, outputs);
+        base.addLayer(new NeuronLayer(hidden));
+        base.getHiddenLayers().get(0).getDenseLayer().randomize(-0.1, 0.1);
+        base.getOutputLayer().getDenseLayer().randomize(-0.1, 0.1);
+
+        System.out.println(inputs + "-" + hidden + "-" + outputs + " network, "
+                + patterns + " patterns, " + epochs + " epochs, batch "
+                + batch + ", " + threads + " threads, input density " + density);
+        System.out.println("mode                               ms/epoch    pat/s"
+                + "  speedup  train error");
+
+        double serial[] = measure(base, new SerialTraining(), set, epochs, Teacher.ONLINE);
+        print("Serial, online", serial, serial[0]);
+        print("Hogwild, online", measure(base, new HogwildTraining(threads),
+                set, epochs, Teacher.ONLINE), serial[0]);
+        double serialBatch[] = measure(base, new SerialTraining(), set, epochs, batch);
+        print("Serial, batch", serialBatch, serialBatch[0]);
+        print("Data Parallel, deterministic", measure(base,
+                new DataParallelTraining(threads, true), set, epochs, batch),
+                serialBatch[0]);
+        print("Data Parallel, dynamic", measure(base,
+                new DataParallelTraining(threads, false), set, epochs, batch),
+                serialBatch[0]);
+        print("Hogwild, batch", measure(base, new HogwildTraining(threads),
+                set, epochs, batch), serialBatch[0]);
+        print("Pipelined, batch", measure(base, new PipelinedTraining(threads),
+                set, epochs, batch), serialBatch[0]);
+    }
+
+    private static void print(String name, double result[], double reference)
+    {
+        System.out.println(String.format("%-32s %11.1f %8.0f %7.2fx  %.6f",
+                name, result[0], result[1], reference / result[0], result[2]));
+    }
+
+    /**
+     * @return The milliseconds per epoch, the patterns per second and the
+     * training error of the last epoch.
+     */
+    private static double[] measure(NeuralNetwork base, AbstractTrainingMode mode,
+            List<TrainingPattern> set, int epochs, int batch)
+    {
+        NeuralNetwork net = (NeuralNetwork) SerializationUtils.clone(base);
+        for(NeuronLayer l : net.getHiddenLayers())
+            setLearningRate(l.getDenseLayer(), LEARNING_RATE / batch);
+        setLearningRate(net.getOutputLayer().getDenseLayer(), LEARNING_RATE / batch);
+
+        AbstractLearningAlgo algo = new BackPropagation();
+        List<TrainingPattern> patterns = new ArrayList<TrainingPattern>(set);
+        Random rand = new Random(2);
+        EpochError error = new EpochError();
+        long time = 0;
+        for(int epoch=0; epoch<epochs; epoch++)
+        {
+            Collections.shuffle(patterns, rand);
+            error.clear();
+            long start = System.nanoTime();
+            mode.trainEpoch(net, algo, patterns, batch, error);
+            time += System.nanoTime() - start;
+        }
+        mode.release();
+
+        double msPerEpoch = time / 1e6 / epochs;
+        return new double[] { msPerEpoch, set.size() * 1000 / msPerEpoch,
+                error.getCostError() / set.size() / 2 };
+    }
+
+    private static void setLearningRate(DenseLayer layer, double learningRate)
+    {
+        for(int param=0; param<layer.getNumParameters(); param++)
+            layer.setLearningRate(param, learningRate);
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import jneuralnet.core.learning.AbstractLearningAlgo;
+
+/**
+ * Holds the values of a single pattern as it is fed forward and back
+ * propagated through a <code>NeuralNetwork</code>, i.e, the input,
+ * weighted sums, outputs and deltas of every layer. The learning algo
+ * reads these values instead of state stored in the network, so several
+ * threads can feed forward and back propagate patterns on the same weights
+ * at the same time, each using its own context.
+ *
+ * <p>Layers are numbered as in the network, hidden layers from 0 with the
+ * output layer last. The inputs of a layer are the outputs of the layer
+ * below it, the inputs of the first layer are the network inputs.
+ *
+ * <p>In batch training the context also sums the error gradients of the
+ * patterns of a batch, see {@link #getGradients(int) }, until the learning
+ * algo applies them.
+ *
+ * <p>A context is not thread safe and must be recreated if the topology of
+ * the network changes, see
+ * {@link #isCompatibleWith(jneuralnet.core.NeuralNetwork) isCompatibleWith(...)}.
+ *
+ * @author Ragha
+ * @see NeuralNetwork#getOutputOnPreprocessedData(double[], jneuralnet.core.ActivationContext)
+ * @see AbstractLearningAlgo
+ * @version 1.0
+ */
+public final class ActivationContext
+{
+    private final double input[];
+    private final double sums[][];
+    private final double outputs[][];
+    private final double deltas[][];
+
+    //the error gradients summed over a batch, allocated on first use...
+    private final double gradients[][];
+    private int numAccumulated;
+
+    /**
+     * Creates a context sized for the current topology of the network.
+     *
+     * @param net The network the context is to be used with.
+     */
+    public ActivationContext(NeuralNetwork net)
+    {
+        ArrayList<NeuronLayer> hiddenLayers = net.getHiddenLayers();
+        int numLayers = hiddenLayers.size() + 1;
+
+        input = new double[net.getNumInputs()];
+        sums = new double[numLayers][];
+        outputs = new double[numLayers][];
+        deltas = new double[numLayers][];
+        gradients = new double[numLayers][];
+        for(int l=0; l<numLayers; l++)
+        {
+            int numNeurons = l < hiddenLayers.size()
+                    ? hiddenLayers.get(l).getNumNeurons()
+                    : net.getOutputLayer().getNumNeurons();
+            sums[l] = new double[numNeurons];
+            outputs[l] = new double[numNeurons];
+            deltas[l] = new double[numNeurons];
+        }
+    }
+
+    /**
+     * Checks if this context matches the current topology of the network.
+     *
+     * @param net The network to be checked against.
+     * @return true if the context can be used with the network.
+     */
+    public boolean isCompatibleWith(NeuralNetwork net)
+    {
+        ArrayList<NeuronLayer> hiddenLayers = net.getHiddenLayers();
+        if(input.length != net.getNumInputs()
+                || sums.length != hiddenLayers.size() + 1)
+            return false;
+
+        for(int i=0; i<hiddenLayers.size(); i++)
+        {
+            if(sums[i].length != hiddenLayers.get(i).getNumNeurons())
+                return false;
+        }
+        return sums[hiddenLayers.size()].length
+                == net.getOutputLayer().getNumNeurons();
+    }
+
+    /**
+     * @return The number of layers, i.e, hidden layers + 1.
+     */
+    public int getNumLayers()
+    {
+        return sums.length;
+    }
+
+    /**
+     * Gets the input vector encountered by a layer during forward
+     * propogation.
+     *
+     * @param layer The index of the layer.
+     * @return The inputs of the layer.
+     * @throws IndexOutOfBoundsException If index value is invalid.
+     */
+    public double[] getInputs(int layer) throws IndexOutOfBoundsException
+    {
+        if(layer == 0)
+            return input;
+        return outputs[layer - 1];
+    }
+
+    /**
+     * Gets the weighted sum ∑(Wi * Xi) of every neuron of a layer
+     * encountered during forward propogation.
+     *
+     * @param layer The index of the layer.
+     * @return The weighted sums of the layer.
+     * @throws IndexOutOfBoundsException If index value is invalid.
+     */
+    public double[] getSums(int layer) throws IndexOutOfBoundsException
+    {
+        return sums[layer];
+    }
+
+    /**
+     * Gets the output of every neuron of a layer generated during
+     * forward propogation.
+     *
+     * @param layer The index of the layer.
+     * @return The outputs of the layer.
+     * @throws IndexOutOfBoundsException If index value is invalid.
+     */
+    public double[] getOutputs(int layer) throws IndexOutOfBoundsException
+    {
+        return outputs[layer];
+    }
+
+    /**
+     * Gets the array holding the delta of every neuron of a layer, set
+     * by the learning algo during back propagation.
+     *
+     * @param layer The index of the layer.
+     * @return The deltas of the layer.
+     * @throws IndexOutOfBoundsException If index value is invalid.
+     */
+    public double[] getDeltas(int layer) throws IndexOutOfBoundsException
+    {
+        return deltas[layer];
+    }
+
+    /**
+     * @return The output vector of the network, i.e, the outputs of
+     * the output layer.
+     */
+    public double[] getNetworkOutput()
+    {
+        return outputs[outputs.length - 1];
+    }
+
+    /**
+     * Gets the array holding the error gradient of every parameter of a
+     * layer summed over the patterns accumulated so far. It is indexed
+     * like the parameters of the {@link DenseLayer}, i.e, the weights in
+     * row major order followed by the biases.
+     *
+     * @param layer The index of the layer.
+     * @return The summed gradients of the layer.
+     * @throws IndexOutOfBoundsException If index value is invalid.
+     * @see AbstractLearningAlgo#accumulateGradients(jneuralnet.core.NeuralNetwork, jneuralnet.core.ActivationContext, double[])
+     */
+    public double[] getGradients(int layer) throws IndexOutOfBoundsException
+    {
+        if(gradients[layer] == null)
+        {
+            int numInputs = getInputs(layer).length;
+            int numNeurons = sums[layer].length;
+            gradients[layer] = new double[numNeurons * numInputs + numNeurons];
+        }
+        return gradients[layer];
+    }
+
+    /**
+     * @return The number of patterns whose gradients are summed.
+     */
+    public int getNumAccumulated()
+    {
+        return numAccumulated;
+    }
+
+    /**
+     * Counts a pattern whose gradients were added by the learning algo.
+     */
+    public void patternAccumulated()
+    {
+        numAccumulated++;
+    }
+
+    /**
+     * Adds the gradients summed in another context for the same network
+     * to those of this context, for the parameters in [from, to) of a
+     * layer. Several threads may add disjoint ranges at once, provided the
+     * gradients of this context were allocated beforehand.
+     *
+     * @param other The context whose gradients are to be added.
+     * @param layer The index of the layer.
+     * @param from The first parameter to be added.
+     * @param to The parameter after the last one to be added.
+     * @see #addNumAccumulated(int)
+     */
+    public void addGradients(ActivationContext other, int layer, int from, int to)
+    {
+        double dst[] = getGradients(layer);
+        double src[] = other.gradients[layer];
+        if(src == null)
+            return;
+        for(int p=from; p<to; p++)
+            dst[p] += src[p];
+    }
+
+    /**
+     * Counts the patterns whose gradients were added from other contexts.
+     *
+     * @param count The number of patterns.
+     */
+    public void addNumAccumulated(int count)
+    {
+        numAccumulated += count;
+    }
+
+    /**
+     * Zeroes the summed gradients of a layer, once they are applied. The
+     * count of accumulated patterns is left alone.
+     *
+     * @param layer The index of the layer.
+     */
+    public void clearGradients(int layer)
+    {
+        if(gradients[layer] != null)
+            Arrays.fill(gradients[layer], 0.0);
+    }
+
+    /**
+     * Zeroes the summed gradients, once they are applied.
+     */
+    public void clearGradients()
+    {
+        for(int l=0; l<gradients.length; l++)
+        {
+            if(gradients[l] != null)
+                Arrays.fill(gradients[l], 0.0);
+        }
+        numAccumulated = 0;
+    }
+}
@@ -0,0 +1,654 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import jneuralnet.core.activation.AbstractActivation;
+import jneuralnet.core.preprocessor.AbstractInputPreprocessor;
+import jneuralnet.core.preprocessor.AbstractOutputPreprocessor;
+import org.apache.commons.lang.SerializationUtils;
+
+/**
+ * An immutable snapshot of a trained <code>NeuralNetwork</code> meant for
+ * inference only. It is created by {@link NeuralNetwork#compile()} and holds
+ * private copies of the weight matrices, the activation function of every
+ * neuron and the input/output preprocessors along with their computed
+ * settings. Later changes to the network, including further training, do not
+ * affect a compiled network.
+ *
+ * <p>Nothing is cached during feed forward, so a single instance can be
+ * shared by any number of threads without locking. Every thread feeds
+ * forward through its own {@link InferenceWorkspace}, either one passed to
+ * {@link #getOutput(double[], double[], jneuralnet.core.InferenceWorkspace) getOutput(...)}
+ * or one held per thread by the compiled network.
+ *
+ * <p>Large numbers of input vectors are best scored in batches by
+ * {@link #getOutputs(double[], int, double[]) getOutputs(...)}, which feeds
+ * forward every layer as a matrix-matrix product and splits large batches
+ * across the available processors.
+ *
+ * <p>A layer whose weights are mostly zero, typically after pruning, is
+ * stored as a {@link SparseLayer}, so its cost is proportional to the
+ * number of non zero weights. A {@link QuantizedNetwork} feeds forward
+ * through a compiled network of {@link QuantizedLayer}s.
+ *
+ * <p>The dense layers of a network compiled by
+ * {@link NeuralNetwork#compile(boolean) compile(true)} are kept off the heap
+ * as {@link OffHeapLayer}s, with identical outputs, while the network it
+ * was compiled from keeps its own weights on the heap.
+ * {@link NeuralNetwork#loadOffHeap(String)} instead reads a saved network
+ * straight off the heap, one layer at a time. Such a network should be
+ * {@link #close() closed} once it is no longer needed.
+ *
+ * <p>The preprocessors and activation functions are copied by serialization,
+ * so they must not keep any state that changes while processing data.
+ *
+ * @author Ragha
+ * @see NeuralNetwork
+ * @see InferenceWorkspace
+ * @version 1.0
+ */
+public final class CompiledNetwork
+{
+    /**
+     * The minimum number of input vectors handed to a single thread
+     * during batch inference.
+     */
+    public static final int MIN_ROWS_PER_TASK = 256;
+
+    /**
+     * The number of input vectors fed forward together through all the
+     * layers, small enough for the layer outputs to stay in the cache.
+     */
+    private static final int BLOCK_ROWS = 64;
+
+    /**
+     * The executor shared by all compiled networks for batch inference,
+     * created on first use.
+     */
+    private static ExecutorService sharedExecutor;
+
+    private final int numInputs;
+
+    /**
+     * The weights of the hidden layers followed by the output layer.
+     */
+    private final WeightMatrix layers[];
+
+    /**
+     * The activation function of every neuron, indexed as [layer][neuron].
+     */
+    private final AbstractActivation activations[][];
+
+    /**
+     * The activation function shared by every neuron of a layer, applied
+     * in bulk, or null if the neurons of the layer differ.
+     */
+    private final AbstractActivation layerActivations[];
+
+    private final AbstractInputPreprocessor inputPreprocessor;
+    private final AbstractOutputPreprocessor outputPreprocessor;
+
+    /**
+     * Workspace used by {@link #getOutput(double[], double[])} for
+     * the calling thread.
+     */
+    private final ThreadLocal<InferenceWorkspace> workspaces =
+            new ThreadLocal<InferenceWorkspace>() {
+
+        @Override
+        protected InferenceWorkspace initialValue() {
+            return new InferenceWorkspace(CompiledNetwork.this);
+        }
+    };
+
+    /**
+     * Takes a snapshot of the given network. Use
+     * {@link NeuralNetwork#compile()} to create a compiled network.
+     *
+     * @param net The network to be compiled.
+     * @param offHeap true to keep the dense layers off the heap.
+     * @throws IllegalStateException If a layer of the network is not connected.
+     */
+    CompiledNetwork(NeuralNetwork net, boolean offHeap) throws IllegalStateException
+    {
+        ArrayList<NeuronLayer> netLayers = getLayers(net);
+
+        numInputs = net.getNumInputs();
+        layers = new WeightMatrix[netLayers.size()];
+        for(int l=0; l<netLayers.size(); l++)
+        {
+            DenseLayer dense = netLayers.get(l).getDenseLayer();
+            double density = (double) dense.getNumNonZeroWeights()
+                    / ((double) dense.getNumNeurons() * dense.getNumInputs());
+            if(density <= SparseLayer.MAX_DENSITY)
+                layers[l] = new SparseLayer(dense);
+            else if(offHeap)
+                layers[l] = new OffHeapLayer(dense);
+            else
+                layers[l] = new DenseLayer(dense);
+        }
+
+        Object frozen[] = freeze(net);
+        activations = (AbstractActivation[][]) frozen[0];
+        inputPreprocessor = (AbstractInputPreprocessor) frozen[1];
+        outputPreprocessor = (AbstractOutputPreprocessor) frozen[2];
+        layerActivations = getLayerActivations(activations);
+    }
+
+    /**
+     * Creates a compiled network from the given parts, which are used as is,
+     * so they must not be referenced, or atleast not modified, elsewhere.
+     *
+     * @param numInputs The number of inputs to the network.
+     * @param layers The weights of the hidden layers followed by the
+     * output layer.
+     * @param activations The activation function of every neuron, indexed
+     * as [layer][neuron].
+     * @param inputPreprocessor The input preprocessor, may be null.
+     * @param outputPreprocessor The output preprocessor, may be null.
+     */
+    CompiledNetwork(int numInputs, WeightMatrix layers[],
+            AbstractActivation activations[][],
+            AbstractInputPreprocessor inputPreprocessor,
+            AbstractOutputPreprocessor outputPreprocessor)
+    {
+        this.numInputs = numInputs;
+        this.layers = layers;
+        this.activations = activations;
+        this.inputPreprocessor = inputPreprocessor;
+        this.outputPreprocessor = outputPreprocessor;
+        this.layerActivations = getLayerActivations(activations);
+    }
+
+    /**
+     * @return The hidden layers of the network followed by the output layer.
+     * @throws IllegalStateException If a layer of the network is not connected.
+     */
+    static ArrayList<NeuronLayer> getLayers(NeuralNetwork net)
+            throws IllegalStateException
+    {
+        ArrayList<NeuronLayer> netLayers =
+                new ArrayList<NeuronLayer>(net.getHiddenLayers());
+        netLayers.add(net.getOutputLayer());
+        for(NeuronLayer layer : netLayers)
+        {
+            if(layer.getDenseLayer() == null)
+                throw new IllegalStateException("Neural network is not connected...");
+        }
+        return netLayers;
+    }
+
+    /**
+     * Copies the activation function of every neuron, indexed as
+     * [layer][neuron], and the input and output preprocessors of the network.
+     *
+     * @return The copies in that order.
+     * @throws IllegalStateException If a layer of the network is not connected.
+     */
+    static Object[] freeze(NeuralNetwork net) throws IllegalStateException
+    {
+        ArrayList<NeuronLayer> netLayers = getLayers(net);
+        AbstractActivation acts[][] = new AbstractActivation[netLayers.size()][];
+        for(int l=0; l<netLayers.size(); l++)
+        {
+            NeuronLayer layer = netLayers.get(l);
+            acts[l] = new AbstractActivation[layer.getNumNeurons()];
+            for(int n=0; n<acts[l].length; n++)
+                acts[l][n] = layer.getNeurons().get(n).getActivation();
+        }
+
+        //a single clone keeps the activations shared between neurons shared...
+        return (Object[]) SerializationUtils.clone(new Object[] {
+            acts, net.getInputPreprocessor(), net.getOutputPreprocessor() });
+    }
+
+    /**
+     * @return The activation function shared by every neuron of each layer,
+     * null for a layer whose neurons differ.
+     */
+    private static AbstractActivation[] getLayerActivations(AbstractActivation activations[][])
+    {
+        AbstractActivation shared[] = new AbstractActivation[activations.length];
+        for(int l=0; l<activations.length; l++)
+        {
+            shared[l] = activations[l][0];
+            for(int n=1; n<activations[l].length && shared[l] != null; n++)
+            {
+                if(activations[l][n] != shared[l])
+                    shared[l] = null;
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * @return The number of inputs to this network.
+     */
+    public int getNumInputs()
+    {
+        return numInputs;
+    }
+
+    /**
+     * @return The number of outputs of this network.
+     */
+    public int getNumOutputs()
+    {
+        return layers[layers.length - 1].getNumNeurons();
+    }
+
+    /**
+     * @return The number of layers, i.e, hidden layers + 1.
+     */
+    public int getNumLayers()
+    {
+        return layers.length;
+    }
+
+    /**
+     * Gets the number of neurons in a layer. Hidden layers are numbered
+     * from 0, the output layer comes last.
+     *
+     * @param index The index of the layer.
+     * @return The number of neurons in the layer.
+     * @throws IndexOutOfBoundsException If index value is invalid.
+     */
+    public int getLayerSize(int index) throws IndexOutOfBoundsException
+    {
+        return layers[index].getNumNeurons();
+    }
+
+    /**
+     * Gives the network's prediction for the input vector, in the same
+     * manner as {@link NeuralNetwork#getOutput(java.lang.Double[]) getOutput(...)}.
+     *
+     * @param input The input vector presented to the network.
+     * @return The output vector of the network.
+     * @throws IllegalArgumentException If input length dosent match the num
+     * of inputs of the network.
+     */
+    public Double[] getOutput(Double input[]) throws IllegalArgumentException
+    {
+        double in[] = new double[input.length];
+        for(int i=0; i<input.length; i++)
+            in[i] = input[i];
+
+        double out[] = getOutput(in);
+        Double output[] = new Double[out.length];
+        for(int i=0; i<out.length; i++)
+            output[i] = out[i];
+        return output;
+    }
+
+    /**
+     * Gives the network's prediction for the input vector.
+     *
+     * @param input The input vector presented to the network.
+     * @return A new array holding the output vector of the network.
+     * @throws IllegalArgumentException If input length dosent match the num
+     * of inputs of the network.
+     */
+    public double[] getOutput(double input[]) throws IllegalArgumentException
+    {
+        double output[] = new double[getNumOutputs()];
+        getOutput(input, output);
+        return output;
+    }
+
+    /**
+     * Gives the network's prediction for the input vector using a workspace
+     * held for the calling thread. No memory is allocated once the thread
+     * has made its first call.
+     *
+     * @param input The input vector presented to the network.
+     * @param output The array to hold the output vector, its length must
+     * be atleast the num of outputs of the network.
+     * @throws IllegalArgumentException If input or output length dosent match
+     * the num of inputs or outputs of the network.
+     */
+    public void getOutput(double input[], double output[])
+            throws IllegalArgumentException
+    {
+        getOutput(input, output, workspaces.get());
+    }
+
+    /**
+     * Gives the network's prediction for the input vector using the buffers
+     * of the given workspace. No memory is allocated by this method, but for
+     * the views an {@link OffHeapLayer} creates on the first call of a thread.
+     *
+     * @param input The input vector presented to the network.
+     * @param output The array to hold the output vector, its length must
+     * be atleast the num of outputs of the network.
+     * @param ws The workspace to be used, which must not be used by another
+     * thread at the same time.
+     * @throws IllegalArgumentException If input or output length dosent match
+     * the num of inputs or outputs of the network or if the workspace was
+     * not created for this network.
+     */
+    public void getOutput(double input[], double output[], InferenceWorkspace ws)
+            throws IllegalArgumentException
+    {
+        if(input.length != numInputs) {
+            throw new IllegalArgumentException("Input data length "
+                    + "does not match num of inputs to the neural network");
+        }
+        if(output.length < getNumOutputs()) {
+            throw new IllegalArgumentException("Output array length "
+                    + "is less than the num of outputs of the neural network");
+        }
+        if(!ws.isCompatibleWith(this)) {
+            throw new IllegalArgumentException("Workspace does not match "
+                    + "the topology of the neural network");
+        }
+
+        double data[] = input;
+        if(inputPreprocessor != null)
+        {
+            data = ws.getInputBuffer();
+            inputPreprocessor.process(input, data);
+        }
+
+        for(int l=0; l<layers.length; l++)
+        {
+            double layerOutput[] = ws.getLayerBuffer(l);
+            AbstractActivation acts[] = activations[l];
+
+            layers[l].computeSums(data, layerOutput);
+            if(layerActivations[l] != null)
+                layerActivations[l].activate(layerOutput, 0, acts.length);
+            else
+            {
+                for(int n=0; n<acts.length; n++)
+                    layerOutput[n] = acts[n].activate(layerOutput[n]);
+            }
+            data = layerOutput;
+        }
+
+        if(outputPreprocessor != null)
+            outputPreprocessor.deProcess(data, data);
+
+        System.arraycopy(data, 0, output, 0, data.length);
+    }
+
+    /**
+     * Gives the network's prediction for every input vector of the batch.
+     *
+     * @param inputs The input vectors presented to the network.
+     * @return The output vector for every input vector.
+     * @throws IllegalArgumentException If the length of an input vector
+     * dosent match the num of inputs of the network.
+     * @see #getOutputs(double[], int, double[]) getOutputs(...)
+     */
+    public double[][] getOutputs(double inputs[][]) throws IllegalArgumentException
+    {
+        double flatInputs[] = new double[inputs.length * numInputs];
+        for(int r=0; r<inputs.length; r++)
+        {
+            if(inputs[r].length != numInputs) {
+                throw new IllegalArgumentException("Input data length "
+                        + "does not match num of inputs to the neural network");
+            }
+            System.arraycopy(inputs[r], 0, flatInputs, r * numInputs, numInputs);
+        }
+
+        int numOutputs = getNumOutputs();
+        double flatOutputs[] = new double[inputs.length * numOutputs];
+        getOutputs(flatInputs, inputs.length, flatOutputs);
+
+        double outputs[][] = new double[inputs.length][numOutputs];
+        for(int r=0; r<inputs.length; r++)
+            System.arraycopy(flatOutputs, r * numOutputs, outputs[r], 0, numOutputs);
+        return outputs;
+    }
+
+    /**
+     * Gives the network's prediction for a batch of input vectors stored in
+     * row major order. Batches of more than <code>2 * MIN_ROWS_PER_TASK</code>
+     * vectors are split across the available processors using an executor
+     * shared by all compiled networks.
+     *
+     * <p>The outputs are identical to feeding the vectors one at a time
+     * through {@link #getOutput(double[]) getOutput(...)} if a single
+     * {@link VectorKernel} is selected, otherwise they may differ in the
+     * last bits.
+     *
+     * @param inputs The row major batch of input vectors, of length
+     * atleast <code>numRows * numInputs</code>.
+     * @param numRows The number of input vectors in the batch.
+     * @param outputs The row major array to hold the output vectors, of
+     * length atleast <code>numRows * numOutputs</code>.
+     * @throws IllegalArgumentException If the arrays are too short for
+     * the batch.
+     */
+    public void getOutputs(double inputs[], int numRows, double outputs[])
+            throws IllegalArgumentException
+    {
+        getOutputs(inputs, numRows, outputs,
+                numRows < 2 * MIN_ROWS_PER_TASK ? null : getSharedExecutor());
+    }
+
+    /**
+     * Gives the network's prediction for a batch of input vectors stored in
+     * row major order, splitting the batch into tasks of atleast
+     * <code>MIN_ROWS_PER_TASK</code> vectors run by the given executor.
+     *
+     * @param inputs The row major batch of input vectors, of length
+     * atleast <code>numRows * numInputs</code>.
+     * @param numRows The number of input vectors in the batch.
+     * @param outputs The row major array to hold the output vectors, of
+     * length atleast <code>numRows * numOutputs</code>.
+     * @param executor The executor to run the tasks, the batch is
+     * processed by the calling thread if null.
+     * @throws IllegalArgumentException If the arrays are too short for
+     * the batch.
+     * @throws IllegalStateException If the calling thread is interrupted
+     * while waiting for the tasks.
+     */
+    public void getOutputs(final double inputs[], int numRows,
+            final double outputs[], ExecutorService executor)
+            throws IllegalArgumentException, IllegalStateException
+    {
+        if(numRows < 0 || inputs.length < numRows * numInputs) {
+            throw new IllegalArgumentException("Input data length "
+                    + "does not match the batch of " + numRows + " inputs");
+        }
+        if(outputs.length < numRows * getNumOutputs()) {
+            throw new IllegalArgumentException("Output array length "
+                    + "is less than the outputs of the batch");
+        }
+
+        int numTasks = Math.min(numRows / MIN_ROWS_PER_TASK,
+                Runtime.getRuntime().availableProcessors());
+        if(executor == null || numTasks <= 1)
+        {
+            feedForwardRows(inputs, 0, numRows, outputs);
+            return;
+        }
+
+        List<Future<Object>> futures = new ArrayList<Future<Object>>(numTasks);
+        int from = 0;
+        for(int t=0; t<numTasks; t++)
+        {
+            final int start = from;
+            final int end = (int) ((long) numRows * (t + 1) / numTasks);
+            futures.add(executor.submit(new Callable<Object>() {
+
+                public Object call() {
+                    feedForwardRows(inputs, start, end, outputs);
+                    return null;
+                }
+            }));
+            from = end;
+        }
+
+        try
+        {
+            for(Future<Object> f : futures)
+                f.get();
+        }
+        catch(InterruptedException e)
+        {
+            for(Future<Object> f : futures)
+                f.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Batch inference was interrupted");
+        }
+        catch(ExecutionException e)
+        {
+            if(e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if(e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Feeds forward the rows [from, to) of the batch, BLOCK_ROWS rows
+     * at a time.
+     */
+    private void feedForwardRows(double inputs[], int from, int to, double outputs[])
+    {
+        int numOutputs = getNumOutputs();
+        int maxSize = numInputs;
+        for(WeightMatrix layer : layers)
+            maxSize = Math.max(maxSize, layer.getNumNeurons());
+
+        double blockIn[] = new double[BLOCK_ROWS * maxSize];
+        double blockOut[] = new double[BLOCK_ROWS * maxSize];
+        double rowIn[] = new double[numInputs];
+        double rowOut[] = new double[numOutputs];
+
+        for(int r0=from; r0<to; r0+=BLOCK_ROWS)
+        {
+            int rows = Math.min(BLOCK_ROWS, to - r0);
+
+            double data[] = blockIn;
+            if(inputPreprocessor != null)
+            {
+                for(int r=0; r<rows; r++)
+                {
+                    System.arraycopy(inputs, (r0 + r) * numInputs, rowIn, 0, numInputs);
+                    inputPreprocessor.process(rowIn, rowIn);
+                    System.arraycopy(rowIn, 0, blockIn, r * numInputs, numInputs);
+                }
+            }
+            else
+                System.arraycopy(inputs, r0 * numInputs, blockIn, 0, rows * numInputs);
+
+            for(int l=0; l<layers.length; l++)
+            {
+                double result[] = data == blockIn ? blockOut : blockIn;
+                AbstractActivation acts[] = activations[l];
+
+                layers[l].computeSums(data, rows, result);
+                if(layerActivations[l] != null)
+                    layerActivations[l].activate(result, 0, rows * acts.length);
+                else
+                {
+                    int k = 0;
+                    for(int r=0; r<rows; r++)
+                    {
+                        for(int n=0; n<acts.length; n++, k++)
+                            result[k] = acts[n].activate(result[k]);
+                    }
+                }
+                data = result;
+            }
+
+            if(outputPreprocessor != null)
+            {
+                for(int r=0; r<rows; r++)
+                {
+                    System.arraycopy(data, r * numOutputs, rowOut, 0, numOutputs);
+                    outputPreprocessor.deProcess(rowOut, rowOut);
+                    System.arraycopy(rowOut, 0, data, r * numOutputs, numOutputs);
+                }
+            }
+            System.arraycopy(data, 0, outputs, r0 * numOutputs, rows * numOutputs);
+        }
+    }
+
+    /**
+     * @return The executor shared by all compiled networks, a pool of daemon
+     * threads equal to the number of available processors.
+     */
+    private static synchronized ExecutorService getSharedExecutor()
+    {
+        if(sharedExecutor == null)
+        {
+            sharedExecutor = Executors.newFixedThreadPool(
+                    Runtime.getRuntime().availableProcessors(),
+                    new ThreadFactory() {
+
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "CompiledNetwork batch");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return sharedExecutor;
+    }
+
+    /**
+     * @return The number of bytes taken by the weights kept off the heap.
+     * @see OffHeapLayer
+     */
+    public long getNumOffHeapBytes()
+    {
+        long bytes = 0;
+        for(WeightMatrix layer : layers)
+        {
+            if(layer instanceof OffHeapLayer)
+                bytes += ((OffHeapLayer) layer).getNumBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Frees the weights kept off the heap, after which this network cannot
+     * be used any more. Does nothing if every layer is on the heap.
+     *
+     * @see OffHeapLayer#close()
+     */
+    public void close()
+    {
+        for(WeightMatrix layer : layers)
+        {
+            if(layer instanceof OffHeapLayer)
+                ((OffHeapLayer) layer).close();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        String s = "---CompiledNetwork Stats---\n";
+        s += "numInputs = "+numInputs+"\n";
+        s += "numOutputs = "+getNumOutputs()+"\n";
+        s += "numLayers = "+layers.length+"\n";
+        return s;
+    }
+}
@@ -0,0 +1,900 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Stores all the synaptic weights feeding into a <code>NeuronLayer</code>
+ * as a dense matrix. The weights are kept in a contiguous row-major
+ * <tt>double[]</tt>, with one row per neuron and one column per input,
+ * along with a separate <tt>double[]</tt> for the bias of each neuron.
+ *
+ * <p>The weights are kept in double precision by default, a layer can be
+ * switched to single precision storage by
+ * {@link #setPrecision(jneuralnet.core.Precision) setPrecision(...)}, in which
+ * case the matrix is kept in a <tt>float[]</tt> instead. The bias, inputs
+ * and outputs always remain <tt>double</tt>.
+ *
+ * <p>Every weight and bias is addressed by a <i>parameter index</i>. Weight
+ * (neuron, input) is the parameter <code>neuron * numInputs + input</code>
+ * and the bias of a neuron is the parameter
+ * <code>numNeurons * numInputs + neuron</code>. The per connection training
+ * state (learning rate, momentum, previous weight change and previous
+ * gradient) is kept in an {@link OptimizerState} aligned to the parameter
+ * index, whose arrays are only allocated for the state a learning algo
+ * needs, so a layer that is only used for inference costs a single
+ * <tt>double</tt> per weight.
+ *
+ * <p>Weights can be pruned, see {@link #prune(int) }. A pruned weight is
+ * zero and is left alone by the learning algos, so it stays zero while the
+ * network is trained further.
+ *
+ * <p><code>Neuron</code> and <code>SynapticConnection</code> objects are
+ * light weight views over this storage, see {@link #getConnection(int) }.
+ * Changes made through this class fire no property change events, they are
+ * counted instead, see {@link #getModificationCount()}.
+ *
+ * <p>The weighted sums and the propagated deltas of a wide layer are split
+ * across threads if the network is given a {@link LayerParallelism}, with
+ * results identical to the serial path.
+ *
+ * <p>This class extends the <tt>Bufferable</tt> and hence supports
+ * dynamic property addition.
+ *
+ * @author Ragha
+ * @see NeuronLayer
+ * @see SynapticConnection
+ * @see Bufferable
+ * @version 1.0
+ */
+public class DenseLayer extends Bufferable implements WeightMatrix, Serializable
+{
+    private static final long serialVersionUID = 2009110101L;
+
+    /**
+     * The learning rate used by a connection unless set otherwise.
+     */
+    public static final double DEFAULT_LEARNING_RATE = 0.4;
+
+    /**
+     * The momentum used by a connection unless set otherwise.
+     */
+    public static final double DEFAULT_MOMENTUM = 0.6;
+
+    /**
+     * The number of weights processed as a tile by the batch kernel,
+     * 32K doubles, i.e, 256KB fits comfortably in a typical L2 cache.
+     */
+    private static final int TILE_SIZE = 32 * 1024;
+
+    /**
+     * The number of input vectors of a batch sharing the weights loaded.
+     */
+    private static final int ROW_BLOCK = 4;
+
+    private int numNeurons;
+    private int numInputs;
+
+    /**
+     * The precision used to store the weights and accumulate the sums.
+     */
+    private Precision precision = Precision.DOUBLE;
+
+    /**
+     * Row major weight matrix of size <code>numNeurons * numInputs</code>.
+     * null if the weights are stored in single precision.
+     */
+    private double weights[];
+
+    /**
+     * Row major weight matrix used instead of <code>weights</code> when
+     * the weights are stored in single precision, null otherwise.
+     */
+    private float floatWeights[];
+
+    /**
+     * Bias of every neuron. The bias has a constant input of -1.
+     */
+    private double bias[];
+
+    /**
+     * The per parameter training state, null until first used.
+     */
+    private OptimizerState optimizerState;
+
+    /**
+     * Marks the pruned weights, null if no weight is pruned.
+     */
+    private boolean pruned[];
+
+    /**
+     * Counts the changes made to the weights and biases, see
+     * {@link #getModificationCount()}.
+     */
+    private transient long modCount;
+
+    /**
+     * Set while the network of this layer is in bulk mutation mode, the
+     * connection views then fire no events.
+     */
+    private transient boolean bulkMutation;
+
+    /**
+     * Splits the loops of this layer across threads, null if serial.
+     */
+    private transient LayerParallelism parallelism;
+
+    /**
+     * Creates a dense layer with every weight and bias set to a random
+     * value between min and max.
+     *
+     * @param numNeurons The number of neurons (rows) in this layer.
+     * @param numInputs The number of inputs (columns) to every neuron.
+     * @param min The lower limit of the random weights to be generated
+     * @param max The upper limit of the random weights to be generated
+     * @throws java.lang.IllegalArgumentException If the number of neurons
+     * or inputs is less than 1.
+     */
+    public DenseLayer(int numNeurons, int numInputs, double min, double max)
+            throws IllegalArgumentException
+    {
+        if(numNeurons < 1 || numInputs < 1)
+        {
+            throw new IllegalArgumentException("DenseLayer cannot have "
+                    + numNeurons + " neurons and " + numInputs + " inputs...");
+        }
+        this.numNeurons = numNeurons;
+        this.numInputs = numInputs;
+        weights = new double[numNeurons * numInputs];
+        bias = new double[numNeurons];
+        randomize(min, max);
+    }
+
+    /**
+     * Creates a dense layer with weights as random values between (-1, +1)
+     *
+     * @param numNeurons The number of neurons (rows) in this layer.
+     * @param numInputs The number of inputs (columns) to every neuron.
+     */
+    public DenseLayer(int numNeurons, int numInputs)
+    {
+        this(numNeurons, numInputs, -1.0, 1.0);
+    }
+
+    /**
+     * Creates a copy of the weights, biases and pruned weights of the given
+     * layer. The training state of the connections is not copied.
+     *
+     * @param layer The dense layer to be copied.
+     */
+    public DenseLayer(DenseLayer layer)
+    {
+        numNeurons = layer.numNeurons;
+        numInputs = layer.numInputs;
+        precision = layer.precision;
+        if(layer.weights != null)
+            weights = layer.weights.clone();
+        if(layer.floatWeights != null)
+            floatWeights = layer.floatWeights.clone();
+        bias = layer.bias.clone();
+        if(layer.pruned != null)
+            pruned = layer.pruned.clone();
+    }
+
+    /**
+     * Sets every weight and bias to a random value between min and max and
+     * resets the training state of all the connections, pruned weights
+     * included.
+     *
+     * @param min The lower limit of the random weights to be generated
+     * @param max The upper limit of the random weights to be generated
+     */
+    public void randomize(double min, double max)
+    {
+        Random rand = new Random();
+        if(floatWeights != null)
+        {
+            for(int i=0; i<floatWeights.length; i++)
+                floatWeights[i] = (float) (rand.nextDouble() * (max - min) + min);
+        }
+        else
+        {
+            for(int i=0; i<weights.length; i++)
+                weights[i] = rand.nextDouble() * (max - min) + min;
+        }
+        for(int i=0; i<bias.length; i++)
+            bias[i] = rand.nextDouble() * (max - min) + min;
+
+        optimizerState = null;
+        pruned = null;
+        modCount++;
+    }
+
+    /**
+     * @return The number of neurons, i.e, rows in the weight matrix.
+     */
+    public int getNumNeurons()
+    {
+        return numNeurons;
+    }
+
+    /**
+     * @return The number of inputs, i.e, columns in the weight matrix.
+     */
+    public int getNumInputs()
+    {
+        return numInputs;
+    }
+
+    /**
+     * @return The precision used to store the weights of this layer.
+     */
+    public Precision getPrecision()
+    {
+        return precision;
+    }
+
+    /**
+     * Changes the precision used to store the weights and accumulate the
+     * weighted sums. Converting to single precision rounds every weight
+     * to the nearest <tt>float</tt>. The training state of the connections
+     * is retained.
+     *
+     * @param precision The precision to be used.
+     * @throws IllegalArgumentException If precision is null.
+     * @see Precision
+     */
+    public void setPrecision(Precision precision) throws IllegalArgumentException
+    {
+        if(precision == null)
+            throw new IllegalArgumentException("Precision cannot be null...");
+
+        if(precision.isFloatStorage() && floatWeights == null)
+        {
+            floatWeights = new float[weights.length];
+            for(int i=0; i<weights.length; i++)
+                floatWeights[i] = (float) weights[i];
+            weights = null;
+        }
+        else if(!precision.isFloatStorage() && weights == null)
+        {
+            weights = new double[floatWeights.length];
+            for(int i=0; i<floatWeights.length; i++)
+                weights[i] = floatWeights[i];
+            floatWeights = null;
+        }
+        this.precision = precision;
+        modCount++;
+    }
+
+    /**
+     * @return The total number of weights and biases in this layer.
+     */
+    public int getNumParameters()
+    {
+        return numNeurons * numInputs + numNeurons;
+    }
+
+    /**
+     * @return The parameter index of the weight between neuron and input.
+     */
+    public int getWeightIndex(int neuron, int input)
+    {
+        return neuron * numInputs + input;
+    }
+
+    /**
+     * @return The parameter index of the bias of the neuron.
+     */
+    public int getBiasIndex(int neuron)
+    {
+        return numNeurons * numInputs + neuron;
+    }
+
+    /**
+     * The backing row major weight matrix. Changes to the returned array
+     * are reflected in this layer.
+     *
+     * @return The weight matrix of size <code>numNeurons * numInputs</code>
+     * @throws IllegalStateException If the weights are stored in single
+     * precision, use {@link #getFloatWeights()} instead.
+     */
+    public double[] getWeights() throws IllegalStateException
+    {
+        if(weights == null)
+            throw new IllegalStateException("Weights are stored in single precision...");
+        return weights;
+    }
+
+    /**
+     * The backing row major weight matrix of a layer using single precision
+     * storage. Changes to the returned array are reflected in this layer.
+     *
+     * @return The weight matrix of size <code>numNeurons * numInputs</code>
+     * @throws IllegalStateException If the weights are stored in double
+     * precision, use {@link #getWeights()} instead.
+     */
+    public float[] getFloatWeights() throws IllegalStateException
+    {
+        if(floatWeights == null)
+            throw new IllegalStateException("Weights are stored in double precision...");
+        return floatWeights;
+    }
+
+    /**
+     * The backing bias vector. Changes to the returned array are
+     * reflected in this layer.
+     *
+     * @return The bias of every neuron.
+     */
+    public double[] getBiases()
+    {
+        return bias;
+    }
+
+    public double getWeight(int neuron, int input)
+    {
+        return getParameter(neuron * numInputs + input);
+    }
+
+    public void setWeight(int neuron, int input, double weight)
+    {
+        setParameter(neuron * numInputs + input, weight);
+    }
+
+    public double getBias(int neuron)
+    {
+        return bias[neuron];
+    }
+
+    public void setBias(int neuron, double value)
+    {
+        bias[neuron] = value;
+        modCount++;
+    }
+
+    /**
+     * @param param The parameter index, see {@link #getWeightIndex(int, int) }
+     * and {@link #getBiasIndex(int) }.
+     * @return The weight or bias at the parameter index.
+     */
+    public double getParameter(int param)
+    {
+        int numWeights = numNeurons * numInputs;
+        if(param >= numWeights)
+            return bias[param - numWeights];
+        return floatWeights != null ? floatWeights[param] : weights[param];
+    }
+
+    /**
+     * @param param The parameter index, see {@link #getWeightIndex(int, int) }
+     * and {@link #getBiasIndex(int) }.
+     * @param value The weight or bias value to be set.
+     */
+    public void setParameter(int param, double value)
+    {
+        int numWeights = numNeurons * numInputs;
+        if(param >= numWeights)
+            bias[param - numWeights] = value;
+        else if(floatWeights != null)
+            floatWeights[param] = (float) value;
+        else
+            weights[param] = value;
+        modCount++;
+    }
+
+    /**
+     * Gives the training state of the weights and biases of this layer,
+     * which is reset whenever the layer is randomized or resized.
+     *
+     * @return The optimizer state of this layer.
+     * @see jneuralnet.core.learning.AbstractLearningAlgo#getOptimizerSlots()
+     */
+    public OptimizerState getOptimizerState()
+    {
+        if(optimizerState == null)
+            optimizerState = new OptimizerState(getNumParameters());
+        return optimizerState;
+    }
+
+    public double getLearningRate(int param)
+    {
+        return optimizerState == null ? DEFAULT_LEARNING_RATE
+                : optimizerState.get(OptimizerState.Slot.LEARNING_RATE, param);
+    }
+
+    public void setLearningRate(int param, double learningRate)
+    {
+        getOptimizerState().set(OptimizerState.Slot.LEARNING_RATE, param, learningRate);
+    }
+
+    public double getMomentum(int param)
+    {
+        return optimizerState == null ? DEFAULT_MOMENTUM
+                : optimizerState.get(OptimizerState.Slot.MOMENTUM, param);
+    }
+
+    public void setMomentum(int param, double momentum)
+    {
+        getOptimizerState().set(OptimizerState.Slot.MOMENTUM, param, momentum);
+    }
+
+    public double getPrevWeightChange(int param)
+    {
+        return optimizerState == null ? 0.0
+                : optimizerState.get(OptimizerState.Slot.PREV_WEIGHT_CHANGE, param);
+    }
+
+    public void setPrevWeightChange(int param, double prevWeightChange)
+    {
+        getOptimizerState().set(OptimizerState.Slot.PREV_WEIGHT_CHANGE, param,
+                prevWeightChange);
+    }
+
+    public boolean isLastErrGradientPositive(int param)
+    {
+        return optimizerState == null ? true
+                : optimizerState.get(OptimizerState.Slot.LAST_ERR_GRADIENT_SIGN, param) >= 0;
+    }
+
+    public void setLastErrGradientPositive(int param, boolean positive)
+    {
+        getOptimizerState().set(OptimizerState.Slot.LAST_ERR_GRADIENT_SIGN, param,
+                positive ? 1.0 : -1.0);
+    }
+
+    /**
+     * Prunes a weight, i.e, sets it to zero and excludes it from training.
+     * Biases cannot be pruned.
+     *
+     * @param param The parameter index of the weight, see
+     * {@link #getWeightIndex(int, int) }.
+     * @throws IllegalArgumentException If the parameter is not a weight.
+     */
+    public void prune(int param) throws IllegalArgumentException
+    {
+        int numWeights = numNeurons * numInputs;
+        if(param < 0 || param >= numWeights)
+            throw new IllegalArgumentException("Only weights can be pruned...");
+
+        if(pruned == null)
+            pruned = new boolean[numWeights];
+        pruned[param] = true;
+        setParameter(param, 0.0);
+    }
+
+    /**
+     * @param param The parameter index, see {@link #getWeightIndex(int, int) }
+     * and {@link #getBiasIndex(int) }.
+     * @return true if the parameter is a pruned weight.
+     */
+    public boolean isPruned(int param)
+    {
+        return pruned != null && param < pruned.length && pruned[param];
+    }
+
+    /**
+     * @return The number of pruned weights.
+     */
+    public int getNumPruned()
+    {
+        int count = 0;
+        if(pruned != null)
+        {
+            for(int i=0; i<pruned.length; i++)
+            {
+                if(pruned[i])
+                    count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of weights that are not zero.
+     */
+    public int getNumNonZeroWeights()
+    {
+        int count = 0;
+        int numWeights = numNeurons * numInputs;
+        for(int i=0; i<numWeights; i++)
+        {
+            if(getParameter(i) != 0.0)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Gives a <code>SynapticConnection</code> view of a parameter. The view
+     * reads and writes directly into this layer, no state is copied.
+     *
+     * @param param The parameter index, see {@link #getWeightIndex(int, int) }
+     * and {@link #getBiasIndex(int) }.
+     * @return The connection backed by this layer.
+     * @see SynapticConnection
+     */
+    public SynapticConnection getConnection(int param)
+    {
+        return new SynapticConnection(this, param);
+    }
+
+    /**
+     * Computes the weighted sum <tt>∑(Wi * Xi) - bias</tt> of every neuron.
+     *
+     * @param input The input vector of length <code>numInputs</code>.
+     * @param sums The array to be filled with the weighted sums,
+     * of length <code>numNeurons</code>.
+     * @see VectorKernel
+     */
+    public void computeSums(final double input[], final double sums[])
+    {
+        if(parallelism != null && parallelism.isParallel(numNeurons, numInputs))
+        {
+            parallelism.run(numNeurons, new LayerParallelism.RangeTask()
+            {
+                public void run(int from, int to)
+                {
+                    computeSums(input, sums, from, to);
+                }
+            });
+        }
+        else
+            computeSums(input, sums, 0, numNeurons);
+    }
+
+    private void computeSums(double input[], double sums[], int from, int to)
+    {
+        VectorKernel kernel = VectorKernel.getDefault();
+        for(int n=from; n<to; n++)
+            sums[n] = rowSum(kernel, n, input, 0) - bias[n];
+    }
+
+    /**
+     * Computes the weighted sums of every neuron for a batch of input
+     * vectors, i.e, a matrix-matrix product of the batch with the
+     * transposed weight matrix.
+     *
+     * <p>The weight matrix is processed in tiles of rows small enough to
+     * stay in the cache while the whole batch streams past them, and a few
+     * input vectors share every weight loaded. The sums are computed by the
+     * batch kernel, see {@link VectorKernel#getDefaultBatch()}, so they are
+     * identical to feeding the vectors one at a time only if a single
+     * kernel is selected.
+     *
+     * @param inputs The row major batch of input vectors, of length
+     * atleast <code>numRows * numInputs</code>.
+     * @param numRows The number of input vectors in the batch.
+     * @param sums The row major array to be filled with the weighted sums,
+     * of length atleast <code>numRows * numNeurons</code>.
+     */
+    public void computeSums(double inputs[], int numRows, double sums[])
+    {
+        VectorKernel kernel = VectorKernel.getDefaultBatch();
+        int tileNeurons = Math.max(1, TILE_SIZE / numInputs);
+
+        for(int n0=0; n0<numNeurons; n0+=tileNeurons)
+        {
+            int n1 = Math.min(n0 + tileNeurons, numNeurons);
+            for(int r=0; r<numRows; r+=ROW_BLOCK)
+            {
+                int rows = Math.min(ROW_BLOCK, numRows - r);
+                int x = r * numInputs;
+                int s = r * numNeurons;
+                for(int n=n0; n<n1; n++)
+                {
+                    int row = n * numInputs;
+                    if(weights != null)
+                        kernel.dot(weights, row, inputs, x, numInputs,
+                                rows, numInputs, sums, s + n, numNeurons);
+                    else if(precision == Precision.FLOAT)
+                        kernel.dotFloat(floatWeights, row, inputs, x, numInputs,
+                                rows, numInputs, sums, s + n, numNeurons);
+                    else
+                        kernel.dot(floatWeights, row, inputs, x, numInputs,
+                                rows, numInputs, sums, s + n, numNeurons);
+
+                    for(int k=0; k<rows; k++)
+                        sums[s + k * numNeurons + n] -= bias[n];
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes <tt>∑(Wi * Xi)</tt> of a neuron in the precision of this layer.
+     *
+     * @param kernel The kernel computing the dot product.
+     * @param n The index of the neuron.
+     * @param input The array holding the input vector at 'inputOffset'.
+     */
+    private double rowSum(VectorKernel kernel, int n, double input[], int inputOffset)
+    {
+        int row = n * numInputs;
+        if(weights != null)
+            return kernel.dot(weights, row, input, inputOffset, numInputs);
+        if(precision == Precision.FLOAT)
+            return kernel.dotFloat(floatWeights, row, input, inputOffset, numInputs);
+        return kernel.dot(floatWeights, row, input, inputOffset, numInputs);
+    }
+
+    /**
+     * Propagates the deltas of this layer back to its inputs, i.e,
+     * multiplies the deltas by the transposed weight matrix.
+     *
+     * @param deltas The delta of every neuron in this layer.
+     * @param result The array to be filled with <tt>∑(deltaj * Wji)</tt>
+     * for every input i, of length <code>numInputs</code>.
+     */
+    public void propagateDeltas(final double deltas[], final double result[])
+    {
+        //split by inputs, every input summing over the neurons in order...
+        if(parallelism != null && parallelism.isParallel(numNeurons, numInputs))
+        {
+            parallelism.run(numInputs, new LayerParallelism.RangeTask()
+            {
+                public void run(int from, int to)
+                {
+                    propagateDeltas(deltas, result, from, to);
+                }
+            });
+        }
+        else
+            propagateDeltas(deltas, result, 0, numInputs);
+    }
+
+    private void propagateDeltas(double deltas[], double result[], int from, int to)
+    {
+        VectorKernel kernel = VectorKernel.getDefault();
+        Arrays.fill(result, from, to, 0.0);
+        int row = from;
+        for(int n=0; n<numNeurons; n++)
+        {
+            if(weights != null)
+                kernel.axpy(deltas[n], weights, row, result, from, to - from);
+            else
+                kernel.axpy(deltas[n], floatWeights, row, result, from, to - from);
+            row += numInputs;
+        }
+    }
+
+    /**
+     * Changes the shape of this layer. The weights common to both the shapes
+     * are retained, the new ones are randomized between (-1, +1) and the
+     * training state of the connections is reset. No weight remains pruned.
+     *
+     * @param newNumNeurons The new number of neurons.
+     * @param newNumInputs The new number of inputs.
+     * @throws java.lang.IllegalArgumentException If the number of neurons
+     * or inputs is less than 1.
+     */
+    public void resize(int newNumNeurons, int newNumInputs)
+            throws IllegalArgumentException
+    {
+        DenseLayer other = new DenseLayer(newNumNeurons, newNumInputs);
+        other.setPrecision(precision);
+        int rows = Math.min(numNeurons, newNumNeurons);
+        int cols = Math.min(numInputs, newNumInputs);
+        for(int n=0; n<rows; n++)
+        {
+            if(floatWeights != null)
+                System.arraycopy(floatWeights, n * numInputs,
+                        other.floatWeights, n * newNumInputs, cols);
+            else
+                System.arraycopy(weights, n * numInputs,
+                        other.weights, n * newNumInputs, cols);
+            other.bias[n] = bias[n];
+        }
+
+        numNeurons = newNumNeurons;
+        numInputs = newNumInputs;
+        weights = other.weights;
+        floatWeights = other.floatWeights;
+        bias = other.bias;
+        optimizerState = null;
+        pruned = null;
+        modCount++;
+    }
+
+    /**
+     * Removes the row of a neuron from this layer. The training state of
+     * the connections is reset and no weight remains pruned.
+     *
+     * @param neuron The index of the neuron to be removed.
+     * @throws java.lang.IllegalArgumentException If this is the last neuron.
+     */
+    public void removeNeuron(int neuron) throws IllegalArgumentException
+    {
+        if(numNeurons == 1)
+            throw new IllegalArgumentException("DenseLayer cannot have 0 neurons...");
+
+        Object oldWeights = floatWeights != null ? floatWeights : weights;
+        Object newWeights = floatWeights != null
+                ? new float[(numNeurons - 1) * numInputs]
+                : new double[(numNeurons - 1) * numInputs];
+        double newBias[] = new double[numNeurons - 1];
+        System.arraycopy(oldWeights, 0, newWeights, 0, neuron * numInputs);
+        System.arraycopy(oldWeights, (neuron + 1) * numInputs, newWeights,
+                neuron * numInputs, (numNeurons - neuron - 1) * numInputs);
+        System.arraycopy(bias, 0, newBias, 0, neuron);
+        System.arraycopy(bias, neuron + 1, newBias, neuron, numNeurons - neuron - 1);
+
+        numNeurons--;
+        if(floatWeights != null)
+            floatWeights = (float[]) newWeights;
+        else
+            weights = (double[]) newWeights;
+        bias = newBias;
+        optimizerState = null;
+        pruned = null;
+        modCount++;
+    }
+
+    /**
+     * Removes the column of an input from this layer, i.e, the weight of
+     * every neuron for that input. The training state of the connections
+     * is reset and no weight remains pruned.
+     *
+     * @param input The index of the input to be removed.
+     * @throws java.lang.IllegalArgumentException If this is the last input.
+     */
+    public void removeInput(int input) throws IllegalArgumentException
+    {
+        if(numInputs == 1)
+            throw new IllegalArgumentException("DenseLayer cannot have 0 inputs...");
+
+        int newNumInputs = numInputs - 1;
+        Object oldWeights = floatWeights != null ? floatWeights : weights;
+        Object newWeights = floatWeights != null
+                ? new float[numNeurons * newNumInputs]
+                : new double[numNeurons * newNumInputs];
+        for(int n=0; n<numNeurons; n++)
+        {
+            int from = n * numInputs, to = n * newNumInputs;
+            System.arraycopy(oldWeights, from, newWeights, to, input);
+            System.arraycopy(oldWeights, from + input + 1, newWeights,
+                    to + input, numInputs - input - 1);
+        }
+
+        numInputs = newNumInputs;
+        if(floatWeights != null)
+            floatWeights = (float[]) newWeights;
+        else
+            weights = (double[]) newWeights;
+        optimizerState = null;
+        pruned = null;
+        modCount++;
+    }
+
+    /**
+     * Counts the changes made to the weights and biases of this layer, by
+     * the learning algos as well as by any other code, so that a change
+     * can be detected by comparing the count with an earlier one. Changes
+     * made to the arrays returned by {@link #getWeights()},
+     * {@link #getFloatWeights()} or {@link #getBiases()} are counted only
+     * if followed by {@link #markModified()}.
+     *
+     * @return The number of changes made since this layer was created or
+     * loaded.
+     * @see NeuralNetwork#fireWeightsChanged()
+     */
+    public long getModificationCount()
+    {
+        return modCount;
+    }
+
+    /**
+     * Counts a change made directly to the backing arrays of this layer.
+     */
+    public void markModified()
+    {
+        modCount++;
+    }
+
+    /**
+     * @return true if the network of this layer is in bulk mutation mode.
+     * @see NeuralNetwork#beginBulkMutation()
+     */
+    public boolean isBulkMutation()
+    {
+        return bulkMutation;
+    }
+
+    /**
+     * Set by the network of this layer as it enters and leaves bulk
+     * mutation mode.
+     */
+    void setBulkMutation(boolean bulkMutation)
+    {
+        this.bulkMutation = bulkMutation;
+    }
+
+    /**
+     * Gives the threads the loops over this layer may be split across, so
+     * that learning algos can split their own loops the same way.
+     *
+     * @return The parallelism of the network of this layer, null if the
+     * layer is processed serially.
+     * @see NeuralNetwork#setLayerParallelism(jneuralnet.core.LayerParallelism)
+     */
+    public LayerParallelism getLayerParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * Set by the network of this layer, see
+     * {@link NeuralNetwork#setLayerParallelism(jneuralnet.core.LayerParallelism)}.
+     */
+    void setLayerParallelism(LayerParallelism parallelism)
+    {
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DenseLayer " + numNeurons + " x " + numInputs + " " + precision;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final DenseLayer other = (DenseLayer) obj;
+        if (this.numNeurons != other.numNeurons) {
+            return false;
+        }
+        if (this.numInputs != other.numInputs) {
+            return false;
+        }
+        if (this.precision != other.precision) {
+            return false;
+        }
+        if (!Arrays.equals(this.weights, other.weights)) {
+            return false;
+        }
+        if (!Arrays.equals(this.floatWeights, other.floatWeights)) {
+            return false;
+        }
+        if (!Arrays.equals(this.bias, other.bias)) {
+            return false;
+        }
+        if (!Arrays.equals(this.pruned, other.pruned)) {
+            return false;
+        }
+        return super.equals(obj);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 41 * hash + this.numNeurons;
+        hash = 41 * hash + this.numInputs;
+        hash = 41 * hash + this.precision.hashCode();
+        hash = 41 * hash + Arrays.hashCode(this.weights);
+        hash = 41 * hash + Arrays.hashCode(this.floatWeights);
+        hash = 41 * hash + Arrays.hashCode(this.bias);
+        hash = 41 * hash + Arrays.hashCode(this.pruned);
+        return hash;
+    }
+}
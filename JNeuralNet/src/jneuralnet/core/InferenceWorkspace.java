@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core;
+
+import java.util.ArrayList;
+
+/**
+ * Holds the buffers needed to feed forward an input vector through a
+ * <code>NeuralNetwork</code>, i.e, the preprocessed input and the output
+ * vector of every layer. Once created, a workspace can be reused for any
+ * number of calls to
+ * {@link NeuralNetwork#getOutput(double[], double[], jneuralnet.core.InferenceWorkspace) getOutput(...)}
+ * so that inference does not allocate any memory.
+ *
+ * <p>A workspace is not thread safe, every thread making predictions
+ * should use its own workspace. The workspace must be recreated if the
+ * topology of the network changes, see
+ * {@link #isCompatibleWith(jneuralnet.core.NeuralNetwork) isCompatibleWith(...)}.
+ *
+ * <p>A workspace can also be created for a {@link CompiledNetwork}.
+ *
+ * @author Ragha
+ * @see NeuralNetwork
+ * @see CompiledNetwork
+ * @version 1.0
+ */
+public final class InferenceWorkspace
+{
+    private final double input[];
+    private final double layerOutputs[][];
+
+    /**
+     * Creates a workspace sized for the current topology of the network.
+     *
+     * @param net The network the workspace is to be used with.
+     */
+    public InferenceWorkspace(NeuralNetwork net)
+    {
+        ArrayList<NeuronLayer> hiddenLayers = net.getHiddenLayers();
+
+        input = new double[net.getNumInputs()];
+        layerOutputs = new double[hiddenLayers.size() + 1][];
+        for(int i=0; i<hiddenLayers.size(); i++)
+            layerOutputs[i] = new double[hiddenLayers.get(i).getNumNeurons()];
+        layerOutputs[hiddenLayers.size()] =
+                new double[net.getOutputLayer().getNumNeurons()];
+    }
+
+    /**
+     * Creates a workspace to be used with a compiled network.
+     *
+     * @param net The compiled network the workspace is to be used with.
+     */
+    public InferenceWorkspace(CompiledNetwork net)
+    {
+        input = new double[net.getNumInputs()];
+        layerOutputs = new double[net.getNumLayers()][];
+        for(int i=0; i<layerOutputs.length; i++)
+            layerOutputs[i] = new double[net.getLayerSize(i)];
+    }
+
+    /**
+     * Checks if this workspace matches the current topology of the network.
+     *
+     * @param net The network to be checked against.
+     * @return true if the workspace can be used with the network.
+     */
+    public boolean isCompatibleWith(NeuralNetwork net)
+    {
+        ArrayList<NeuronLayer> hiddenLayers = net.getHiddenLayers();
+        if(input.length != net.getNumInputs()
+                || layerOutputs.length != hiddenLayers.size() + 1)
+            return false;
+
+        for(int i=0; i<hiddenLayers.size(); i++)
+        {
+            if(layerOutputs[i].length != hiddenLayers.get(i).getNumNeurons())
+                return false;
+        }
+        return layerOutputs[hiddenLayers.size()].length
+                == net.getOutputLayer().getNumNeurons();
+    }
+
+    /**
+     * Checks if this workspace can be used with a compiled network.
+     *
+     * @param net The compiled network to be checked against.
+     * @return true if the workspace can be used with the network.
+     */
+    public boolean isCompatibleWith(CompiledNetwork net)
+    {
+        if(input.length != net.getNumInputs()
+                || layerOutputs.length != net.getNumLayers())
+            return false;
+
+        for(int i=0; i<layerOutputs.length; i++)
+        {
+            if(layerOutputs[i].length != net.getLayerSize(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return The buffer holding the preprocessed input vector.
+     */
+    public double[] getInputBuffer()
+    {
+        return input;
+    }
+
+    /**
+     * Gets the buffer holding the output vector of a layer. Hidden layers
+     * are numbered from 0, the output layer comes last.
+     *
+     * @param index The index of the layer.
+     * @return The output buffer of the layer.
+     * @throws IndexOutOfBoundsException If index value is invalid.
+     */
+    public double[] getLayerBuffer(int index) throws IndexOutOfBoundsException
+    {
+        return layerOutputs[index];
+    }
+
+    /**
+     * @return The number of layer buffers, i.e, hidden layers + 1.
+     */
+    public int getNumLayers()
+    {
+        return layerOutputs.length;
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Splits the per neuron loops of wide layers across several threads, i.e,
+ * the weighted sums of the forward pass, the back propagation of the deltas
+ * and the adaptation of the weights. A layer is only split if its number of
+ * weights, <tt>neurons * fan in</tt>, reaches the threshold, so that small
+ * layers do not pay for the hand off between threads.
+ *
+ * <p>Every thread works on a range of its own of the outputs, neurons for
+ * the sums and the weights, inputs for the deltas, and computes every value
+ * exactly as the serial loop does. The results are therefore bit identical
+ * to those of the serial path, whatever the number of threads.
+ *
+ * <p>The calling thread works on one of the ranges, the others are handed
+ * to a fixed pool of daemon threads. Loops started from within a pool
+ * thread, of any <code>LayerParallelism</code>, run serially.
+ *
+ * @author Ragha
+ * @see NeuralNetwork#setLayerParallelism(jneuralnet.core.LayerParallelism)
+ * @version 1.0
+ */
+public final class LayerParallelism
+{
+    /**
+     * The number of weights from which a layer is split by default, below
+     * this the hand off between threads costs more than it saves.
+     */
+    public static final int DEFAULT_THRESHOLD = 64 * 1024;
+
+    /**
+     * A loop over a range of indices, run by one of the threads.
+     */
+    public interface RangeTask
+    {
+        /**
+         * Runs the loop for the indices in [from, to).
+         */
+        void run(int from, int to);
+    }
+
+    private final int numThreads;
+    private final int threshold;
+    private final ExecutorService pool;
+
+    /**
+     * Creates a pool of <code>numThreads - 1</code> threads, the calling
+     * thread being the last one.
+     *
+     * @param numThreads The number of threads a layer is split across.
+     * @param threshold The number of weights from which a layer is split.
+     * @throws IllegalArgumentException If numThreads is less than 1 or the
+     * threshold is negative.
+     */
+    public LayerParallelism(int numThreads, int threshold)
+            throws IllegalArgumentException
+    {
+        if(numThreads < 1)
+            throw new IllegalArgumentException("Number of threads must be atleast 1...");
+        if(threshold < 0)
+            throw new IllegalArgumentException("Threshold cannot be negative...");
+
+        this.numThreads = numThreads;
+        this.threshold = threshold;
+        pool = numThreads == 1 ? null
+                : Executors.newFixedThreadPool(numThreads - 1, new ThreadFactory()
+        {
+            private int count;
+
+            public synchronized Thread newThread(Runnable r)
+            {
+                Thread t = new Worker(r, "jneuralnet-layer-" + (++count));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Creates a pool splitting the layers of atleast
+     * {@link #DEFAULT_THRESHOLD} weights.
+     *
+     * @param numThreads The number of threads a layer is split across.
+     */
+    public LayerParallelism(int numThreads)
+    {
+        this(numThreads, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @return The number of threads a layer is split across.
+     */
+    public int getNumThreads()
+    {
+        return numThreads;
+    }
+
+    /**
+     * @return The number of weights from which a layer is split.
+     */
+    public int getThreshold()
+    {
+        return threshold;
+    }
+
+    /**
+     * @return true if a layer of the given shape is to be split when
+     * called from the current thread.
+     */
+    public boolean isParallel(int numNeurons, int numInputs)
+    {
+        return pool != null && !pool.isShutdown()
+                && (long) numNeurons * numInputs >= threshold
+                && !(Thread.currentThread() instanceof Worker);
+    }
+
+    /**
+     * Runs the task over [0, count), split into one range per thread, and
+     * waits for every range to complete.
+     *
+     * @param count The number of indices.
+     * @param task The loop to be run.
+     * @throws RuntimeException If the task fails in any of the threads.
+     */
+    public void run(int count, final RangeTask task)
+    {
+        int numRanges = Math.min(numThreads, count);
+        if(numRanges <= 1 || pool == null || pool.isShutdown()
+                || Thread.currentThread() instanceof Worker)
+        {
+            task.run(0, count);
+            return;
+        }
+
+        Future<?> futures[] = new Future<?>[numRanges - 1];
+        for(int k=0; k<numRanges - 1; k++)
+        {
+            final int from = (int) ((long) count * k / numRanges);
+            final int to = (int) ((long) count * (k + 1) / numRanges);
+            futures[k] = pool.submit(new Runnable()
+            {
+                public void run()
+                {
+                    task.run(from, to);
+                }
+            });
+        }
+        task.run((int) ((long) count * (numRanges - 1) / numRanges), count);
+
+        for(Future<?> f : futures)
+        {
+            try
+            {
+                f.get();
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a layer...", e);
+            }
+            catch(ExecutionException e)
+            {
+                if(e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                if(e.getCause() instanceof Error)
+                    throw (Error) e.getCause();
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Stops the threads of the pool, the layers are processed serially from
+     * then on.
+     */
+    public void shutdown()
+    {
+        if(pool != null)
+            pool.shutdown();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LayerParallelism " + numThreads + " threads, threshold " + threshold;
+    }
+
+    /**
+     * The threads of the pool, recognized so that they never wait on a pool.
+     */
+    private static final class Worker extends Thread
+    {
+        Worker(Runnable r, String name)
+        {
+            super(r, name);
+        }
+    }
+}
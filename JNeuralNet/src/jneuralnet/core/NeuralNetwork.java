@@ -39,6 +39,8 @@ import jneuralnet.core.training.TrainingSet;
  * A <code>NeuralNetwork</code> represents an Input Layer, Output Layer
  * with optional Hidden Layers between them. It consists of <code>NeuronLayer</code>
  * objects connected together by <code>SyanpticConnection</code> objects.
+ * The connections feeding every layer are stored as a dense weight
+ * matrix, see {@link DenseLayer}.
  *
  * <p>This class forms the basis to any NeuralNetwork based application. When
  * assigned to a <code>Teacher</code> it can discover input ,
@@ -47,7 +49,10 @@ import jneuralnet.core.training.TrainingSet;
  * <p>The predicted output of the network is generated by
  * {@link NeuralNetwork#getOutput(java.lang.Double[]) getOutput(..)} or
  * {@link NeuralNetwork#getOutputOnPreprocessedData(java.lang.Double[])  getOutputOnPreprocessedData(..)}
- * methods.
+ * methods. {@link #getOutput(double[], double[], jneuralnet.core.InferenceWorkspace) getOutput(double[], ...)}
+ * is an allocation free alternative for high volume inference, while
+ * {@link #compile()} gives a snapshot of the network that is safe for use
+ * by several threads at once.
  *
  * <p>This class extends the <tt>Bufferable</tt> and hence supports
  * dynamic property addition.
@@ -83,11 +88,54 @@ public class NeuralNetwork extends Bufferable implements Serializable
      */
     private Integer numInputs;
        
+    /**
+     * The precision of the weights of every layer, null is treated as
+     * double precision for networks saved before it was introduced.
+     * @see Precision
+     */
+    private Precision precision;
+
     /**
      * The teacher object for this network...
      */
     private Teacher teacher;
 
+    /**
+     * The workspace reused by
+     * {@link #getOutput(double[], double[]) getOutput(double[], double[])}.
+     */
+    private transient InferenceWorkspace workspace;
+
+    /**
+     * The context returned by {@link #getActivationContext()}.
+     */
+    private transient ActivationContext context;
+
+    /**
+     * The number of unfinished {@link #beginBulkMutation()} calls.
+     */
+    private transient int bulkMutationDepth;
+
+    /**
+     * The modification count sent with the last weights event.
+     */
+    private transient long notifiedModificationCount;
+
+    /**
+     * The number of unfinished {@link #beginTopologyEdit()} calls.
+     */
+    private transient int topologyEditDepth;
+
+    /**
+     * Splits the loops of wide layers across threads, null if serial.
+     */
+    private transient LayerParallelism layerParallelism;
+
+    /**
+     * The name of the property fired by {@link #fireWeightsChanged()}.
+     */
+    public static final String WEIGHTS_PROPERTY = "weights";
+
     /**
      * 
      * @return The teahcer associated with this neural network...
@@ -112,14 +160,16 @@ public class NeuralNetwork extends Bufferable implements Serializable
     public NeuralNetwork(Integer inputs,Integer outputs) 
             throws IllegalArgumentException
     {
+        beginTopologyEdit();
         setNumInputs(inputs);
         setNumOutputs(outputs);
-        refreshConnections();
+        endTopologyEdit();
         teacher = new Teacher(this);
     }
 
     /**
-     * Sets the number of inputs to a neurtal network
+     * Sets the number of inputs to a neurtal network. The weights of the
+     * inputs that remain are kept, see {@link #updateConnections()}.
      * @param numInputs The number of neurons to be used in the input layer.
      * @throws java.lang.IllegalArgumentException If num of inputs is
      * less than 1
@@ -132,37 +182,78 @@ public class NeuralNetwork extends Bufferable implements Serializable
                     numInputs + " inputs");
         }
         else
+        {
             set("numInputs", numInputs);
+            topologyChanged();
+        }
     }
 
     /**
-     * Sets the num of outputs for this network.
+     * Sets the num of outputs for this network. The weights of the output
+     * neurons that remain are kept.
      * @param numOutputs The num of output layer neurons to be used
      * @throws java.lang.IllegalArgumentException If the num outputs is
      * less than 1
      */
     public void setNumOutputs(int numOutputs) throws IllegalArgumentException
     {
-        outputLayer.setNumNeurons(numOutputs);        
+        outputLayer.setNumNeurons(numOutputs);
+        topologyChanged();
+    }
+
+    /**
+     * Sets the num of neurons of a hidden layer. The weights of the neurons
+     * that remain are kept, and so are the weights of the layer it feeds
+     * for the inputs that remain.
+     *
+     * @param index The index value of the hidden layer.
+     * @param numNeurons The num of neurons to be used in the layer.
+     * @throws IndexOutOfBoundsException If index value is invalid.
+     * @throws IllegalArgumentException If the num of neurons is less than 1.
+     * @see #updateConnections()
+     */
+    public void setHiddenLayerNeurons(int index, int numNeurons)
+            throws IndexOutOfBoundsException, IllegalArgumentException
+    {
+        arrHiddenLayers.get(index).setNumNeurons(numNeurons);
+        topologyChanged();
     }
     
     /**
-     * Adds a new Hidden layer to the network and refreshes the connections.
-     * <p>
-     * <b>NOTE: By refreshing the connections, all synaptic connections
-     * in the network are randomized</b>
+     * Adds a new Hidden layer before the output layer of the network.
+     * The added layer and the output layer, which it now feeds, are given
+     * fresh random weights, the weights of all the other layers are kept.
      * 
      * @param layer The <code>NeuronLayer</code> to be added to the network.
-     * @see #refreshConnections()
+     * @see #insertLayer(int, jneuralnet.core.NeuronLayer)
      */
     public void addLayer(NeuronLayer layer)
     {        
-        arrHiddenLayers.add(layer);  
-        refreshConnections();
+        insertLayer(arrHiddenLayers.size(), layer);
+    }
+
+    /**
+     * Inserts a new Hidden layer into the network at the given index. The
+     * inserted layer and the layer it feeds are given fresh random weights,
+     * the weights of all the other layers are kept.
+     *
+     * @param index The index the layer is to have among the hidden layers.
+     * @param layer The <code>NeuronLayer</code> to be inserted.
+     * @throws IndexOutOfBoundsException If index value is invalid.
+     * @see #beginTopologyEdit()
+     */
+    public void insertLayer(int index, NeuronLayer layer)
+            throws IndexOutOfBoundsException
+    {
+        arrHiddenLayers.add(index, layer);
+        layer.flushInputConn();
+        getLayerAfter(index).flushInputConn();
+        topologyChanged();
     }
     
     /**
-     * Removes a hidden layer from the network.
+     * Removes a hidden layer from the network. The layer it fed is given
+     * fresh random weights, the weights of all the other layers are kept.
      * @param index The index of the hidden layer to be removed.
      * The method simply returns if the index is invalid.
      */
@@ -170,18 +261,102 @@ public class NeuralNetwork extends Bufferable implements Serializable
     {
         if(index < arrHiddenLayers.size())
         {
-            arrHiddenLayers.remove(index);                                
-            refreshConnections();
+            arrHiddenLayers.remove(index).flushOutputConn();
+            getLayerAfter(index - 1).flushInputConn();
+            topologyChanged();
         }
     }
+
+    /**
+     * @return The layer following the hidden layer at the given index, the
+     * output layer following the last one.
+     */
+    private NeuronLayer getLayerAfter(int index)
+    {
+        return index + 1 < arrHiddenLayers.size()
+                ? arrHiddenLayers.get(index + 1) : outputLayer;
+    }
+
+    /**
+     * Starts a batch of topology changes, such as adding, removing and
+     * resizing layers. The connections are only updated once, when the
+     * batch is ended by {@link #endTopologyEdit()}, instead of after every
+     * change. The network must not be used in between.
+     *
+     * <p>Calls may be nested, the connections are updated when every call
+     * has been matched.
+     */
+    public synchronized void beginTopologyEdit()
+    {
+        topologyEditDepth++;
+    }
+
+    /**
+     * Ends a batch of topology changes started by
+     * {@link #beginTopologyEdit()}, updating the connections once every
+     * call has been matched.
+     *
+     * @throws IllegalStateException If no batch of changes was started.
+     * @see #updateConnections()
+     */
+    public synchronized void endTopologyEdit() throws IllegalStateException
+    {
+        if(topologyEditDepth == 0)
+            throw new IllegalStateException("Topology of the neural network is not being edited...");
+        if(--topologyEditDepth == 0)
+            updateConnections();
+    }
+
+    /**
+     * Updates the connections after a change to the topology, unless the
+     * change is part of a batch.
+     */
+    private synchronized void topologyChanged()
+    {
+        if(topologyEditDepth == 0)
+            updateConnections();
+    }
+
+    /**
+     * Connects the layers whose inputs have changed, leaving the others
+     * alone. A layer that is not connected, e.g, one that has been added or
+     * that followed a removed layer, is given fresh random weights. A layer
+     * whose number of neurons or inputs has changed keeps the weights of the
+     * connections that remain, new connections are given random weights and
+     * the training state of the layer is reset.
+     *
+     * <p>This is done by every method of this class changing the topology,
+     * call it after changing the number of neurons of a layer directly,
+     * i.e, through {@link NeuronLayer#setNumNeurons(int)}.
+     *
+     * @see #refreshConnections()
+     */
+    public void updateConnections()
+    {
+        int layerInputs = numInputs;
+        NeuronLayer prevLayer = null;
+        for(NeuronLayer l : arrHiddenLayers)
+        {
+            l.resizeInputs(layerInputs);
+            if(prevLayer != null)
+                prevLayer.setNextLayer(l);
+            layerInputs = l.getNumNeurons();
+            prevLayer = l;
+        }
+        outputLayer.resizeInputs(layerInputs);
+        outputLayer.flushOutputConn();
+        if(prevLayer != null)
+            prevLayer.setNextLayer(outputLayer);
+
+        applyLayerSettings();
+    }
         
     /**
      * Estabilishes missing connections between all the neurons in the network.
      * <p>
      * <b>NOTE: By refreshing the connections, all synaptic connections
-     * in the network are randomized</b>
-     * <p>
-     * <b>TODO: prune synaptic connections or add it where ever necessary.</b>
+     * in the network are randomized</b>, use {@link #updateConnections()}
+     * to keep the weights of the layers that have not changed.
      */
     public void refreshConnections()
     {
@@ -207,14 +382,8 @@ public class NeuralNetwork extends Bufferable implements Serializable
             
             if(prevLayer == null)
             {
-                for(Neuron n : curLayer.getNeurons())
-                {
-                    n.getInputConnections().clear();
-                    n.getOutputConnections().clear();
-                    
-                    for(int i=0;i<numInputs;i++)
-                        n.addInputConnection(new SynapticConnection());                                
-                }
+                curLayer.flushOutputConn();
+                curLayer.connectInputs(numInputs);
             }                
             else
             {
@@ -225,7 +394,182 @@ public class NeuralNetwork extends Bufferable implements Serializable
             
             layerIndex++;            
         }
-    } 
+
+        applyLayerSettings();
+    }
+
+    /**
+     * Applies the precision and bulk mutation mode of this network to
+     * every layer.
+     */
+    private void applyLayerSettings()
+    {
+        for(NeuronLayer l : arrHiddenLayers)
+            applyLayerSettings(l.getDenseLayer());
+        applyLayerSettings(outputLayer.getDenseLayer());
+    }
+
+    private void applyLayerSettings(DenseLayer dense)
+    {
+        //layers left alone by an update already have the precision...
+        if(dense.getPrecision() != getPrecision())
+            dense.setPrecision(getPrecision());
+        dense.setBulkMutation(bulkMutationDepth > 0);
+        dense.setLayerParallelism(layerParallelism);
+    }
+
+    /**
+     * Sets the threads the forward pass, back propagation and weight
+     * adaptation of the wide layers of this network are split across. The
+     * outputs and trained weights are identical to those of the serial
+     * path. The setting is not saved with the network.
+     *
+     * @param layerParallelism The threads to be used, null to process every
+     * layer serially.
+     * @see LayerParallelism
+     */
+    public void setLayerParallelism(LayerParallelism layerParallelism)
+    {
+        this.layerParallelism = layerParallelism;
+        applyLayerSettings();
+    }
+
+    /**
+     * @return The threads the wide layers of this network are split
+     * across, null if they are processed serially.
+     */
+    public LayerParallelism getLayerParallelism()
+    {
+        return layerParallelism;
+    }
+
+    /**
+     * Enters bulk mutation mode, meant for training and other code changing
+     * many weights at once. In this mode the <code>SynapticConnection</code>
+     * and <code>Neuron</code> views of the network fire no property change
+     * events, instead listeners of this network receive a single
+     * {@link #WEIGHTS_PROPERTY} event whenever {@link #fireWeightsChanged()}
+     * is called and when the mode is left. The <code>Teacher</code> trains
+     * in this mode, firing the event once per epoch.
+     *
+     * <p>Calls may be nested, the mode is left when every call has been
+     * matched by a call to {@link #endBulkMutation()}.
+     */
+    public synchronized void beginBulkMutation()
+    {
+        if(bulkMutationDepth++ == 0)
+            setBulkMutation(true);
+    }
+
+    /**
+     * Leaves bulk mutation mode once every call to
+     * {@link #beginBulkMutation()} has been matched, firing a
+     * {@link #WEIGHTS_PROPERTY} event if the weights have changed.
+     *
+     * @throws IllegalStateException If the network is not in bulk mutation mode.
+     */
+    public void endBulkMutation() throws IllegalStateException
+    {
+        synchronized(this)
+        {
+            if(bulkMutationDepth == 0)
+                throw new IllegalStateException("Neural network is not in bulk mutation mode...");
+            if(--bulkMutationDepth > 0)
+                return;
+            setBulkMutation(false);
+        }
+        fireWeightsChanged();
+    }
+
+    /**
+     * @return true if the network is in bulk mutation mode.
+     * @see #beginBulkMutation()
+     */
+    public synchronized boolean isBulkMutation()
+    {
+        return bulkMutationDepth > 0;
+    }
+
+    private void setBulkMutation(boolean bulkMutation)
+    {
+        for(NeuronLayer l : arrHiddenLayers)
+        {
+            if(l.getDenseLayer() != null)
+                l.getDenseLayer().setBulkMutation(bulkMutation);
+        }
+        if(outputLayer.getDenseLayer() != null)
+            outputLayer.getDenseLayer().setBulkMutation(bulkMutation);
+    }
+
+    /**
+     * @return The total number of changes made to the weights and biases
+     * of the layers of this network.
+     * @see DenseLayer#getModificationCount()
+     */
+    public long getModificationCount()
+    {
+        long count = 0;
+        for(NeuronLayer l : arrHiddenLayers)
+        {
+            if(l.getDenseLayer() != null)
+                count += l.getDenseLayer().getModificationCount();
+        }
+        if(outputLayer.getDenseLayer() != null)
+            count += outputLayer.getDenseLayer().getModificationCount();
+        return count;
+    }
+
+    /**
+     * Notifies the listeners of this network that its weights have changed,
+     * with a single {@link #WEIGHTS_PROPERTY} event carrying the old and new
+     * modification counts. Nothing is fired if the weights have not changed
+     * since the last such event.
+     *
+     * @see #beginBulkMutation()
+     */
+    public void fireWeightsChanged()
+    {
+        long old, count = getModificationCount();
+        synchronized(this)
+        {
+            if(count == notifiedModificationCount)
+                return;
+            old = notifiedModificationCount;
+            notifiedModificationCount = count;
+        }
+        pcs.firePropertyChange(WEIGHTS_PROPERTY, old, count);
+    }
+
+    /**
+     * @return The precision used to store the weights of this network.
+     * @see Precision
+     */
+    public Precision getPrecision()
+    {
+        return precision == null ? Precision.DOUBLE : precision;
+    }
+
+    /**
+     * Sets the precision used to store the weights of every layer and to
+     * accumulate their weighted sums during training and inference. Single
+     * precision halves the memory used by the weights, converting to it
+     * rounds every weight to the nearest <tt>float</tt>.
+     *
+     * @param precision The precision to be used.
+     * @throws IllegalArgumentException If precision is null.
+     * @see Precision
+     * @see DenseLayer#setPrecision(jneuralnet.core.Precision)
+     */
+    public void setPrecision(Precision precision) throws IllegalArgumentException
+    {
+        if(precision == null)
+            throw new IllegalArgumentException("Precision cannot be null...");
+
+        set("precision", precision);
+        for(NeuronLayer l : arrHiddenLayers)
+            l.getDenseLayer().setPrecision(precision);
+        outputLayer.getDenseLayer().setPrecision(precision);
+    }
     
     /**
      * This function is the true crux of a neural network.
@@ -253,21 +597,160 @@ public class NeuralNetwork extends Bufferable implements Serializable
                     + "does not match num of inputs to the neural network");
         }
 
+        double in[] = new double[input.length];
+        for(int i=0; i<input.length; i++)
+            in[i] = input[i];
+
+        double out[] = new double[outputLayer.getNumNeurons()];
+        getOutput(in, out, new InferenceWorkspace(this));
+
+        Double output[] = new Double[out.length];
+        for(int i=0; i<out.length; i++)
+            output[i] = out[i];
+        return output;
+    }
+
+    /**
+     * Primitive form of {@link #getOutput(java.lang.Double[]) getOutput(...)}
+     * which reuses a workspace held by the network, so that repeated calls
+     * do not allocate any memory.
+     *
+     * <p><b>NOTE: The shared workspace makes this method unsafe to be called
+     * from multiple threads at once. Use
+     * {@link #getOutput(double[], double[], jneuralnet.core.InferenceWorkspace) getOutput(...)}
+     * with a workspace per thread instead.</b>
+     *
+     * @param input The input vector presented to the network.
+     * @param output The array to hold the output vector, its length must
+     * be atleast the num of outputs of the network.
+     * @throws IllegalArgumentException If input or output length dosent match
+     * the num of inputs or outputs of the neural network...
+     */
+    public void getOutput(double input[], double output[])
+            throws IllegalArgumentException
+    {
+        InferenceWorkspace ws = workspace;
+        if(ws == null || !ws.isCompatibleWith(this))
+        {
+            ws = new InferenceWorkspace(this);
+            workspace = ws;
+        }
+        getOutput(input, output, ws);
+    }
+
+    /**
+     * Primitive form of {@link #getOutput(java.lang.Double[]) getOutput(...)}
+     * which feeds forward the data using the buffers of the given workspace.
+     * No memory is allocated by this method, making it suitable for high
+     * volume inference. Nothing is cached for the learning algo.
+     *
+     * <p>As long as the network is not modified, this method may be called
+     * concurrently by several threads, each using its own workspace.
+     *
+     * @param input The input vector presented to the network.
+     * @param output The array to hold the output vector, its length must
+     * be atleast the num of outputs of the network.
+     * @param ws The workspace to be used.
+     * @throws IllegalArgumentException If input or output length dosent match
+     * the num of inputs or outputs of the neural network or if the workspace
+     * does not match the topology of the network.
+     * @see InferenceWorkspace
+     */
+    public void getOutput(double input[], double output[], InferenceWorkspace ws)
+            throws IllegalArgumentException
+    {
+        if(input.length != numInputs) {
+            throw new IllegalArgumentException("Input data length "
+                    + "does not match num of inputs to the neural network");
+        }
+        if(output.length < outputLayer.getNumNeurons()) {
+            throw new IllegalArgumentException("Output array length "
+                    + "is less than the num of outputs of the neural network");
+        }
+        if(!ws.isCompatibleWith(this)) {
+            throw new IllegalArgumentException("Workspace does not match "
+                    + "the topology of the neural network");
+        }
+
+        double data[] = input;
         if(inputPreprocessor != null)
-            input = inputPreprocessor.process(input);
+        {
+            data = ws.getInputBuffer();
+            inputPreprocessor.process(input, data);
+        }
 
-        Double output[] = input;
-        
         //feed forwarding the data through hidden layers...
+        int layerIndex = 0;
         for(NeuronLayer hiddenLayer : arrHiddenLayers)
-            output = hiddenLayer.getOutput(output);
+        {
+            double layerOutput[] = ws.getLayerBuffer(layerIndex++);
+            hiddenLayer.getOutput(data, layerOutput);
+            data = layerOutput;
+        }
         //feed forwarding the data through output layer...
-        output = outputLayer.getOutput(output);
+        double result[] = ws.getLayerBuffer(layerIndex);
+        outputLayer.getOutput(data, result);
 
         if(outputPreprocessor != null)
-            output = outputPreprocessor.deProcess(output);
+            outputPreprocessor.deProcess(result, result);
 
-        return output;
+        System.arraycopy(result, 0, output, 0, result.length);
+    }
+
+    /**
+     * Takes an immutable snapshot of this network for inference. The
+     * compiled network holds its own copy of the weights, activation
+     * functions and preprocessors, so it can be shared by any number of
+     * threads while this network continues to be trained or modified.
+     *
+     * <p>Layers that are mostly zero, e.g, after pruning by a
+     * {@link jneuralnet.core.pruning.MagnitudePruner}, are compiled to
+     * {@link SparseLayer}s.
+     *
+     * @return The compiled form of this network.
+     * @see CompiledNetwork
+     */
+    public CompiledNetwork compile()
+    {
+        return compile(false);
+    }
+
+    /**
+     * Takes an immutable snapshot of this network for inference, see
+     * {@link #compile()}, optionally keeping the weights of its dense layers
+     * off the heap. Only the weights of the compiled network are off the
+     * heap; those of this network and their optimizer state stay on the heap
+     * for training. To serve a saved network without ever holding all of it
+     * on the heap use {@link #loadOffHeap(String)}. The outputs are identical
+     * either way.
+     *
+     * @param offHeap true to keep the dense layers off the heap, in which
+     * case the compiled network is to be closed once no longer needed.
+     * @return The compiled form of this network.
+     * @see OffHeapLayer
+     * @see CompiledNetwork#close()
+     */
+    public CompiledNetwork compile(boolean offHeap)
+    {
+        return new CompiledNetwork(this, offHeap);
+    }
+
+    /**
+     * Gives the network's prediction for every input vector of the batch.
+     * The batch is fed forward by a compiled snapshot of this network, see
+     * {@link CompiledNetwork#getOutputs(double[], int, double[]) getOutputs(...)}.
+     *
+     * <p>Compiling copies the weights, so when scoring many batches with
+     * an unchanged network use {@link #compile()} once instead.
+     *
+     * @param inputs The input vectors presented to the network.
+     * @return The output vector for every input vector.
+     * @throws IllegalArgumentException If the length of an input vector
+     * dosent match the num of inputs of the neural network...
+     */
+    public double[][] getOutputs(double inputs[][]) throws IllegalArgumentException
+    {
+        return compile().getOutputs(inputs);
     }
 
     /**
@@ -281,25 +764,82 @@ public class NeuralNetwork extends Bufferable implements Serializable
      * <p> A Network is first trained with a <tt>LearningAlgo</tt> before
      * using this method.
      *
-     * <p> It also updates all the cached values of a <code>Neuron</code>.
-     * The cached values find their use in implementing <tt>LearningAlgo</tt>
-     * interface. The cached values are used by learning algo.
+     * <p> The input, weighted sums and outputs of every layer are recorded
+     * in the activation context of this network, see
+     * {@link #getActivationContext()}, for use by the learning algo.
      *
      * @param input The input vector presented to the network.
      * @see AbstractLearningAlgo
      */
     public Double[] getOutputOnPreprocessedData(Double input[])
     {
-        Double output[] = new Double[input.length];
-        System.arraycopy(input, 0, output, 0, input.length);
+        double data[] = new double[input.length];
+        for(int i=0; i<input.length; i++)
+            data[i] = input[i];
+
+        data = getOutputOnPreprocessedData(data, getActivationContext());
+
+        Double output[] = new Double[data.length];
+        for(int i=0; i<data.length; i++)
+            output[i] = data[i];
+        return output;
+    }
+
+    /**
+     * Feeds forward preprocessed data recording the input, weighted sums
+     * and outputs of every layer in the given context, from where the
+     * learning algo picks them up during back propagation. The network is
+     * not modified, so several threads may call this method at once as
+     * long as each uses its own context.
+     *
+     * @param input The input vector presented to the network.
+     * @param ctx The context to record the values in.
+     * @return The output vector of the network, i.e, the array returned by
+     * {@link ActivationContext#getNetworkOutput() ctx.getNetworkOutput()}.
+     * @throws IllegalArgumentException If input length dosent match the num
+     * of inputs of the neural network or if the context does not match the
+     * topology of the network.
+     * @see ActivationContext
+     * @see AbstractLearningAlgo#trainNet(jneuralnet.core.NeuralNetwork, jneuralnet.core.ActivationContext, double[])
+     */
+    public double[] getOutputOnPreprocessedData(double input[], ActivationContext ctx)
+            throws IllegalArgumentException
+    {
+        if(input.length != numInputs) {
+            throw new IllegalArgumentException("Input data length "
+                    + "does not match num of inputs to the neural network");
+        }
+        if(!ctx.isCompatibleWith(this)) {
+            throw new IllegalArgumentException("Activation context does not "
+                    + "match the topology of the neural network");
+        }
 
+        double data[] = input;
+        int layerIndex = 0;
         //feed forwarding the data through hidden layers...
         for(NeuronLayer hiddenLayer : arrHiddenLayers)
-            output = hiddenLayer.getOutput(output);
+            data = hiddenLayer.getOutput(data, ctx, layerIndex++);
         //feed forwarding the data through output layer...
-        output = outputLayer.getOutput(output);
+        return outputLayer.getOutput(data, ctx, layerIndex);
+    }
 
-        return output;
+    /**
+     * Gets the activation context used by
+     * {@link #getOutputOnPreprocessedData(java.lang.Double[]) getOutputOnPreprocessedData(Double[])}
+     * and the learning algo when no context is given explicitly. The
+     * context is recreated whenever the topology of the network changes.
+     *
+     * <p><b>NOTE: This context is shared, use a context of your own to feed
+     * forward and back propagate from several threads.</b>
+     *
+     * @return The activation context of this network.
+     * @see ActivationContext
+     */
+    public ActivationContext getActivationContext()
+    {
+        if(context == null || !context.isCompatibleWith(this))
+            context = new ActivationContext(this);
+        return context;
     }
     
     /**     
@@ -417,6 +957,35 @@ public class NeuralNetwork extends Bufferable implements Serializable
         return net;        
     }
 
+    /**
+     * Loads a previously saved network from a file as a compiled network
+     * whose dense layers are kept off the heap, see
+     * {@link #compile(boolean) compile(true)}. Every layer is copied off the
+     * heap as soon as it is read, so at most the weights and optimizer state
+     * of a single layer, and the patterns of a single training set, are on
+     * the heap at a time, rather than the whole network as by
+     * {@link #loadNet(String)}.
+     *
+     * @param fname The file path of the serialized neural network.
+     * @return The compiled network, to be closed once no longer needed.
+     *
+     * @throws IOException If some disk I/O error occurs or if the
+     * serialized file is corrupt.
+     * @see CompiledNetwork#close()
+     */
+    public static CompiledNetwork loadOffHeap(String fname) throws IOException
+    {
+        FileInputStream fin = new FileInputStream(fname);
+        try
+        {
+            return new OffHeapNetworkLoader(fin).readCompiledNetwork();
+        }
+        finally
+        {
+            fin.close();
+        }
+    }
+
     /**
      * Saves the neural network in XML format
      * @param fname The file name to be used in saving the network.
@@ -514,11 +1083,22 @@ public class NeuralNetwork extends Bufferable implements Serializable
             throw new IllegalStateException("Learning algo is not set up...");
         
         HashMap<TrainingPattern, Double> map = new HashMap<TrainingPattern, Double>();
-        Double actual[];
+        //a context of its own keeps the evaluation off the shared state...
+        ActivationContext ctx = new ActivationContext(this);
+        double input[] = new double[numInputs];
+        Double actual[] = new Double[getNumOutputs()];
         for(TrainingPattern tp : ts.getTrainingPatterns())
         {
             if(isDataPreprocessed)
-                actual = getOutputOnPreprocessedData(tp.getInputData());
+            {
+                Double data[] = tp.getInputData();
+                for(int i=0; i<data.length; i++)
+                    input[i] = data[i];
+
+                double output[] = getOutputOnPreprocessedData(input, ctx);
+                for(int i=0; i<output.length; i++)
+                    actual[i] = output[i];
+            }
             else
                 actual = getOutput(tp.getInputData());            
             map.put(tp, algo.getCostFunction().getErrorValue(tp.getOutputData(), actual));
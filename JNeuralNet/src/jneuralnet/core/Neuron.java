@@ -15,98 +15,65 @@
 package jneuralnet.core;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
 import jneuralnet.core.activation.AbstractActivation;
 import jneuralnet.core.activation.LogisticSigmoid;
-import jneuralnet.core.learning.AbstractBPBasedAlgo;
-import jneuralnet.core.learning.AbstractLearningAlgo;
 
 /**
  * The building block of the neural network. A <code>Neuron</code> has certain
- * input and output synapses.It caches input, output values along with error gradients
- * to enable training process to be Object Oriented.This class
- * implements <tt>Serializable</tt> interface for saving the neural network.
+ * input and output synapses. This class implements <tt>Serializable</tt>
+ * interface for saving the neural network.
  *
  * <p>It can use any activation function by using
  * {@link Neuron#setActivationFunction(jneuralnet.core.activation.AbstractActivation)
  * setActivationFunction} method. Newer activation functions can
  * be defined by implementing <tt>AbstractActivation</tt> interface.
  *
+ * <p>A neuron is a view over a row of the <code>DenseLayer</code> of its
+ * <code>NeuronLayer</code>. Its synaptic connections and bias are read
+ * from and written to the layer, so a neuron only becomes useful once it
+ * is added to a layer. The values of a pattern fed forward through the
+ * neuron, i.e, its input, sum, output and delta, are held by an
+ * {@link ActivationContext}.
+ *
  * <p>This class extends the <tt>Bufferable</tt> and hence supports
  * dynamic property addition.
  *
  * @author Ragha
  * @see AbstractActivation
  * @see SynapticConnection
+ * @see DenseLayer
  * @see Bufferable
- * @version 1.0
+ * @version 1.2
  */
 public final class Neuron extends Bufferable implements Serializable
 {
-    private static final long serialVersionUID = -4579026829515877805L;
-
-    /**
-     * Represents the bias connection of this neuron. Also known as
-     * threshold value in some books. It has a constant input of -1.
-     */
-    private SynapticConnection bias;
-    
-    /**
-     * Delta values are intended set and get by the 
-     * <code>learningAlgo</code>. <code>BPBasedAlgo</code> uses this logic
-     * during back propogation.
-     * 
-     * @see AbstractLearningAlgo
-     * @see AbstractBPBasedAlgo#backPropogate(jneuralnet.core.NeuralNetwork, java.lang.Double[], java.lang.Double[])
-     * java.util.ArrayList) 
-     */    
-    private Double delta;
-    
-    /**
-     * Cached values of the input vectors encountered by the neuron during
-     * forward propogation.
-     */
-    private Double cachedInputs[];
-    
-    /**
-     * Cached values of recent output generated by the neuron during
-     * forward propogation.
-     */    
-    private Double cachedOutput;  
+    private static final long serialVersionUID = -4579026829515877806L;
 
-    /**
-     * Cached value of the weighted sum <tt>summation (Wi * Xi)</tt>
-     * generated during forward propogation.
-     */
-    private Double cachedSum;
-    
     /**
      * Indicates the activation function to be used by this neuron.
      * @see AbstractActivation
      */
     private AbstractActivation act;
-    
+
     /**
-     * Maintains the input synaptic connections to this neuron.
-     * @see SynapticConnection
+     * The layer this neuron belongs to, null if it is not added to a layer.
      */
-    private ArrayList<SynapticConnection> arrInputConn
-            = new ArrayList<SynapticConnection>();
-    
+    private NeuronLayer layer;
+
     /**
-     * Maintains the output synaptic connections of this neuron.
-     * @see SynapticConnection
-     */    
-    private ArrayList<SynapticConnection> arrOutputConn
-            = new ArrayList<SynapticConnection>();  
-    
+     * The index of this neuron in its layer.
+     */
+    private int index;
+
     /**
-     * Initializes the <code>neuron</code> with the given activation function. 
+     * Initializes the <code>neuron</code> with the given activation function.
      * The activation function can be changed later by using
-     * {@link Neuron#setActivationFunction(jneuralnet.core.activation.AbstractActivation) 
+     * {@link Neuron#setActivationFunction(jneuralnet.core.activation.AbstractActivation)
      * setActivationFunction} method.
-     * 
+     *
      * @param act
      * The activation function to be used by the neuron. Uses
      * <tt>LogisticSigmoid</tt> activation function by default.
@@ -114,181 +81,141 @@ public final class Neuron extends Bufferable implements Serializable
      * @see AbstractActivation
      */
     public Neuron(AbstractActivation act)
-    {           
-        //range = -1 to +1        
-        bias = new SynapticConnection(-1.0, 1.0);
-        delta = 0.0;        
+    {
         setActivationFunction(act);
     }
-    
+
     /**
      * Initializes the <code>neuron</code> with <tt>LogisticSigmoid</tt> as
-     * the default activation function. Default learning rate = 0.7 and default
-     * momentum = 0.5.
+     * the default activation function. Default learning rate = 0.4 and default
+     * momentum = 0.6.
      *
      * @see AbstractActivation
      * @see LogisticSigmoid
      */
     public Neuron()
-    {        
+    {
         this(new LogisticSigmoid());
     }
-      
+
     /**
-     * Generates the output of the neuron. It caches the input data
-     * and the weighted sum <tt>summation (Wi * Xi)</tt> be used in the learning process.
+     * Called by the <code>NeuronLayer</code> whenever this neuron is
+     * added, removed or moved within the layer.
      *
-     * <p>The range of output values generated depends on the
-     * activation function used. The output generated is equivalent to
-     * <code>act.activation(∑(Wi * Xi))</code>
-     * 
-     * @param input The input vector. This vector is passes automatically
-     * by the framework to evaluate the overall output of the network.
-     * 
-     * @return The output value of the neuron.
-     * @see AbstractActivation
+     * @param layer The owning layer, null if removed.
+     * @param index The index of this neuron in the layer.
      */
-    Double getOutput(Double input[])
+    void attach(NeuronLayer layer, int index)
     {
-        cachedInputs = input;
-        cachedSum = 0.0;
-
-        int i = 0;
-        for(Double val : input)
-        {
-            cachedSum += val * arrInputConn.get(i).getWeight();            
-            i++;
-        }
-        
-        cachedSum -= bias.getWeight();
-        cachedOutput = act.activation(cachedSum);
-        return cachedOutput;
+        this.layer = layer;
+        this.index = index;
     }
-    
-    /**
-     * Connects this <code>neuron</code> to another. It creates
-     * a <code>SynapticConnection</code> which is the
-     * output synapse to this neuron and input to the other.
-     * 
-     * @param other The neuron to which a connection is to be estabilished.
-     * @see SynapticConnection
-    */
-    void connectTo(Neuron other)
-    {
-        SynapticConnection conn = new SynapticConnection();
-        arrOutputConn.add(conn);
-        other.addInputConnection(conn);        
-    }            
-    
+
     /**
-     * This method is useful to get all the input connections this neuron.
-     * 
-     * @return The input synaptic connections to this neuron
-     * @see SynapticConnection
+     * @return The layer this neuron belongs to, null if it is not
+     * added to any layer.
      */
-    public ArrayList<SynapticConnection> getInputConnections()
+    public NeuronLayer getLayer()
     {
-        return arrInputConn;
+        return layer;
     }
-    
+
     /**
-     * This method is useful to get all the output connections this neuron.
-     * 
-     * @return The output synaptic connections to this neuron
-     * @see SynapticConnection
+     * @return The index of this neuron in its layer.
      */
-    public ArrayList<SynapticConnection> getOutputConnections()
+    public int getIndex()
     {
-        return arrOutputConn;
+        return index;
     }
-    
+
     /**
-     * This method is internally used by 
-     * {@link Neuron#connectTo(jneuralnet.core.Neuron) connectTo} 
-     * method.
-     * 
-     * @param conn The synapse to be added to the input connections.
+     * This method is useful to get all the input connections this neuron.
+     * The connections are views over the <code>DenseLayer</code> of the
+     * layer and the returned list cannot be modified.
+     *
+     * @return The input synaptic connections to this neuron
      * @see SynapticConnection
      */
-    public void addInputConnection(SynapticConnection conn)
-    {        
-        arrInputConn.add(conn);
-    }
-    
-    /**
-     * Intended to be used by the <Code>LearningAlgo</code> during
-     * the training process.
-     * 
-     * @return The recent input vector encountered by this neuron during
-     * forward propogation.
-     */
-    public Double[] getCachedInputs()
-    {        
-        return cachedInputs;
-    }
-    
-    /**
-     * Intended to be used by the <Code>LearningAlgo</code> during
-     * the training process.
-     * 
-     * @return The recent output generated by the neuron during
-     * forward propogation.
-     */
-    public Double getCachedOutput()
+    public List<SynapticConnection> getInputConnections()
     {
-        return cachedOutput;
+        final DenseLayer dense = layer == null ? null : layer.getDenseLayer();
+        if(dense == null)
+            return Collections.emptyList();
+
+        return new AbstractList<SynapticConnection>() {
+
+            public SynapticConnection get(int i) {
+                if(i < 0 || i >= size())
+                    throw new IndexOutOfBoundsException("Index: " + i);
+                return dense.getConnection(dense.getWeightIndex(index, i));
+            }
+
+            public int size() {
+                return dense.getNumInputs();
+            }
+        };
     }
 
     /**
-     * Intended to be used by the <Code>LearningAlgo</code> during
-     * the training process.
+     * This method is useful to get all the output connections this neuron.
+     * The connections are views over the <code>DenseLayer</code> of the
+     * next layer and the returned list cannot be modified.
      *
-     * @return The weighted sum ∑(Wi * Xi) encountered by the neuron during
-     * forward propogation.
+     * @return The output synaptic connections to this neuron
+     * @see SynapticConnection
      */
-    public Double getCachedSum()
+    public List<SynapticConnection> getOutputConnections()
     {
-        return cachedSum;
+        NeuronLayer next = layer == null ? null : layer.getNextLayer();
+        final DenseLayer dense = next == null ? null : next.getDenseLayer();
+        if(dense == null)
+            return Collections.emptyList();
+
+        return new AbstractList<SynapticConnection>() {
+
+            public SynapticConnection get(int i) {
+                if(i < 0 || i >= size())
+                    throw new IndexOutOfBoundsException("Index: " + i);
+                return dense.getConnection(dense.getWeightIndex(i, index));
+            }
+
+            public int size() {
+                return dense.getNumNeurons();
+            }
+        };
     }
 
     /**
-     * Can be used to set bias value of this neuron.
+     * Can be used to set bias value of this neuron. The weight and training
+     * parameters of the given connection are copied into the layer.
+     *
      * @param bias The Synaptic connection to be used as the bias.
      */
     public void setBias(SynapticConnection bias)
     {
-        set("bias", bias);
+        SynapticConnection old = getBias();
+        old.setWeight(bias.getWeight());
+        old.setLearningRate(bias.getLearningRate());
+        old.setMomentum(bias.getMomentum());
+        old.setPrevWeightChange(bias.getPrevWeightChange());
+        old.setIsLastErrGradientPositive(bias.isIsLastErrGradientPositive());
+        if(!layer.getDenseLayer().isBulkMutation())
+            pcs.firePropertyChange("bias", null, old);
     }
 
     /**
      * Returns the synaptic connection represented by this bias.
      * @return The bias used by the neuron.
+     * @throws IllegalStateException If the neuron is not connected yet.
      */
-    public SynapticConnection getBias()
+    public SynapticConnection getBias() throws IllegalStateException
     {
-        return bias;
+        DenseLayer dense = layer == null ? null : layer.getDenseLayer();
+        if(dense == null)
+            throw new IllegalStateException("Neuron is not connected...");
+        return dense.getConnection(dense.getBiasIndex(index));
     }
 
-    /**
-     * Intended to be used by the <Code>LearningAlgo</code> during
-     * the training process to set error gradient values in an
-     * object oriented manner.
-     */
-    public void setDelta(Double delta)
-    {
-        set("delta", delta);
-    }
-
-    /**
-     * Intended to be used by the <Code>LearningAlgo</code> during
-     * the training process to get error gradient values in an
-     * object oriented manner.
-     */
-    public Double getDelta()
-    {
-        return delta;
-    }
-    
     /**
      * Sets the activation function of this neuron. Newer activation types
      * can be defined by implementing the <tt>AbstractActivation</tt> interface.
@@ -318,15 +245,17 @@ public final class Neuron extends Bufferable implements Serializable
     {
         return act;
     }
-    
+
     @Override
     public String toString()
-    {           
+    {
         String s = "";
-        s += "Bias weight = "+bias.getWeight() + "\n";
+        DenseLayer dense = layer == null ? null : layer.getDenseLayer();
+        if(dense != null)
+            s += "Bias weight = "+dense.getBias(index) + "\n";
         s += "Activation Function = "+act.toString() + "\n";
-        s += "Input connections = "+arrInputConn.toString() + "\n";
-        s += "Output connections = "+arrOutputConn.toString() + "\n";
+        s += "Input connections = "+getInputConnections().toString() + "\n";
+        s += "Output connections = "+getOutputConnections().toString() + "\n";
         return s;
     }
 
@@ -339,28 +268,21 @@ public final class Neuron extends Bufferable implements Serializable
             return false;
         }
         final Neuron other = (Neuron) obj;
-        if (this.bias != other.bias && (this.bias == null || !this.bias.equals(other.bias))) {
-            return false;
-        }
-        if (this.delta != other.delta && (this.delta == null || !this.delta.equals(other.delta))) {
-            return false;
-        }
-        if (this.cachedInputs != other.cachedInputs && (this.cachedInputs == null || !Arrays.equals(this.cachedInputs,other.cachedInputs))) {
+        if (this.index != other.index) {
             return false;
         }
-        if (this.cachedOutput != other.cachedOutput && (this.cachedOutput == null || !this.cachedOutput.equals(other.cachedOutput))) {
-            return false;
-        }
-        if (this.cachedSum != other.cachedSum && (this.cachedSum == null || !this.cachedSum.equals(other.cachedSum))) {
+        if (this.act != other.act && (this.act == null || !this.act.equals(other.act))) {
             return false;
         }
-        if (this.act != other.act && (this.act == null || !this.act.equals(other.act))) {
+        if (!this.getInputConnections().equals(other.getInputConnections())) {
             return false;
         }
-        if (this.arrInputConn != other.arrInputConn && (this.arrInputConn == null || !this.arrInputConn.equals(other.arrInputConn))) {
+        DenseLayer dense = layer == null ? null : layer.getDenseLayer();
+        DenseLayer otherDense = other.layer == null ? null : other.layer.getDenseLayer();
+        if ((dense == null) != (otherDense == null)) {
             return false;
         }
-        if (this.arrOutputConn != other.arrOutputConn && (this.arrOutputConn == null || !this.arrOutputConn.equals(other.arrOutputConn))) {
+        if (dense != null && dense.getBias(index) != otherDense.getBias(other.index)) {
             return false;
         }
         return true;
@@ -369,14 +291,9 @@ public final class Neuron extends Bufferable implements Serializable
     @Override
     public int hashCode() {
         int hash = 7;
-        hash = 53 * hash + (this.bias != null ? this.bias.hashCode() : 0);
-        hash = 53 * hash + (this.delta != null ? this.delta.hashCode() : 0);
-        hash = 53 * hash + (this.cachedInputs != null ? this.cachedInputs.hashCode() : 0);
-        hash = 53 * hash + (this.cachedOutput != null ? this.cachedOutput.hashCode() : 0);
-        hash = 53 * hash + (this.cachedSum != null ? this.cachedSum.hashCode() : 0);
+        hash = 53 * hash + this.index;
         hash = 53 * hash + (this.act != null ? this.act.hashCode() : 0);
-        hash = 53 * hash + (this.arrInputConn != null ? this.arrInputConn.hashCode() : 0);
-        hash = 53 * hash + (this.arrOutputConn != null ? this.arrOutputConn.hashCode() : 0);
+        hash = 53 * hash + this.getInputConnections().hashCode();
         return hash;
     }
 }
@@ -23,6 +23,10 @@ import jneuralnet.core.activation.AbstractActivation;
  * </code>. This class implements the <tt>Serializable</tt> interface for
  * saving the neural network.
  *
+ * <p>The synaptic connections feeding into the layer are stored in a
+ * {@link DenseLayer}, i.e, a row major weight matrix with one row per neuron.
+ * The <code>Neuron</code> objects of the layer are views over its rows.
+ *
  * <p>It can use any activation function by using
  * {@link #setActivationFunction(jneuralnet.core.activation.AbstractActivation) setActivationFunction(...)} method.
  * Newer activation functions can be defined by implementing <tt>AbstractActivation</tt> interface.
@@ -33,15 +37,27 @@ import jneuralnet.core.activation.AbstractActivation;
  * @author Ragha
  * @see AbstractActivation
  * @see Neuron
+ * @see DenseLayer
  * @see Bufferable
- * @version 1.1
+ * @version 1.2
  */
 public class NeuronLayer extends Bufferable implements Serializable
 {
-    private static final long serialVersionUID = 3911085246197338475L;
+    private static final long serialVersionUID = 3911085246197338476L;
 
     private ArrayList<Neuron> arrNeurons = new ArrayList<Neuron>();
     private int numNeurons;
+
+    /**
+     * The weights of the synaptic connections feeding into this layer.
+     * null until the layer is connected.
+     */
+    private DenseLayer denseLayer;
+
+    /**
+     * The layer fed by this layer, null for the output layer.
+     */
+    private NeuronLayer nextLayer;
     
     /**
      * Creates a neural network with default LogisticSigmoid activation function.
@@ -70,7 +86,8 @@ public class NeuronLayer extends Bufferable implements Serializable
      * Sets the num of neurons in this layer.
      *
      * <p>If number of neurons are automatically pruned or added to the
-     * layer accordingly.
+     * layer accordingly. The weights of the remaining neurons are retained,
+     * as are those of the layer fed by this one for their outputs.
      *
      * @param numNeurons The num of neurons to be used in this layer.
      * @throws java.lang.IllegalArgumentException If number of neurons is less than 1.
@@ -91,34 +108,57 @@ public class NeuronLayer extends Bufferable implements Serializable
             {
                 for(int i=0; i<numNeurons - existing;i++)
                 {
-                    arrNeurons.add(new Neuron());
+                    Neuron n = new Neuron();
+                    n.attach(this, arrNeurons.size());
+                    arrNeurons.add(n);
                 }
             }
             else
             {
                 for(int i=0; i<existing - numNeurons;i++)
                 {
-                    arrNeurons.remove(numNeurons + 1);
+                    arrNeurons.remove(arrNeurons.size() - 1).attach(null, 0);
                 }
             }
+
+            if(denseLayer != null)
+                denseLayer.resize(numNeurons, denseLayer.getNumInputs());
+            resizeNextLayerInputs();
         }            
     }
 
     /**
-     * Adds a neuron to this layer.
+     * Adds a neuron to this layer, the layer fed by this one getting random
+     * weights for its output.
      * @param n The Neuron to be added
      *
      * @see Neuron
      */
     public void addNeuron(Neuron n)
     {        
+        n.attach(this, arrNeurons.size());
         arrNeurons.add(n);
         numNeurons++;
+        if(denseLayer != null)
+            denseLayer.resize(numNeurons, denseLayer.getNumInputs());
+        resizeNextLayerInputs();
     }
 
     /**
-     * Removes a neuron from the layer. The function simply returns
-     * if an invalid index value is used.
+     * Gives the layer fed by this one an input per neuron, the new inputs
+     * getting random weights and the trailing ones being dropped.
+     */
+    private void resizeNextLayerInputs()
+    {
+        if(nextLayer != null && nextLayer.denseLayer != null
+                && nextLayer.denseLayer.getNumInputs() != numNeurons)
+            nextLayer.resizeInputs(numNeurons);
+    }
+
+    /**
+     * Removes a neuron from the layer, along with the weights of the layer
+     * fed by this one for its output. The function simply returns if an
+     * invalid index value is used.
      * 
      * @param index The index of the neuron to be removed
      * @see Neuron
@@ -127,8 +167,14 @@ public class NeuronLayer extends Bufferable implements Serializable
     {        
         if(index < arrNeurons.size())
         {
-            arrNeurons.remove(index);
+            if(denseLayer != null)
+                denseLayer.removeNeuron(index);
+            if(nextLayer != null && nextLayer.denseLayer != null)
+                nextLayer.denseLayer.removeInput(index);
+            arrNeurons.remove(index).attach(null, 0);
             numNeurons--;
+            for(int i=index; i<arrNeurons.size(); i++)
+                arrNeurons.get(i).attach(this, i);
         }
     }
 
@@ -141,11 +187,9 @@ public class NeuronLayer extends Bufferable implements Serializable
      */
     public void removeNeuron(Neuron n)
     {
-        if(arrNeurons.contains(n))
-        {
-            arrNeurons.remove(n);
-            numNeurons--;
-        }        
+        int index = arrNeurons.indexOf(n);
+        if(index >= 0)
+            removeNeuron(index);
     }
     
     /**
@@ -173,7 +217,8 @@ public class NeuronLayer extends Bufferable implements Serializable
     /**
      * Estabilishes a full synaptic connection between each neuron in 
      * this layer to neurons in other layer. It creates new
-     * Synaptic connections in the process.
+     * Synaptic connections in the process, i.e, the weights of the other
+     * layer are randomized.
      *
      * @param l Neuron layer to be connected with.
      * @see Neuron
@@ -181,30 +226,67 @@ public class NeuronLayer extends Bufferable implements Serializable
      */
     public void connectTo(NeuronLayer l)
     {
-        for(Neuron thisNeuron : arrNeurons)
-            for(Neuron n : l.getNeurons())
-                thisNeuron.connectTo(n);        
+        l.connectInputs(numNeurons);
+        nextLayer = l;
+    }
+
+    /**
+     * Creates fresh random synaptic connections from 'numInputs' inputs
+     * to every neuron in this layer.
+     *
+     * @param numInputs The number of inputs feeding this layer.
+     * @see DenseLayer
+     */
+    void connectInputs(int numInputs)
+    {
+        denseLayer = new DenseLayer(numNeurons, numInputs);
+    }
+
+    /**
+     * Resizes the weights feeding this layer to its number of neurons and
+     * the given number of inputs, keeping the weights of the connections
+     * that remain. Creates fresh random connections if the layer is not
+     * connected.
+     *
+     * @param numInputs The number of inputs feeding this layer.
+     * @see DenseLayer#resize(int, int)
+     */
+    void resizeInputs(int numInputs)
+    {
+        if(denseLayer == null)
+            connectInputs(numInputs);
+        else if(denseLayer.getNumNeurons() != numNeurons
+                || denseLayer.getNumInputs() != numInputs)
+            denseLayer.resize(numNeurons, numInputs);
+    }
+
+    /**
+     * Records the layer fed by this layer, without touching its weights.
+     *
+     * @param l The layer fed by this layer, null for the output layer.
+     */
+    void setNextLayer(NeuronLayer l)
+    {
+        nextLayer = l;
     }
 
     /**
      * Removes all the output synaptic connections of this layer.
-     * i.e, it clears all the output synaptic connections of every <code>
-     * Neuron</code> in this layer. This function is internally used by the
-     * <code> NeuralNetwork </code> class in
+     * i.e, it disconnects this layer from the next layer. This function
+     * is internally used by the <code> NeuralNetwork </code> class in
      * {@link NeuralNetwork#refreshConnections() refreshConnections} method.
      *
      * @see SynapticConnection
      */
     void flushOutputConn()
     {
-        for(Neuron n : arrNeurons)
-            n.getOutputConnections().clear();
+        nextLayer = null;
     }
     
     /**
      * Removes all the input synaptic connections of this layer.
-     * i.e, it clears all the input synaptic connections of every <code>
-     * Neuron</code> in this layer. This function is internally used by the
+     * i.e, it clears the weights of every <code>Neuron</code> in this layer.
+     * This function is internally used by the
      * <code> NeuralNetwork </code> class in
      * {@link NeuralNetwork#refreshConnections() refreshConnections} method.
      *
@@ -212,8 +294,7 @@ public class NeuronLayer extends Bufferable implements Serializable
      */
     void flushInputConn()
     {
-        for(Neuron n : arrNeurons)
-            n.getInputConnections().clear();
+        denseLayer = null;
     }
 
     /**
@@ -226,24 +307,125 @@ public class NeuronLayer extends Bufferable implements Serializable
     {
         return arrNeurons;
     }
+
+    /**
+     * Gets the weights of the synaptic connections feeding into this layer.
+     *
+     * @return The dense weight storage of this layer, null if the layer
+     * is not connected yet.
+     * @see DenseLayer
+     */
+    public DenseLayer getDenseLayer()
+    {
+        return denseLayer;
+    }
+
+    /**
+     * @return The layer fed by this layer, null if this is the output layer
+     * or if the layer is not connected yet.
+     */
+    public NeuronLayer getNextLayer()
+    {
+        return nextLayer;
+    }
     
     /**
      * Gets the output vector generated by this layer. It does so by
-     * creating an array of outputs generated by individual <code>
-     * Neuron</code> objects added to this layer.
+     * evaluating the weighted sum of every <code>Neuron</code> from the
+     * dense weight matrix and applying the activation function of the
+     * neuron.
+     *
+     * <p>Nothing is cached, use
+     * {@link #getOutput(double[], jneuralnet.core.ActivationContext, int) getOutput(...)}
+     * to record the values needed by the learning algo.
      *
      * @param input The input vector presented to this layer.
      * @see Neuron
      */
     public Double[] getOutput(Double input[])
     {
+        double in[] = new double[input.length];
+        for(int i=0; i<input.length; i++)
+            in[i] = input[i];
+
+        double out[] = new double[numNeurons];
+        getOutput(in, out);
+
         Double output[] = new Double[numNeurons];
-        
-        for(int i=0; i<arrNeurons.size();i++)
-            output[i] = arrNeurons.get(i).getOutput(input);
-        
+        for(int i=0; i<numNeurons; i++)
+            output[i] = out[i];
         return output;
     }
+
+    /**
+     * Computes the output vector of this layer into the given array
+     * without allocating any memory. Nothing is recorded for the learning
+     * algo, so this method is meant for inference only.
+     *
+     * @param input The input vector presented to this layer.
+     * @param output The array to hold the output of every neuron, its
+     * length must be at least the number of neurons.
+     * @see Neuron
+     */
+    public void getOutput(double input[], double output[])
+    {
+        denseLayer.computeSums(input, output);
+        activate(output);
+    }
+
+    /**
+     * Applies the activation function of every neuron in place. A function
+     * shared by the whole layer is applied in bulk.
+     *
+     * @param values The weighted sum of every neuron, overwritten by its output.
+     */
+    private void activate(double values[])
+    {
+        AbstractActivation shared = arrNeurons.isEmpty()
+                ? null : arrNeurons.get(0).getActivation();
+        for(int i=1; i<numNeurons && shared != null; i++)
+        {
+            if(arrNeurons.get(i).getActivation() != shared)
+                shared = null;
+        }
+
+        if(shared != null)
+            shared.activate(values, 0, numNeurons);
+        else
+        {
+            for(int i=0; i<numNeurons; i++)
+                values[i] = arrNeurons.get(i).getActivation().activate(values[i]);
+        }
+    }
+
+    /**
+     * Feeds forward the input vector recording the input, weighted sums
+     * and outputs of this layer in the given context for the learning algo.
+     * The layer itself is not modified, so several threads may call this
+     * method at once using different contexts.
+     *
+     * @param input The input vector presented to this layer.
+     * @param ctx The context to record the values in.
+     * @param index The index of this layer in the network, hidden layers
+     * are numbered from 0 with the output layer last.
+     * @return The outputs of this layer, i.e, the array returned by
+     * {@link ActivationContext#getOutputs(int) ctx.getOutputs(index)}.
+     * @see ActivationContext
+     */
+    public double[] getOutput(double input[], ActivationContext ctx, int index)
+    {
+        double inputs[] = ctx.getInputs(index);
+        if(inputs != input)
+            System.arraycopy(input, 0, inputs, 0, inputs.length);
+
+        double sums[] = ctx.getSums(index);
+        double outputs[] = ctx.getOutputs(index);
+        denseLayer.computeSums(inputs, sums);
+        System.arraycopy(sums, 0, outputs, 0, numNeurons);
+        activate(outputs);
+
+        return outputs;
+    }
     
     @Override
     public String toString()
@@ -270,6 +452,9 @@ public class NeuronLayer extends Bufferable implements Serializable
         if (this.numNeurons != other.numNeurons) {
             return false;
         }
+        if (this.denseLayer != other.denseLayer && (this.denseLayer == null || !this.denseLayer.equals(other.denseLayer))) {
+            return false;
+        }
         return true;
     }
 
@@ -278,6 +463,7 @@ public class NeuronLayer extends Bufferable implements Serializable
         int hash = 5;
         hash = 97 * hash + (this.arrNeurons != null ? this.arrNeurons.hashCode() : 0);
         hash = 97 * hash + this.numNeurons;
+        hash = 97 * hash + (this.denseLayer != null ? this.denseLayer.hashCode() : 0);
         return hash;
     }
 }
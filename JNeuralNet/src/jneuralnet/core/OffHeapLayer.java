@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * An immutable copy of the weights of a <code>DenseLayer</code> kept off
+ * the Java heap, in direct buffers, so that a large model adds neither to
+ * the heap size nor to the work of the garbage collector. The weights keep
+ * the precision of the dense layer, only the biases, one per neuron, stay
+ * on the heap. The layer is a copy for inference only; a network being
+ * trained keeps its weights and optimizer state in dense layers on the heap.
+ *
+ * <p>Every row of weights is copied in bulk into a per thread array and
+ * summed by the same {@link VectorKernel}s as the dense layer, so the sums
+ * are identical to those of the dense layer it was copied from. The copy
+ * of a row is amortized over the whole batch by
+ * {@link #computeSums(double[], int, double[]) computeSums(...)}, which is
+ * about as fast as the dense layer, while a single vector of double
+ * precision weights takes up to a quarter longer.
+ *
+ * <p>Every thread summing with the layer keeps views of the buffers and
+ * its row array, created on its first call, so that no memory is allocated
+ * by the later calls.
+ *
+ * <p>Call {@link #close()} once the layer is no longer needed; the layer
+ * cannot be used any more. The direct memory is however only freed once
+ * the buffers and the views of the threads are garbage collected, as
+ * direct buffers offer no portable way to be freed explicitly. Since their
+ * heap objects are small, the collector may take its time with them; the
+ * JVM then collects them when the direct memory runs out, or use
+ * <tt>-XX:MaxDirectMemorySize</tt> to bound it.
+ *
+ * @author Ragha
+ * @see NeuralNetwork#compile(boolean)
+ * @see NeuralNetwork#loadOffHeap(String)
+ * @see CompiledNetwork#close()
+ * @version 1.0
+ */
+public final class OffHeapLayer implements WeightMatrix
+{
+    /**
+     * The largest number of bytes kept in a single buffer, whose capacity
+     * is an <tt>int</tt>. Larger layers are split by rows across buffers.
+     */
+    private static final int MAX_SEGMENT_BYTES = 1 << 30;
+
+    /**
+     * The number of input vectors of a batch summed together.
+     */
+    private static final int ROW_BLOCK = 4;
+
+    private final int numNeurons;
+    private final int numInputs;
+    private final Precision precision;
+    private final double bias[];
+
+    /**
+     * The number of rows of weights in every buffer.
+     */
+    private final int segmentRows;
+
+    /**
+     * The rows of weights, as <tt>double</tt> or <tt>float</tt> depending
+     * on the precision, null once the layer is closed.
+     */
+    private volatile DoubleBuffer doubleSegments[];
+    private volatile FloatBuffer floatSegments[];
+
+    /**
+     * The views of the buffers and the row being summed, per thread, null
+     * once the layer is closed.
+     */
+    private volatile ThreadLocal<Rows> rows = new ThreadLocal<Rows>();
+
+    /**
+     * Copies the weights of a dense layer off the heap.
+     *
+     * @param layer The dense layer to be copied.
+     * @throws OutOfMemoryError If the direct memory is exhausted.
+     */
+    public OffHeapLayer(DenseLayer layer)
+    {
+        numNeurons = layer.getNumNeurons();
+        numInputs = layer.getNumInputs();
+        precision = layer.getPrecision();
+        bias = layer.getBiases().clone();
+
+        int bytes = precision.isFloatStorage() ? 4 : 8;
+        //rows of no weights all fit in a single, empty, buffer...
+        segmentRows = numInputs == 0 ? Math.max(1, numNeurons)
+                : Math.max(1, MAX_SEGMENT_BYTES / (bytes * numInputs));
+        int numSegments = (numNeurons + segmentRows - 1) / segmentRows;
+
+        if(precision.isFloatStorage())
+        {
+            float weights[] = layer.getFloatWeights();
+            FloatBuffer segments[] = new FloatBuffer[numSegments];
+            for(int s=0; s<numSegments; s++)
+            {
+                int rows = Math.min(segmentRows, numNeurons - s * segmentRows);
+                segments[s] = allocate(bytes * rows * numInputs).asFloatBuffer();
+                segments[s].put(weights, s * segmentRows * numInputs, rows * numInputs);
+            }
+            floatSegments = segments;
+        }
+        else
+        {
+            double weights[] = layer.getWeights();
+            DoubleBuffer segments[] = new DoubleBuffer[numSegments];
+            for(int s=0; s<numSegments; s++)
+            {
+                int rows = Math.min(segmentRows, numNeurons - s * segmentRows);
+                segments[s] = allocate(bytes * rows * numInputs).asDoubleBuffer();
+                segments[s].put(weights, s * segmentRows * numInputs, rows * numInputs);
+            }
+            doubleSegments = segments;
+        }
+    }
+
+    private static ByteBuffer allocate(int bytes)
+    {
+        //native order, so that bulk copies are plain memory copies...
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    public int getNumNeurons()
+    {
+        return numNeurons;
+    }
+
+    public int getNumInputs()
+    {
+        return numInputs;
+    }
+
+    /**
+     * @return The precision of the weights, that of the dense layer copied.
+     */
+    public Precision getPrecision()
+    {
+        return precision;
+    }
+
+    /**
+     * @return The number of bytes taken by the weights off the heap.
+     */
+    public long getNumBytes()
+    {
+        return (long) numNeurons * numInputs * (precision.isFloatStorage() ? 4 : 8);
+    }
+
+    /**
+     * @return true once the layer is closed.
+     */
+    public boolean isClosed()
+    {
+        return doubleSegments == null && floatSegments == null;
+    }
+
+    /**
+     * Drops the buffers holding the weights and the views the threads keep
+     * of them, the memory is freed once they are garbage collected, see the
+     * class doc. The layer must not be used after, or while, it is closed.
+     * Closing a closed layer does nothing.
+     */
+    public void close()
+    {
+        doubleSegments = null;
+        floatSegments = null;
+        rows = null;
+    }
+
+    public void computeSums(double input[], double sums[])
+    {
+        Rows rows = getRows();
+        for(int n=0; n<numNeurons; n++)
+            sums[n] = rows.dot(n, input, 0) - bias[n];
+    }
+
+    public void computeSums(double inputs[], int numRows, double sums[])
+    {
+        Rows rows = getRows();
+        for(int n=0; n<numNeurons; n++)
+        {
+            rows.read(n);
+            for(int r=0; r<numRows; r+=ROW_BLOCK)
+            {
+                int count = Math.min(ROW_BLOCK, numRows - r);
+                int s = r * numNeurons + n;
+                rows.dot(inputs, r * numInputs, count, sums, s);
+                for(int k=0; k<count; k++)
+                    sums[s + k * numNeurons] -= bias[n];
+            }
+        }
+    }
+
+    /**
+     * @return The views of the calling thread, created on its first call.
+     * @throws IllegalStateException If the layer is closed.
+     */
+    private Rows getRows() throws IllegalStateException
+    {
+        ThreadLocal<Rows> local = rows;
+        if(local == null)
+            throw new IllegalStateException("Off heap layer is closed...");
+        Rows r = local.get();
+        if(r == null)
+        {
+            r = new Rows();
+            local.set(r);
+        }
+        return r;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "OffHeapLayer " + numNeurons + " x " + numInputs + " " + precision
+                + (isClosed() ? " closed" : "");
+    }
+
+    /**
+     * Reads the rows of weights into an array of the calling thread and
+     * sums them with the kernels of the dense layer.
+     */
+    private final class Rows
+    {
+        private final VectorKernel kernel = VectorKernel.getDefault();
+        private final VectorKernel batchKernel = VectorKernel.getDefaultBatch();
+        private final DoubleBuffer doubles[];
+        private final FloatBuffer floats[];
+        private final double row[];
+        private final float floatRow[];
+
+        Rows() throws IllegalStateException
+        {
+            DoubleBuffer d[] = doubleSegments;
+            FloatBuffer f[] = floatSegments;
+            if(d == null && f == null)
+                throw new IllegalStateException("Off heap layer is closed...");
+
+            //views of their own, the position of a buffer being shared...
+            if(d != null)
+            {
+                doubles = new DoubleBuffer[d.length];
+                for(int s=0; s<d.length; s++)
+                    doubles[s] = d[s].duplicate();
+                floats = null;
+                row = new double[numInputs];
+                floatRow = null;
+            }
+            else
+            {
+                floats = new FloatBuffer[f.length];
+                for(int s=0; s<f.length; s++)
+                    floats[s] = f[s].duplicate();
+                doubles = null;
+                row = null;
+                floatRow = new float[numInputs];
+            }
+        }
+
+        /**
+         * Copies the weights of neuron n into the array of this thread.
+         */
+        void read(int n)
+        {
+            int position = (n % segmentRows) * numInputs;
+            if(doubles != null)
+            {
+                DoubleBuffer segment = doubles[n / segmentRows];
+                segment.position(position);
+                segment.get(row, 0, numInputs);
+            }
+            else
+            {
+                FloatBuffer segment = floats[n / segmentRows];
+                segment.position(position);
+                segment.get(floatRow, 0, numInputs);
+            }
+        }
+
+        /**
+         * @return The dot product of the weights of neuron n with the
+         * input vector at 'inputOffset'.
+         */
+        double dot(int n, double input[], int inputOffset)
+        {
+            read(n);
+            if(doubles != null)
+                return kernel.dot(row, 0, input, inputOffset, numInputs);
+            if(precision == Precision.FLOAT)
+                return kernel.dotFloat(floatRow, 0, input, inputOffset, numInputs);
+            return kernel.dot(floatRow, 0, input, inputOffset, numInputs);
+        }
+
+        /**
+         * Computes the dot products of the row last read with 'count'
+         * input vectors from 'inputOffset', storing them numNeurons apart
+         * from 'sumOffset'.
+         */
+        void dot(double inputs[], int inputOffset, int count,
+                double sums[], int sumOffset)
+        {
+            if(doubles != null)
+                batchKernel.dot(row, 0, inputs, inputOffset, numInputs,
+                        count, numInputs, sums, sumOffset, numNeurons);
+            else if(precision == Precision.FLOAT)
+                batchKernel.dotFloat(floatRow, 0, inputs, inputOffset, numInputs,
+                        count, numInputs, sums, sumOffset, numNeurons);
+            else
+                batchKernel.dot(floatRow, 0, inputs, inputOffset, numInputs,
+                        count, numInputs, sums, sumOffset, numNeurons);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import jneuralnet.core.activation.AbstractActivation;
+import jneuralnet.core.preprocessor.AbstractInputPreprocessor;
+import jneuralnet.core.preprocessor.AbstractOutputPreprocessor;
+import jneuralnet.core.training.TrainingSet;
+
+/**
+ * Reads a saved network straight into a compiled network whose dense
+ * layers are kept off the heap. Every dense layer is copied into an
+ * {@link OffHeapLayer}, or a {@link SparseLayer} if mostly zero, as soon as
+ * it has been read and replaced in the network by a placeholder of a single
+ * weight, so that the weights and optimizer state of only one layer are on
+ * the heap at a time. Training sets are likewise replaced by empty ones
+ * once read.
+ *
+ * <p>The network read is only a skeleton and is discarded once compiled.
+ *
+ * @author Ragha
+ * @see NeuralNetwork#loadOffHeap(String)
+ * @version 1.0
+ */
+class OffHeapNetworkLoader extends ObjectInputStream
+{
+    /**
+     * The compiled copy of every dense layer read, by its placeholder.
+     */
+    private final Map<DenseLayer, WeightMatrix> compiledLayers =
+            new IdentityHashMap<DenseLayer, WeightMatrix>();
+
+    /**
+     * @param in The stream of the saved network.
+     * @throws IOException If the stream header cannot be read.
+     */
+    OffHeapNetworkLoader(InputStream in) throws IOException
+    {
+        super(in);
+        enableResolveObject(true);
+    }
+
+    @Override
+    protected Object resolveObject(Object obj) throws IOException
+    {
+        if(obj instanceof DenseLayer)
+        {
+            DenseLayer dense = (DenseLayer) obj;
+            double density = (double) dense.getNumNonZeroWeights()
+                    / ((double) dense.getNumNeurons() * dense.getNumInputs());
+
+            DenseLayer placeholder = new DenseLayer(1, 1);
+            compiledLayers.put(placeholder, density <= SparseLayer.MAX_DENSITY
+                    ? new SparseLayer(dense) : new OffHeapLayer(dense));
+            return placeholder;
+        }
+        if(obj instanceof TrainingSet)
+            return new TrainingSet();
+        return obj;
+    }
+
+    /**
+     * Reads the saved network and compiles it.
+     *
+     * @return The compiled network, to be closed once no longer needed.
+     * @throws IOException If some I/O error occurs or the stream is corrupt.
+     */
+    CompiledNetwork readCompiledNetwork() throws IOException
+    {
+        try
+        {
+            NeuralNetwork net = (NeuralNetwork) readObject();
+            ArrayList<NeuronLayer> netLayers = CompiledNetwork.getLayers(net);
+            WeightMatrix layers[] = new WeightMatrix[netLayers.size()];
+            for(int l=0; l<layers.length; l++)
+            {
+                layers[l] = compiledLayers.get(netLayers.get(l).getDenseLayer());
+                if(layers[l] == null)
+                    throw new IOException("Neural Network file is corrupt");
+            }
+
+            Object frozen[] = CompiledNetwork.freeze(net);
+            CompiledNetwork compiled = new CompiledNetwork(net.getNumInputs(),
+                    layers, (AbstractActivation[][]) frozen[0],
+                    (AbstractInputPreprocessor) frozen[1],
+                    (AbstractOutputPreprocessor) frozen[2]);
+            for(NeuronLayer layer : netLayers)
+                compiledLayers.remove(layer.getDenseLayer());
+            return compiled;
+        }
+        catch(ClassNotFoundException e)
+        {
+            throw new IOException("Neural Network file is corrupt");
+        }
+        catch(ClassCastException e)
+        {
+            throw new IOException("Neural Network file is corrupt");
+        }
+        catch(IllegalStateException e)
+        {
+            throw new IOException("Neural Network file is corrupt");
+        }
+        finally
+        {
+            //layers read but not compiled, e.g, on a failed read...
+            for(WeightMatrix layer : compiledLayers.values())
+            {
+                if(layer instanceof OffHeapLayer)
+                    ((OffHeapLayer) layer).close();
+            }
+            compiledLayers.clear();
+        }
+    }
+}
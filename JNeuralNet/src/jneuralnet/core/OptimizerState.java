@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * The training state kept by the learning algos for every weight and bias of
+ * a <code>DenseLayer</code>, such as the learning rates and the previous
+ * weight changes. Every {@link Slot} is a <tt>double[]</tt> aligned to the
+ * parameter index of the layer, allocated only once it is needed. Until then
+ * every parameter reads the default value of the slot, so a layer trained by
+ * an algo that needs no state, or used only for inference, costs nothing.
+ *
+ * <p>A learning algo declares the slots it writes through
+ * {@link jneuralnet.core.learning.AbstractLearningAlgo#getOptimizerSlots() getOptimizerSlots()},
+ * and those are allocated before it adapts the layer. The state is
+ * serialized along with the layer, so training can be resumed from a saved
+ * network.
+ *
+ * @author Ragha
+ * @see DenseLayer#getOptimizerState()
+ * @version 1.0
+ */
+public final class OptimizerState implements Serializable
+{
+    private static final long serialVersionUID = 2009112602L;
+
+    /**
+     * The kinds of state kept per parameter.
+     */
+    public enum Slot
+    {
+        /**
+         * The learning rate, adapted when dynamic learning is used.
+         */
+        LEARNING_RATE(DenseLayer.DEFAULT_LEARNING_RATE),
+
+        /**
+         * The momentum applied to the previous weight change.
+         */
+        MOMENTUM(DenseLayer.DEFAULT_MOMENTUM),
+
+        /**
+         * The weight change made for the previous pattern.
+         */
+        PREV_WEIGHT_CHANGE(0.0),
+
+        /**
+         * The error gradient of the previous pattern, as used by QuickProp.
+         */
+        PREV_ERR_GRADIENT(0.0),
+
+        /**
+         * The sign of the error gradient of the previous pattern, as used by
+         * dynamic learning rates: 1 if it was positive or zero, -1 if it was
+         * negative. This is the <i>last error gradient positive</i> flag of a
+         * connection, kept apart so that setting it leaves the gradient of
+         * QuickProp alone.
+         */
+        LAST_ERR_GRADIENT_SIGN(1.0);
+
+        private final double defaultValue;
+
+        private Slot(double defaultValue)
+        {
+            this.defaultValue = defaultValue;
+        }
+
+        /**
+         * @return The value of every parameter until the slot is written.
+         */
+        public double getDefaultValue()
+        {
+            return defaultValue;
+        }
+    }
+
+    private final int numParameters;
+
+    /**
+     * The values of every slot indexed by ordinal, null until allocated.
+     */
+    private final double values[][] = new double[Slot.values().length][];
+
+    /**
+     * Creates the state of a layer with no slot allocated.
+     *
+     * @param numParameters The number of weights and biases of the layer.
+     * @throws IllegalArgumentException If numParameters is less than 1.
+     */
+    public OptimizerState(int numParameters) throws IllegalArgumentException
+    {
+        if(numParameters < 1)
+        {
+            throw new IllegalArgumentException("OptimizerState cannot have "
+                    + numParameters + " parameters...");
+        }
+        this.numParameters = numParameters;
+    }
+
+    /**
+     * @return The number of parameters every slot holds.
+     */
+    public int getNumParameters()
+    {
+        return numParameters;
+    }
+
+    /**
+     * @return true if the slot has been allocated.
+     */
+    public boolean isAllocated(Slot slot)
+    {
+        return values[slot.ordinal()] != null;
+    }
+
+    /**
+     * Allocates the given slots, the ones already allocated keep their
+     * values.
+     *
+     * @param slots The slots to be allocated.
+     */
+    public void allocate(Set<Slot> slots)
+    {
+        for(Slot slot : slots)
+            getValues(slot);
+    }
+
+    /**
+     * Releases a slot, every parameter reading the default value again.
+     *
+     * @param slot The slot to be released.
+     */
+    public void release(Slot slot)
+    {
+        values[slot.ordinal()] = null;
+    }
+
+    /**
+     * Gives direct access to the values of a slot, allocating it if needed.
+     * This is meant for learning algos working on a whole layer at once.
+     *
+     * @param slot The slot to be accessed.
+     * @return The values of the slot indexed by parameter.
+     */
+    public double[] getValues(Slot slot)
+    {
+        double v[] = values[slot.ordinal()];
+        if(v == null)
+        {
+            v = new double[numParameters];
+            if(slot.getDefaultValue() != 0.0)
+                Arrays.fill(v, slot.getDefaultValue());
+            values[slot.ordinal()] = v;
+        }
+        return v;
+    }
+
+    /**
+     * @return The value of the parameter in the slot, the default value of
+     * the slot if it has not been allocated.
+     */
+    public double get(Slot slot, int param)
+    {
+        double v[] = values[slot.ordinal()];
+        return v == null ? slot.getDefaultValue() : v[param];
+    }
+
+    /**
+     * Sets the value of the parameter in the slot, allocating it if needed.
+     */
+    public void set(Slot slot, int param, double value)
+    {
+        getValues(slot)[param] = value;
+    }
+
+    /**
+     * @return The number of bytes taken by the allocated slots.
+     */
+    public long getNumBytes()
+    {
+        long bytes = 0;
+        for(double v[] : values)
+        {
+            if(v != null)
+                bytes += 8L * v.length;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core;
+
+/**
+ * The numeric precision used to store the weights of a <code>DenseLayer</code>
+ * and to accumulate its weighted sums. Single precision halves the memory
+ * and memory bandwidth used by the weights at the cost of accuracy.
+ *
+ * @author Ragha
+ * @see NeuralNetwork#setPrecision(jneuralnet.core.Precision)
+ * @see DenseLayer#setPrecision(jneuralnet.core.Precision)
+ * @version 1.0
+ */
+public enum Precision
+{
+    /**
+     * Weights are stored and sums are accumulated as <tt>double</tt>.
+     */
+    DOUBLE,
+
+    /**
+     * Weights are stored and sums are accumulated as <tt>float</tt>.
+     */
+    FLOAT,
+
+    /**
+     * Weights are stored as <tt>float</tt> while sums are accumulated
+     * as <tt>double</tt>.
+     */
+    FLOAT_DOUBLE_ACCUMULATION;
+
+    /**
+     * @return true if the weights are stored as <tt>float</tt>.
+     */
+    public boolean isFloatStorage()
+    {
+        return this != DOUBLE;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core;
+
+/**
+ * The accuracy of a {@link QuantizedNetwork} compared with the network it
+ * was quantized from, on a test set. The errors are mean squared errors
+ * against the target outputs of the test patterns, averaged over the
+ * patterns and outputs, so they do not depend on the cost function of the
+ * network.
+ *
+ * @author Ragha
+ * @see QuantizedNetwork#compareWith(jneuralnet.core.NeuralNetwork, jneuralnet.core.training.TrainingSet)
+ * @version 1.0
+ */
+public class QuantizationReport
+{
+    private final int numPatterns;
+    private double errorBefore;
+    private double errorAfter;
+    private double meanDifference;
+    private double maxDifference;
+    private int sameArgMax;
+    private final long bytesBefore;
+    private final long bytesAfter;
+
+    /**
+     * @param numOutputs The number of outputs of the networks.
+     * @param targets The target outputs of the test patterns, row major.
+     * @param expected The outputs of the original network, row major.
+     * @param actual The outputs of the quantized network, row major.
+     * @param bytesBefore The bytes taken by the weights and biases of the
+     * original network.
+     * @param bytesAfter The bytes taken by the quantized network.
+     */
+    QuantizationReport(int numOutputs, double targets[], double expected[],
+            double actual[], long bytesBefore, long bytesAfter)
+    {
+        this.numPatterns = targets.length / numOutputs;
+        this.bytesBefore = bytesBefore;
+        this.bytesAfter = bytesAfter;
+
+        for(int p=0; p<numPatterns; p++)
+        {
+            int expectedMax = 0, actualMax = 0;
+            for(int o=0; o<numOutputs; o++)
+            {
+                int k = p * numOutputs + o;
+                double e = expected[k] - targets[k];
+                double a = actual[k] - targets[k];
+                double diff = Math.abs(actual[k] - expected[k]);
+                errorBefore += e * e;
+                errorAfter += a * a;
+                meanDifference += diff;
+                maxDifference = Math.max(maxDifference, diff);
+                if(expected[k] > expected[p * numOutputs + expectedMax])
+                    expectedMax = o;
+                if(actual[k] > actual[p * numOutputs + actualMax])
+                    actualMax = o;
+            }
+            if(expectedMax == actualMax)
+                sameArgMax++;
+        }
+        errorBefore /= targets.length;
+        errorAfter /= targets.length;
+        meanDifference /= targets.length;
+    }
+
+    /**
+     * @return The number of test patterns compared on.
+     */
+    public int getNumPatterns()
+    {
+        return numPatterns;
+    }
+
+    /**
+     * @return The mean squared error of the original network.
+     */
+    public double getErrorBefore()
+    {
+        return errorBefore;
+    }
+
+    /**
+     * @return The mean squared error of the quantized network.
+     */
+    public double getErrorAfter()
+    {
+        return errorAfter;
+    }
+
+    /**
+     * @return The mean absolute difference between the outputs of the
+     * original and quantized networks.
+     */
+    public double getMeanDifference()
+    {
+        return meanDifference;
+    }
+
+    /**
+     * @return The largest absolute difference between an output of the
+     * original and quantized networks.
+     */
+    public double getMaxDifference()
+    {
+        return maxDifference;
+    }
+
+    /**
+     * @return The fraction of the test patterns for which both networks give
+     * their largest output on the same neuron, i.e, would predict the same
+     * class.
+     */
+    public double getArgMaxAgreement()
+    {
+        return (double) sameArgMax / numPatterns;
+    }
+
+    /**
+     * @return The bytes taken by the weights and biases of the original
+     * network in double precision.
+     */
+    public long getBytesBefore()
+    {
+        return bytesBefore;
+    }
+
+    /**
+     * @return The bytes taken by the weights, scales and biases of the
+     * quantized network.
+     */
+    public long getBytesAfter()
+    {
+        return bytesAfter;
+    }
+
+    /**
+     * @return The factor by which quantization reduced the memory taken.
+     */
+    public double getCompression()
+    {
+        return (double) bytesBefore / bytesAfter;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("error: %.6f -> %.6f%n"
+                + "output difference: mean %.6f, max %.6f%n"
+                + "argmax agreement: %.4f%n"
+                + "bytes: %d -> %d (%.2fx smaller)",
+                errorBefore, errorAfter, meanDifference, maxDifference,
+                getArgMaxAgreement(), bytesBefore, bytesAfter, getCompression());
+    }
+}
@@ -0,0 +1,429 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * An immutable copy of the weights of a <code>DenseLayer</code> quantized
+ * to 8 bit integers, for inference only. A weight is stored as
+ * <tt>round(w / weightScale)</tt> in [-127, 127], with a scale per neuron
+ * or a single scale for the whole layer, and takes an eighth of the memory
+ * of a double.
+ *
+ * <p>The inputs are quantized the same way with a fixed input scale, picked
+ * from the range of the inputs seen during calibration, inputs out of that
+ * range being clipped. The weighted sum of a neuron is then an exact integer
+ * dot product, scaled back by <tt>weightScale * inputScale</tt> before the
+ * bias, which is kept in double precision, is subtracted. Since integer sums
+ * do not depend on their order the batch kernel gives exactly the results of
+ * the single vector kernel.
+ *
+ * <p>Use {@link QuantizedNetwork#quantize(jneuralnet.core.NeuralNetwork, jneuralnet.core.training.TrainingSet, boolean) QuantizedNetwork.quantize(...)}
+ * to quantize all the layers of a network.
+ *
+ * @author Ragha
+ * @see QuantizedNetwork
+ * @see DenseLayer
+ * @version 1.0
+ */
+public final class QuantizedLayer implements WeightMatrix, Serializable
+{
+    private static final long serialVersionUID = 2009112201L;
+
+    /**
+     * The largest magnitude of a quantized weight or input.
+     */
+    public static final int MAX_LEVEL = 127;
+
+    /**
+     * The most inputs a neuron may have without the integer sums overflowing.
+     */
+    public static final int MAX_INPUTS = Integer.MAX_VALUE / (MAX_LEVEL * MAX_LEVEL);
+
+    private final int numNeurons;
+    private final int numInputs;
+    private final boolean perRowScales;
+
+    /**
+     * The weight of input i of neuron n is weights[n * numInputs + i] * weightScales[n].
+     */
+    private final byte weights[];
+    private final float weightScales[];
+    private final float inputScale;
+    private final double bias[];
+
+    /**
+     * weightScales[n] * inputScale, the value of a unit of the integer sum.
+     */
+    private final double sumScales[];
+
+    /**
+     * The quantized inputs, per thread.
+     */
+    private static final ThreadLocal<byte[][]> scratch = new ThreadLocal<byte[][]>() {
+        @Override
+        protected byte[][] initialValue() {
+            return new byte[][] { new byte[0] };
+        }
+    };
+
+    /**
+     * The quantized inputs of the batch kernel packed in pairs of rows,
+     * per thread.
+     */
+    private static final ThreadLocal<long[][]> packedScratch = new ThreadLocal<long[][]>() {
+        @Override
+        protected long[][] initialValue() {
+            return new long[][] { new long[0] };
+        }
+    };
+
+    /**
+     * Quantizes the weights of a dense layer.
+     *
+     * @param layer The dense layer to be quantized.
+     * @param inputRange The largest magnitude of the inputs to be represented,
+     * larger inputs are clipped to it.
+     * @param perRowScales true to pick a scale for the weights of every
+     * neuron, false for a single scale for the whole layer.
+     * @throws IllegalArgumentException If the input range is not positive or
+     * the layer has more than {@link #MAX_INPUTS} inputs.
+     */
+    public QuantizedLayer(DenseLayer layer, double inputRange, boolean perRowScales)
+            throws IllegalArgumentException
+    {
+        if(!(inputRange > 0.0) || Double.isInfinite(inputRange))
+            throw new IllegalArgumentException("Input range must be a positive number");
+        if(layer.getNumInputs() > MAX_INPUTS)
+            throw new IllegalArgumentException("Layer has more than " + MAX_INPUTS + " inputs");
+
+        numNeurons = layer.getNumNeurons();
+        numInputs = layer.getNumInputs();
+        this.perRowScales = perRowScales;
+        inputScale = (float) (inputRange / MAX_LEVEL);
+        bias = layer.getBiases().clone();
+
+        double maxAbs[] = new double[numNeurons];
+        double layerMax = 0.0;
+        for(int n=0; n<numNeurons; n++)
+        {
+            for(int i=0; i<numInputs; i++)
+                maxAbs[n] = Math.max(maxAbs[n], Math.abs(layer.getWeight(n, i)));
+            layerMax = Math.max(layerMax, maxAbs[n]);
+        }
+
+        weightScales = new float[numNeurons];
+        for(int n=0; n<numNeurons; n++)
+        {
+            double max = perRowScales ? maxAbs[n] : layerMax;
+            weightScales[n] = max > 0.0 ? (float) (max / MAX_LEVEL) : 1.0f;
+        }
+
+        weights = new byte[numNeurons * numInputs];
+        for(int n=0; n<numNeurons; n++)
+        {
+            double inv = 1.0 / weightScales[n];
+            for(int i=0; i<numInputs; i++)
+                weights[n * numInputs + i] = quantize(layer.getWeight(n, i), inv);
+        }
+        sumScales = getSumScales(weightScales, inputScale);
+    }
+
+    private QuantizedLayer(int numNeurons, int numInputs, boolean perRowScales,
+            byte weights[], float weightScales[], float inputScale, double bias[])
+    {
+        this.numNeurons = numNeurons;
+        this.numInputs = numInputs;
+        this.perRowScales = perRowScales;
+        this.weights = weights;
+        this.weightScales = weightScales;
+        this.inputScale = inputScale;
+        this.bias = bias;
+        sumScales = getSumScales(weightScales, inputScale);
+    }
+
+    private static double[] getSumScales(float weightScales[], float inputScale)
+    {
+        double scales[] = new double[weightScales.length];
+        for(int n=0; n<scales.length; n++)
+            scales[n] = (double) weightScales[n] * inputScale;
+        return scales;
+    }
+
+    /**
+     * @return round(value * inverseScale) clipped to [-MAX_LEVEL, MAX_LEVEL].
+     */
+    private static byte quantize(double value, double inverseScale)
+    {
+        double level = Math.floor(value * inverseScale + 0.5);
+        if(level > MAX_LEVEL)
+            return MAX_LEVEL;
+        if(level < -MAX_LEVEL)
+            return -MAX_LEVEL;
+        return (byte) level;
+    }
+
+    public int getNumNeurons()
+    {
+        return numNeurons;
+    }
+
+    public int getNumInputs()
+    {
+        return numInputs;
+    }
+
+    /**
+     * @return true if the weights of every neuron have a scale of their own,
+     * false if the layer has a single scale.
+     */
+    public boolean hasPerRowScales()
+    {
+        return perRowScales;
+    }
+
+    /**
+     * @return The value of a unit of the quantized inputs.
+     */
+    public double getInputScale()
+    {
+        return inputScale;
+    }
+
+    /**
+     * @param neuron The index of the neuron.
+     * @return The value of a unit of the quantized weights of the neuron.
+     */
+    public double getWeightScale(int neuron)
+    {
+        return weightScales[neuron];
+    }
+
+    /**
+     * @param neuron The index of the neuron.
+     * @param input The index of the input.
+     * @return The weight as represented in this layer.
+     */
+    public double getWeight(int neuron, int input)
+    {
+        return weights[neuron * numInputs + input] * (double) weightScales[neuron];
+    }
+
+    /**
+     * @return The number of bytes taken by the weights, scales and biases.
+     */
+    public long getNumBytes()
+    {
+        return weights.length + 4L * (perRowScales ? numNeurons : 1) + 4L + 8L * numNeurons;
+    }
+
+    public void computeSums(double input[], double sums[])
+    {
+        byte q[] = getScratch(numInputs);
+        quantizeInputs(input, numInputs, q);
+        for(int n=0; n<numNeurons; n++)
+            sums[n] = dot(n, q, 0) * sumScales[n] - bias[n];
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The whole batch is quantized first and its rows are packed in
+     * pairs into longs, <tt>x0 + (x1 &lt;&lt; 32)</tt>, so that a single
+     * multiply-add of a weight accumulates the sums of both rows,
+     * <tt>S0 + (S1 &lt;&lt; 32)</tt>. The sums fit in an int, see
+     * {@link #MAX_INPUTS}, so both are recovered exactly. The weights of a
+     * neuron are then applied to every pair of rows while they are in the
+     * cache.
+     */
+    public void computeSums(double inputs[], int numRows, double sums[])
+    {
+        byte q[] = getScratch(numRows * numInputs);
+        quantizeInputs(inputs, numRows * numInputs, q);
+
+        int numPairs = numRows / 2;
+        long packed[] = getPackedScratch(numPairs * numInputs);
+        for(int p=0; p<numPairs; p++)
+        {
+            int x0 = 2 * p * numInputs, x1 = x0 + numInputs, k = p * numInputs;
+            for(int i=0; i<numInputs; i++)
+                packed[k + i] = q[x0 + i] + ((long) q[x1 + i] << 32);
+        }
+
+        for(int n=0; n<numNeurons; n++)
+        {
+            int w = n * numInputs;
+            for(int p=0; p<numPairs; p++)
+            {
+                int k = p * numInputs;
+                long acc = 0;
+                for(int i=0; i<numInputs; i++)
+                    acc += weights[w + i] * packed[k + i];
+                int sum0 = (int) acc;
+                int sum1 = (int) ((acc - sum0) >> 32);
+                sums[2 * p * numNeurons + n] = sum0 * sumScales[n] - bias[n];
+                sums[(2 * p + 1) * numNeurons + n] = sum1 * sumScales[n] - bias[n];
+            }
+            if(numRows % 2 != 0)
+            {
+                int r = numRows - 1;
+                sums[r * numNeurons + n] = dot(n, q, r * numInputs) * sumScales[n] - bias[n];
+            }
+        }
+    }
+
+    /**
+     * The integer dot product of the weights of a neuron and a quantized
+     * input vector.
+     */
+    private int dot(int neuron, byte q[], int offset)
+    {
+        int w = neuron * numInputs;
+        int acc = 0;
+        for(int i=0; i<numInputs; i++)
+            acc += weights[w + i] * q[offset + i];
+        return acc;
+    }
+
+    private void quantizeInputs(double inputs[], int length, byte q[])
+    {
+        double inv = 1.0 / inputScale;
+        for(int i=0; i<length; i++)
+            q[i] = quantize(inputs[i], inv);
+    }
+
+    private static byte[] getScratch(int length)
+    {
+        byte buffers[][] = scratch.get();
+        if(buffers[0].length < length)
+            buffers[0] = new byte[length];
+        return buffers[0];
+    }
+
+    private static long[] getPackedScratch(int length)
+    {
+        long buffers[][] = packedScratch.get();
+        if(buffers[0].length < length)
+            buffers[0] = new long[length];
+        return buffers[0];
+    }
+
+    /**
+     * Writes this layer in the format read by {@link #read(java.io.DataInputStream) read(...)}.
+     */
+    void write(DataOutputStream out) throws IOException
+    {
+        out.writeInt(numNeurons);
+        out.writeInt(numInputs);
+        out.writeBoolean(perRowScales);
+        out.writeFloat(inputScale);
+        for(int n=0; n<(perRowScales ? numNeurons : 1); n++)
+            out.writeFloat(weightScales[n]);
+        for(int n=0; n<numNeurons; n++)
+            out.writeDouble(bias[n]);
+        out.write(weights);
+    }
+
+    /**
+     * Reads a layer written by {@link #write(java.io.DataOutputStream) write(...)}.
+     *
+     * @throws IOException On some I/O error or if the data is corrupt.
+     */
+    static QuantizedLayer read(DataInputStream in) throws IOException
+    {
+        int numNeurons = in.readInt();
+        int numInputs = in.readInt();
+        if(numNeurons <= 0 || numInputs <= 0 || numInputs > MAX_INPUTS
+                || (long) numNeurons * numInputs > Integer.MAX_VALUE)
+            throw new IOException("Quantized layer is corrupt");
+
+        boolean perRowScales = in.readBoolean();
+        float inputScale = in.readFloat();
+        float weightScales[] = new float[numNeurons];
+        if(perRowScales)
+        {
+            for(int n=0; n<numNeurons; n++)
+                weightScales[n] = in.readFloat();
+        }
+        else
+            Arrays.fill(weightScales, in.readFloat());
+        double bias[] = new double[numNeurons];
+        for(int n=0; n<numNeurons; n++)
+            bias[n] = in.readDouble();
+        byte weights[] = new byte[numNeurons * numInputs];
+        in.readFully(weights);
+
+        return new QuantizedLayer(numNeurons, numInputs, perRowScales,
+                weights, weightScales, inputScale, bias);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "QuantizedLayer " + numNeurons + " x " + numInputs
+                + (perRowScales ? " per row scales" : " per layer scale");
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final QuantizedLayer other = (QuantizedLayer) obj;
+        if (this.numNeurons != other.numNeurons) {
+            return false;
+        }
+        if (this.numInputs != other.numInputs) {
+            return false;
+        }
+        if (this.perRowScales != other.perRowScales) {
+            return false;
+        }
+        if (!Arrays.equals(this.weights, other.weights)) {
+            return false;
+        }
+        if (!Arrays.equals(this.weightScales, other.weightScales)) {
+            return false;
+        }
+        if (Float.floatToIntBits(this.inputScale) != Float.floatToIntBits(other.inputScale)) {
+            return false;
+        }
+        if (!Arrays.equals(this.bias, other.bias)) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 5;
+        hash = 41 * hash + this.numNeurons;
+        hash = 41 * hash + this.numInputs;
+        hash = 41 * hash + (this.perRowScales ? 1 : 0);
+        hash = 41 * hash + Arrays.hashCode(this.weights);
+        hash = 41 * hash + Arrays.hashCode(this.weightScales);
+        hash = 41 * hash + Float.floatToIntBits(this.inputScale);
+        hash = 41 * hash + Arrays.hashCode(this.bias);
+        return hash;
+    }
+}
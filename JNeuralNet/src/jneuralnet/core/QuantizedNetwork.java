@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import jneuralnet.core.activation.AbstractActivation;
+import jneuralnet.core.preprocessor.AbstractInputPreprocessor;
+import jneuralnet.core.preprocessor.AbstractOutputPreprocessor;
+import jneuralnet.core.training.TrainingPattern;
+import jneuralnet.core.training.TrainingSet;
+import jneuralnet.util.FilteredObjectInputStream;
+
+/**
+ * A trained <code>NeuralNetwork</code> quantized after training to 8 bit
+ * weights and activations, for inference only. Every layer is held as a
+ * {@link QuantizedLayer}, whose weighted sums are integer dot products of
+ * the quantized weights and the quantized inputs of the layer. The weights
+ * take an eighth of the memory they take in a network of double precision,
+ * so much larger hidden layers stay in the cache.
+ *
+ * <p>The range of the inputs of every layer is taken from a calibration set,
+ * which should be representative of the data to be scored, typically a
+ * sample of the training set. Inputs beyond the calibrated range are clipped.
+ * Use {@link #compareWith(jneuralnet.core.NeuralNetwork, jneuralnet.core.training.TrainingSet) compareWith(...)}
+ * to check the accuracy lost against the original network.
+ *
+ * <p>Predictions are made by the {@link CompiledNetwork} returned by
+ * {@link #getCompiledNetwork()}, so a quantized network is immutable and
+ * can be shared by any number of threads. It is stored by
+ * {@link #save(java.io.OutputStream) save(...)} in a compact binary form,
+ * about one byte per weight.
+ *
+ * @author Ragha
+ * @see QuantizedLayer
+ * @see NeuralNetwork#compile()
+ * @version 1.0
+ */
+public final class QuantizedNetwork
+{
+    /**
+     * Identifies the binary form, the bytes 'JNQ8'.
+     */
+    private static final int MAGIC = 0x4A4E5138;
+    private static final int VERSION = 1;
+
+    private final int numInputs;
+    private final QuantizedLayer layers[];
+    private final AbstractActivation activations[][];
+    private final AbstractInputPreprocessor inputPreprocessor;
+    private final AbstractOutputPreprocessor outputPreprocessor;
+    private final CompiledNetwork compiled;
+
+    private QuantizedNetwork(int numInputs, QuantizedLayer layers[],
+            AbstractActivation activations[][],
+            AbstractInputPreprocessor inputPreprocessor,
+            AbstractOutputPreprocessor outputPreprocessor)
+    {
+        this.numInputs = numInputs;
+        this.layers = layers;
+        this.activations = activations;
+        this.inputPreprocessor = inputPreprocessor;
+        this.outputPreprocessor = outputPreprocessor;
+        compiled = new CompiledNetwork(numInputs, layers.clone(), activations,
+                inputPreprocessor, outputPreprocessor);
+    }
+
+    /**
+     * Quantizes a trained network. The calibration patterns are fed forward
+     * through the network to find the largest magnitude of the inputs of every
+     * layer, the inputs are quantized over that range. The network is not
+     * modified.
+     *
+     * @param net The trained network.
+     * @param calibrationSet The patterns used to calibrate the input ranges,
+     * not preprocessed, i.e, as they would be passed to
+     * {@link NeuralNetwork#getOutput(java.lang.Double[]) getOutput(...)}.
+     * Only the input data of the patterns is used.
+     * @param perRowScales true to pick a scale for the weights of every neuron,
+     * false for a single scale per layer. Scales per neuron are more accurate
+     * when the weights of the neurons differ in magnitude.
+     * @return The quantized network.
+     * @throws IllegalArgumentException If the calibration set is empty or
+     * does not match the inputs of the network.
+     * @throws IllegalStateException If a layer of the network is not connected.
+     */
+    public static QuantizedNetwork quantize(NeuralNetwork net,
+            TrainingSet calibrationSet, boolean perRowScales)
+            throws IllegalArgumentException, IllegalStateException
+    {
+        if(calibrationSet.getPatternSetSize() == 0)
+            throw new IllegalArgumentException("Calibration set is empty");
+        ArrayList<NeuronLayer> netLayers = CompiledNetwork.getLayers(net);
+
+        double ranges[] = new double[netLayers.size()];
+        ActivationContext ctx = new ActivationContext(net);
+        double input[] = new double[net.getNumInputs()];
+        for(TrainingPattern pattern : calibrationSet.getTrainingPatterns())
+        {
+            if(pattern.getInputData().length != input.length) {
+                throw new IllegalArgumentException("Calibration pattern length "
+                        + "does not match num of inputs to the neural network");
+            }
+            pattern.getInputData(input);
+            if(net.getInputPreprocessor() != null)
+                net.getInputPreprocessor().process(input, input);
+            net.getOutputOnPreprocessedData(input, ctx);
+
+            for(int l=0; l<ranges.length; l++)
+            {
+                for(double x : ctx.getInputs(l))
+                    ranges[l] = Math.max(ranges[l], Math.abs(x));
+            }
+        }
+
+        QuantizedLayer layers[] = new QuantizedLayer[netLayers.size()];
+        for(int l=0; l<layers.length; l++)
+        {
+            //a layer whose inputs were all zero gets an arbitrary range...
+            double range = ranges[l] > 0.0 ? ranges[l] : 1.0;
+            layers[l] = new QuantizedLayer(netLayers.get(l).getDenseLayer(),
+                    range, perRowScales);
+        }
+
+        Object frozen[] = CompiledNetwork.freeze(net);
+        return new QuantizedNetwork(net.getNumInputs(), layers,
+                (AbstractActivation[][]) frozen[0],
+                (AbstractInputPreprocessor) frozen[1],
+                (AbstractOutputPreprocessor) frozen[2]);
+    }
+
+    /**
+     * @return The compiled network making the predictions of this network.
+     */
+    public CompiledNetwork getCompiledNetwork()
+    {
+        return compiled;
+    }
+
+    /**
+     * Gives the network's prediction for the input vector.
+     *
+     * @param input The input vector presented to the network.
+     * @return A new array holding the output vector of the network.
+     * @throws IllegalArgumentException If input length dosent match the num
+     * of inputs of the network.
+     * @see CompiledNetwork#getOutput(double[])
+     */
+    public double[] getOutput(double input[]) throws IllegalArgumentException
+    {
+        return compiled.getOutput(input);
+    }
+
+    /**
+     * @return The number of inputs to this network.
+     */
+    public int getNumInputs()
+    {
+        return numInputs;
+    }
+
+    /**
+     * @return The number of layers, i.e, hidden layers + 1.
+     */
+    public int getNumLayers()
+    {
+        return layers.length;
+    }
+
+    /**
+     * @param index The index of the layer, hidden layers are numbered from 0
+     * with the output layer last.
+     * @return The quantized weights of the layer.
+     * @throws IndexOutOfBoundsException If the index is out of range.
+     */
+    public QuantizedLayer getLayer(int index) throws IndexOutOfBoundsException
+    {
+        return layers[index];
+    }
+
+    /**
+     * @return The number of bytes taken by the weights, scales and biases
+     * of all the layers.
+     */
+    public long getNumBytes()
+    {
+        long bytes = 0;
+        for(QuantizedLayer layer : layers)
+            bytes += layer.getNumBytes();
+        return bytes;
+    }
+
+    /**
+     * Feeds the patterns of the test set through the original network and
+     * this network and compares their outputs.
+     *
+     * @param net The network this network was quantized from.
+     * @param testSet The patterns to compare on, not preprocessed.
+     * @return The comparison.
+     * @throws IllegalArgumentException If the test set is empty or does not
+     * match the topology of the networks.
+     */
+    public QuantizationReport compareWith(NeuralNetwork net, TrainingSet testSet)
+            throws IllegalArgumentException
+    {
+        int numPatterns = testSet.getPatternSetSize();
+        if(numPatterns == 0)
+            throw new IllegalArgumentException("Test set is empty");
+        if(net.getNumInputs() != numInputs || net.getNumOutputs() != compiled.getNumOutputs()) {
+            throw new IllegalArgumentException("Neural network does not "
+                    + "match the topology of the quantized network");
+        }
+
+        int numOutputs = compiled.getNumOutputs();
+        double inputs[] = new double[numPatterns * numInputs];
+        double targets[] = new double[numPatterns * numOutputs];
+        double input[] = new double[numInputs];
+        double target[] = new double[numOutputs];
+        for(int p=0; p<numPatterns; p++)
+        {
+            TrainingPattern pattern = testSet.getTrainingPattern(p);
+            if(pattern.getInputData().length != numInputs
+                    || pattern.getOutputData().length != numOutputs) {
+                throw new IllegalArgumentException("Test pattern length does "
+                        + "not match the inputs or outputs of the neural network");
+            }
+            pattern.getInputData(input);
+            pattern.getOutputData(target);
+            System.arraycopy(input, 0, inputs, p * numInputs, numInputs);
+            System.arraycopy(target, 0, targets, p * numOutputs, numOutputs);
+        }
+
+        double expected[] = new double[numPatterns * numOutputs];
+        double actual[] = new double[numPatterns * numOutputs];
+        net.compile().getOutputs(inputs, numPatterns, expected);
+        compiled.getOutputs(inputs, numPatterns, actual);
+
+        long floatBytes = 0;
+        for(QuantizedLayer layer : layers)
+            floatBytes += 8L * layer.getNumNeurons() * (layer.getNumInputs() + 1);
+
+        return new QuantizationReport(numOutputs, targets, expected, actual,
+                floatBytes, getNumBytes());
+    }
+
+    /**
+     * Writes this network in a compact binary form: a header, then the
+     * quantized weights, scales and biases of every layer and finally the
+     * serialized activation functions and preprocessors. The stream is
+     * flushed but not closed.
+     *
+     * @param out The stream to write to.
+     * @throws IOException On some I/O error.
+     * @see #load(java.io.InputStream)
+     */
+    public void save(OutputStream out) throws IOException
+    {
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(MAGIC);
+        dataOut.writeInt(VERSION);
+        dataOut.writeInt(numInputs);
+        dataOut.writeInt(layers.length);
+        for(QuantizedLayer layer : layers)
+            layer.write(dataOut);
+        dataOut.flush();
+
+        ObjectOutputStream objOut = new ObjectOutputStream(out);
+        objOut.writeObject(new Object[] {
+            activations, inputPreprocessor, outputPreprocessor });
+        objOut.flush();
+    }
+
+    /**
+     * Reads a network written by {@link #save(java.io.OutputStream) save(...)}.
+     * The stream is not closed.
+     *
+     * @param in The stream to read from.
+     * @return The quantized network.
+     * @throws IOException If some I/O error occurs or if the data is corrupt.
+     */
+    public static QuantizedNetwork load(InputStream in) throws IOException
+    {
+        DataInputStream dataIn = new DataInputStream(in);
+        if(dataIn.readInt() != MAGIC)
+            throw new IOException("Not a quantized neural network");
+        if(dataIn.readInt() != VERSION)
+            throw new IOException("Unsupported quantized neural network version");
+
+        int numInputs = dataIn.readInt();
+        int numLayers = dataIn.readInt();
+        if(numInputs <= 0 || numLayers <= 0)
+            throw new IOException("Quantized neural network file is corrupt");
+        QuantizedLayer layers[] = new QuantizedLayer[numLayers];
+        int prevSize = numInputs;
+        for(int l=0; l<numLayers; l++)
+        {
+            layers[l] = QuantizedLayer.read(dataIn);
+            if(layers[l].getNumInputs() != prevSize)
+                throw new IOException("Quantized neural network file is corrupt");
+            prevSize = layers[l].getNumNeurons();
+        }
+
+        AbstractActivation acts[][];
+        AbstractInputPreprocessor ip;
+        AbstractOutputPreprocessor op;
+        try
+        {
+            //only activations and preprocessors, the file may not be trusted...
+            Object parts[] = (Object[]) new FilteredObjectInputStream(in,
+                    AbstractActivation.class, AbstractInputPreprocessor.class,
+                    AbstractOutputPreprocessor.class).readObject();
+            acts = (AbstractActivation[][]) parts[0];
+            ip = (AbstractInputPreprocessor) parts[1];
+            op = (AbstractOutputPreprocessor) parts[2];
+        }
+        catch(ClassNotFoundException e)
+        {
+            throw new IOException("Quantized neural network file is corrupt");
+        }
+        catch(ClassCastException e)
+        {
+            throw new IOException("Quantized neural network file is corrupt");
+        }
+
+        if(acts.length != numLayers)
+            throw new IOException("Quantized neural network file is corrupt");
+        for(int l=0; l<numLayers; l++)
+        {
+            if(acts[l].length != layers[l].getNumNeurons())
+                throw new IOException("Quantized neural network file is corrupt");
+        }
+        return new QuantizedNetwork(numInputs, layers, acts, ip, op);
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("QuantizedNetwork ").append(numInputs);
+        for(QuantizedLayer layer : layers)
+            sb.append("-").append(layer.getNumNeurons());
+        return sb.append(", ").append(getNumBytes()).append(" bytes").toString();
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * An immutable copy of the weights of a <code>DenseLayer</code> in
+ * compressed sparse row (CSR) form, i.e, only the non zero weights of every
+ * neuron are kept along with the index of their input. The weighted sums
+ * then cost a multiply-add per non zero weight instead of one per
+ * connection.
+ *
+ * <p>A layer is worth storing in this form once most of its weights are
+ * zero, typically after pruning. {@link NeuralNetwork#compile()} does so for
+ * every layer whose density is at most {@link #MAX_DENSITY}.
+ *
+ * <p>The weights are kept, and the sums accumulated, in double precision
+ * whatever the precision of the dense layer. The non zero weights of a
+ * neuron are summed from left to right.
+ *
+ * @author Ragha
+ * @see DenseLayer
+ * @see jneuralnet.core.pruning.MagnitudePruner
+ * @version 1.0
+ */
+public final class SparseLayer implements WeightMatrix, Serializable
+{
+    private static final long serialVersionUID = 2009111001L;
+
+    /**
+     * The largest fraction of non zero weights at which the sparse form
+     * is used. The sparse kernels read an index along with every weight,
+     * which makes them about one and a half times as slow per weight as
+     * the dense kernels, so the sparse form pays off below a density of
+     * about two thirds.
+     */
+    public static final double MAX_DENSITY = 0.5;
+
+    /**
+     * The least number of non zero weights per input for which the batch
+     * kernel transposes the batch.
+     */
+    private static final int MIN_TRANSPOSE_REUSE = 4;
+
+    private final int numNeurons;
+    private final int numInputs;
+
+    /**
+     * The non zero weights of neuron n are at [rowStarts[n], rowStarts[n + 1]).
+     */
+    private final int rowStarts[];
+    private final int columns[];
+    private final double values[];
+    private final double bias[];
+
+    /**
+     * The transposed batch and the sums of a neuron, per thread.
+     */
+    private static final ThreadLocal<double[][]> scratch = new ThreadLocal<double[][]>() {
+        @Override
+        protected double[][] initialValue() {
+            return new double[][] { new double[0], new double[0] };
+        }
+    };
+
+    /**
+     * Creates a sparse copy of the weights and biases of a dense layer,
+     * dropping every weight that is zero.
+     *
+     * @param layer The dense layer to be copied.
+     */
+    public SparseLayer(DenseLayer layer)
+    {
+        numNeurons = layer.getNumNeurons();
+        numInputs = layer.getNumInputs();
+        int nonZeros = layer.getNumNonZeroWeights();
+
+        rowStarts = new int[numNeurons + 1];
+        columns = new int[nonZeros];
+        values = new double[nonZeros];
+        bias = layer.getBiases().clone();
+
+        int k = 0;
+        for(int n=0; n<numNeurons; n++)
+        {
+            rowStarts[n] = k;
+            for(int i=0; i<numInputs; i++)
+            {
+                double w = layer.getWeight(n, i);
+                if(w != 0.0)
+                {
+                    columns[k] = i;
+                    values[k] = w;
+                    k++;
+                }
+            }
+        }
+        rowStarts[numNeurons] = k;
+    }
+
+    public int getNumNeurons()
+    {
+        return numNeurons;
+    }
+
+    public int getNumInputs()
+    {
+        return numInputs;
+    }
+
+    /**
+     * @return The number of non zero weights stored.
+     */
+    public int getNumNonZeros()
+    {
+        return values.length;
+    }
+
+    /**
+     * @return The fraction of the weights that are non zero.
+     */
+    public double getDensity()
+    {
+        return (double) values.length / ((double) numNeurons * numInputs);
+    }
+
+    public void computeSums(double input[], double sums[])
+    {
+        computeSums(input, 0, sums, 0);
+    }
+
+    /**
+     * Computes the weighted sums of the input vector at 'inputOffset'
+     * into the sums from 'sumOffset'.
+     */
+    private void computeSums(double input[], int inputOffset,
+            double sums[], int sumOffset)
+    {
+        for(int n=0; n<numNeurons; n++)
+        {
+            double sum = 0.0;
+            for(int k=rowStarts[n]; k<rowStarts[n + 1]; k++)
+                sum += values[k] * input[inputOffset + columns[k]];
+            sums[sumOffset + n] = sum - bias[n];
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The batch is transposed, so that the values of an input for all
+     * the rows are adjacent, and every non zero weight then updates the
+     * sums of all the rows with a single contiguous loop. A layer with
+     * fewer non zero weights than {@link #MIN_TRANSPOSE_REUSE} times its
+     * inputs is not worth transposing the batch for, its rows are fed
+     * forward one at a time instead.
+     */
+    public void computeSums(double inputs[], int numRows, double sums[])
+    {
+        if(values.length < MIN_TRANSPOSE_REUSE * numInputs)
+        {
+            for(int r=0; r<numRows; r++)
+                computeSums(inputs, r * numInputs, sums, r * numNeurons);
+            return;
+        }
+
+        double buffers[][] = scratch.get();
+        if(buffers[0].length < numRows * numInputs)
+            buffers[0] = new double[numRows * numInputs];
+        if(buffers[1].length < numRows)
+            buffers[1] = new double[numRows];
+        double transposed[] = buffers[0];
+        double acc[] = buffers[1];
+
+        for(int r=0; r<numRows; r++)
+        {
+            int x = r * numInputs;
+            for(int i=0; i<numInputs; i++)
+                transposed[i * numRows + r] = inputs[x + i];
+        }
+
+        for(int n=0; n<numNeurons; n++)
+        {
+            Arrays.fill(acc, 0, numRows, 0.0);
+            for(int k=rowStarts[n]; k<rowStarts[n + 1]; k++)
+            {
+                double w = values[k];
+                int col = columns[k] * numRows;
+                for(int r=0; r<numRows; r++)
+                    acc[r] += w * transposed[col + r];
+            }
+            for(int r=0; r<numRows; r++)
+                sums[r * numNeurons + n] = acc[r] - bias[n];
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SparseLayer " + numNeurons + " x " + numInputs
+                + " " + values.length + " non zeros";
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final SparseLayer other = (SparseLayer) obj;
+        if (this.numNeurons != other.numNeurons) {
+            return false;
+        }
+        if (this.numInputs != other.numInputs) {
+            return false;
+        }
+        if (!Arrays.equals(this.rowStarts, other.rowStarts)) {
+            return false;
+        }
+        if (!Arrays.equals(this.columns, other.columns)) {
+            return false;
+        }
+        if (!Arrays.equals(this.values, other.values)) {
+            return false;
+        }
+        if (!Arrays.equals(this.bias, other.bias)) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 53 * hash + this.numNeurons;
+        hash = 53 * hash + this.numInputs;
+        hash = 53 * hash + Arrays.hashCode(this.rowStarts);
+        hash = 53 * hash + Arrays.hashCode(this.columns);
+        hash = 53 * hash + Arrays.hashCode(this.values);
+        hash = 53 * hash + Arrays.hashCode(this.bias);
+        return hash;
+    }
+}
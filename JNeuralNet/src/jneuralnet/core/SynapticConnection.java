@@ -22,12 +22,19 @@ import jneuralnet.core.learning.AbstractBPBasedAlgo;
  * A <tt>SynapticConnection</tt> is defined by the <tt>weight</tt>
  * it encapsulates.
  *
+ * <p>The connections of a neural network are stored in the
+ * <code>DenseLayer</code> of every <code>NeuronLayer</code>. The connections
+ * handed out by a <code>Neuron</code> are views over that storage, i.e,
+ * reads and writes go directly to the layer. A connection created with
+ * one of the public constructors holds its own values.
+ *
  * <p>This class extends the <tt>Bufferable</tt> and hence supports
  * dynamic property addition.
  *
  * @author Ragha
  * @see Bufferable
- * @version 1.0
+ * @see DenseLayer
+ * @version 1.1
  */
 public class SynapticConnection extends Bufferable implements Serializable
 {
@@ -38,6 +45,17 @@ public class SynapticConnection extends Bufferable implements Serializable
      */
     private double weight;
 
+    /**
+     * The layer backing this connection, null if the connection
+     * holds its own values.
+     */
+    private DenseLayer store;
+
+    /**
+     * The parameter index of this connection in the backing layer.
+     */
+    private int param;
+
     /**
      * Creates a syanptic connection with a random weight value
      * between min and max.
@@ -74,13 +92,34 @@ public class SynapticConnection extends Bufferable implements Serializable
         this(-1, 1);
     }
 
+    /**
+     * Creates a view of a parameter in a dense layer.
+     *
+     * @param store The layer holding the connection.
+     * @param param The parameter index of the connection.
+     * @see DenseLayer#getConnection(int)
+     */
+    SynapticConnection(DenseLayer store, int param)
+    {
+        this.store = store;
+        this.param = param;
+    }
+
     /**
      * Sets the weight of this synapse.
      * @param weight The value to be set.
      */
     public void setWeight(double weight)
     {        
-        set("weight", weight);
+        if(store != null)
+        {
+            double old = store.getParameter(param);
+            store.setParameter(param, weight);
+            if(isFiring("weight"))
+                pcs.firePropertyChange("weight", old, weight);
+        }
+        else
+            set("weight", weight);
     }
 
     /**
@@ -89,7 +128,7 @@ public class SynapticConnection extends Bufferable implements Serializable
      */
     public double getWeight()
     {
-        return weight;
+        return store != null ? store.getParameter(param) : weight;
     }
 
     /**
@@ -104,7 +143,7 @@ public class SynapticConnection extends Bufferable implements Serializable
      */
     public double getMomentum()
     {
-        return momentum;
+        return store != null ? store.getMomentum(param) : momentum;
     }
 
     /**
@@ -114,7 +153,15 @@ public class SynapticConnection extends Bufferable implements Serializable
      */
     public void setMomentum(double momentum)
     {
-        set("momentum", momentum);
+        if(store != null)
+        {
+            double old = store.getMomentum(param);
+            store.setMomentum(param, momentum);
+            if(isFiring("momentum"))
+                pcs.firePropertyChange("momentum", old, momentum);
+        }
+        else
+            set("momentum", momentum);
     }
 
     /**
@@ -128,7 +175,7 @@ public class SynapticConnection extends Bufferable implements Serializable
      */
     public double getLearningRate()
     {
-        return learningRate;
+        return store != null ? store.getLearningRate(param) : learningRate;
     }
 
     /**
@@ -138,7 +185,15 @@ public class SynapticConnection extends Bufferable implements Serializable
      */
     public void setLearningRate(double learningRate)
     {
-        set("learningRate", learningRate);
+        if(store != null)
+        {
+            double old = store.getLearningRate(param);
+            store.setLearningRate(param, learningRate);
+            if(isFiring("learningRate"))
+                pcs.firePropertyChange("learningRate", old, learningRate);
+        }
+        else
+            set("learningRate", learningRate);
     }
 
     /**
@@ -157,7 +212,8 @@ public class SynapticConnection extends Bufferable implements Serializable
      */
     public double getPrevWeightChange()
     {
-        return prevWeightChange;
+        return store != null ? store.getPrevWeightChange(param)
+                : prevWeightChange;
     }
 
     /**
@@ -168,7 +224,10 @@ public class SynapticConnection extends Bufferable implements Serializable
      */
     public void setPrevWeightChange(double prevWeightChange)
     {
-        this.prevWeightChange = prevWeightChange;
+        if(store != null)
+            store.setPrevWeightChange(param, prevWeightChange);
+        else
+            this.prevWeightChange = prevWeightChange;
     }
 
     /**
@@ -187,20 +246,42 @@ public class SynapticConnection extends Bufferable implements Serializable
      */
     public boolean isIsLastErrGradientPositive()
     {
-        return isLastErrGradientPositive;
+        return store != null ? store.isLastErrGradientPositive(param)
+                : isLastErrGradientPositive;
     }
 
     public void setIsLastErrGradientPositive(boolean isLastErrGradientPositive)
     {
-        set("isLastErrGradientPositive", isLastErrGradientPositive);
+        if(store != null)
+        {
+            boolean old = store.isLastErrGradientPositive(param);
+            store.setLastErrGradientPositive(param, isLastErrGradientPositive);
+            if(isFiring("isLastErrGradientPositive"))
+                pcs.firePropertyChange("isLastErrGradientPositive", old,
+                        isLastErrGradientPositive);
+        }
+        else
+            set("isLastErrGradientPositive", isLastErrGradientPositive);
+    }
+
+    /**
+     * Events of a view are fired only if someone listens to them, so that
+     * the values are not boxed for nothing, and never while the network is
+     * in bulk mutation mode.
+     *
+     * @see NeuralNetwork#beginBulkMutation()
+     */
+    private boolean isFiring(String propertyName)
+    {
+        return !store.isBulkMutation() && pcs.hasListeners(propertyName);
     }
 
     @Override
     public String toString()
     {
-        String ret = "Connection Weight : " + weight + "\n" +
-                "Learning rate : " + learningRate + "\n" +
-                "Momentum : " + momentum + "\n";
+        String ret = "Connection Weight : " + getWeight() + "\n" +
+                "Learning rate : " + getLearningRate() + "\n" +
+                "Momentum : " + getMomentum() + "\n";
         return ret;
     }
 
@@ -216,19 +297,19 @@ public class SynapticConnection extends Bufferable implements Serializable
             return false;
         }
         final SynapticConnection other = (SynapticConnection) obj;
-        if (this.weight != other.weight)
+        if (this.getWeight() != other.getWeight())
         {
             return false;
         }
-        if (this.momentum != other.momentum)
+        if (this.getMomentum() != other.getMomentum())
         {
             return false;
         }
-        if (this.learningRate != other.learningRate)
+        if (this.getLearningRate() != other.getLearningRate())
         {
             return false;
         }
-        if (this.isLastErrGradientPositive != other.isLastErrGradientPositive)
+        if (this.isIsLastErrGradientPositive() != other.isIsLastErrGradientPositive())
         {
             return false;
         }
@@ -239,10 +320,13 @@ public class SynapticConnection extends Bufferable implements Serializable
     public int hashCode()
     {
         int hash = 5;
-        hash = 89 * hash + (int) (Double.doubleToLongBits(this.weight) ^ (Double.doubleToLongBits(this.weight) >>> 32));
-        hash = 89 * hash + (int) (Double.doubleToLongBits(this.momentum) ^ (Double.doubleToLongBits(this.momentum) >>> 32));
-        hash = 89 * hash + (int) (Double.doubleToLongBits(this.learningRate) ^ (Double.doubleToLongBits(this.learningRate) >>> 32));        
-        hash = 89 * hash + (this.isLastErrGradientPositive ? 1 : 0);
+        long weightBits = Double.doubleToLongBits(getWeight());
+        long momentumBits = Double.doubleToLongBits(getMomentum());
+        long learningRateBits = Double.doubleToLongBits(getLearningRate());
+        hash = 89 * hash + (int) (weightBits ^ (weightBits >>> 32));
+        hash = 89 * hash + (int) (momentumBits ^ (momentumBits >>> 32));
+        hash = 89 * hash + (int) (learningRateBits ^ (learningRateBits >>> 32));
+        hash = 89 * hash + (isIsLastErrGradientPositive() ? 1 : 0);
         return hash;
     }
 
@@ -0,0 +1,562 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core;
+
+/**
+ * The primitive loops behind the dense layer path, i.e, the dot products of
+ * the forward pass and the <tt>y += a * x</tt> updates of back propagation.
+ *
+ * <p>Two kernels are available. The <i>scalar</i> kernel sums a dot product
+ * strictly from left to right. The <i>unrolled</i> kernel keeps
+ * {@link #LANES} independent partial sums, one per lane of a 512 bit
+ * vector register of doubles, which breaks the dependency between successive
+ * additions and lets the JIT keep several multiply-adds in flight, or
+ * pack them into vector instructions where the CPU supports them. The
+ * partial sums are combined in a fixed order, so the results of a kernel
+ * are deterministic, but they may differ from the scalar kernel in the
+ * last bits.
+ *
+ * <p>The batch forms compute the dot products of one row of weights with
+ * several vectors, sharing every weight loaded between the vectors. Every
+ * result is identical to the single vector form of the same kernel.
+ *
+ * <p>By default single vectors are summed by the unrolled kernel and
+ * batches by the scalar kernel, whose batch form shares every weight
+ * between four vectors instead of two and is the faster of the two for
+ * batches. A vector may then get sums differing in the last bits depending
+ * on whether it is fed alone or in a batch. Setting the system property
+ * <tt>jneuralnet.kernel</tt> to <tt>scalar</tt> or <tt>unrolled</tt> uses
+ * that kernel for both, so that the results are identical. The choice is
+ * made once, when this class is loaded.
+ *
+ * @author Ragha
+ * @see DenseLayer
+ * @version 1.0
+ */
+public abstract class VectorKernel
+{
+    /**
+     * The number of partial sums kept by the unrolled kernel.
+     */
+    public static final int LANES = 8;
+
+    private static final VectorKernel SCALAR = new Scalar();
+    private static final VectorKernel UNROLLED = new Unrolled();
+    private static final String KERNEL = System.getProperty("jneuralnet.kernel");
+    private static final VectorKernel DEFAULT =
+            "scalar".equalsIgnoreCase(KERNEL) ? SCALAR : UNROLLED;
+    private static final VectorKernel DEFAULT_BATCH =
+            "unrolled".equalsIgnoreCase(KERNEL) ? UNROLLED : SCALAR;
+
+    /**
+     * @return The kernel selected for this JVM to sum single vectors.
+     */
+    public static VectorKernel getDefault()
+    {
+        return DEFAULT;
+    }
+
+    /**
+     * @return The kernel selected for this JVM to sum batches of vectors.
+     */
+    public static VectorKernel getDefaultBatch()
+    {
+        return DEFAULT_BATCH;
+    }
+
+    /**
+     * @return The kernel summing strictly from left to right.
+     */
+    public static VectorKernel getScalar()
+    {
+        return SCALAR;
+    }
+
+    /**
+     * @return The kernel keeping {@link #LANES} partial sums.
+     */
+    public static VectorKernel getUnrolled()
+    {
+        return UNROLLED;
+    }
+
+    /**
+     * @return The name of this kernel.
+     */
+    public abstract String getName();
+
+    /**
+     * Computes <tt>∑(a[aOffset + i] * b[bOffset + i])</tt> for i in [0, length).
+     */
+    public abstract double dot(double a[], int aOffset,
+            double b[], int bOffset, int length);
+
+    /**
+     * Computes the dot product of single precision weights with a double
+     * precision vector, accumulated as <tt>double</tt>.
+     */
+    public abstract double dot(float a[], int aOffset,
+            double b[], int bOffset, int length);
+
+    /**
+     * Computes the dot product of single precision weights with a double
+     * precision vector rounded to single precision, accumulated as
+     * <tt>float</tt>.
+     */
+    public abstract float dotFloat(float a[], int aOffset,
+            double b[], int bOffset, int length);
+
+    /**
+     * Computes the dot product of <code>a</code> with several vectors of
+     * <code>b</code>, the k'th vector starting at
+     * <code>bOffset + k * bStride</code> and its result stored at
+     * <code>result[resultOffset + k * resultStride]</code>. The default
+     * implementation calls
+     * {@link #dot(double[], int, double[], int, int) dot(...)} per vector.
+     *
+     * @param numVectors The number of vectors.
+     * @param length The length of every vector.
+     */
+    public void dot(double a[], int aOffset, double b[], int bOffset, int bStride,
+            int numVectors, int length, double result[], int resultOffset, int resultStride)
+    {
+        for(int k=0; k<numVectors; k++)
+            result[resultOffset + k * resultStride] =
+                    dot(a, aOffset, b, bOffset + k * bStride, length);
+    }
+
+    /**
+     * Batch form of {@link #dot(float[], int, double[], int, int) dot(...)}.
+     */
+    public void dot(float a[], int aOffset, double b[], int bOffset, int bStride,
+            int numVectors, int length, double result[], int resultOffset, int resultStride)
+    {
+        for(int k=0; k<numVectors; k++)
+            result[resultOffset + k * resultStride] =
+                    dot(a, aOffset, b, bOffset + k * bStride, length);
+    }
+
+    /**
+     * Batch form of {@link #dotFloat(float[], int, double[], int, int) dotFloat(...)}.
+     */
+    public void dotFloat(float a[], int aOffset, double b[], int bOffset, int bStride,
+            int numVectors, int length, double result[], int resultOffset, int resultStride)
+    {
+        for(int k=0; k<numVectors; k++)
+            result[resultOffset + k * resultStride] =
+                    dotFloat(a, aOffset, b, bOffset + k * bStride, length);
+    }
+
+    /**
+     * Computes <tt>y[yOffset + i] += alpha * x[xOffset + i]</tt> for i in
+     * [0, length). Every element is independent, so all the kernels give
+     * the same result.
+     */
+    public void axpy(double alpha, double x[], int xOffset,
+            double y[], int yOffset, int length)
+    {
+        for(int i=0; i<length; i++)
+            y[yOffset + i] += alpha * x[xOffset + i];
+    }
+
+    /**
+     * Single precision form of
+     * {@link #axpy(double, double[], int, double[], int, int) axpy(...)}.
+     */
+    public void axpy(double alpha, float x[], int xOffset,
+            double y[], int yOffset, int length)
+    {
+        for(int i=0; i<length; i++)
+            y[yOffset + i] += alpha * x[xOffset + i];
+    }
+
+    @Override
+    public String toString()
+    {
+        return getName();
+    }
+
+    /**
+     * Sums from left to right. The batch forms process four vectors at a
+     * time, with a single sum per vector.
+     */
+    private static final class Scalar extends VectorKernel
+    {
+        public String getName()
+        {
+            return "scalar";
+        }
+
+        public double dot(double a[], int aOffset,
+                double b[], int bOffset, int length)
+        {
+            double sum = 0.0;
+            for(int i=0; i<length; i++)
+                sum += a[aOffset + i] * b[bOffset + i];
+            return sum;
+        }
+
+        public double dot(float a[], int aOffset,
+                double b[], int bOffset, int length)
+        {
+            double sum = 0.0;
+            for(int i=0; i<length; i++)
+                sum += a[aOffset + i] * b[bOffset + i];
+            return sum;
+        }
+
+        public float dotFloat(float a[], int aOffset,
+                double b[], int bOffset, int length)
+        {
+            float sum = 0.0f;
+            for(int i=0; i<length; i++)
+                sum += a[aOffset + i] * (float) b[bOffset + i];
+            return sum;
+        }
+
+        @Override
+        public void dot(double a[], int aOffset, double b[], int bOffset, int bStride,
+                int numVectors, int length, double result[], int resultOffset, int resultStride)
+        {
+            int k = 0;
+            for(; k + 4 <= numVectors; k += 4)
+            {
+                int b0 = bOffset + k * bStride, b1 = b0 + bStride;
+                int b2 = b1 + bStride, b3 = b2 + bStride;
+                double sum0 = 0.0, sum1 = 0.0, sum2 = 0.0, sum3 = 0.0;
+                for(int i=0; i<length; i++)
+                {
+                    double w = a[aOffset + i];
+                    sum0 += w * b[b0 + i];
+                    sum1 += w * b[b1 + i];
+                    sum2 += w * b[b2 + i];
+                    sum3 += w * b[b3 + i];
+                }
+                int r = resultOffset + k * resultStride;
+                result[r] = sum0;
+                result[r + resultStride] = sum1;
+                result[r + 2 * resultStride] = sum2;
+                result[r + 3 * resultStride] = sum3;
+            }
+            for(; k<numVectors; k++)
+                result[resultOffset + k * resultStride] =
+                        dot(a, aOffset, b, bOffset + k * bStride, length);
+        }
+
+        @Override
+        public void dot(float a[], int aOffset, double b[], int bOffset, int bStride,
+                int numVectors, int length, double result[], int resultOffset, int resultStride)
+        {
+            int k = 0;
+            for(; k + 4 <= numVectors; k += 4)
+            {
+                int b0 = bOffset + k * bStride, b1 = b0 + bStride;
+                int b2 = b1 + bStride, b3 = b2 + bStride;
+                double sum0 = 0.0, sum1 = 0.0, sum2 = 0.0, sum3 = 0.0;
+                for(int i=0; i<length; i++)
+                {
+                    double w = a[aOffset + i];
+                    sum0 += w * b[b0 + i];
+                    sum1 += w * b[b1 + i];
+                    sum2 += w * b[b2 + i];
+                    sum3 += w * b[b3 + i];
+                }
+                int r = resultOffset + k * resultStride;
+                result[r] = sum0;
+                result[r + resultStride] = sum1;
+                result[r + 2 * resultStride] = sum2;
+                result[r + 3 * resultStride] = sum3;
+            }
+            for(; k<numVectors; k++)
+                result[resultOffset + k * resultStride] =
+                        dot(a, aOffset, b, bOffset + k * bStride, length);
+        }
+
+        @Override
+        public void dotFloat(float a[], int aOffset, double b[], int bOffset, int bStride,
+                int numVectors, int length, double result[], int resultOffset, int resultStride)
+        {
+            int k = 0;
+            for(; k + 4 <= numVectors; k += 4)
+            {
+                int b0 = bOffset + k * bStride, b1 = b0 + bStride;
+                int b2 = b1 + bStride, b3 = b2 + bStride;
+                float sum0 = 0.0f, sum1 = 0.0f, sum2 = 0.0f, sum3 = 0.0f;
+                for(int i=0; i<length; i++)
+                {
+                    float w = a[aOffset + i];
+                    sum0 += w * (float) b[b0 + i];
+                    sum1 += w * (float) b[b1 + i];
+                    sum2 += w * (float) b[b2 + i];
+                    sum3 += w * (float) b[b3 + i];
+                }
+                int r = resultOffset + k * resultStride;
+                result[r] = sum0;
+                result[r + resultStride] = sum1;
+                result[r + 2 * resultStride] = sum2;
+                result[r + 3 * resultStride] = sum3;
+            }
+            for(; k<numVectors; k++)
+                result[resultOffset + k * resultStride] =
+                        dotFloat(a, aOffset, b, bOffset + k * bStride, length);
+        }
+    }
+
+    /**
+     * Keeps a partial sum per lane, lane j summing the elements
+     * i = j (mod LANES). The partial sums are combined pairwise and the
+     * remaining elements are added last. The batch forms process two
+     * vectors at a time, summed in the same order as the single vector
+     * forms.
+     */
+    private static final class Unrolled extends VectorKernel
+    {
+        public String getName()
+        {
+            return "unrolled";
+        }
+
+        public double dot(double a[], int aOffset,
+                double b[], int bOffset, int length)
+        {
+            double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+            double s4 = 0.0, s5 = 0.0, s6 = 0.0, s7 = 0.0;
+            int i = 0;
+            for(; i + 8 <= length; i += 8)
+            {
+                int p = aOffset + i, q = bOffset + i;
+                s0 += a[p] * b[q];
+                s1 += a[p + 1] * b[q + 1];
+                s2 += a[p + 2] * b[q + 2];
+                s3 += a[p + 3] * b[q + 3];
+                s4 += a[p + 4] * b[q + 4];
+                s5 += a[p + 5] * b[q + 5];
+                s6 += a[p + 6] * b[q + 6];
+                s7 += a[p + 7] * b[q + 7];
+            }
+            double sum = ((s0 + s1) + (s2 + s3)) + ((s4 + s5) + (s6 + s7));
+            for(; i<length; i++)
+                sum += a[aOffset + i] * b[bOffset + i];
+            return sum;
+        }
+
+        public double dot(float a[], int aOffset,
+                double b[], int bOffset, int length)
+        {
+            double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+            double s4 = 0.0, s5 = 0.0, s6 = 0.0, s7 = 0.0;
+            int i = 0;
+            for(; i + 8 <= length; i += 8)
+            {
+                int p = aOffset + i, q = bOffset + i;
+                s0 += a[p] * b[q];
+                s1 += a[p + 1] * b[q + 1];
+                s2 += a[p + 2] * b[q + 2];
+                s3 += a[p + 3] * b[q + 3];
+                s4 += a[p + 4] * b[q + 4];
+                s5 += a[p + 5] * b[q + 5];
+                s6 += a[p + 6] * b[q + 6];
+                s7 += a[p + 7] * b[q + 7];
+            }
+            double sum = ((s0 + s1) + (s2 + s3)) + ((s4 + s5) + (s6 + s7));
+            for(; i<length; i++)
+                sum += a[aOffset + i] * b[bOffset + i];
+            return sum;
+        }
+
+        public float dotFloat(float a[], int aOffset,
+                double b[], int bOffset, int length)
+        {
+            float s0 = 0.0f, s1 = 0.0f, s2 = 0.0f, s3 = 0.0f;
+            float s4 = 0.0f, s5 = 0.0f, s6 = 0.0f, s7 = 0.0f;
+            int i = 0;
+            for(; i + 8 <= length; i += 8)
+            {
+                int p = aOffset + i, q = bOffset + i;
+                s0 += a[p] * (float) b[q];
+                s1 += a[p + 1] * (float) b[q + 1];
+                s2 += a[p + 2] * (float) b[q + 2];
+                s3 += a[p + 3] * (float) b[q + 3];
+                s4 += a[p + 4] * (float) b[q + 4];
+                s5 += a[p + 5] * (float) b[q + 5];
+                s6 += a[p + 6] * (float) b[q + 6];
+                s7 += a[p + 7] * (float) b[q + 7];
+            }
+            float sum = ((s0 + s1) + (s2 + s3)) + ((s4 + s5) + (s6 + s7));
+            for(; i<length; i++)
+                sum += a[aOffset + i] * (float) b[bOffset + i];
+            return sum;
+        }
+
+        @Override
+        public void dot(double a[], int aOffset, double b[], int bOffset, int bStride,
+                int numVectors, int length, double result[], int resultOffset, int resultStride)
+        {
+            int k = 0;
+            for(; k + 2 <= numVectors; k += 2)
+            {
+                int x = bOffset + k * bStride, y = x + bStride;
+                double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+                double s4 = 0.0, s5 = 0.0, s6 = 0.0, s7 = 0.0;
+                double t0 = 0.0, t1 = 0.0, t2 = 0.0, t3 = 0.0;
+                double t4 = 0.0, t5 = 0.0, t6 = 0.0, t7 = 0.0;
+                int i = 0;
+                for(; i + 8 <= length; i += 8)
+                {
+                    int p = aOffset + i, q = x + i, r = y + i;
+                    double w0 = a[p], w1 = a[p + 1];
+                    double w2 = a[p + 2], w3 = a[p + 3];
+                    double w4 = a[p + 4], w5 = a[p + 5];
+                    double w6 = a[p + 6], w7 = a[p + 7];
+                    s0 += w0 * b[q];
+                    s1 += w1 * b[q + 1];
+                    s2 += w2 * b[q + 2];
+                    s3 += w3 * b[q + 3];
+                    s4 += w4 * b[q + 4];
+                    s5 += w5 * b[q + 5];
+                    s6 += w6 * b[q + 6];
+                    s7 += w7 * b[q + 7];
+                    t0 += w0 * b[r];
+                    t1 += w1 * b[r + 1];
+                    t2 += w2 * b[r + 2];
+                    t3 += w3 * b[r + 3];
+                    t4 += w4 * b[r + 4];
+                    t5 += w5 * b[r + 5];
+                    t6 += w6 * b[r + 6];
+                    t7 += w7 * b[r + 7];
+                }
+                double sum = ((s0 + s1) + (s2 + s3)) + ((s4 + s5) + (s6 + s7));
+                double tum = ((t0 + t1) + (t2 + t3)) + ((t4 + t5) + (t6 + t7));
+                for(; i<length; i++)
+                {
+                    sum += a[aOffset + i] * b[x + i];
+                    tum += a[aOffset + i] * b[y + i];
+                }
+                int o = resultOffset + k * resultStride;
+                result[o] = sum;
+                result[o + resultStride] = tum;
+            }
+            if(k < numVectors)
+                result[resultOffset + k * resultStride] =
+                        dot(a, aOffset, b, bOffset + k * bStride, length);
+        }
+
+        @Override
+        public void dot(float a[], int aOffset, double b[], int bOffset, int bStride,
+                int numVectors, int length, double result[], int resultOffset, int resultStride)
+        {
+            int k = 0;
+            for(; k + 2 <= numVectors; k += 2)
+            {
+                int x = bOffset + k * bStride, y = x + bStride;
+                double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+                double s4 = 0.0, s5 = 0.0, s6 = 0.0, s7 = 0.0;
+                double t0 = 0.0, t1 = 0.0, t2 = 0.0, t3 = 0.0;
+                double t4 = 0.0, t5 = 0.0, t6 = 0.0, t7 = 0.0;
+                int i = 0;
+                for(; i + 8 <= length; i += 8)
+                {
+                    int p = aOffset + i, q = x + i, r = y + i;
+                    double w0 = a[p], w1 = a[p + 1];
+                    double w2 = a[p + 2], w3 = a[p + 3];
+                    double w4 = a[p + 4], w5 = a[p + 5];
+                    double w6 = a[p + 6], w7 = a[p + 7];
+                    s0 += w0 * b[q];
+                    s1 += w1 * b[q + 1];
+                    s2 += w2 * b[q + 2];
+                    s3 += w3 * b[q + 3];
+                    s4 += w4 * b[q + 4];
+                    s5 += w5 * b[q + 5];
+                    s6 += w6 * b[q + 6];
+                    s7 += w7 * b[q + 7];
+                    t0 += w0 * b[r];
+                    t1 += w1 * b[r + 1];
+                    t2 += w2 * b[r + 2];
+                    t3 += w3 * b[r + 3];
+                    t4 += w4 * b[r + 4];
+                    t5 += w5 * b[r + 5];
+                    t6 += w6 * b[r + 6];
+                    t7 += w7 * b[r + 7];
+                }
+                double sum = ((s0 + s1) + (s2 + s3)) + ((s4 + s5) + (s6 + s7));
+                double tum = ((t0 + t1) + (t2 + t3)) + ((t4 + t5) + (t6 + t7));
+                for(; i<length; i++)
+                {
+                    sum += a[aOffset + i] * b[x + i];
+                    tum += a[aOffset + i] * b[y + i];
+                }
+                int o = resultOffset + k * resultStride;
+                result[o] = sum;
+                result[o + resultStride] = tum;
+            }
+            if(k < numVectors)
+                result[resultOffset + k * resultStride] =
+                        dot(a, aOffset, b, bOffset + k * bStride, length);
+        }
+
+        @Override
+        public void dotFloat(float a[], int aOffset, double b[], int bOffset, int bStride,
+                int numVectors, int length, double result[], int resultOffset, int resultStride)
+        {
+            int k = 0;
+            for(; k + 2 <= numVectors; k += 2)
+            {
+                int x = bOffset + k * bStride, y = x + bStride;
+                float s0 = 0.0f, s1 = 0.0f, s2 = 0.0f, s3 = 0.0f;
+                float s4 = 0.0f, s5 = 0.0f, s6 = 0.0f, s7 = 0.0f;
+                float t0 = 0.0f, t1 = 0.0f, t2 = 0.0f, t3 = 0.0f;
+                float t4 = 0.0f, t5 = 0.0f, t6 = 0.0f, t7 = 0.0f;
+                int i = 0;
+                for(; i + 8 <= length; i += 8)
+                {
+                    int p = aOffset + i, q = x + i, r = y + i;
+                    float w0 = a[p], w1 = a[p + 1];
+                    float w2 = a[p + 2], w3 = a[p + 3];
+                    float w4 = a[p + 4], w5 = a[p + 5];
+                    float w6 = a[p + 6], w7 = a[p + 7];
+                    s0 += w0 * (float) b[q];
+                    s1 += w1 * (float) b[q + 1];
+                    s2 += w2 * (float) b[q + 2];
+                    s3 += w3 * (float) b[q + 3];
+                    s4 += w4 * (float) b[q + 4];
+                    s5 += w5 * (float) b[q + 5];
+                    s6 += w6 * (float) b[q + 6];
+                    s7 += w7 * (float) b[q + 7];
+                    t0 += w0 * (float) b[r];
+                    t1 += w1 * (float) b[r + 1];
+                    t2 += w2 * (float) b[r + 2];
+                    t3 += w3 * (float) b[r + 3];
+                    t4 += w4 * (float) b[r + 4];
+                    t5 += w5 * (float) b[r + 5];
+                    t6 += w6 * (float) b[r + 6];
+                    t7 += w7 * (float) b[r + 7];
+                }
+                float sum = ((s0 + s1) + (s2 + s3)) + ((s4 + s5) + (s6 + s7));
+                float tum = ((t0 + t1) + (t2 + t3)) + ((t4 + t5) + (t6 + t7));
+                for(; i<length; i++)
+                {
+                    sum += a[aOffset + i] * (float) b[x + i];
+                    tum += a[aOffset + i] * (float) b[y + i];
+                }
+                int o = resultOffset + k * resultStride;
+                result[o] = sum;
+                result[o + resultStride] = tum;
+            }
+            if(k < numVectors)
+                result[resultOffset + k * resultStride] =
+                        dotFloat(a, aOffset, b, bOffset + k * bStride, length);
+        }
+    }
+}
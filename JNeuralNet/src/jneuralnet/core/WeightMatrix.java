@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core;
+
+/**
+ * The weights and biases feeding into a layer, as seen by the forward
+ * pass. Implemented by the trainable {@link DenseLayer} and by the
+ * inference only {@link SparseLayer} and {@link QuantizedLayer}.
+ *
+ * @author Ragha
+ * @see CompiledNetwork
+ * @version 1.0
+ */
+public interface WeightMatrix
+{
+    /**
+     * @return The number of neurons, i.e, rows in the weight matrix.
+     */
+    public int getNumNeurons();
+
+    /**
+     * @return The number of inputs to every neuron, i.e, columns in the
+     * weight matrix.
+     */
+    public int getNumInputs();
+
+    /**
+     * Computes the weighted sum <tt>∑(Wi * Xi) - bias</tt> of every neuron.
+     *
+     * @param input The input vector of length <code>numInputs</code>.
+     * @param sums The array to be filled with the weighted sums,
+     * of length <code>numNeurons</code>.
+     */
+    public void computeSums(double input[], double sums[]);
+
+    /**
+     * Computes the weighted sums of every neuron for a batch of input
+     * vectors. The results are identical to feeding the vectors one at
+     * a time if a single {@link VectorKernel} is selected, see
+     * {@link VectorKernel#getDefaultBatch()}; otherwise the floating point
+     * sums may differ in the last bits.
+     *
+     * @param inputs The row major batch of input vectors, of length
+     * atleast <code>numRows * numInputs</code>.
+     * @param numRows The number of input vectors in the batch.
+     * @param sums The row major array to be filled with the weighted sums,
+     * of length atleast <code>numRows * numNeurons</code>.
+     */
+    public void computeSums(double inputs[], int numRows, double sums[]);
+}
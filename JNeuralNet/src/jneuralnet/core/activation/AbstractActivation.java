@@ -51,4 +51,51 @@ public abstract class AbstractActivation extends Pluggable
      * @return The derviative(activation(input)), ie, F`(input)
      */
     public abstract Double activationDerviative(Double input);
+
+    /**
+     * Primitive form of {@link #activationDerviative(java.lang.Double) activationDerviative(...)}
+     * given the output of the function for the same input, as recorded
+     * during feed forward. The default implementation delegates to the boxed
+     * method, override it when the derivative is a function of the output,
+     * as <tt>y * (1 - y)</tt> of the sigmoid, so that back propagation does
+     * not evaluate the function again.
+     *
+     * @param input The input 'x' to activation function F(x)
+     * @param output The output F(x) for the same input.
+     * @return The derviative F`(x)
+     */
+    public double derivative(double input, double output)
+    {
+        return activationDerviative(input);
+    }
+
+    /**
+     * Primitive form of {@link #activation(java.lang.Double) activation(...)}
+     * used by the allocation free forward pass. The default implementation
+     * delegates to the boxed method, override it to avoid boxing.
+     *
+     * @param input The input 'x' to activation function F(x)
+     * @return the activation value computed using the input
+     */
+    public double activate(double input)
+    {
+        return activation(input);
+    }
+
+    /**
+     * Applies the activation function in place to a range of values, as
+     * done for a whole layer sharing this function. The default
+     * implementation calls {@link #activate(double) activate(...)} for
+     * every value, override it to hoist the work common to all the values
+     * out of the loop.
+     *
+     * @param values The array holding the inputs, overwritten by the outputs.
+     * @param offset The index of the first value.
+     * @param length The number of values.
+     */
+    public void activate(double values[], int offset, int length)
+    {
+        for(int i=offset; i<offset + length; i++)
+            values[i] = activate(values[i]);
+    }
 }
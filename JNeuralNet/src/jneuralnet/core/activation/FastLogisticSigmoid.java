@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.activation;
+
+/**
+ * A fast approximation of the {@link LogisticSigmoid} activation function,
+ * <tt>tanh(x)</tt>, read from a lookup table with linear interpolation
+ * instead of calling <code>Math.tanh</code>.
+ *
+ * <p>The absolute error of the activation is at most {@link #MAX_ERROR},
+ * and that of the derivative, computed from the approximate activation as
+ * <tt>1 - y^2</tt>, at most twice that. This is well below the resolution
+ * that training needs, but the outputs are not bit identical to those of
+ * <code>LogisticSigmoid</code>.
+ *
+ * <p> This function provides an output range of [-1, 1]
+ *
+ * @author Ragha
+ * @see LogisticSigmoid
+ * @see jneuralnet.benchmark.ActivationBenchmark
+ * @version 1.0
+ */
+public class FastLogisticSigmoid extends AbstractActivation
+{
+    private static final long serialVersionUID = 2009112401L;
+
+    /**
+     * The largest absolute difference from <tt>tanh(x)</tt>.
+     */
+    public static final double MAX_ERROR = TanhTable.MAX_ERROR;
+
+    /**
+     * Represents logistic sigmoid activation function, approximately. It is
+     * given by the expression:
+     *
+     * <p><tt> tanh(x) </tt>
+     *
+     * @param input The input value to this function
+     * @return The value returned by the function. The range of output
+     * values is [-1, 1]
+     */
+    public Double activation(Double input)
+    {
+        return activate(input);
+    }
+
+    /**
+     * Represents the derivative of logistic sigmoid function, approximately.
+     * It is given by the expression:
+     *
+     * <p><tt> 1 - (tanh(x))^2 </tt>
+     *
+     * @param input The input value to this function
+     * @return The value returned by the function
+     */
+    public Double activationDerviative(Double input)
+    {
+        double y = TanhTable.tanh(input);
+        return 1 - y * y;
+    }
+
+    /**
+     * The derivative is given by <tt>1 - y^2</tt>, y being the output.
+     */
+    @Override
+    public double derivative(double input, double output)
+    {
+        return 1 - output * output;
+    }
+
+    @Override
+    public double activate(double input)
+    {
+        return TanhTable.tanh(input);
+    }
+
+    @Override
+    public void activate(double values[], int offset, int length)
+    {
+        for(int i=offset; i<offset + length; i++)
+            values[i] = TanhTable.tanh(values[i]);
+    }
+
+    @Override
+    public String getName()
+    {
+        return "Fast Logistic Sigmoid";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Table driven approximation of logistic sigmoid function.\n" +
+                " This function is given by ' Tanh(x) ', within " + MAX_ERROR + ".\n"
+                + " It provides an output range of [-1, +1]";
+    }
+
+    @Override
+    public String getAuthor() {
+        return "Ragha";
+    }
+}
@@ -92,7 +92,7 @@ public class Linear extends AbstractActivation
      */
     public Double activation(Double input)
     {
-        return (slope * input + c);
+        return activate(input);
     }
 
     /**
@@ -107,6 +107,31 @@ public class Linear extends AbstractActivation
         return slope;
     }
 
+    /**
+     * The derivative is the constant slope, which needs neither the input
+     * nor the output.
+     */
+    @Override
+    public double derivative(double input, double output)
+    {
+        return slope;
+    }
+
+    @Override
+    public double activate(double input)
+    {
+        return (slope * input + c);
+    }
+
+    @Override
+    public void activate(double values[], int offset, int length)
+    {
+        //unbox the parameters once for the whole range...
+        double m = slope, k = c;
+        for(int i=offset; i<offset + length; i++)
+            values[i] = m * values[i] + k;
+    }
+
     @Override
     public String getName()
     {
@@ -40,7 +40,7 @@ public class LogisticSigmoid extends AbstractActivation
      */
     public Double activation(Double input)
     {
-        return Math.tanh(input);
+        return activate(input);
     }
 
     /**
@@ -54,7 +54,30 @@ public class LogisticSigmoid extends AbstractActivation
      */
     public Double activationDerviative(Double input)
     {
-        return 1 - (activation(input) * activation(input));
+        double y = activate(input);
+        return 1 - y * y;
+    }
+
+    /**
+     * The derivative is given by <tt>1 - y^2</tt>, y being the output.
+     */
+    @Override
+    public double derivative(double input, double output)
+    {
+        return 1 - output * output;
+    }
+
+    @Override
+    public double activate(double input)
+    {
+        return Math.tanh(input);
+    }
+
+    @Override
+    public void activate(double values[], int offset, int length)
+    {
+        for(int i=offset; i<offset + length; i++)
+            values[i] = Math.tanh(values[i]);
     }
 
     @Override
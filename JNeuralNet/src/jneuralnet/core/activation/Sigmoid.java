@@ -41,7 +41,7 @@ public class Sigmoid extends AbstractActivation
      */
     public Double activation(Double input) 
     {
-        return( 1.0 /(1.0 + Math.exp(-input)) );
+        return activate(input);
     }
 
     /**
@@ -56,7 +56,30 @@ public class Sigmoid extends AbstractActivation
      */
     public Double activationDerviative(Double input) 
     {
-        return (activation(input) * (1 - activation(input)));
+        double y = activate(input);
+        return y * (1 - y);
+    }
+
+    /**
+     * The derivative is given by <tt>y * (1 - y)</tt>, y being the output.
+     */
+    @Override
+    public double derivative(double input, double output)
+    {
+        return output * (1 - output);
+    }
+
+    @Override
+    public double activate(double input)
+    {
+        return( 1.0 /(1.0 + Math.exp(-input)) );
+    }
+
+    @Override
+    public void activate(double values[], int offset, int length)
+    {
+        for(int i=offset; i<offset + length; i++)
+            values[i] = 1.0 /(1.0 + Math.exp(-values[i]));
     }
 
     @Override
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.activation;
+
+/**
+ * A lookup table of <tt>tanh(x)</tt> with linear interpolation between
+ * the entries, shared by the fast activation functions. The table covers
+ * [0, {@link #RANGE}) in steps of <tt>1 / {@link #STEPS}</tt>, negative
+ * inputs use the symmetry <tt>tanh(-x) = -tanh(x)</tt> and larger inputs
+ * are taken as +/-1.
+ *
+ * <p>The error of linear interpolation is at most
+ * <tt>h^2 / 8 * max|tanh''|</tt>, i.e, <tt>(1/256)^2 / 8 * 0.77 = 1.5e-6</tt>,
+ * and <tt>1 - tanh(8) = 2.3e-7</tt>, so the absolute error is below
+ * {@link #MAX_ERROR} over the whole real line. The values and slopes take
+ * 32 KB, which stays in the first level cache.
+ *
+ * @author Ragha
+ * @see FastLogisticSigmoid
+ * @see FastSigmoid
+ * @version 1.0
+ */
+final class TanhTable
+{
+    /**
+     * The inputs beyond which tanh is taken as +/-1.
+     */
+    static final double RANGE = 8.0;
+
+    /**
+     * The number of entries per unit of input.
+     */
+    static final int STEPS = 256;
+
+    /**
+     * The largest absolute error of {@link #tanh(double) tanh(...)}.
+     */
+    static final double MAX_ERROR = 1.5e-6;
+
+    /**
+     * The largest index into the table, the inputs being clamped to it.
+     */
+    private static final double LIMIT = RANGE * STEPS;
+
+    private static final double TABLE[] = new double[(int) LIMIT + 1];
+    private static final double SLOPES[] = new double[TABLE.length];
+
+    static
+    {
+        for(int i=0; i<TABLE.length; i++)
+            TABLE[i] = Math.tanh((double) i / STEPS);
+        //inputs beyond the table are taken as +/-1...
+        TABLE[TABLE.length - 1] = 1.0;
+        for(int i=0; i<TABLE.length - 1; i++)
+            SLOPES[i] = TABLE[i + 1] - TABLE[i];
+    }
+
+    private TanhTable()
+    {
+    }
+
+    /**
+     * @return tanh(x) within {@link #MAX_ERROR}, NaN if x is NaN.
+     */
+    static double tanh(double x)
+    {
+        //branch free apart from the sign, random signs being common...
+        double t = Math.min(Math.abs(x) * STEPS, LIMIT);
+        int i = (int) t;
+        double y = TABLE[i] + (t - i) * SLOPES[i];
+        return x < 0.0 ? -y : y;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.distributed;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The encodings of the gradients pushed by the workers of a
+ * {@link ParameterServer}. The gradients not sent by a lossy encoding are
+ * left in the encoded vector, so that a worker adding its next gradients to
+ * the vector sends them later, i.e, no update is lost but only delayed.
+ *
+ * @author Ragha
+ * @see ParameterServer#setCompression(jneuralnet.core.distributed.GradientCompression)
+ * @version 1.0
+ */
+public enum GradientCompression
+{
+    /**
+     * Every gradient as a double, 8 bytes per parameter.
+     */
+    NONE
+    {
+        int getMaxEncodedBytes(int numParameters, double fraction)
+        {
+            return numParameters * 8;
+        }
+
+        void encode(double gradients[], ByteBuffer dst, double fraction)
+        {
+            Protocol.putDoubles(dst, gradients, 0, gradients.length);
+            Arrays.fill(gradients, 0.0);
+        }
+
+        void decode(ByteBuffer src, double gradients[]) throws IOException
+        {
+            checkRemaining(src, gradients.length * 8);
+            Protocol.getDoubles(src, gradients, 0, gradients.length);
+        }
+    },
+
+    /**
+     * Every gradient as a float, 4 bytes per parameter. The rounding error
+     * is sent with the next gradients.
+     */
+    FLOAT
+    {
+        int getMaxEncodedBytes(int numParameters, double fraction)
+        {
+            return numParameters * 4;
+        }
+
+        void encode(double gradients[], ByteBuffer dst, double fraction)
+        {
+            for(int p=0; p<gradients.length; p++)
+            {
+                float value = (float) gradients[p];
+                dst.putFloat(value);
+                gradients[p] -= value;
+            }
+        }
+
+        void decode(ByteBuffer src, double gradients[]) throws IOException
+        {
+            checkRemaining(src, gradients.length * 4);
+            for(int p=0; p<gradients.length; p++)
+                gradients[p] = src.getFloat();
+        }
+    },
+
+    /**
+     * The given fraction of the gradients with the largest magnitudes, as
+     * an index and a float each, 8 bytes per gradient sent. The others are
+     * sent once they have grown large enough.
+     */
+    TOP_K
+    {
+        int getMaxEncodedBytes(int numParameters, double fraction)
+        {
+            return 4 + getK(numParameters, fraction) * 8;
+        }
+
+        void encode(double gradients[], ByteBuffer dst, double fraction)
+        {
+            int k = getK(gradients.length, fraction);
+            double threshold = getThreshold(gradients, k);
+
+            int countAt = dst.position();
+            dst.putInt(0);
+            int count = 0;
+            //the ones above the threshold first, then the ties...
+            for(int pass=0; pass<2 && count<k; pass++)
+            {
+                for(int p=0; p<gradients.length && count<k; p++)
+                {
+                    double magnitude = Math.abs(gradients[p]);
+                    if(magnitude == 0.0 || (pass == 0 ? magnitude <= threshold
+                            : magnitude != threshold))
+                        continue;
+                    float value = (float) gradients[p];
+                    dst.putInt(p);
+                    dst.putFloat(value);
+                    gradients[p] -= value;
+                    count++;
+                }
+            }
+            dst.putInt(countAt, count);
+        }
+
+        void decode(ByteBuffer src, double gradients[]) throws IOException
+        {
+            if(src.remaining() < 4)
+                throw new IOException("Truncated gradients");
+            int count = src.getInt();
+            if(count < 0 || count > gradients.length)
+                throw new IOException("Invalid number of gradients: " + count);
+            checkRemaining(src, count * 8);
+
+            Arrays.fill(gradients, 0.0);
+            for(int i=0; i<count; i++)
+            {
+                int p = src.getInt();
+                if(p < 0 || p >= gradients.length)
+                    throw new IOException("Invalid gradient index: " + p);
+                gradients[p] = src.getFloat();
+            }
+        }
+    };
+
+    private static final ThreadLocal<double[]> SCRATCH = new ThreadLocal<double[]>();
+
+    /**
+     * @return The largest number of bytes the gradients are encoded in.
+     */
+    abstract int getMaxEncodedBytes(int numParameters, double fraction);
+
+    /**
+     * Writes the gradients and leaves those not sent in the vector.
+     *
+     * @param gradients The gradients to be sent.
+     * @param dst The buffer to be written.
+     * @param fraction The fraction of the gradients sent by {@link #TOP_K}.
+     */
+    abstract void encode(double gradients[], ByteBuffer dst, double fraction);
+
+    /**
+     * Reads the gradients, the ones not sent being zero.
+     *
+     * @param src The buffer to be read.
+     * @param gradients The vector to hold the gradients.
+     * @throws IOException If the buffer does not hold exactly the encoded
+     * gradients of the vector.
+     */
+    abstract void decode(ByteBuffer src, double gradients[]) throws IOException;
+
+    private static void checkRemaining(ByteBuffer src, int length)
+            throws IOException
+    {
+        if(src.remaining() != length)
+            throw new IOException(src.remaining() + " bytes of gradients " +
+                    "instead of " + length);
+    }
+
+    private static int getK(int numParameters, double fraction)
+    {
+        return Math.max(1, Math.min(numParameters,
+                (int) Math.ceil(numParameters * fraction)));
+    }
+
+    /**
+     * @return The k-th largest magnitude of the gradients.
+     */
+    private static double getThreshold(double gradients[], int k)
+    {
+        double a[] = SCRATCH.get();
+        if(a == null || a.length < gradients.length)
+        {
+            a = new double[gradients.length];
+            SCRATCH.set(a);
+        }
+        for(int p=0; p<gradients.length; p++)
+            a[p] = Math.abs(gradients[p]);
+
+        //quick select of the element at n - k in ascending order...
+        int target = gradients.length - k;
+        int lo = 0, hi = gradients.length - 1;
+        while(lo < hi)
+        {
+            double pivot = a[(lo + hi) >>> 1];
+            int i = lo, j = hi;
+            while(i <= j)
+            {
+                while(a[i] < pivot)
+                    i++;
+                while(a[j] > pivot)
+                    j--;
+                if(i <= j)
+                {
+                    double t = a[i];
+                    a[i] = a[j];
+                    a[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if(target <= j)
+                hi = j;
+            else if(target >= i)
+                lo = i;
+            else
+                break;
+        }
+        return a[target];
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.distributed;
+
+import java.util.ArrayList;
+import java.util.List;
+import jneuralnet.core.ActivationContext;
+import jneuralnet.core.DenseLayer;
+import jneuralnet.core.NeuralNetwork;
+import jneuralnet.core.NeuronLayer;
+
+/**
+ * Views the parameters of a network as a single flat vector, the layers
+ * following each other from the first hidden layer to the output layer,
+ * each with its parameters in the order of the {@link DenseLayer}, i.e, the
+ * weights in row major order followed by the biases. The summed gradients
+ * of an {@link ActivationContext} are laid out the same way.
+ *
+ * @author Ragha
+ * @see ParameterServer
+ * @version 1.0
+ */
+public final class NetworkParameters
+{
+    private NetworkParameters()
+    {
+    }
+
+    /**
+     * @return The layers of the network, in the order of the vector.
+     */
+    public static List<DenseLayer> getLayers(NeuralNetwork net)
+    {
+        List<DenseLayer> layers = new ArrayList<DenseLayer>();
+        for(NeuronLayer l : net.getHiddenLayers())
+            layers.add(l.getDenseLayer());
+        layers.add(net.getOutputLayer().getDenseLayer());
+        return layers;
+    }
+
+    /**
+     * @return The length of the parameter vector of the network.
+     */
+    public static int getNumParameters(NeuralNetwork net)
+    {
+        int count = 0;
+        for(DenseLayer layer : getLayers(net))
+            count += layer.getNumParameters();
+        return count;
+    }
+
+    /**
+     * Copies the parameters of the network into the vector.
+     *
+     * @param net The network to be read.
+     * @param dst The vector, of atleast the number of parameters.
+     */
+    public static void read(NeuralNetwork net, double dst[])
+    {
+        int offset = 0;
+        for(DenseLayer layer : getLayers(net))
+        {
+            int numWeights = layer.getNumNeurons() * layer.getNumInputs();
+            if(layer.getPrecision().isFloatStorage())
+            {
+                float weights[] = layer.getFloatWeights();
+                for(int p=0; p<numWeights; p++)
+                    dst[offset + p] = weights[p];
+            }
+            else
+                System.arraycopy(layer.getWeights(), 0, dst, offset, numWeights);
+            System.arraycopy(layer.getBiases(), 0, dst, offset + numWeights,
+                    layer.getNumNeurons());
+            offset += layer.getNumParameters();
+        }
+    }
+
+    /**
+     * Copies the vector into the parameters of the network, rounding them
+     * to single precision in layers storing floats.
+     *
+     * @param src The vector, of atleast the number of parameters.
+     * @param net The network to be written.
+     */
+    public static void write(double src[], NeuralNetwork net)
+    {
+        int offset = 0;
+        for(DenseLayer layer : getLayers(net))
+        {
+            int numWeights = layer.getNumNeurons() * layer.getNumInputs();
+            if(layer.getPrecision().isFloatStorage())
+            {
+                float weights[] = layer.getFloatWeights();
+                for(int p=0; p<numWeights; p++)
+                    weights[p] = (float) src[offset + p];
+            }
+            else
+                System.arraycopy(src, offset, layer.getWeights(), 0, numWeights);
+            System.arraycopy(src, offset + numWeights, layer.getBiases(), 0,
+                    layer.getNumNeurons());
+            layer.markModified();
+            offset += layer.getNumParameters();
+        }
+    }
+
+    /**
+     * Adds the gradients summed in the context to the vector.
+     *
+     * @param ctx The context holding the summed gradients.
+     * @param dst The vector, of atleast the number of parameters.
+     */
+    public static void addGradients(ActivationContext ctx, double dst[])
+    {
+        int offset = 0;
+        for(int l=0; l<ctx.getNumLayers(); l++)
+        {
+            double gradients[] = ctx.getGradients(l);
+            for(int p=0; p<gradients.length; p++)
+                dst[offset + p] += gradients[p];
+            offset += gradients.length;
+        }
+    }
+
+    /**
+     * Copies the vector into the summed gradients of the context.
+     *
+     * @param src The vector, of atleast the number of parameters.
+     * @param ctx The context to hold the gradients.
+     */
+    public static void setGradients(double src[], ActivationContext ctx)
+    {
+        int offset = 0;
+        for(int l=0; l<ctx.getNumLayers(); l++)
+        {
+            double gradients[] = ctx.getGradients(l);
+            System.arraycopy(src, offset, gradients, 0, gradients.length);
+            offset += gradients.length;
+        }
+    }
+}
@@ -0,0 +1,641 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.distributed;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import jneuralnet.core.ActivationContext;
+import jneuralnet.core.NeuralNetwork;
+import jneuralnet.core.learning.AbstractLearningAlgo;
+import jneuralnet.core.training.TrainListenerAdapter;
+import jneuralnet.core.training.TrainingDataRepository;
+
+/**
+ * Trains a network with workers in other processes, or on other machines,
+ * connected over sockets. The server holds the parameters of the network;
+ * each worker pulls them, computes the gradients of a mini batch of its
+ * share of the training patterns, pushes the gradients and gets the updated
+ * parameters in reply. The server applies every push on arrival with the
+ * learning algorithm of the network's teacher, as
+ * {@link AbstractLearningAlgo#applyGradients(jneuralnet.core.NeuralNetwork, jneuralnet.core.ActivationContext) applyGradients(...)}
+ * would apply a mini batch of serial training.
+ *
+ * <p>The updates are asynchronous: a worker computes its gradients with the
+ * parameters it pulled last, which the pushes of the other workers may have
+ * changed since, so with n workers a gradient is typically n - 1 updates
+ * stale. {@link #getMaxStaleness()} reports the largest staleness seen.
+ * The result is therefore not that of serial training and differs between
+ * runs, and the learning rate may need to be lowered as workers are added.
+ *
+ * <p>The server answers all the workers from a single thread, the one
+ * calling {@link #serve()}, which is also the thread the train listeners
+ * are called on. An epoch is reported once every worker has finished it,
+ * the errors being those of the patterns while they were trained.
+ *
+ * <p>A worker that sends an invalid message, or disconnects before saying
+ * goodbye while the server is running, fails the training: the other
+ * workers are stopped at their next request and {@link #serve()} throws.
+ * Connections that never introduce themselves as a worker are closed on
+ * their first invalid message and do not count as workers.
+ *
+ * <p>{@link ParameterServerLauncher} runs the workers as processes on the
+ * local machine.
+ *
+ * @author Ragha
+ * @see ParameterServerWorker
+ * @see GradientCompression
+ * @version 1.0
+ */
+public class ParameterServer
+{
+    private final NeuralNetwork net;
+    private final AbstractLearningAlgo algo;
+    private final int numWorkers;
+    private final int numParameters;
+
+    private int batchSize = 32;
+    private int numEpochs = 1;
+    private GradientCompression compression = GradientCompression.NONE;
+    private double topKFraction = 0.01;
+    private final List<TrainListenerAdapter> listeners = new ArrayList<TrainListenerAdapter>();
+
+    private ServerSocketChannel serverChannel;
+    private Selector selector;
+    private volatile boolean isStopped;
+
+    private ActivationContext sums;
+    private double parameters[];
+    private long version;
+    private long maxStaleness;
+    private ByteBuffer weights;
+    private long weightsVersion;
+
+    private boolean isConnected[];
+    private IOException failure;
+    private int epochsDone[];
+    private double costErrors[];
+    private double errorPercents[];
+    private long numPatterns[];
+    private int numReported;
+    private double lastError;
+
+    /**
+     * @param net The network to be trained, its teacher's learning
+     * algorithm applying the gradients.
+     * @param numWorkers The number of workers that will connect.
+     * @throws IllegalArgumentException If the number of workers is not
+     * positive.
+     * @throws IllegalStateException If the network has no training data or
+     * its learning algorithm does not support batch training.
+     */
+    public ParameterServer(NeuralNetwork net, int numWorkers)
+            throws IllegalArgumentException, IllegalStateException
+    {
+        if(numWorkers <= 0)
+            throw new IllegalArgumentException("numWorkers has to be > 0");
+
+        //processing the data computes the settings of the preprocessors,
+        //which the workers get with the saved network...
+        TrainingDataRepository repository = net.getTeacher().getTrainingDataRepository();
+        if(repository == null || repository.getProcessedTrainingSet() == null
+                || repository.getProcessedTrainingSet().getPatternSetSize() == 0)
+            throw new IllegalStateException("No training data found");
+
+        algo = net.getTeacher().getLearningAlgo();
+        if(algo == null)
+            throw new IllegalStateException("No learning algorithm set...");
+        if(!algo.isBatchSupported())
+            throw new IllegalStateException(algo.getName() +
+                    " does not support batch training...");
+        this.net = net;
+        this.numWorkers = numWorkers;
+        this.numParameters = NetworkParameters.getNumParameters(net);
+    }
+
+    public NeuralNetwork getNeuralNetwork()
+    {
+        return net;
+    }
+
+    public int getNumWorkers()
+    {
+        return numWorkers;
+    }
+
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize The number of patterns a worker trains between
+     * pushes.
+     * @throws IllegalArgumentException If the size is not positive.
+     */
+    public void setBatchSize(int batchSize) throws IllegalArgumentException
+    {
+        if(batchSize <= 0)
+            throw new IllegalArgumentException("batchSize has to be > 0");
+        this.batchSize = batchSize;
+    }
+
+    public int getNumEpochs()
+    {
+        return numEpochs;
+    }
+
+    /**
+     * @param numEpochs The number of passes each worker makes over its
+     * share of the training patterns.
+     * @throws IllegalArgumentException If the number is not positive.
+     */
+    public void setNumEpochs(int numEpochs) throws IllegalArgumentException
+    {
+        if(numEpochs <= 0)
+            throw new IllegalArgumentException("numEpochs has to be > 0");
+        this.numEpochs = numEpochs;
+    }
+
+    public GradientCompression getCompression()
+    {
+        return compression;
+    }
+
+    /**
+     * @param compression The encoding of the pushed gradients.
+     * @throws NullPointerException If compression is null.
+     */
+    public void setCompression(GradientCompression compression)
+            throws NullPointerException
+    {
+        if(compression == null)
+            throw new NullPointerException("compression can't be null");
+        this.compression = compression;
+    }
+
+    public double getTopKFraction()
+    {
+        return topKFraction;
+    }
+
+    /**
+     * @param topKFraction The fraction of the gradients pushed with
+     * {@link GradientCompression#TOP_K}.
+     * @throws IllegalArgumentException If the fraction is not in (0, 1].
+     */
+    public void setTopKFraction(double topKFraction) throws IllegalArgumentException
+    {
+        if(!(topKFraction > 0.0 && topKFraction <= 1.0))
+            throw new IllegalArgumentException("topKFraction has to be in (0, 1]");
+        this.topKFraction = topKFraction;
+    }
+
+    /**
+     * Adds a listener to be notified of the epochs, on the serving thread.
+     * If listener is null, no action is performed.
+     */
+    public void addTrainListener(TrainListenerAdapter listener)
+    {
+        if(listener != null)
+            listeners.add(listener);
+    }
+
+    public boolean removeTrainListener(TrainListenerAdapter listener)
+    {
+        return listeners.remove(listener);
+    }
+
+    /**
+     * @return The number of updates applied, i.e, the version of the
+     * parameters.
+     */
+    public long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * @return The largest number of updates applied between a worker
+     * pulling the parameters and pushing the gradients computed with them.
+     */
+    public long getMaxStaleness()
+    {
+        return maxStaleness;
+    }
+
+    /**
+     * Opens the socket the workers connect to.
+     *
+     * @param address The address to listen on, port 0 choosing a free port.
+     * @return The port listened on.
+     * @throws IllegalStateException If the server is already bound.
+     */
+    public int bind(InetSocketAddress address) throws IOException,
+            IllegalStateException
+    {
+        if(serverChannel != null)
+            throw new IllegalStateException("The server is already bound");
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().setReuseAddress(true);
+        serverChannel.socket().bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Serves the workers till they have all finished training, or till the
+     * server is stopped and they have gone. The network holds the trained
+     * parameters on return.
+     *
+     * @throws IOException If a worker failed, the network then holding the
+     * parameters reached before the other workers stopped.
+     * @throws IllegalStateException If the server is not bound.
+     */
+    public void serve() throws IOException, IllegalStateException
+    {
+        if(serverChannel == null)
+            throw new IllegalStateException("The server is not bound");
+
+        sums = new ActivationContext(net);
+        parameters = new double[numParameters];
+        version = 0;
+        maxStaleness = 0;
+        weights = null;
+        failure = null;
+        isConnected = new boolean[numWorkers];
+        epochsDone = new int[numWorkers];
+        costErrors = new double[numEpochs];
+        errorPercents = new double[numEpochs];
+        numPatterns = new long[numEpochs];
+        numReported = 0;
+        lastError = 0.0;
+
+        List<Connection> connections = new ArrayList<Connection>();
+        int numFinished = 0;
+        try
+        {
+            while(numFinished < numWorkers && !(isStopped && connections.isEmpty()))
+            {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while(keys.hasNext())
+                {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if(!key.isValid())
+                        continue;
+
+                    if(key.isAcceptable())
+                    {
+                        SocketChannel channel = serverChannel.accept();
+                        if(channel == null)
+                            continue;
+                        channel.configureBlocking(false);
+                        channel.socket().setTcpNoDelay(true);
+                        Connection c = new Connection(channel);
+                        c.key = channel.register(selector, SelectionKey.OP_READ, c);
+                        connections.add(c);
+                        continue;
+                    }
+
+                    Connection c = (Connection) key.attachment();
+                    IOException error = null;
+                    boolean isOpen;
+                    try
+                    {
+                        if(key.isWritable())
+                            c.flush();
+                        isOpen = !key.isReadable() || c.read();
+                    }
+                    catch(IOException e)
+                    {
+                        error = e;
+                        isOpen = false;
+                    }
+                    if(!isOpen || c.isFinished)
+                    {
+                        c.close();
+                        connections.remove(c);
+                        if(c.workerIndex >= 0)
+                        {
+                            //a worker stopped by the server may just go...
+                            if(!c.isFinished && (error != null || !isStopped))
+                                fail(c.workerIndex, error);
+                            epochsDone[c.workerIndex] = numEpochs;
+                            reportEpochs();
+                            numFinished++;
+                        }
+                    }
+                }
+            }
+        }
+        finally
+        {
+            for(Connection c : connections)
+                c.close();
+            selector.close();
+            serverChannel.close();
+            serverChannel = null;
+        }
+
+        net.fireWeightsChanged();
+        if(failure != null)
+            throw failure;
+        for(TrainListenerAdapter listener : listeners)
+            listener.trainingCompleted(lastError);
+    }
+
+    /**
+     * Records the failure of a worker and stops the others.
+     *
+     * @param cause The error read from the worker, null if it disconnected.
+     */
+    private void fail(int workerIndex, IOException cause)
+    {
+        if(failure == null)
+        {
+            String message = "Worker " + workerIndex + (cause == null
+                    ? " disconnected before finishing" : " failed: " + cause.getMessage());
+            failure = new IOException(message);
+            if(cause != null)
+                failure.initCause(cause);
+        }
+        isStopped = true;
+    }
+
+    /**
+     * Stops the training; the workers are told to stop at their next
+     * request. This method may be called from any thread.
+     */
+    public void stop()
+    {
+        isStopped = true;
+        Selector s = selector;
+        if(s != null)
+            s.wakeup();
+    }
+
+    private void handle(Connection c, int type, ByteBuffer payload)
+            throws IOException
+    {
+        switch(type)
+        {
+            case Protocol.HELLO:
+                checkLength(payload, 8);
+                int index = payload.getInt();
+                int count = payload.getInt();
+                if(index < 0 || index >= numWorkers || c.workerIndex >= 0
+                        || isConnected[index])
+                    throw new IOException("Invalid worker index: " + index);
+                if(count != numParameters)
+                    throw new IOException("Worker " + index + " has " + count +
+                            " parameters instead of " + numParameters);
+                c.workerIndex = index;
+                isConnected[index] = true;
+
+                ByteBuffer config = Protocol.message(Protocol.CONFIG,
+                        Protocol.CONFIG_BYTES);
+                config.putInt(batchSize);
+                config.putInt(numEpochs);
+                config.putInt(compression.ordinal());
+                config.putDouble(topKFraction);
+                config.flip();
+                c.send(config);
+                break;
+
+            case Protocol.PULL:
+                checkWorker(c);
+                checkLength(payload, 0);
+                c.send(getReply());
+                break;
+
+            case Protocol.PUSH:
+                checkWorker(c);
+                if(payload.remaining() < Protocol.PUSH_HEADER_BYTES)
+                    throw new IOException("Truncated push of " +
+                            payload.remaining() + " bytes");
+                long pulledVersion = payload.getLong();
+                int epoch = payload.getInt();
+                int patterns = payload.getInt();
+                double costError = payload.getDouble();
+                double errorPercent = payload.getDouble();
+                if(epoch < 0 || epoch >= numEpochs || patterns <= 0)
+                    throw new IOException("Invalid push for epoch " + epoch);
+
+                maxStaleness = Math.max(maxStaleness, version - pulledVersion);
+                double gradients[] = c.getGradients(numParameters);
+                compression.decode(payload, gradients);
+                NetworkParameters.setGradients(gradients, sums);
+                sums.addNumAccumulated(patterns);
+                algo.applyGradients(net, sums);
+                version++;
+
+                costErrors[epoch] += costError;
+                errorPercents[epoch] = errorPercent;
+                numPatterns[epoch] += patterns;
+                c.send(getReply());
+                break;
+
+            case Protocol.EPOCH_END:
+                checkWorker(c);
+                checkLength(payload, 4);
+                int ended = payload.getInt();
+                if(ended < 0 || ended >= numEpochs)
+                    throw new IOException("Invalid end of epoch " + ended);
+                epochsDone[c.workerIndex] = ended + 1;
+                reportEpochs();
+                break;
+
+            case Protocol.BYE:
+                checkWorker(c);
+                c.isFinished = true;
+                break;
+
+            default:
+                throw new IOException("Invalid message type: " + type);
+        }
+    }
+
+    private static void checkWorker(Connection c) throws IOException
+    {
+        if(c.workerIndex < 0)
+            throw new IOException("Message sent before hello");
+    }
+
+    private static void checkLength(ByteBuffer payload, int length)
+            throws IOException
+    {
+        if(payload.remaining() != length)
+            throw new IOException("Payload of " + payload.remaining() +
+                    " bytes instead of " + length);
+    }
+
+    /**
+     * @return The latest parameters, or STOP once stopped. The message is
+     * shared by the workers till the parameters change, and not reused after
+     * as a worker may still be reading it.
+     */
+    private ByteBuffer getReply()
+    {
+        if(isStopped)
+        {
+            ByteBuffer stop = Protocol.message(Protocol.STOP, 0);
+            stop.flip();
+            return stop;
+        }
+        if(weights == null || weightsVersion != version)
+        {
+            NetworkParameters.read(net, parameters);
+            weights = Protocol.message(Protocol.WEIGHTS, 8 + numParameters * 8);
+            weights.putLong(version);
+            Protocol.putDoubles(weights, parameters, 0, numParameters);
+            weights.flip();
+            weightsVersion = version;
+        }
+        return weights.duplicate();
+    }
+
+    /**
+     * Notifies the listeners of the epochs every worker has finished.
+     */
+    private void reportEpochs()
+    {
+        int done = numEpochs;
+        for(int e : epochsDone)
+            done = Math.min(done, e);
+
+        for(; numReported < done; numReported++)
+        {
+            long count = numPatterns[numReported];
+            lastError = count == 0 ? 0.0 : costErrors[numReported] / count / 2;
+            double percent = errorPercents[numReported];
+            net.fireWeightsChanged();
+            for(TrainListenerAdapter listener : listeners)
+                listener.trainCyclePerformed((long) numReported + 1, lastError,
+                        lastError, percent, percent);
+        }
+    }
+
+    /**
+     * The state of a worker's connection, its messages being read and
+     * written without blocking.
+     */
+    private final class Connection
+    {
+        private final SocketChannel channel;
+        private final ByteBuffer header = ByteBuffer.allocate(Protocol.HEADER_BYTES);
+        private final LinkedList<ByteBuffer> pending = new LinkedList<ByteBuffer>();
+        private SelectionKey key;
+        private ByteBuffer payload;
+        private boolean isReadingPayload;
+        private int type;
+        private double gradients[];
+        private int workerIndex = -1;
+        private boolean isFinished;
+
+        Connection(SocketChannel channel)
+        {
+            this.channel = channel;
+        }
+
+        /**
+         * Reads and handles the messages that have fully arrived.
+         *
+         * @return false, if the worker closed the connection.
+         */
+        boolean read() throws IOException
+        {
+            while(!isFinished)
+            {
+                if(!isReadingPayload)
+                {
+                    if(channel.read(header) < 0)
+                        return false;
+                    if(header.hasRemaining())
+                        return true;
+                    header.flip();
+                    type = header.getInt();
+                    int length = header.getInt();
+                    header.clear();
+                    if(length < 0 || length > Protocol.MAX_PAYLOAD_BYTES)
+                        throw new IOException("Invalid message length: " + length);
+                    if(payload == null || payload.capacity() < length)
+                        payload = ByteBuffer.allocate(length);
+                    payload.clear();
+                    payload.limit(length);
+                    isReadingPayload = true;
+                }
+                if(payload.hasRemaining())
+                {
+                    if(channel.read(payload) < 0)
+                        return false;
+                    if(payload.hasRemaining())
+                        return true;
+                }
+                isReadingPayload = false;
+                payload.flip();
+                handle(this, type, payload);
+            }
+            return true;
+        }
+
+        void send(ByteBuffer message) throws IOException
+        {
+            pending.add(message);
+            flush();
+        }
+
+        void flush() throws IOException
+        {
+            while(!pending.isEmpty())
+            {
+                ByteBuffer message = pending.getFirst();
+                channel.write(message);
+                if(message.hasRemaining())
+                    break;
+                pending.removeFirst();
+            }
+            key.interestOps(pending.isEmpty() ? SelectionKey.OP_READ
+                    : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+
+        double[] getGradients(int length)
+        {
+            if(gradients == null)
+                gradients = new double[length];
+            return gradients;
+        }
+
+        void close()
+        {
+            try
+            {
+                channel.close();
+            }
+            catch(IOException e){}
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.distributed;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import jneuralnet.core.NeuralNetwork;
+import jneuralnet.core.training.TrainListenerAdapter;
+import jneuralnet.core.training.TrainingPattern;
+
+/**
+ * Runs the workers of a {@link ParameterServer} as processes on the local
+ * machine, connected to the server over the loopback interface. The network
+ * is handed to the workers through a temporary file without its training
+ * data, and every worker gets its shard of the patterns in a file of its
+ * own, see {@link ParameterServerWorker}. Their output is copied to the
+ * standard output, prefixed with the worker index. Run it as
+ *
+ * <pre>
+ * java jneuralnet.core.distributed.ParameterServerLauncher netFile workers epochs batch [compression [fraction]]
+ * </pre>
+ *
+ * which trains the saved network and saves it back to the same file.
+ *
+ * @author Ragha
+ * @see ParameterServerWorker
+ * @version 1.0
+ */
+public final class ParameterServerLauncher
+{
+    private ParameterServerLauncher()
+    {
+    }
+
+    /**
+     * Trains the server's network with its number of worker processes,
+     * returning once they have all exited.
+     *
+     * @param server The configured, unbound server.
+     * @param jvmOptions The options of the worker JVMs, e.g. -Xmx.
+     * @throws IOException If a worker could not be started or failed.
+     */
+    public static void train(final ParameterServer server, String... jvmOptions)
+            throws IOException, InterruptedException
+    {
+        int port = server.bind(new InetSocketAddress(
+                InetAddress.getByName("127.0.0.1"), 0));
+        NeuralNetwork net = server.getNeuralNetwork();
+        int numWorkers = server.getNumWorkers();
+        File netFile = File.createTempFile("jneuralnet-ps", ".net");
+        netFile.deleteOnExit();
+        File shardFiles[] = new File[numWorkers];
+        final WorkerProcesses workers = new WorkerProcesses();
+        try
+        {
+            PatternShards.saveWithoutPatterns(net, netFile);
+            List<TrainingPattern> patterns = net.getTeacher()
+                    .getTrainingDataRepository().getProcessedTrainingSet()
+                    .getTrainingPatterns();
+            for(int w=0; w<numWorkers; w++)
+            {
+                shardFiles[w] = File.createTempFile("jneuralnet-ps", ".shard");
+                shardFiles[w].deleteOnExit();
+                PatternShards.write(net, patterns, w, numWorkers, shardFiles[w]);
+                workers.start(ParameterServerWorker.class, jvmOptions, "127.0.0.1",
+                        String.valueOf(port), String.valueOf(w),
+                        netFile.getAbsolutePath(), shardFiles[w].getAbsolutePath());
+            }
+
+            //a worker failing before connecting would leave the server
+            //waiting, so it is stopped once they have all exited...
+            Thread watcher = new Thread("jneuralnet-ps-watcher") {
+                @Override
+                public void run() {
+                    try {
+                        workers.waitFor();
+                    }
+                    catch(Exception e){}
+                    server.stop();
+                }
+            };
+            watcher.setDaemon(true);
+            watcher.start();
+
+            server.serve();
+            workers.waitFor();
+        }
+        finally
+        {
+            workers.destroy();
+            netFile.delete();
+            for(File shardFile : shardFiles)
+            {
+                if(shardFile != null)
+                    shardFile.delete();
+            }
+        }
+    }
+
+    public static void main(String args[]) throws Exception
+    {
+        if(args.length < 4 || args.length > 6)
+        {
+            System.err.println("Usage: ParameterServerLauncher netFile workers epochs batch "
+                    + "[NONE|FLOAT|TOP_K [fraction]]");
+            System.exit(2);
+        }
+        NeuralNetwork net = NeuralNetwork.loadNet(args[0]);
+        ParameterServer server = new ParameterServer(net, Integer.parseInt(args[1]));
+        server.setNumEpochs(Integer.parseInt(args[2]));
+        server.setBatchSize(Integer.parseInt(args[3]));
+        if(args.length > 4)
+            server.setCompression(GradientCompression.valueOf(args[4]));
+        if(args.length > 5)
+            server.setTopKFraction(Double.parseDouble(args[5]));
+        server.addTrainListener(new TrainListenerAdapter() {
+            @Override
+            public void trainCyclePerformed(Long epoch, Double trainErr,
+                    Double valErr, Double trainPct, Double valPct) {
+                System.out.println(String.format("epoch %d  error %.6f", epoch, trainErr));
+            }
+        });
+
+        long start = System.nanoTime();
+        train(server);
+        System.out.println(String.format("%d updates in %.2f s, max staleness %d",
+                server.getVersion(), (System.nanoTime() - start) / 1e9,
+                server.getMaxStaleness()));
+        net.saveNet(args[0]);
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.distributed;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import jneuralnet.core.ActivationContext;
+import jneuralnet.core.NeuralNetwork;
+import jneuralnet.core.learning.AbstractLearningAlgo;
+import jneuralnet.core.training.EpochError;
+import jneuralnet.core.training.TrainingDataRepository;
+import jneuralnet.core.training.TrainingPattern;
+
+/**
+ * A worker of a {@link ParameterServer}. It trains a copy of the network on
+ * its shard of the processed training set, every n-th pattern, pushing the
+ * summed gradients of each mini batch to the server and continuing with the
+ * parameters it gets in reply. Run it as
+ *
+ * <pre>
+ * java jneuralnet.core.distributed.ParameterServerWorker host port worker netFile shardFile
+ * </pre>
+ *
+ * the network file, saved with
+ * {@link NeuralNetwork#saveNet(java.lang.String) saveNet(...)}, holding the
+ * learning algorithm. The worker reads its patterns from the shard file
+ * alone, so that it never holds the whole training set; the launcher saves
+ * the network without its training data.
+ *
+ * @author Ragha
+ * @see ParameterServerLauncher
+ * @version 1.0
+ */
+public class ParameterServerWorker
+{
+    private final NeuralNetwork net;
+    private final AbstractLearningAlgo algo;
+    private final int workerIndex;
+    private final List<TrainingPattern> shard = new ArrayList<TrainingPattern>();
+    private final ByteBuffer header = ByteBuffer.allocate(Protocol.HEADER_BYTES);
+    private ByteBuffer buffer;
+
+    /**
+     * Creates a worker training on every n-th pattern of the network's
+     * processed training set, for a worker holding the whole training set.
+     *
+     * @param net The copy of the network to be trained.
+     * @param workerIndex The index of this worker, from 0.
+     * @param numWorkers The number of workers sharing the patterns.
+     * @throws IllegalArgumentException If the index is not that of a worker.
+     * @throws IllegalStateException If the network has no training data or
+     * its learning algorithm does not support batch training.
+     */
+    public ParameterServerWorker(NeuralNetwork net, int workerIndex, int numWorkers)
+            throws IllegalArgumentException, IllegalStateException
+    {
+        this(net, workerIndex, getShard(net, workerIndex, numWorkers));
+    }
+
+    /**
+     * @param net The copy of the network to be trained.
+     * @param workerIndex The index of this worker, from 0.
+     * @param shard The processed patterns this worker trains on.
+     * @throws IllegalArgumentException If the index is negative.
+     * @throws IllegalStateException If the learning algorithm of the network
+     * does not support batch training.
+     */
+    public ParameterServerWorker(NeuralNetwork net, int workerIndex,
+            List<TrainingPattern> shard)
+            throws IllegalArgumentException, IllegalStateException
+    {
+        if(workerIndex < 0)
+            throw new IllegalArgumentException("workerIndex has to be >= 0");
+        algo = net.getTeacher().getLearningAlgo();
+        if(algo == null)
+            throw new IllegalStateException("No learning algorithm set...");
+        if(!algo.isBatchSupported())
+            throw new IllegalStateException(algo.getName() +
+                    " does not support batch training...");
+
+        this.shard.addAll(shard);
+        this.net = net;
+        this.workerIndex = workerIndex;
+    }
+
+    private static List<TrainingPattern> getShard(NeuralNetwork net,
+            int workerIndex, int numWorkers)
+    {
+        if(workerIndex < 0 || workerIndex >= numWorkers)
+            throw new IllegalArgumentException("workerIndex has to be in [0, numWorkers)");
+        TrainingDataRepository repository = net.getTeacher().getTrainingDataRepository();
+        if(repository == null || repository.getProcessedTrainingSet() == null)
+            throw new IllegalStateException("No training data found");
+        List<TrainingPattern> patterns = repository.getProcessedTrainingSet()
+                .getTrainingPatterns();
+        List<TrainingPattern> shard = new ArrayList<TrainingPattern>();
+        for(int p=workerIndex; p<patterns.size(); p+=numWorkers)
+            shard.add(patterns.get(p));
+        return shard;
+    }
+
+    /**
+     * @return The patterns trained by this worker.
+     */
+    public List<TrainingPattern> getShard()
+    {
+        return Collections.unmodifiableList(shard);
+    }
+
+    /**
+     * Trains till the configured number of epochs is done or the server
+     * stops the training.
+     *
+     * @param address The address of the server.
+     */
+    public void run(InetSocketAddress address) throws IOException
+    {
+        SocketChannel channel = SocketChannel.open(address);
+        try
+        {
+            channel.socket().setTcpNoDelay(true);
+            train(channel);
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    private void train(SocketChannel channel) throws IOException
+    {
+        int numParameters = NetworkParameters.getNumParameters(net);
+
+        ByteBuffer hello = Protocol.message(Protocol.HELLO, 8);
+        hello.putInt(workerIndex);
+        hello.putInt(numParameters);
+        Protocol.send(channel, hello);
+
+        if(Protocol.receiveHeader(channel, header) != Protocol.CONFIG)
+            throw new IOException("Expected the configuration");
+        buffer = Protocol.receivePayload(channel, header, buffer);
+        int batchSize = buffer.getInt();
+        int numEpochs = buffer.getInt();
+        GradientCompression compression = GradientCompression.values()[buffer.getInt()];
+        double fraction = buffer.getDouble();
+
+        double parameters[] = new double[numParameters];
+        //the gradients not pushed yet, kept for the next push...
+        double gradients[] = new double[numParameters];
+        ByteBuffer push = Protocol.message(Protocol.PUSH, Protocol.PUSH_HEADER_BYTES
+                + compression.getMaxEncodedBytes(numParameters, fraction));
+
+        Protocol.send(channel, Protocol.message(Protocol.PULL, 0));
+        long version = receiveWeights(channel, parameters);
+
+        ActivationContext ctx = new ActivationContext(net);
+        EpochError error = new EpochError();
+        double input[] = new double[net.getNumInputs()];
+        double expected[] = new double[net.getNumOutputs()];
+        List<TrainingPattern> order = new ArrayList<TrainingPattern>(shard);
+        Random rand = new Random(workerIndex);
+
+        for(int epoch=0; epoch<numEpochs && version >= 0; epoch++)
+        {
+            Collections.shuffle(order, rand);
+            for(int from=0; from<order.size() && version >= 0; from+=batchSize)
+            {
+                NetworkParameters.write(parameters, net);
+                error.clear();
+                int to = Math.min(from + batchSize, order.size());
+                for(TrainingPattern tp : order.subList(from, to))
+                {
+                    tp.getInputData(input);
+                    tp.getOutputData(expected);
+                    double output[] = net.getOutputOnPreprocessedData(input, ctx);
+                    error.add(algo.getCostFunction(), output, expected);
+                    algo.accumulateGradients(net, ctx, expected);
+                }
+                NetworkParameters.addGradients(ctx, gradients);
+                ctx.clearGradients();
+
+                push.clear();
+                push.putInt(Protocol.PUSH);
+                push.putInt(0);
+                push.putLong(version);
+                push.putInt(epoch);
+                push.putInt(error.getNumPatterns());
+                push.putDouble(error.getCostError());
+                push.putDouble(error.getErrorPercent());
+                compression.encode(gradients, push, fraction);
+                Protocol.setPayloadLength(push);
+                Protocol.send(channel, push);
+                version = receiveWeights(channel, parameters);
+            }
+            if(version >= 0)
+            {
+                ByteBuffer end = Protocol.message(Protocol.EPOCH_END, 4);
+                end.putInt(epoch);
+                Protocol.send(channel, end);
+            }
+        }
+        if(version >= 0)
+            Protocol.send(channel, Protocol.message(Protocol.BYE, 0));
+    }
+
+    /**
+     * Reads the reply to a pull or a push.
+     *
+     * @return The version of the parameters read, -1 if the server stopped
+     * the training.
+     */
+    private long receiveWeights(SocketChannel channel, double parameters[])
+            throws IOException
+    {
+        int type = Protocol.receiveHeader(channel, header);
+        if(type == Protocol.STOP)
+            return -1;
+        if(type != Protocol.WEIGHTS)
+            throw new IOException("Expected the parameters");
+        buffer = Protocol.receivePayload(channel, header, buffer);
+        long version = buffer.getLong();
+        Protocol.getDoubles(buffer, parameters, 0, parameters.length);
+        return version;
+    }
+
+    public static void main(String args[]) throws IOException
+    {
+        if(args.length != 5)
+        {
+            System.err.println("Usage: ParameterServerWorker host port worker netFile shardFile");
+            System.exit(2);
+        }
+        NeuralNetwork net = NeuralNetwork.loadNet(args[3]);
+        ParameterServerWorker worker = new ParameterServerWorker(net,
+                Integer.parseInt(args[2]), PatternShards.read(net, new File(args[4])));
+        worker.run(new InetSocketAddress(args[0], Integer.parseInt(args[1])));
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import jneuralnet.core.NeuralNetwork;
+import jneuralnet.core.training.FloatTrainingPattern;
+import jneuralnet.core.training.TrainingPattern;
+import jneuralnet.core.training.TrainingSet;
+
+/**
+ * Hands the workers of a {@link ParameterServer} their share of the
+ * training patterns through files of their own, so that a worker JVM only
+ * ever holds its shard. A shard file holds the number of inputs, outputs
+ * and patterns followed by the vectors of every pattern as doubles; the
+ * network itself is saved without its training data.
+ *
+ * @author Ragha
+ * @see ParameterServerLauncher
+ * @version 1.0
+ */
+final class PatternShards
+{
+    private PatternShards()
+    {
+    }
+
+    /**
+     * Writes every n-th pattern, starting at the worker index, to a file.
+     *
+     * @param patterns The processed training patterns of the network.
+     * @param workerIndex The index of the worker, from 0.
+     * @param numWorkers The number of workers sharing the patterns.
+     */
+    static void write(NeuralNetwork net, List<TrainingPattern> patterns,
+            int workerIndex, int numWorkers, File file) throws IOException
+    {
+        int numInputs = net.getNumInputs(), numOutputs = net.getNumOutputs();
+        int count = Math.max(0, (patterns.size() - workerIndex + numWorkers - 1) / numWorkers);
+        double input[] = new double[numInputs];
+        double output[] = new double[numOutputs];
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file)));
+        try
+        {
+            out.writeInt(numInputs);
+            out.writeInt(numOutputs);
+            out.writeInt(count);
+            for(int p=workerIndex; p<patterns.size(); p+=numWorkers)
+            {
+                TrainingPattern tp = patterns.get(p);
+                tp.getInputData(input);
+                tp.getOutputData(output);
+                for(double value : input)
+                    out.writeDouble(value);
+                for(double value : output)
+                    out.writeDouble(value);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads the patterns of a shard file, one at a time.
+     *
+     * @param net The network of the worker, single precision patterns
+     * being created if it uses float storage.
+     * @throws IOException If the file is not a shard of the network.
+     */
+    static List<TrainingPattern> read(NeuralNetwork net, File file)
+            throws IOException
+    {
+        boolean isFloat = net.getPrecision().isFloatStorage();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try
+        {
+            int numInputs = in.readInt();
+            int numOutputs = in.readInt();
+            int count = in.readInt();
+            if(numInputs != net.getNumInputs() || numOutputs != net.getNumOutputs()
+                    || count < 0)
+                throw new IOException("Shard " + file + " does not match the network");
+
+            List<TrainingPattern> shard = new ArrayList<TrainingPattern>(
+                    Math.min(count, 1 << 16));
+            Double input[] = new Double[numInputs];
+            Double output[] = new Double[numOutputs];
+            for(int p=0; p<count; p++)
+            {
+                for(int i=0; i<numInputs; i++)
+                    input[i] = in.readDouble();
+                for(int i=0; i<numOutputs; i++)
+                    output[i] = in.readDouble();
+                shard.add(isFloat ? new FloatTrainingPattern(input, output)
+                        : new TrainingPattern(input.clone(), output.clone()));
+            }
+            return shard;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Saves the network as {@link NeuralNetwork#saveNet(java.lang.String) saveNet(...)}
+     * does, but with empty training sets, leaving the network alone.
+     */
+    static void saveWithoutPatterns(NeuralNetwork net, File file) throws IOException
+    {
+        ObjectOutputStream out = new EmptySetOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file)));
+        try
+        {
+            out.writeObject(net);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes every training set as an empty one.
+     */
+    private static final class EmptySetOutputStream extends ObjectOutputStream
+    {
+        EmptySetOutputStream(OutputStream out) throws IOException
+        {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj)
+        {
+            return obj instanceof TrainingSet ? new TrainingSet() : obj;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.distributed;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * The messages between a {@link ParameterServer} or a {@link ShardedLayer}
+ * and their workers. Every
+ * message is a header of its type and the length of its payload, as ints,
+ * followed by the payload, all big endian.
+ *
+ * <pre>
+ * HELLO      worker -> server  int worker, int parameters
+ * CONFIG     server -> worker  int batch size, int epochs, int compression, double fraction
+ * PULL       worker -> server
+ * WEIGHTS    server -> worker  long version, double parameters[]
+ * PUSH       worker -> server  long version, int epoch, int patterns,
+ *                              double cost error, double error percent, gradients
+ * EPOCH_END  worker -> server  int epoch
+ * STOP       server -> worker
+ * BYE        worker -> server
+ * </pre>
+ *
+ * The server answers a PULL or a PUSH with the latest WEIGHTS, or with STOP
+ * once it is stopped. A sharded layer talks to its workers with
+ *
+ * <pre>
+ * HELLO         worker -> layer   int shard, int shards
+ * SHARD         layer -> worker   the serialized slice
+ * READY         worker -> layer
+ * FORWARD       layer -> worker   double input[]
+ * OUTPUTS       worker -> layer   double outputs[] of the slice
+ * BACKWARD      layer -> worker   double errors[] of the slice
+ * INPUT_ERRORS  worker -> layer   double errors[] of the inputs, of the slice
+ * UPDATE        layer -> worker
+ * COLLECT       layer -> worker
+ * PARAMETERS    worker -> layer   double parameters[] of the slice
+ * STOP          layer -> worker
+ * </pre>
+ *
+ * @author Ragha
+ * @version 1.0
+ */
+final class Protocol
+{
+    static final int HELLO = 1;
+    static final int CONFIG = 2;
+    static final int PULL = 3;
+    static final int WEIGHTS = 4;
+    static final int PUSH = 5;
+    static final int EPOCH_END = 6;
+    static final int STOP = 7;
+    static final int BYE = 8;
+    static final int SHARD = 9;
+    static final int READY = 10;
+    static final int FORWARD = 11;
+    static final int OUTPUTS = 12;
+    static final int BACKWARD = 13;
+    static final int INPUT_ERRORS = 14;
+    static final int UPDATE = 15;
+    static final int COLLECT = 16;
+    static final int PARAMETERS = 17;
+
+    static final int HEADER_BYTES = 8;
+    static final int CONFIG_BYTES = 20;
+    static final int PUSH_HEADER_BYTES = 32;
+
+    /**
+     * The largest payload accepted, which bounds the memory a corrupt
+     * header can make the reader allocate.
+     */
+    static final int MAX_PAYLOAD_BYTES = 1 << 30;
+
+    private Protocol()
+    {
+    }
+
+    /**
+     * @return A buffer with the header written, ready for the payload.
+     */
+    static ByteBuffer message(int type, int payloadBytes)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + payloadBytes);
+        buffer.putInt(type);
+        buffer.putInt(payloadBytes);
+        return buffer;
+    }
+
+    /**
+     * Sets the length in the header to the bytes written after it, for
+     * payloads of varying length.
+     */
+    static void setPayloadLength(ByteBuffer message)
+    {
+        message.putInt(4, message.position() - HEADER_BYTES);
+    }
+
+    /**
+     * @return A message holding a part of an array of doubles.
+     */
+    static ByteBuffer message(int type, double values[], int offset, int length)
+    {
+        ByteBuffer buffer = message(type, length * 8);
+        putDoubles(buffer, values, offset, length);
+        return buffer;
+    }
+
+    /**
+     * Writes doubles in bulk at the position of the buffer, advancing it.
+     */
+    static void putDoubles(ByteBuffer buffer, double values[], int offset, int length)
+    {
+        buffer.asDoubleBuffer().put(values, offset, length);
+        buffer.position(buffer.position() + length * 8);
+    }
+
+    /**
+     * Reads doubles in bulk from the position of the buffer, advancing it.
+     */
+    static void getDoubles(ByteBuffer buffer, double values[], int offset, int length)
+    {
+        buffer.asDoubleBuffer().get(values, offset, length);
+        buffer.position(buffer.position() + length * 8);
+    }
+
+    /**
+     * Writes the whole message to a blocking channel.
+     */
+    static void send(SocketChannel channel, ByteBuffer message) throws IOException
+    {
+        message.flip();
+        write(channel, message);
+    }
+
+    /**
+     * Writes the remaining bytes of a message to a blocking channel.
+     */
+    static void write(SocketChannel channel, ByteBuffer message) throws IOException
+    {
+        while(message.hasRemaining())
+            channel.write(message);
+    }
+
+    /**
+     * Reads the next message from a blocking channel, which has to be of
+     * the given type.
+     *
+     * @param buffer A buffer to be reused, if large enough.
+     * @return The payload, ready to be read.
+     */
+    static ByteBuffer receive(SocketChannel channel, ByteBuffer header, int type,
+            ByteBuffer buffer) throws IOException
+    {
+        int received = receiveHeader(channel, header);
+        if(received != type)
+            throw new IOException("Expected message " + type + " instead of " + received);
+        return receivePayload(channel, header, buffer);
+    }
+
+    /**
+     * Reads the header of the next message from a blocking channel.
+     *
+     * @return The type of the message, the header holding the length.
+     */
+    static int receiveHeader(SocketChannel channel, ByteBuffer header)
+            throws IOException
+    {
+        header.clear();
+        readFully(channel, header);
+        header.flip();
+        int type = header.getInt();
+        int length = header.getInt();
+        if(length < 0 || length > MAX_PAYLOAD_BYTES)
+            throw new IOException("Invalid message length: " + length);
+        header.rewind();
+        return type;
+    }
+
+    /**
+     * Reads the payload of the message whose header was read last.
+     *
+     * @param buffer A buffer to be reused, if large enough.
+     * @return The payload, ready to be read.
+     */
+    static ByteBuffer receivePayload(SocketChannel channel, ByteBuffer header,
+            ByteBuffer buffer) throws IOException
+    {
+        int length = header.getInt(4);
+        if(buffer == null || buffer.capacity() < length)
+            buffer = ByteBuffer.allocate(length);
+        buffer.clear();
+        buffer.limit(length);
+        readFully(channel, buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer)
+            throws IOException
+    {
+        while(buffer.hasRemaining())
+        {
+            if(channel.read(buffer) < 0)
+                throw new EOFException("Connection closed by the peer");
+        }
+    }
+}
@@ -0,0 +1,464 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.distributed;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import jneuralnet.core.DenseLayer;
+import jneuralnet.core.NeuronLayer;
+import jneuralnet.core.OptimizerState;
+import jneuralnet.core.OptimizerState.Slot;
+import jneuralnet.core.activation.AbstractActivation;
+import jneuralnet.core.learning.AbstractBPBasedAlgo;
+import jneuralnet.core.learning.AbstractLearningAlgo;
+
+/**
+ * Splits the neurons of a wide layer, i.e, the rows of its weight matrix,
+ * across worker processes. Every worker holds a contiguous slice of the
+ * neurons and computes their outputs, their deltas and the gradients of
+ * their weights; the outputs of the slices are gathered into the output of
+ * the layer, and the errors the slices propagate to the inputs of the layer
+ * are summed.
+ *
+ * <pre>
+ * ShardedLayer sharded = new ShardedLayer(layer, 4, net.getTeacher().getLearningAlgo());
+ * sharded.start();
+ * sharded.forward(input, output);
+ * sharded.backward(errors, inputErrors);
+ * sharded.applyGradients();
+ * sharded.collect();
+ * sharded.close();
+ * </pre>
+ *
+ * <p>The layer is only read when the workers connect, after which the
+ * workers hold its parameters and optimizer state; {@link #collect()}
+ * copies them back. The workers apply the gradients with the given learning
+ * algorithm, through
+ * {@link AbstractBPBasedAlgo#applyGradients(jneuralnet.core.DenseLayer, double[]) applyGradients(...)},
+ * so momentum, dynamic learning rates and QuickProp act on the slices as
+ * they would on the whole layer, pruned weights staying at zero. Only back
+ * propagation based algos can adapt a layer on its own, the others are
+ * rejected.
+ *
+ * <p>The sharded layer is driven by the caller, one layer at a time; it is
+ * not a training mode of the {@link jneuralnet.core.training.Teacher}. The
+ * caller feeds the layer its inputs and the errors of its outputs, e.g.
+ * for the output layer of a network whose hidden layers are computed
+ * locally.
+ *
+ * <p>The outputs are identical to those of the layer computed in a single
+ * process, every neuron's sum being computed by the same kernel. The input
+ * errors are summed in a different order and may differ in the last bits.
+ *
+ * <p>The workers answer the process holding the layer only, which is the
+ * one that needs the whole output, so the gathering of the slices goes
+ * through a single socket per worker. Every call costs a round trip to
+ * every worker, which pays off only for layers whose slices take longer to
+ * compute than that; see {@link jneuralnet.benchmark.ShardedLayerBenchmark}.
+ * This class is not thread safe.
+ *
+ * @author Ragha
+ * @see ShardedLayerWorker
+ * @version 1.0
+ */
+public class ShardedLayer
+{
+    /**
+     * The milliseconds between checks of the started workers while waiting
+     * for them to connect.
+     */
+    private static final int ACCEPT_POLL_MILLIS = 200;
+
+    private final NeuronLayer layer;
+    private final AbstractBPBasedAlgo algo;
+    private final int numShards;
+    private final int numInputs;
+    private final int firstNeurons[];
+
+    private ServerSocketChannel serverChannel;
+    private SocketChannel channels[];
+    private WorkerProcesses processes;
+    private final ByteBuffer header = ByteBuffer.allocate(Protocol.HEADER_BYTES);
+    private ByteBuffer buffer;
+    private double partial[];
+
+    /**
+     * @param layer The connected layer to be sharded.
+     * @param numShards The number of workers, atmost the number of neurons.
+     * @param algo The learning algorithm applying the gradients, which is
+     * copied to every worker.
+     * @throws IllegalArgumentException If the number of shards is invalid or
+     * the algo is not back propagation based.
+     * @throws IllegalStateException If the layer is not connected.
+     */
+    public ShardedLayer(NeuronLayer layer, int numShards, AbstractLearningAlgo algo)
+            throws IllegalArgumentException, IllegalStateException
+    {
+        if(layer.getDenseLayer() == null)
+            throw new IllegalStateException("The layer is not connected");
+        if(numShards <= 0 || numShards > layer.getNumNeurons())
+            throw new IllegalArgumentException("numShards has to be in [1, numNeurons]");
+        if(!(algo instanceof AbstractBPBasedAlgo))
+            throw new IllegalArgumentException(algo.getName() + " is not back " +
+                    "propagation based...");
+        this.layer = layer;
+        this.algo = (AbstractBPBasedAlgo) algo;
+        this.numShards = numShards;
+        this.numInputs = layer.getDenseLayer().getNumInputs();
+
+        //the neurons are split as evenly as possible...
+        firstNeurons = new int[numShards + 1];
+        for(int s=0; s<=numShards; s++)
+            firstNeurons[s] = (int) ((long) layer.getNumNeurons() * s / numShards);
+    }
+
+    public NeuronLayer getLayer()
+    {
+        return layer;
+    }
+
+    public AbstractLearningAlgo getLearningAlgo()
+    {
+        return algo;
+    }
+
+    public int getNumShards()
+    {
+        return numShards;
+    }
+
+    /**
+     * @return The index of the first neuron of a shard; that of the shard
+     * after the last being the number of neurons.
+     */
+    public int getFirstNeuron(int shard)
+    {
+        return firstNeurons[shard];
+    }
+
+    /**
+     * Starts the workers as processes on the local machine and waits for
+     * them to connect over the loopback interface.
+     *
+     * @param jvmOptions The options of the worker JVMs, e.g. -Xmx.
+     * @throws IOException If a worker could not be started or failed.
+     */
+    public void start(String... jvmOptions) throws IOException
+    {
+        int port = bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+        processes = new WorkerProcesses();
+        try
+        {
+            for(int s=0; s<numShards; s++)
+            {
+                processes.start(ShardedLayerWorker.class, jvmOptions, "127.0.0.1",
+                        String.valueOf(port), String.valueOf(s),
+                        String.valueOf(numShards));
+            }
+            connect();
+        }
+        catch(IOException e)
+        {
+            processes.destroy();
+            processes = null;
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the socket the workers connect to, for workers started by
+     * other means than {@link #start(java.lang.String[]) start(...)}.
+     *
+     * @param address The address to listen on, port 0 choosing a free port.
+     * @return The port listened on.
+     * @throws IllegalStateException If the layer is already bound.
+     */
+    public int bind(InetSocketAddress address) throws IOException,
+            IllegalStateException
+    {
+        if(serverChannel != null)
+            throw new IllegalStateException("The layer is already bound");
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().setReuseAddress(true);
+        serverChannel.socket().bind(address);
+        serverChannel.socket().setSoTimeout(ACCEPT_POLL_MILLIS);
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Waits for every worker to connect and hands them their slices.
+     *
+     * @throws IllegalStateException If the layer is not bound.
+     */
+    public void connect() throws IOException, IllegalStateException
+    {
+        if(serverChannel == null)
+            throw new IllegalStateException("The layer is not bound");
+
+        channels = new SocketChannel[numShards];
+        for(int connected=0; connected<numShards; )
+        {
+            Socket socket;
+            try
+            {
+                socket = serverChannel.socket().accept();
+            }
+            catch(SocketTimeoutException e)
+            {
+                if(processes != null && processes.hasExited())
+                    throw new IOException("A worker exited before connecting");
+                continue;
+            }
+            SocketChannel channel = socket.getChannel();
+            socket.setTcpNoDelay(true);
+
+            ByteBuffer hello = Protocol.receive(channel, header, Protocol.HELLO, buffer);
+            buffer = hello;
+            int shard = hello.getInt();
+            if(shard < 0 || shard >= numShards || channels[shard] != null
+                    || hello.getInt() != numShards)
+            {
+                channel.close();
+                throw new IOException("Invalid shard: " + shard);
+            }
+            channels[shard] = channel;
+            connected++;
+        }
+        serverChannel.close();
+        serverChannel = null;
+
+        for(int s=0; s<numShards; s++)
+        {
+            byte slice[] = getSlice(s);
+            ByteBuffer message = Protocol.message(Protocol.SHARD, slice.length);
+            message.put(slice);
+            Protocol.send(channels[s], message);
+        }
+        for(int s=0; s<numShards; s++)
+            buffer = Protocol.receive(channels[s], header, Protocol.READY, buffer);
+        partial = new double[numInputs];
+    }
+
+    /**
+     * Computes the output of the layer, the workers keeping what the
+     * backward pass needs.
+     *
+     * @param input The input vector presented to the layer.
+     * @param output The array to hold the output of every neuron.
+     */
+    public void forward(double input[], double output[]) throws IOException
+    {
+        checkConnected();
+        ByteBuffer message = Protocol.message(Protocol.FORWARD, input, 0, numInputs);
+        message.flip();
+        for(int s=0; s<numShards; s++)
+            Protocol.write(channels[s], message.duplicate());
+
+        for(int s=0; s<numShards; s++)
+        {
+            buffer = Protocol.receive(channels[s], header, Protocol.OUTPUTS, buffer);
+            Protocol.getDoubles(buffer, output, firstNeurons[s],
+                    firstNeurons[s + 1] - firstNeurons[s]);
+        }
+    }
+
+    /**
+     * Computes the deltas of the layer for the last input forwarded and
+     * adds the gradients of its weights to those summed by the workers.
+     *
+     * @param outputErrors The error of every neuron's output, for the output
+     * layer the desired minus the actual output, for a hidden layer the
+     * errors propagated to it by the layer above.
+     * @param inputErrors The array to be filled with <tt>∑(deltaj * Wji)</tt>
+     * for every input i, as
+     * {@link DenseLayer#propagateDeltas(double[], double[]) propagateDeltas(...)}.
+     */
+    public void backward(double outputErrors[], double inputErrors[])
+            throws IOException
+    {
+        checkConnected();
+        for(int s=0; s<numShards; s++)
+        {
+            Protocol.send(channels[s], Protocol.message(Protocol.BACKWARD,
+                    outputErrors, firstNeurons[s], firstNeurons[s + 1] - firstNeurons[s]));
+        }
+
+        //summed in the order of the shards, so the result is reproducible...
+        for(int s=0; s<numShards; s++)
+        {
+            buffer = Protocol.receive(channels[s], header, Protocol.INPUT_ERRORS, buffer);
+            if(s == 0)
+                Protocol.getDoubles(buffer, inputErrors, 0, numInputs);
+            else
+            {
+                Protocol.getDoubles(buffer, partial, 0, numInputs);
+                for(int i=0; i<numInputs; i++)
+                    inputErrors[i] += partial[i];
+            }
+        }
+    }
+
+    /**
+     * Adapts the weights with the gradients summed since the last call, with
+     * the learning algorithm of this layer, and clears them.
+     */
+    public void applyGradients() throws IOException
+    {
+        checkConnected();
+        ByteBuffer message = Protocol.message(Protocol.UPDATE, 0);
+        message.flip();
+        for(int s=0; s<numShards; s++)
+            Protocol.write(channels[s], message.duplicate());
+    }
+
+    /**
+     * Copies the parameters and the optimizer state held by the workers back
+     * into the layer.
+     */
+    public void collect() throws IOException
+    {
+        checkConnected();
+        ByteBuffer message = Protocol.message(Protocol.COLLECT, 0);
+        message.flip();
+        for(int s=0; s<numShards; s++)
+            Protocol.write(channels[s], message.duplicate());
+
+        DenseLayer full = layer.getDenseLayer();
+        for(int s=0; s<numShards; s++)
+        {
+            buffer = Protocol.receive(channels[s], header, Protocol.PARAMETERS, buffer);
+            int numParameters = (firstNeurons[s + 1] - firstNeurons[s]) * (numInputs + 1);
+            for(int p=0; p<numParameters; p++)
+                full.setParameter(getFullParameter(s, p), buffer.getDouble());
+            //followed by the slots allocated on the worker...
+            for(Slot slot : Slot.values())
+            {
+                if(buffer.getInt() == 0)
+                    continue;
+                double values[] = full.getOptimizerState().getValues(slot);
+                for(int p=0; p<numParameters; p++)
+                    values[getFullParameter(s, p)] = buffer.getDouble();
+            }
+        }
+        full.markModified();
+    }
+
+    /**
+     * Stops the workers and, if they were started by this layer, waits for
+     * them to exit.
+     *
+     * @throws IOException If a started worker exited with an error.
+     */
+    public void close() throws IOException, InterruptedException
+    {
+        try
+        {
+            if(channels != null)
+            {
+                for(SocketChannel channel : channels)
+                {
+                    if(channel == null)
+                        continue;
+                    try
+                    {
+                        Protocol.send(channel, Protocol.message(Protocol.STOP, 0));
+                    }
+                    catch(IOException e){}
+                    channel.close();
+                }
+                channels = null;
+            }
+            if(serverChannel != null)
+            {
+                serverChannel.close();
+                serverChannel = null;
+            }
+            if(processes != null)
+                processes.waitFor();
+        }
+        finally
+        {
+            if(processes != null)
+                processes.destroy();
+            processes = null;
+        }
+    }
+
+    private void checkConnected() throws IllegalStateException
+    {
+        if(channels == null || serverChannel != null)
+            throw new IllegalStateException("The workers are not connected");
+    }
+
+    /**
+     * @return The parameter index in the layer of a parameter of a shard.
+     */
+    private int getFullParameter(int shard, int param)
+    {
+        DenseLayer full = layer.getDenseLayer();
+        int numWeights = (firstNeurons[shard + 1] - firstNeurons[shard]) * numInputs;
+        if(param < numWeights)
+            return full.getWeightIndex(firstNeurons[shard] + param / numInputs,
+                    param % numInputs);
+        return full.getBiasIndex(firstNeurons[shard] + param - numWeights);
+    }
+
+    /**
+     * @return The serialized weights, optimizer state and activation
+     * functions of the neurons of a shard, followed by the learning algo.
+     */
+    private byte[] getSlice(int shard) throws IOException
+    {
+        DenseLayer full = layer.getDenseLayer();
+        int first = firstNeurons[shard];
+        int numNeurons = firstNeurons[shard + 1] - first;
+
+        DenseLayer slice = new DenseLayer(numNeurons, numInputs);
+        slice.setPrecision(full.getPrecision());
+        OptimizerState state = full.getOptimizerState();
+        OptimizerState sliceState = slice.getOptimizerState();
+        for(int p=0; p<slice.getNumParameters(); p++)
+        {
+            int param = getFullParameter(shard, p);
+            slice.setParameter(p, full.getParameter(param));
+            if(full.isPruned(param))
+                slice.prune(p);
+            for(Slot s : Slot.values())
+            {
+                if(state.isAllocated(s))
+                    sliceState.set(s, p, state.get(s, param));
+            }
+        }
+        AbstractActivation activations[] = new AbstractActivation[numNeurons];
+        for(int n=0; n<numNeurons; n++)
+            activations[n] = layer.getNeurons().get(first + n).getActivation();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(slice);
+        out.writeObject(activations);
+        out.writeObject(algo);
+        out.close();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.distributed;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import jneuralnet.core.DenseLayer;
+import jneuralnet.core.OptimizerState;
+import jneuralnet.core.OptimizerState.Slot;
+import jneuralnet.core.Precision;
+import jneuralnet.core.activation.AbstractActivation;
+import jneuralnet.core.learning.AbstractBPBasedAlgo;
+import jneuralnet.core.learning.costfunction.AbstractCostFunction;
+import jneuralnet.util.FilteredObjectInputStream;
+
+/**
+ * A worker of a {@link ShardedLayer}, holding a slice of the neurons of the
+ * layer. It answers the requests of the layer till it is told to stop. Run
+ * it as
+ *
+ * <pre>
+ * java jneuralnet.core.distributed.ShardedLayerWorker host port shard shards
+ * </pre>
+ *
+ * @author Ragha
+ * @version 1.0
+ */
+public class ShardedLayerWorker
+{
+    private final ByteBuffer header = ByteBuffer.allocate(Protocol.HEADER_BYTES);
+    private ByteBuffer buffer;
+
+    private DenseLayer slice;
+    private AbstractActivation activations[];
+    private AbstractBPBasedAlgo algo;
+    private AbstractActivation shared;
+    private double input[];
+    private double sums[];
+    private double outputs[];
+    private double deltas[];
+    private double gradients[];
+    private double inputErrors[];
+
+    /**
+     * Connects to the layer and serves it till it stops this worker.
+     *
+     * @param address The address of the layer.
+     * @param shard The index of the slice held by this worker.
+     * @param numShards The number of slices.
+     */
+    public void run(InetSocketAddress address, int shard, int numShards)
+            throws IOException, ClassNotFoundException
+    {
+        SocketChannel channel = SocketChannel.open(address);
+        try
+        {
+            channel.socket().setTcpNoDelay(true);
+            ByteBuffer hello = Protocol.message(Protocol.HELLO, 8);
+            hello.putInt(shard);
+            hello.putInt(numShards);
+            Protocol.send(channel, hello);
+
+            buffer = Protocol.receive(channel, header, Protocol.SHARD, buffer);
+            setSlice(buffer);
+            Protocol.send(channel, Protocol.message(Protocol.READY, 0));
+            serve(channel);
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    private void setSlice(ByteBuffer payload) throws IOException,
+            ClassNotFoundException
+    {
+        //only the slice and what trains it, the layer may not be trusted...
+        FilteredObjectInputStream in = new FilteredObjectInputStream(
+                new ByteArrayInputStream(payload.array(), payload.position(),
+                payload.remaining()), DenseLayer.class, OptimizerState.class,
+                Precision.class, AbstractActivation.class,
+                AbstractBPBasedAlgo.class, AbstractCostFunction.class);
+        try
+        {
+            slice = (DenseLayer) in.readObject();
+            activations = (AbstractActivation[]) in.readObject();
+            algo = (AbstractBPBasedAlgo) in.readObject();
+        }
+        catch(ClassCastException e)
+        {
+            throw new IOException("Shard of the layer is corrupt");
+        }
+        finally
+        {
+            in.close();
+        }
+        if(activations.length != slice.getNumNeurons())
+            throw new IOException("Shard of the layer is corrupt");
+
+        shared = activations[0];
+        for(AbstractActivation act : activations)
+        {
+            if(act != shared)
+                shared = null;
+        }
+
+        int numNeurons = slice.getNumNeurons();
+        input = new double[slice.getNumInputs()];
+        sums = new double[numNeurons];
+        outputs = new double[numNeurons];
+        deltas = new double[numNeurons];
+        gradients = new double[slice.getNumParameters()];
+        inputErrors = new double[slice.getNumInputs()];
+    }
+
+    private void serve(SocketChannel channel) throws IOException
+    {
+        while(true)
+        {
+            int type = Protocol.receiveHeader(channel, header);
+            buffer = Protocol.receivePayload(channel, header, buffer);
+            switch(type)
+            {
+                case Protocol.FORWARD:
+                    Protocol.getDoubles(buffer, input, 0, input.length);
+                    forward();
+                    Protocol.send(channel, Protocol.message(Protocol.OUTPUTS,
+                            outputs, 0, outputs.length));
+                    break;
+
+                case Protocol.BACKWARD:
+                    Protocol.getDoubles(buffer, deltas, 0, deltas.length);
+                    backward();
+                    Protocol.send(channel, Protocol.message(Protocol.INPUT_ERRORS,
+                            inputErrors, 0, inputErrors.length));
+                    break;
+
+                case Protocol.UPDATE:
+                    applyGradients();
+                    break;
+
+                case Protocol.COLLECT:
+                    Protocol.send(channel, getParameters());
+                    break;
+
+                case Protocol.STOP:
+                    return;
+
+                default:
+                    throw new IOException("Invalid message type: " + type);
+            }
+        }
+    }
+
+    private void forward()
+    {
+        slice.computeSums(input, sums);
+        System.arraycopy(sums, 0, outputs, 0, sums.length);
+        if(shared != null)
+            shared.activate(outputs, 0, outputs.length);
+        else
+        {
+            for(int n=0; n<outputs.length; n++)
+                outputs[n] = activations[n].activate(outputs[n]);
+        }
+    }
+
+    /**
+     * Turns the output errors held in the deltas into the deltas, sums the
+     * gradients as {@link jneuralnet.core.learning.AbstractBPBasedAlgo}
+     * does and propagates the deltas to the inputs.
+     */
+    private void backward()
+    {
+        int numInputs = input.length;
+        int numWeights = deltas.length * numInputs;
+        int param = 0;
+        for(int n=0; n<deltas.length; n++)
+        {
+            double delta = deltas[n] * activations[n].derivative(sums[n], outputs[n]);
+            deltas[n] = delta;
+            for(int i=0; i<numInputs; i++, param++)
+                gradients[param] += delta * input[i];
+            gradients[numWeights + n] -= delta;
+        }
+        slice.propagateDeltas(deltas, inputErrors);
+    }
+
+    /**
+     * Adapts the slice with the learning algo of the layer.
+     */
+    private void applyGradients()
+    {
+        algo.applyGradients(slice, gradients);
+        Arrays.fill(gradients, 0.0);
+    }
+
+    /**
+     * @return The parameters of the slice, followed by every slot of its
+     * optimizer state as a flag telling if it is allocated and its values.
+     */
+    private ByteBuffer getParameters()
+    {
+        int numParameters = slice.getNumParameters();
+        OptimizerState state = slice.getOptimizerState();
+        int bytes = numParameters * 8;
+        for(Slot s : Slot.values())
+            bytes += 4 + (state.isAllocated(s) ? numParameters * 8 : 0);
+
+        ByteBuffer message = Protocol.message(Protocol.PARAMETERS, bytes);
+        for(int p=0; p<numParameters; p++)
+            message.putDouble(slice.getParameter(p));
+        for(Slot s : Slot.values())
+        {
+            message.putInt(state.isAllocated(s) ? 1 : 0);
+            if(state.isAllocated(s))
+                Protocol.putDoubles(message, state.getValues(s), 0, numParameters);
+        }
+        return message;
+    }
+
+    public static void main(String args[]) throws Exception
+    {
+        if(args.length != 4)
+        {
+            System.err.println("Usage: ShardedLayerWorker host port shard shards");
+            System.exit(2);
+        }
+        new ShardedLayerWorker().run(new InetSocketAddress(args[0],
+                Integer.parseInt(args[1])), Integer.parseInt(args[2]),
+                Integer.parseInt(args[3]));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.distributed;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Worker processes started on the local machine with the class path of
+ * this JVM, their output copied to the standard output prefixed with the
+ * worker index.
+ *
+ * @author Ragha
+ * @see ParameterServerLauncher
+ * @see ShardedLayer
+ * @version 1.0
+ */
+final class WorkerProcesses
+{
+    private final List<Process> processes = new ArrayList<Process>();
+
+    /**
+     * Starts a worker running the main method of a class.
+     *
+     * @param mainClass The class of the worker.
+     * @param jvmOptions The options of the JVM, e.g. -Xmx.
+     * @param args The arguments of the main method.
+     */
+    void start(Class<?> mainClass, String jvmOptions[], String... args)
+            throws IOException
+    {
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin"
+                + File.separator + "java");
+        for(String option : jvmOptions)
+            command.add(option);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass.getName());
+        for(String arg : args)
+            command.add(arg);
+
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+        copyOutput(process, "[worker " + processes.size() + "] ");
+        processes.add(process);
+    }
+
+    /**
+     * @return true, if any worker has exited.
+     */
+    boolean hasExited()
+    {
+        for(Process process : processes)
+        {
+            try
+            {
+                process.exitValue();
+                return true;
+            }
+            catch(IllegalThreadStateException e){}
+        }
+        return false;
+    }
+
+    /**
+     * Waits for every worker to exit.
+     *
+     * @throws IOException If a worker exited with an error.
+     */
+    void waitFor() throws IOException, InterruptedException
+    {
+        for(int w=0; w<processes.size(); w++)
+        {
+            int code = processes.get(w).waitFor();
+            if(code != 0)
+                throw new IOException("Worker " + w + " exited with code " + code);
+        }
+    }
+
+    /**
+     * Kills the workers still running.
+     */
+    void destroy()
+    {
+        for(Process process : processes)
+            process.destroy();
+    }
+
+    private static void copyOutput(final Process process, final String prefix)
+    {
+        Thread thread = new Thread("jneuralnet-worker-output") {
+            @Override
+            public void run() {
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(process.getInputStream()));
+                try {
+                    String line;
+                    while((line = reader.readLine()) != null)
+                        System.out.println(prefix + line);
+                }
+                catch(IOException e){}
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -13,11 +13,15 @@
  */
 package jneuralnet.core.learning;
 
-import java.util.ArrayList;
+import java.util.Set;
+import jneuralnet.core.ActivationContext;
+import jneuralnet.core.DenseLayer;
+import jneuralnet.core.LayerParallelism;
 import jneuralnet.core.NeuralNetwork;
 import jneuralnet.core.Neuron;
 import jneuralnet.core.NeuronLayer;
-import jneuralnet.core.SynapticConnection;
+import jneuralnet.core.OptimizerState;
+import jneuralnet.core.OptimizerState.Slot;
 import jneuralnet.core.learning.costfunction.AbstractCostFunction;
 import jneuralnet.core.training.TrainingPattern;
 
@@ -27,11 +31,24 @@ import jneuralnet.core.training.TrainingPattern;
  * back propagation algo such as feed forwarding, output and hidden
  * layer delta calculations are taken care of.
  *
- * <p>Use the {@link #computeWeightChange(jneuralnet.core.SynapticConnection, java.lang.Double) }
- * method for defining weight change of a connection. 
+ * <p>Use the {@link #computeWeightChange(jneuralnet.core.DenseLayer, int, double) }
+ * method for defining weight change of a connection. The built in rules,
+ * see {@link #getWeightChangeRule() }, are instead applied along with
+ * momentum and dynamic learning rates in a single pass over the weight
+ * arrays of every layer, with the same results.
  *
  * <p>Standardized Output delta calculation rule can be modified by overriding
- * {@link #getOutputDelta(jneuralnet.core.Neuron, double, double) } method.
+ * {@link #getOutputDelta(jneuralnet.core.Neuron, double, double, double) } method.
+ *
+ * <p>The inputs, sums and deltas of every layer are kept in an
+ * {@link ActivationContext}, so a single algo can train the same network
+ * from several threads as long as every thread uses its own context.
+ *
+ * <p>Mini batches are supported, the gradients of the patterns being summed
+ * in the activation context and applied once per batch. Momentum and
+ * dynamic learning rates then act per batch, and QuickProp compares the
+ * gradients of successive batches as the batch algorithm it was designed
+ * as.
  *
  * <p>To use a modified cost function, use 
  * {@code this.costFunction = yourFunction} in the overridden constructor,
@@ -121,6 +138,34 @@ public abstract class AbstractBPBasedAlgo extends AbstractLearningAlgo
     //learning is enabled...
     private Double maxLearningRate,  minLearningRate;
 
+    /**
+     * Whether the weight change rule and computeWeightChange are declared
+     * by the same class, null until checked.
+     */
+    private transient Boolean isRuleConsistent;
+
+    /**
+     * The weight change rules that are applied to a whole layer at once,
+     * without calling
+     * {@link #computeWeightChange(jneuralnet.core.DenseLayer, int, double) computeWeightChange(...)}
+     * for every weight.
+     *
+     * @see #getWeightChangeRule()
+     */
+    protected enum WeightChangeRule
+    {
+        /**
+         * <tt>learningRate * errGradient</tt>, see {@link BackPropagation}.
+         */
+        GRADIENT_DESCENT,
+
+        /**
+         * <tt>errGradient / (prevErrGradient - errGradient) * prevWeightChange</tt>,
+         * see {@link QuickProp}.
+         */
+        QUICKPROP
+    }
+
     public Double getMaxLearningRate()
     {
         return maxLearningRate;
@@ -142,14 +187,103 @@ public abstract class AbstractBPBasedAlgo extends AbstractLearningAlgo
     }
 
     /**
-     * Override this method to specify desired method of changing the
+     * Implement this method to specify desired method of changing the
      * weights. The error gradient calculation can be modified by
-     * overriding {@link #getOutputDelta(jneuralnet.core.Neuron, double, double) getOutputDelta(...)}
+     * overriding {@link #getOutputDelta(jneuralnet.core.Neuron, double, double, double) getOutputDelta(...)}
      * method.
      *
+     * <p>This method is called for every weight and bias on every pattern,
+     * so implementations should read the connection state straight from
+     * the {@link OptimizerState} of the layer, or through
+     * {@link DenseLayer#getLearningRate(int) } and so on. State written here
+     * must be declared by {@link #getOptimizerSlots() }.
+     *
+     * <p>If the network has a {@link LayerParallelism}, this method is
+     * called from several threads at once for the different neurons of a
+     * wide layer, it must then only touch the state of the given parameter.
+     *
+     * @param layer The layer holding the connection.
+     * @param param The parameter index of the connection in the layer.
+     * @param errGradient The error gradient of the connection.
      * @return The weight change to be used.
+     * @see DenseLayer
      */
-    public abstract Double computeWeightChange(SynapticConnection conn, Double errGradient);
+    public abstract double computeWeightChange(DenseLayer layer, int param,
+            double errGradient);
+
+    /**
+     * Tells which built in rule
+     * {@link #computeWeightChange(jneuralnet.core.DenseLayer, int, double) computeWeightChange(...)}
+     * implements, so that the layers can be adapted in a single pass over
+     * their weight arrays. The rule is only used if it is declared by the
+     * same class as <code>computeWeightChange</code>, so a subclass
+     * overriding one of them falls back to the per weight path.
+     *
+     * @return The rule implemented, null by default, i.e, the weight
+     * changes are computed one weight at a time.
+     */
+    protected WeightChangeRule getWeightChangeRule()
+    {
+        return null;
+    }
+
+    /**
+     * @return The rule to be applied to whole layers, null if the weight
+     * changes are to be computed one weight at a time.
+     */
+    private WeightChangeRule getConsistentRule()
+    {
+        WeightChangeRule rule = getWeightChangeRule();
+        if (rule == null)
+            return null;
+        if (isRuleConsistent == null)
+        {
+            isRuleConsistent = getDeclaringClass("getWeightChangeRule")
+                    == getDeclaringClass("computeWeightChange",
+                    DenseLayer.class, int.class, double.class);
+        }
+        return isRuleConsistent ? rule : null;
+    }
+
+    /**
+     * @return The class of this algo or its nearest super class declaring
+     * the method, null if there is none.
+     */
+    private Class<?> getDeclaringClass(String name, Class<?>... parameterTypes)
+    {
+        for (Class<?> cls = getClass(); cls != null; cls = cls.getSuperclass())
+        {
+            try
+            {
+                cls.getDeclaredMethod(name, parameterTypes);
+                return cls;
+            }
+            catch (NoSuchMethodException e)
+            {
+                //look further up...
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The previous weight changes are kept if momentum is used, the learning
+     * rates and signs of the previous gradients if the learning rate is
+     * dynamic.
+     */
+    @Override
+    public Set<Slot> getOptimizerSlots()
+    {
+        Set<Slot> slots = super.getOptimizerSlots();
+        if (isMomentumUsed)
+            slots.add(Slot.PREV_WEIGHT_CHANGE);
+        if (isLearningRateDynamic)
+        {
+            slots.add(Slot.LEARNING_RATE);
+            slots.add(Slot.LAST_ERR_GRADIENT_SIGN);
+        }
+        return slots;
+    }
 
     /**
      * Allows you to put a constraint on momentum. This is useful for algorithms
@@ -166,78 +300,315 @@ public abstract class AbstractBPBasedAlgo extends AbstractLearningAlgo
      */
     public abstract boolean isDynamicLearningPermissible();
 
-    //saving on object creation...
-    private Double errGradient = 0.0;
+    /**
+     * Adapts the weights and bias of every neuron in the layer using
+     * the deltas and inputs recorded in the context, or the gradients
+     * summed in it. Pruned weights are left alone.
+     *
+     * @param l The layer to be adapted.
+     * @param ctx The context holding the values of the pattern.
+     * @param index The index of the layer in the context.
+     * @param slots The optimizer state used by this algo.
+     * @param gradients The summed gradients of the layer, or null to use
+     * the gradients of the pattern.
+     */
+    private void adaptLayer(NeuronLayer l, ActivationContext ctx, int index,
+            Set<Slot> slots, double gradients[])
+    {
+        adaptLayer(l.getDenseLayer(), ctx.getDeltas(index), ctx.getInputs(index),
+                slots, gradients);
+    }
 
-    private void adaptNeuron(Double delta, Neuron n)
+    /**
+     * Adapts the weights and bias of every neuron in the layer using the
+     * deltas and inputs of a pattern, or the summed gradients.
+     *
+     * @param gradients The summed gradients of the layer, or null to use
+     * the deltas and inputs.
+     */
+    private void adaptLayer(final DenseLayer dense, final double deltas[],
+            final double inputs[], Set<Slot> slots, final double gradients[])
     {
-        for (int i = 0; i < n.getInputConnections().size(); i++)
+        final OptimizerState state = dense.getOptimizerState();
+        state.allocate(slots);
+        final boolean isPrevWeightChangeKept = slots.contains(Slot.PREV_WEIGHT_CHANGE);
+
+        //every neuron adapts its own weights and bias...
+        LayerParallelism parallelism = dense.getLayerParallelism();
+        if (parallelism != null
+                && parallelism.isParallel(dense.getNumNeurons(), dense.getNumInputs()))
         {
-            SynapticConnection conn = n.getInputConnections().get(i);
-            errGradient = delta * n.getCachedInputs()[i];
-            processAdjustments(conn, errGradient);
+            parallelism.run(dense.getNumNeurons(), new LayerParallelism.RangeTask()
+            {
+                public void run(int from, int to)
+                {
+                    adaptNeurons(dense, state, deltas, inputs, gradients,
+                            from, to, isPrevWeightChangeKept);
+                }
+            });
+        }
+        else
+            adaptNeurons(dense, state, deltas, inputs, gradients,
+                    0, dense.getNumNeurons(), isPrevWeightChangeKept);
+    }
+
+    /**
+     * Adapts the weights and bias of the neurons in [from, to) of a layer.
+     */
+    private void adaptNeurons(DenseLayer dense, OptimizerState state,
+            double deltas[], double inputs[], double gradients[], int from, int to,
+            boolean isPrevWeightChangeKept)
+    {
+        WeightChangeRule rule = getConsistentRule();
+        if (rule != null)
+        {
+            adaptNeurons(dense, new FusedUpdate(rule, state, isPrevWeightChangeKept),
+                    deltas, inputs, gradients, from, to);
+            return;
+        }
+
+        int numInputs = dense.getNumInputs();
+        int param = from * numInputs;
+        for (int n = from; n < to; n++)
+        {
+            double delta = gradients != null ? 0.0 : deltas[n];
+            for (int i = 0; i < numInputs; i++, param++)
+            {
+                //pruned weights stay zero...
+                if (!dense.isPruned(param))
+                    processAdjustments(dense, state, param,
+                            gradients != null ? gradients[param] : delta * inputs[i],
+                            isPrevWeightChangeKept);
+            }
+        }
+        //adjust the bias weights...
+        for (int n = from; n < to; n++)
+        {
+            int bias = dense.getBiasIndex(n);
+            processAdjustments(dense, state, bias,
+                    gradients != null ? gradients[bias] : -deltas[n],
+                    isPrevWeightChangeKept);
+        }
+    }
+
+    /**
+     * Adapts the weights and bias of the neurons in [from, to) of a layer
+     * straight in its arrays, computing every weight change as
+     * {@link #processAdjustments(jneuralnet.core.DenseLayer, jneuralnet.core.OptimizerState, int, double, boolean) processAdjustments(...)}
+     * does.
+     */
+    private void adaptNeurons(DenseLayer dense, FusedUpdate update,
+            double deltas[], double inputs[], double gradients[], int from, int to)
+    {
+        boolean isFloatStorage = dense.getPrecision().isFloatStorage();
+        double weights[] = isFloatStorage ? null : dense.getWeights();
+        float floatWeights[] = isFloatStorage ? dense.getFloatWeights() : null;
+        double bias[] = dense.getBiases();
+        int numInputs = dense.getNumInputs();
+        int numWeights = dense.getNumNeurons() * numInputs;
+
+        int param = from * numInputs;
+        for (int n = from; n < to; n++)
+        {
+            double delta = gradients != null ? 0.0 : deltas[n];
+            for (int i = 0; i < numInputs; i++, param++)
+            {
+                //pruned weights stay zero...
+                if (dense.isPruned(param))
+                    continue;
+                double errGradient = gradients != null ? gradients[param] : delta * inputs[i];
+                //zero inputs of sparse data leave the weight alone, it is
+                //not even written so that other threads can keep the line...
+                if (errGradient == 0.0 && update.isStateless)
+                    continue;
+                double weightChange = update.getWeightChange(param, errGradient);
+                if (weights != null)
+                    weights[param] = weights[param] + weightChange;
+                else
+                    floatWeights[param] = (float) (floatWeights[param] + weightChange);
+            }
         }
-        //adjust the bias weight...
-        processAdjustments(n.getBias(), -delta);
+        //adjust the bias weights...
+        for (int n = from; n < to; n++)
+        {
+            int biasParam = numWeights + n;
+            bias[n] = bias[n] + update.getWeightChange(biasParam,
+                    gradients != null ? gradients[biasParam] : -deltas[n]);
+        }
+
+        dense.markModified();
     }
 
-    //Again...to reduce obj creation overload...
-    private Double newLearningRate = 0.0;
-    private Double weightChange = 0.0;
+    /**
+     * The optimizer state of a layer and the settings of this algo, read
+     * once per layer by the single pass over the layer.
+     */
+    private final class FusedUpdate
+    {
+        private final boolean isQuickProp;
+        private final boolean isPrevWeightChangeKept;
+        //true if a zero gradient neither changes the weight nor the state...
+        private final boolean isStateless;
+        private final double maxRate, minRate;
+        private final double learningRates[];
+        private final double momentums[];
+        private final double prevWeightChanges[];
+        private final double prevErrGradients[];
+        private final double lastErrGradientSigns[];
+
+        FusedUpdate(WeightChangeRule rule, OptimizerState state,
+                boolean isPrevWeightChangeKept)
+        {
+            this.isQuickProp = rule == WeightChangeRule.QUICKPROP;
+            this.isPrevWeightChangeKept = isPrevWeightChangeKept;
+            isStateless = !isQuickProp && !isMomentumUsed && !isLearningRateDynamic
+                    && !isPrevWeightChangeKept;
+            maxRate = maxLearningRate;
+            minRate = minLearningRate;
+            //the slots written are allocated, the others may be read as defaults...
+            learningRates = isLearningRateDynamic ? state.getValues(Slot.LEARNING_RATE)
+                    : getAllocated(state, Slot.LEARNING_RATE);
+            momentums = getAllocated(state, Slot.MOMENTUM);
+            prevWeightChanges = isPrevWeightChangeKept
+                    ? state.getValues(Slot.PREV_WEIGHT_CHANGE)
+                    : getAllocated(state, Slot.PREV_WEIGHT_CHANGE);
+            prevErrGradients = isQuickProp ? state.getValues(Slot.PREV_ERR_GRADIENT)
+                    : getAllocated(state, Slot.PREV_ERR_GRADIENT);
+            lastErrGradientSigns = isLearningRateDynamic
+                    ? state.getValues(Slot.LAST_ERR_GRADIENT_SIGN)
+                    : getAllocated(state, Slot.LAST_ERR_GRADIENT_SIGN);
+        }
+
+        private double[] getAllocated(OptimizerState state, Slot slot)
+        {
+            return state.isAllocated(slot) ? state.getValues(slot) : null;
+        }
+
+        private double get(double values[], Slot slot, int param)
+        {
+            return values == null ? slot.getDefaultValue() : values[param];
+        }
+
+        /**
+         * @return The weight change of the parameter, updating its state.
+         */
+        double getWeightChange(int param, double errGradient)
+        {
+            double weightChange;
+            if (isQuickProp)
+            {
+                double prevErrGradient = prevErrGradients[param];
+                weightChange = ( errGradient / (prevErrGradient - errGradient) ) *
+                        get(prevWeightChanges, Slot.PREV_WEIGHT_CHANGE, param);
+                prevErrGradients[param] = errGradient;
+            }
+            else
+                weightChange = get(learningRates, Slot.LEARNING_RATE, param) * errGradient;
+
+            //Add momentum, if used...
+            if (isMomentumUsed)
+            {
+                weightChange += get(momentums, Slot.MOMENTUM, param)
+                        * get(prevWeightChanges, Slot.PREV_WEIGHT_CHANGE, param);
+            }
+            //is learning rate dynamic??
+            if (isLearningRateDynamic)
+            {
+                double learningRate = learningRates[param];
+                double newLearningRate;
+                boolean isLastErrGradientPositive = lastErrGradientSigns[param] >= 0;
+
+                //same signs...increase learning rate by 1%, within bounds...
+                if ((isLastErrGradientPositive && errGradient >= 0) ||
+                        (!isLastErrGradientPositive && errGradient < 0))
+                {
+                    newLearningRate = learningRate * 1.01;
+                    if (newLearningRate >= maxRate)
+                        newLearningRate = learningRate;
+                }
+                else
+                {
+                    newLearningRate = learningRate * 0.99;
+                    if (newLearningRate <= minRate)
+                        newLearningRate = learningRate;
+                }
+                lastErrGradientSigns[param] = errGradient >= 0 ? 1.0 : -1.0;
+                learningRates[param] = newLearningRate;
+            }
+
+            if (isPrevWeightChangeKept)
+                prevWeightChanges[param] = weightChange;
+            return weightChange;
+        }
+    }
 
     /**
      * Adjusts the connection weight by taking momentum and dynamic learning
      * rates into consideration, i.e., if they're set.
      *
-     * @param conn The connection to be adapted.
+     * @param layer The layer holding the connection to be adapted.
+     * @param state The optimizer state of the layer.
+     * @param param The parameter index of the connection.
      * @param errGradient The error gradient to be used for
      * computing weight change.
+     * @param isPrevWeightChangeKept true if the weight change is to be
+     * saved for the next pattern.
      *
-     * @see SynapticConnection
+     * @see DenseLayer
      */
-    private void processAdjustments(SynapticConnection conn, Double errGradient)
+    private void processAdjustments(DenseLayer layer, OptimizerState state,
+            int param, double errGradient, boolean isPrevWeightChangeKept)
     {
-        weightChange = computeWeightChange(conn, errGradient);
+        double weightChange = computeWeightChange(layer, param, errGradient);
 
         //Add momentum, if used...
         if (isMomentumUsed)
-            weightChange += conn.getMomentum() * (conn.getPrevWeightChange());
+        {
+            weightChange += state.get(Slot.MOMENTUM, param)
+                    * state.get(Slot.PREV_WEIGHT_CHANGE, param);
+        }
         //is learning rate dynamic??
         if (isLearningRateDynamic)
         {
+            double learningRate = state.get(Slot.LEARNING_RATE, param);
+            double newLearningRate;
+            boolean isLastErrGradientPositive = state.get(Slot.LAST_ERR_GRADIENT_SIGN, param) >= 0;
+
             //same signs...increase learning rate...
-            if ((conn.isIsLastErrGradientPositive() && errGradient >= 0) ||
-                    (!conn.isIsLastErrGradientPositive() && errGradient < 0))
+            if ((isLastErrGradientPositive && errGradient >= 0) ||
+                    (!isLastErrGradientPositive && errGradient < 0))
             {
                 //increase learning rate by 1%
-                newLearningRate = conn.getLearningRate() * 1.01;
+                newLearningRate = learningRate * 1.01;
                 //check permissible bounds...
                 if (newLearningRate >= maxLearningRate)
-                    newLearningRate = conn.getLearningRate();                
+                    newLearningRate = learningRate;
             }
             else
             {
                 //diff signs decrease learning rate by 1%
-                newLearningRate = conn.getLearningRate() * 0.99;
+                newLearningRate = learningRate * 0.99;
                 //check permissible bounds...
-                if (newLearningRate <= minLearningRate)                
-                    newLearningRate = conn.getLearningRate();                
+                if (newLearningRate <= minLearningRate)
+                    newLearningRate = learningRate;
             }
 
             //update for next iteration...
-            conn.setIsLastErrGradientPositive(errGradient >= 0);
+            state.set(Slot.LAST_ERR_GRADIENT_SIGN, param, errGradient >= 0 ? 1.0 : -1.0);
             //Adapt learning rate...
-            conn.setLearningRate(newLearningRate);
+            state.set(Slot.LEARNING_RATE, param, newLearningRate);
         }
 
-        //Save last weight change...
-        conn.setPrevWeightChange(weightChange);
+        //Save last weight change, if needed...
+        if (isPrevWeightChangeKept)
+            state.set(Slot.PREV_WEIGHT_CHANGE, param, weightChange);
         //Adapt weight...
-        conn.setWeight(weightChange + conn.getWeight());
+        layer.setParameter(param, layer.getParameter(param) + weightChange);
     }
 
     /**
-     * Trains the neural network for a single training pattern.
+     * Trains the neural network for a single training pattern fed forward
+     * using the activation context of the network.
      * @param net The neural network to be used.
      * @param actualOutput The output guessed by the network.
      * @param expectedOutput The expected output that is provided 
@@ -249,46 +620,195 @@ public abstract class AbstractBPBasedAlgo extends AbstractLearningAlgo
     public void trainNet(NeuralNetwork net,
             Double actualOutput[], Double expectedOutput[])
     {
-        backPropogate(net, expectedOutput, actualOutput);
-        adaptWeights(net);
+        double actual[] = new double[actualOutput.length];
+        for (int i = 0; i < actual.length; i++)
+            actual[i] = actualOutput[i];
+        double expected[] = new double[expectedOutput.length];
+        for (int i = 0; i < expected.length; i++)
+            expected[i] = expectedOutput[i];
+
+        ActivationContext ctx = net.getActivationContext();
+        backPropogate(net, ctx, expected, actual);
+        adaptWeights(net, ctx);
+    }
+
+    /**
+     * Trains the neural network for a single training pattern fed forward
+     * using the given context. Several threads may train the same network
+     * at once, each with its own context, the weight updates are however
+     * not synchronized.
+     *
+     * @param net The neural network to be used.
+     * @param ctx The context holding the values of the pattern.
+     * @param expectedOutput The expected output that is provided
+     * in the training pattern.
+     *
+     * @see ActivationContext
+     */
+    @Override
+    public void trainNet(NeuralNetwork net, ActivationContext ctx,
+            double expectedOutput[])
+    {
+        backPropogate(net, ctx, expectedOutput, ctx.getNetworkOutput());
+        adaptWeights(net, ctx);
+    }
+
+    /**
+     * @return true, the gradients can be summed over a batch.
+     */
+    @Override
+    public boolean isBatchSupported()
+    {
+        return true;
+    }
+
+    /**
+     * Back propagates the pattern and adds the error gradient of every
+     * weight and bias, as used by
+     * {@link #computeWeightChange(jneuralnet.core.DenseLayer, int, double) computeWeightChange(...)},
+     * to the gradients summed in the context.
+     *
+     * @param net The neural network to be used.
+     * @param ctx The context holding the values of the pattern.
+     * @param expectedOutput The expected output that is provided
+     * in the training pattern.
+     */
+    @Override
+    public void accumulateGradients(NeuralNetwork net, ActivationContext ctx,
+            double expectedOutput[])
+    {
+        backPropogate(net, ctx, expectedOutput, ctx.getNetworkOutput());
+        for (int layer = 0; layer < ctx.getNumLayers(); layer++)
+            accumulateGradients(ctx, ctx, layer);
+        ctx.patternAccumulated();
+    }
+
+    /**
+     * Adds the error gradients of a layer for the pattern whose deltas are
+     * held in a context to the gradients summed in another, or the same,
+     * context. The count of accumulated patterns is left alone.
+     *
+     * @param ctx The context holding the inputs and deltas of the pattern.
+     * @param sums The context holding the summed gradients.
+     * @param layer The index of the layer.
+     * @see #computeOutputDeltas(jneuralnet.core.NeuralNetwork, jneuralnet.core.ActivationContext, double[])
+     */
+    public void accumulateGradients(ActivationContext ctx, ActivationContext sums,
+            int layer)
+    {
+        double deltas[] = ctx.getDeltas(layer);
+        double inputs[] = ctx.getInputs(layer);
+        double gradients[] = sums.getGradients(layer);
+        int numInputs = inputs.length;
+        int numWeights = deltas.length * numInputs;
+
+        //gradients += outer(deltas, inputs), the biases see an input of -1...
+        int param = 0;
+        for (int n = 0; n < deltas.length; n++)
+        {
+            double delta = deltas[n];
+            for (int i = 0; i < numInputs; i++, param++)
+                gradients[param] += delta * inputs[i];
+            gradients[numWeights + n] -= delta;
+        }
+    }
+
+    /**
+     * Adapts every weight once with its summed gradient, taking momentum
+     * and dynamic learning rates into account as for a single pattern,
+     * and clears the gradients. Nothing is done if no pattern was
+     * accumulated.
+     *
+     * @param net The neural network to be used.
+     * @param ctx The context holding the summed gradients.
+     */
+    @Override
+    public void applyGradients(NeuralNetwork net, ActivationContext ctx)
+    {
+        if (ctx.getNumAccumulated() == 0)
+            return;
+        int numHidden = net.getHiddenLayers().size();
+        Set<Slot> slots = getOptimizerSlots();
+        adaptLayer(net.getOutputLayer(), ctx, numHidden, slots,
+                ctx.getGradients(numHidden));
+        for (int layerCount = numHidden - 1; layerCount >= 0; layerCount--)
+        {
+            adaptLayer(net.getHiddenLayers().get(layerCount), ctx, layerCount,
+                    slots, ctx.getGradients(layerCount));
+        }
+        ctx.clearGradients();
+    }
+
+    /**
+     * Adapts every weight of a single layer once with its summed gradient,
+     * as {@link #applyGradients(jneuralnet.core.NeuralNetwork, jneuralnet.core.ActivationContext) applyGradients(...)}
+     * does for every layer, and clears the gradients of the layer.
+     *
+     * @param net The neural network to be used.
+     * @param sums The context holding the summed gradients.
+     * @param layer The index of the layer.
+     */
+    public void applyGradients(NeuralNetwork net, ActivationContext sums, int layer)
+    {
+        adaptLayer(getLayer(net, layer), sums, layer, getOptimizerSlots(),
+                sums.getGradients(layer));
+        sums.clearGradients(layer);
+    }
+
+    /**
+     * Adapts every weight of a layer that is not part of a network once with
+     * its summed gradient, as
+     * {@link #applyGradients(jneuralnet.core.NeuralNetwork, jneuralnet.core.ActivationContext) applyGradients(...)}
+     * does for the layers of a network. This is how a slice of a layer held
+     * by another process is trained, see
+     * {@link jneuralnet.core.distributed.ShardedLayer}. The gradients are
+     * left alone.
+     *
+     * @param layer The layer to be adapted, holding its optimizer state.
+     * @param gradients The summed gradients of every parameter of the layer.
+     * @throws IllegalArgumentException If the number of gradients is not
+     * that of the parameters.
+     */
+    public void applyGradients(DenseLayer layer, double gradients[])
+            throws IllegalArgumentException
+    {
+        if (gradients.length != layer.getNumParameters())
+            throw new IllegalArgumentException("Expected " +
+                    layer.getNumParameters() + " gradients");
+        adaptLayer(layer, null, null, getOptimizerSlots(), gradients);
+    }
+
+    /**
+     * @return The hidden layer at the index, the output layer after the
+     * last hidden layer.
+     */
+    private static NeuronLayer getLayer(NeuralNetwork net, int layer)
+    {
+        if (layer < net.getHiddenLayers().size())
+            return net.getHiddenLayers().get(layer);
+        return net.getOutputLayer();
     }
 
     /**
-     * Uses the {@link #computeWeightChange(jneuralnet.core.SynapticConnection, java.lang.Double) }
+     * Uses the {@link #computeWeightChange(jneuralnet.core.DenseLayer, int, double) }
      * to compute weight changes and then adapts the weight accordingly.
      * 
      * @param net The neural network to adjusted.
-     * @see SynapticConnection
+     * @param ctx The context holding the deltas computed by back propagation.
+     * @see DenseLayer
      * @see NeuralNetwork
      */
-    protected void adaptWeights(NeuralNetwork net)
+    protected void adaptWeights(NeuralNetwork net, ActivationContext ctx)
     {
-        NeuronLayer layer;
-        layer = net.getOutputLayer();
-        int neuronCount = 0;
-
+        int numHidden = net.getHiddenLayers().size();
+        Set<Slot> slots = getOptimizerSlots();
         //Output layer...
-        for (neuronCount = 0; neuronCount < layer.getNeurons().size(); neuronCount++)
-        {
-            Neuron n = layer.getNeurons().get(neuronCount);
-            adaptNeuron(n.getDelta(), n);
-        }
+        adaptLayer(net.getOutputLayer(), ctx, numHidden, slots, null);
 
         //all the remaining hidden layers...  
         //in the reverse order ie...
-        if (net.getHiddenLayers().size() > 0)
-        {
-            for (int layerCount = net.getHiddenLayers().size() - 1; layerCount >= 0; layerCount--)
-            {
-                NeuronLayer l = net.getHiddenLayers().get(layerCount);
-
-                for (neuronCount = 0; neuronCount < l.getNeurons().size(); neuronCount++)
-                {
-                    Neuron n = l.getNeurons().get(neuronCount);
-                    adaptNeuron(n.getDelta(), n);
-                }
-            }
-        }
+        for (int layerCount = numHidden - 1; layerCount >= 0; layerCount--)
+            adaptLayer(net.getHiddenLayers().get(layerCount), ctx, layerCount, slots, null);
     }
 
     /**
@@ -297,22 +817,20 @@ public abstract class AbstractBPBasedAlgo extends AbstractLearningAlgo
      * computing delta values....
      *
      * @param n The output neuron for which delta is to be evaluated.
+     * @param sum The weighted sum of the neuron for the pattern.
      * @param desiredOutput The desired output vector...
-     * @param actualOutput The output guesssed by the network.
+     * @param actualOutput The output guesssed by the network, i.e, the
+     * output of the activation function of the neuron for the sum.
      * @return The delta value.
      * @see Neuron
+     * @see jneuralnet.core.activation.AbstractActivation#derivative(double, double)
      */
-    public double getOutputDelta(Neuron n, double desiredOutput, double actualOutput)
+    public double getOutputDelta(Neuron n, double sum,
+            double desiredOutput, double actualOutput)
     {
-        return -1.0 * getCostFunction().getOutputDelta(
-                desiredOutput, actualOutput, n.getActivation().activationDerviative(n.getCachedSum()));
+        return -1.0 * getCostFunction().getOutputDelta(desiredOutput,
+                actualOutput, n.getActivation().derivative(sum, actualOutput));
     }
-    //Variables used in gradient calculation...
-    //Kept outside to minimize obj creation...since this method will
-    //be called within a loop...
-
-    private ArrayList<Double> upperLayerDeltas = new ArrayList<Double>();
-    private ArrayList<Double> newDeltas = new ArrayList<Double>();
 
     /**
      * Calculates the delta values in the output layer.
@@ -320,87 +838,94 @@ public abstract class AbstractBPBasedAlgo extends AbstractLearningAlgo
      * and evaluates their delta values.
      * 
      * @param net The neural network to be used
+     * @param ctx The context holding the values of the pattern.
      * @param desiredOutputs The desired output vector for the pattern
      * @param actualOutputs The actual output guessed by the network.
      * @see NeuralNetwork
      */
-    private void backPropogate(NeuralNetwork net,
-            Double desiredOutputs[], Double actualOutputs[])
+    private void backPropogate(NeuralNetwork net, ActivationContext ctx,
+            double desiredOutputs[], double actualOutputs[])
     {
-        NeuronLayer layer;
-        layer = net.getOutputLayer();
-        int neuronCount = 0;
-
-        upperLayerDeltas.clear();
-        Double delta;
-
-        //Output layer...
-        for (neuronCount = 0; neuronCount < layer.getNeurons().size(); neuronCount++)
-        {
-            Neuron n = layer.getNeurons().get(neuronCount);
-            delta = getOutputDelta(n, desiredOutputs[neuronCount],
-                    actualOutputs[neuronCount]);
-            n.setDelta(delta);
-            upperLayerDeltas.add(delta);
-        }
+        int layerIndex = net.getHiddenLayers().size();
+        computeOutputDeltas(net, ctx, desiredOutputs, actualOutputs);
 
         //all the remaining hidden layers...  
         //in the reverse order ie...
-        if (net.getHiddenLayers().size() > 0)
-        {
-            for (int layerCount = net.getHiddenLayers().size() - 1; layerCount >= 0; layerCount--)
-            {
-                NeuronLayer l = net.getHiddenLayers().get(layerCount);
-                newDeltas.clear();
-
-                for (neuronCount = 0; neuronCount < l.getNeurons().size(); neuronCount++)
-                {
-                    Neuron n = l.getNeurons().get(neuronCount);
+        for (; layerIndex > 0; layerIndex--)
+            propagateDeltas(net, ctx, layerIndex);
+    }
 
-                    delta = 0.0;
-                    int gradCount = 0;
+    /**
+     * Calculates the delta values in the output layer for the pattern fed
+     * forward with the context. This is the first step of back propagation,
+     * see {@link #propagateDeltas(jneuralnet.core.NeuralNetwork, jneuralnet.core.ActivationContext, int) propagateDeltas(...)}.
+     *
+     * @param net The neural network to be used
+     * @param ctx The context holding the values of the pattern.
+     * @param expectedOutput The desired output vector for the pattern
+     */
+    public void computeOutputDeltas(NeuralNetwork net, ActivationContext ctx,
+            double expectedOutput[])
+    {
+        computeOutputDeltas(net, ctx, expectedOutput, ctx.getNetworkOutput());
+    }
 
-                    for (gradCount = 0; gradCount < upperLayerDeltas.size(); gradCount++)
-                    {
-                        delta += upperLayerDeltas.get(gradCount) *
-                                n.getOutputConnections().get(gradCount).getWeight();
-                    }
-                    delta *= n.getActivation().activationDerviative(n.getCachedSum());
+    private void computeOutputDeltas(NeuralNetwork net, ActivationContext ctx,
+            double desiredOutputs[], double actualOutputs[])
+    {
+        int layerIndex = net.getHiddenLayers().size();
+        NeuronLayer outputLayer = net.getOutputLayer();
+        double deltas[] = ctx.getDeltas(layerIndex);
+        double sums[] = ctx.getSums(layerIndex);
 
-                    n.setDelta(delta);
-                    newDeltas.add(delta);
-                }
+        for (int neuronCount = 0; neuronCount < outputLayer.getNumNeurons(); neuronCount++)
+        {
+            Neuron n = outputLayer.getNeurons().get(neuronCount);
+            deltas[neuronCount] = getOutputDelta(n, sums[neuronCount],
+                    desiredOutputs[neuronCount], actualOutputs[neuronCount]);
+        }
+    }
 
-                upperLayerDeltas.clear();
-                for (Double d : newDeltas)
-                {
-                    upperLayerDeltas.add(d);
-                }
-            }
+    /**
+     * Back propagates the deltas of a layer to the layer below it, i.e,
+     * evaluates the deltas of the layer at <code>layer - 1</code> from the
+     * weights of the given layer, which are only read.
+     *
+     * @param net The neural network to be used
+     * @param ctx The context holding the values of the pattern.
+     * @param layer The index of the layer whose deltas are known, atleast 1.
+     */
+    public void propagateDeltas(NeuralNetwork net, ActivationContext ctx, int layer)
+    {
+        NeuronLayer upperLayer = getLayer(net, layer);
+        NeuronLayer l = net.getHiddenLayers().get(layer - 1);
+        double newDeltas[] = ctx.getDeltas(layer - 1);
+        double sums[] = ctx.getSums(layer - 1);
+        //the derivatives are taken from the outputs where possible...
+        double outputs[] = ctx.getOutputs(layer - 1);
+
+        //newDeltas = transpose(W) * upperLayerDeltas...
+        upperLayer.getDenseLayer().propagateDeltas(ctx.getDeltas(layer), newDeltas);
+        for (int neuronCount = 0; neuronCount < l.getNumNeurons(); neuronCount++)
+        {
+            newDeltas[neuronCount] *= l.getNeurons().get(neuronCount)
+                    .getActivation().derivative(sums[neuronCount], outputs[neuronCount]);
         }
     }
 
     @Override
     public boolean equals(Object obj)
     {
-        if (obj == null)
-        {
-            return false;
-        }
-        if (getClass() != obj.getClass())
+        if (!super.equals(obj))
         {
             return false;
         }
         final AbstractBPBasedAlgo other = (AbstractBPBasedAlgo) obj;
-        if (this.errGradient != other.errGradient && (this.errGradient == null || !this.errGradient.equals(other.errGradient)))
-        {
-            return false;
-        }
-        if (this.upperLayerDeltas != other.upperLayerDeltas && (this.upperLayerDeltas == null || !this.upperLayerDeltas.equals(other.upperLayerDeltas)))
+        if (this.isMomentumUsed != other.isMomentumUsed)
         {
             return false;
         }
-        if (this.newDeltas != other.newDeltas && (this.newDeltas == null || !this.newDeltas.equals(other.newDeltas)))
+        if (this.isLearningRateDynamic != other.isLearningRateDynamic)
         {
             return false;
         }
@@ -411,9 +936,9 @@ public abstract class AbstractBPBasedAlgo extends AbstractLearningAlgo
     public int hashCode()
     {
         int hash = 7;
-        hash = 97 * hash + (this.errGradient != null ? this.errGradient.hashCode() : 0);
-        hash = 97 * hash + (this.upperLayerDeltas != null ? this.upperLayerDeltas.hashCode() : 0);
-        hash = 97 * hash + (this.newDeltas != null ? this.newDeltas.hashCode() : 0);
+        hash = 97 * hash + super.hashCode();
+        hash = 97 * hash + (this.isMomentumUsed ? 1 : 0);
+        hash = 97 * hash + (this.isLearningRateDynamic ? 1 : 0);
         return hash;
     }
 
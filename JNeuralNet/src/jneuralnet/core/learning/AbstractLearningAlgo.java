@@ -17,6 +17,10 @@ package jneuralnet.core.learning;
 import jneuralnet.core.learning.costfunction.SumOfSquaresError;
 import jneuralnet.core.learning.costfunction.AbstractCostFunction;
 import java.io.Serializable;
+import java.util.EnumSet;
+import java.util.Set;
+import jneuralnet.core.ActivationContext;
+import jneuralnet.core.OptimizerState;
 import jneuralnet.core.Pluggable;
 import jneuralnet.core.NeuralNetwork;
 
@@ -52,11 +56,110 @@ public abstract class AbstractLearningAlgo extends Pluggable implements Serializ
     }
 
     /**
-     * Define how to train the neural network...
+     * Define how to train the neural network... The values recorded while
+     * feed forwarding the pattern are found in the activation context of
+     * the network, see {@link NeuralNetwork#getActivationContext() }.
      */
     public abstract void trainNet(NeuralNetwork n,
             Double actualOutput[], Double expectedOutput[]);
 
+    /**
+     * Trains the neural network for a pattern fed forward through
+     * {@link NeuralNetwork#getOutputOnPreprocessedData(double[], jneuralnet.core.ActivationContext) getOutputOnPreprocessedData(...)}
+     * using the given context. Override this method to allow several
+     * threads to train on the same network with contexts of their own.
+     *
+     * <p>The default implementation only supports the activation context
+     * of the network and delegates to
+     * {@link #trainNet(jneuralnet.core.NeuralNetwork, java.lang.Double[], java.lang.Double[]) trainNet(...)}.
+     *
+     * @param n The neural network to be trained.
+     * @param ctx The context holding the values of the pattern.
+     * @param expectedOutput The expected output of the pattern.
+     * @throws UnsupportedOperationException If the algo does not support
+     * contexts other than the one of the network.
+     * @see ActivationContext
+     */
+    public void trainNet(NeuralNetwork n, ActivationContext ctx,
+            double expectedOutput[]) throws UnsupportedOperationException
+    {
+        if(ctx != n.getActivationContext())
+            throw new UnsupportedOperationException(getName() + " does not " +
+                    "support external activation contexts...");
+
+        double output[] = ctx.getNetworkOutput();
+        Double actual[] = new Double[output.length];
+        for(int i=0; i<output.length; i++)
+            actual[i] = output[i];
+        Double expected[] = new Double[expectedOutput.length];
+        for(int i=0; i<expectedOutput.length; i++)
+            expected[i] = expectedOutput[i];
+
+        trainNet(n, actual, expected);
+    }
+
+    /**
+     * Tells if this algo can train on mini batches, i.e, if it implements
+     * {@link #accumulateGradients(jneuralnet.core.NeuralNetwork, jneuralnet.core.ActivationContext, double[]) accumulateGradients(...)}
+     * and {@link #applyGradients(jneuralnet.core.NeuralNetwork, jneuralnet.core.ActivationContext) applyGradients(...)}.
+     *
+     * @return false by default.
+     * @see jneuralnet.core.training.Teacher#startTraining(java.lang.Double, long, long, int, int)
+     */
+    public boolean isBatchSupported()
+    {
+        return false;
+    }
+
+    /**
+     * Adds the error gradients of a pattern fed forward with the given
+     * context to the gradients summed in the context, without changing
+     * the weights.
+     *
+     * @param n The neural network to be trained.
+     * @param ctx The context holding the values of the pattern.
+     * @param expectedOutput The expected output of the pattern.
+     * @throws UnsupportedOperationException If batches are not supported.
+     * @see ActivationContext#getGradients(int)
+     */
+    public void accumulateGradients(NeuralNetwork n, ActivationContext ctx,
+            double expectedOutput[]) throws UnsupportedOperationException
+    {
+        throw new UnsupportedOperationException(getName() + " does not " +
+                "support batch training...");
+    }
+
+    /**
+     * Adapts the weights once with the gradients summed in the context
+     * and clears them, ending the batch.
+     *
+     * @param n The neural network to be trained.
+     * @param ctx The context holding the summed gradients.
+     * @throws UnsupportedOperationException If batches are not supported.
+     */
+    public void applyGradients(NeuralNetwork n, ActivationContext ctx)
+            throws UnsupportedOperationException
+    {
+        throw new UnsupportedOperationException(getName() + " does not " +
+                "support batch training...");
+    }
+
+    /**
+     * Declares the per parameter state this algo keeps in the
+     * {@link OptimizerState} of every layer it trains. Only these slots are
+     * allocated, the others read their default values, so override this
+     * method to add the slots your algo writes.
+     *
+     * <p>The default implementation needs no state.
+     *
+     * @return The slots written by this algo, with its current settings.
+     * @see jneuralnet.core.DenseLayer#getOptimizerState()
+     */
+    public Set<OptimizerState.Slot> getOptimizerSlots()
+    {
+        return EnumSet.noneOf(OptimizerState.Slot.class);
+    }
+
     /**
      * Allows you to place a constraint on modifying cost function
      * by using {@link #setCostFunction(jneuralnet.core.learning.costfunction.AbstractCostFunction) setCostFunction(...)}
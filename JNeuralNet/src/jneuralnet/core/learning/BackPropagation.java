@@ -13,6 +13,7 @@
  */
 package jneuralnet.core.learning;
 
+import jneuralnet.core.DenseLayer;
 import jneuralnet.core.SynapticConnection;
 
 /**
@@ -34,9 +35,19 @@ public class BackPropagation extends AbstractBPBasedAlgo
     private static final long serialVersionUID = 2009050221L;
 
     @Override
-    public Double computeWeightChange(SynapticConnection conn, Double errGradient)
+    public double computeWeightChange(DenseLayer layer, int param, double errGradient)
     {
-        return conn.getLearningRate() * errGradient;
+        return layer.getLearningRate(param) * errGradient;
+    }
+
+    /**
+     * The layers are adapted in a single pass, see
+     * {@link AbstractBPBasedAlgo.WeightChangeRule#GRADIENT_DESCENT}.
+     */
+    @Override
+    protected WeightChangeRule getWeightChangeRule()
+    {
+        return WeightChangeRule.GRADIENT_DESCENT;
     }
 
     @Override
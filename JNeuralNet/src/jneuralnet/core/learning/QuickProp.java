@@ -4,7 +4,10 @@
  */
 package jneuralnet.core.learning;
 
-import jneuralnet.core.SynapticConnection;
+import java.util.Set;
+import jneuralnet.core.DenseLayer;
+import jneuralnet.core.OptimizerState;
+import jneuralnet.core.OptimizerState.Slot;
 
 /**
  * Implements the Quickprop algorithm. It is loosely based on Newton's method.
@@ -17,30 +20,41 @@ import jneuralnet.core.SynapticConnection;
  */
 public class QuickProp extends AbstractBPBasedAlgo
 {
-    //kept outside to reduce classloader overload
-    //as looping operations are involved...
-    private transient Double newWeight = 0.0;
-    private transient Double prevErrGradient = 0.0;
-
+    /**
+     * The previous gradients and weight changes are kept.
+     */
     @Override
-    public Double computeWeightChange(SynapticConnection conn, Double errGradient)
+    public Set<Slot> getOptimizerSlots()
     {
-        //associate a new property 'QuickProp-prevErrGradient' with a connection...
-        if (!conn.isPropertyInBuffer("QuickProp-prevErrGradient"))
-        {
-            conn.createPropertyInBuffer("QuickProp-prevErrGradient");
-            conn.putValueInBuffer("QuickProp-prevErrGradient", 0.0);
-        }
+        Set<Slot> slots = super.getOptimizerSlots();
+        slots.add(Slot.PREV_ERR_GRADIENT);
+        slots.add(Slot.PREV_WEIGHT_CHANGE);
+        return slots;
+    }
 
-        prevErrGradient = (Double) conn.getValueFromBuffer("QuickProp-prevErrGradient");        
-        newWeight = ( errGradient / (prevErrGradient - errGradient) ) *
-                conn.getPrevWeightChange();
+    @Override
+    public double computeWeightChange(DenseLayer layer, int param, double errGradient)
+    {
+        OptimizerState state = layer.getOptimizerState();
+        double prevErrGradient = state.get(Slot.PREV_ERR_GRADIENT, param);
+        double newWeight = ( errGradient / (prevErrGradient - errGradient) ) *
+                state.get(Slot.PREV_WEIGHT_CHANGE, param);
 
-        //update for next iteration...        
-        conn.putValueInBuffer("QuickProp-prevErrGradient", errGradient);
+        //update for next iteration...
+        state.set(Slot.PREV_ERR_GRADIENT, param, errGradient);
         return newWeight;
     }
 
+    /**
+     * The layers are adapted in a single pass, see
+     * {@link AbstractBPBasedAlgo.WeightChangeRule#QUICKPROP}.
+     */
+    @Override
+    protected WeightChangeRule getWeightChangeRule()
+    {
+        return WeightChangeRule.QUICKPROP;
+    }
+
     @Override
     public String getName()
     {
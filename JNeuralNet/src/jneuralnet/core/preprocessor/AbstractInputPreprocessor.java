@@ -63,5 +63,28 @@ public abstract class AbstractInputPreprocessor extends Pluggable implements Ser
      * @param data The input vector pattern
      * @return The processed input data...     
      */
-    public abstract Double[] process(Double data[]);    
+    public abstract Double[] process(Double data[]);
+
+    /**
+     * Primitive form of {@link #process(java.lang.Double[]) process(...)}
+     * used by the allocation free forward pass of the network. 'data'
+     * and 'result' may refer to the same array.
+     *
+     * <p>The default implementation boxes the data and delegates to
+     * {@link #process(java.lang.Double[]) process(...)}, override it to
+     * avoid the boxing.
+     *
+     * @param data The input vector pattern
+     * @param result The array to hold the processed input data.
+     */
+    public void process(double data[], double result[])
+    {
+        Double boxed[] = new Double[data.length];
+        for(int i=0; i<data.length; i++)
+            boxed[i] = data[i];
+
+        boxed = process(boxed);
+        for(int i=0; i<boxed.length; i++)
+            result[i] = boxed[i];
+    }
 }
\ No newline at end of file
@@ -84,5 +84,52 @@ public abstract class AbstractOutputPreprocessor extends Pluggable implements Se
      * @param data The output vector pattern
      * @return The processed output data...
      */
-    public abstract Double[] deProcess(Double data[]);    
+    public abstract Double[] deProcess(Double data[]);
+
+    /**
+     * Primitive form of {@link #process(java.lang.Double[]) process(...)}.
+     * 'data' and 'result' may refer to the same array.
+     *
+     * <p>The default implementation boxes the data and delegates to
+     * {@link #process(java.lang.Double[]) process(...)}, override it to
+     * avoid the boxing.
+     *
+     * @param data The output vector pattern
+     * @param result The array to hold the processed output data.
+     */
+    public void process(double data[], double result[])
+    {
+        unbox(process(box(data)), result);
+    }
+
+    /**
+     * Primitive form of {@link #deProcess(java.lang.Double[]) deProcess(...)}
+     * used by the allocation free forward pass of the network. 'data'
+     * and 'result' may refer to the same array.
+     *
+     * <p>The default implementation boxes the data and delegates to
+     * {@link #deProcess(java.lang.Double[]) deProcess(...)}, override it to
+     * avoid the boxing.
+     *
+     * @param data The output vector pattern
+     * @param result The array to hold the de processed output data.
+     */
+    public void deProcess(double data[], double result[])
+    {
+        unbox(deProcess(box(data)), result);
+    }
+
+    private static Double[] box(double data[])
+    {
+        Double boxed[] = new Double[data.length];
+        for(int i=0; i<data.length; i++)
+            boxed[i] = data[i];
+        return boxed;
+    }
+
+    private static void unbox(Double data[], double result[])
+    {
+        for(int i=0; i<data.length; i++)
+            result[i] = data[i];
+    }
 }
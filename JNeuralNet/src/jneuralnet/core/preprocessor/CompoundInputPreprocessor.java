@@ -78,6 +78,14 @@ public class CompoundInputPreprocessor extends AbstractInputPreprocessor
         return data;
     }
 
+    @Override
+    public void process(double[] data, double[] result) {
+        if(data != result)
+            System.arraycopy(data, 0, result, 0, data.length);
+        for(AbstractInputPreprocessor p : preprocessors)
+            p.process(result, result);
+    }
+
     @Override
     public String toString()
     {
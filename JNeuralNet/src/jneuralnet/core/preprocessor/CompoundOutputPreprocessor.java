@@ -87,6 +87,22 @@ public class CompoundOutputPreprocessor extends AbstractOutputPreprocessor
         return data;
     }
 
+    @Override
+    public void process(double[] data, double[] result) {
+        if(data != result)
+            System.arraycopy(data, 0, result, 0, data.length);
+        for(AbstractOutputPreprocessor p : preprocessors)
+            p.process(result, result);
+    }
+
+    @Override
+    public void deProcess(double[] data, double[] result) {
+        if(data != result)
+            System.arraycopy(data, 0, result, 0, data.length);
+        for(int i = preprocessors.length - 1; i>=0; i--)
+            preprocessors[i].deProcess(result, result);
+    }
+
     @Override
     public String toString()
     {
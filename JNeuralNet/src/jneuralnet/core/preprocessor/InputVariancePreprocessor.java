@@ -55,8 +55,9 @@ public class InputVariancePreprocessor extends AbstractInputPreprocessor
 
         //calculate averages...
         for(TrainingPattern tp : ts.getTrainingPatterns()) {
-            for(int i=0; i<tp.getInputData().length; i++) {
-                averages[i] += tp.getInputData()[i];
+            Double data[] = tp.getInputData();
+            for(int i=0; i<data.length; i++) {
+                averages[i] += data[i];
             }
         }
         for(int i=0;i<averages.length;i++) {
@@ -65,9 +66,10 @@ public class InputVariancePreprocessor extends AbstractInputPreprocessor
 
         //variance^2 calculation...
         for(TrainingPattern tp : ts.getTrainingPatterns()) {
-            for(int i=0; i<tp.getInputData().length; i++) {
+            Double data[] = tp.getInputData();
+            for(int i=0; i<data.length; i++) {
                 variances[i] += MathUtil
-                        .square(tp.getInputData()[i] - averages[i]);
+                        .square(data[i] - averages[i]);
             }
         }
         //compute variance...
@@ -88,6 +90,13 @@ public class InputVariancePreprocessor extends AbstractInputPreprocessor
         return newInputs;
     }
 
+    @Override
+    public void process(double data[], double result[])
+    {
+        for(int i=0; i<data.length; i++)
+            result[i] = (data[i] - averages[i]) / variances[i];
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null) {
@@ -97,6 +97,22 @@ public class OutputRangePreprocessor extends AbstractOutputPreprocessor
         return newInputs;
     }
 
+    @Override
+    public void process(double[] data, double[] result)
+    {
+        double translate = translateFactor, scale = scaleFactor;
+        for(int i=0; i<data.length; i++)
+            result[i] = (data[i] + translate) * scale * (max - min) + min;
+    }
+
+    @Override
+    public void deProcess(double[] data, double[] result)
+    {
+        double translate = translateFactor, scale = scaleFactor;
+        for(int i=0; i<data.length; i++)
+            result[i] = (data[i] - min) / (scale * (max - min)) - translate;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null) {
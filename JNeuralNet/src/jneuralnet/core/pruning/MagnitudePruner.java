@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.pruning;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import jneuralnet.core.ActivationContext;
+import jneuralnet.core.DenseLayer;
+import jneuralnet.core.NeuralNetwork;
+import jneuralnet.core.NeuronLayer;
+import jneuralnet.core.SparseLayer;
+import jneuralnet.core.learning.AbstractLearningAlgo;
+import jneuralnet.core.training.TrainingPattern;
+import jneuralnet.core.training.TrainingSet;
+
+/**
+ * Prunes the weights of a trained <code>NeuralNetwork</code> by magnitude,
+ * i.e, every weight whose magnitude is at most a threshold is set to zero
+ * and excluded from further training. Biases are never pruned.
+ *
+ * <p>The threshold of a layer is either given directly or derived from a
+ * target sparsity, the fraction of the weights to be zero. Either can be
+ * set for the network as a whole, in which case a sparsity target is met
+ * over all the layers together, and overridden for individual layers:
+ *
+ * <pre>
+ * MagnitudePruner pruner = new MagnitudePruner();
+ * pruner.setSparsity(0.8);
+ * pruner.setSparsity(net.getNumHiddenLayers(), 0.5); //spare the output layer
+ * PruningReport report = pruner.prune(net, validationSet);
+ * pruner.fineTune(net, trainingSet, 10);
+ * CompiledNetwork cn = net.compile();
+ * </pre>
+ *
+ * <p>Pruning usually costs some accuracy, which a few epochs of
+ * {@link #fineTune(jneuralnet.core.NeuralNetwork, jneuralnet.core.training.TrainingSet, int) fineTune(...)}
+ * or of regular training by the <code>Teacher</code> mostly recover, the
+ * pruned weights staying zero. Compiling the pruned network stores the
+ * sparse layers as {@link SparseLayer}s.
+ *
+ * @author Ragha
+ * @see PruningReport
+ * @see DenseLayer#prune(int)
+ * @version 1.0
+ */
+public class MagnitudePruner
+{
+    private double threshold = Double.NaN;
+    private double sparsity = Double.NaN;
+    private HashMap<Integer, Double> layerThresholds = new HashMap<Integer, Double>();
+    private HashMap<Integer, Double> layerSparsities = new HashMap<Integer, Double>();
+
+    /**
+     * Sets the threshold used for every layer not set up otherwise.
+     * Replaces any sparsity set for the network.
+     *
+     * @param threshold The largest magnitude of the weights to be pruned.
+     * @throws IllegalArgumentException If threshold is negative.
+     */
+    public void setThreshold(double threshold) throws IllegalArgumentException
+    {
+        checkThreshold(threshold);
+        this.threshold = threshold;
+        this.sparsity = Double.NaN;
+    }
+
+    /**
+     * Sets the sparsity to be reached over all the layers not set up
+     * otherwise. The smallest weights are pruned regardless of the layer
+     * they belong to. Replaces any threshold set for the network.
+     *
+     * @param sparsity The fraction of the weights to be zero, in [0, 1).
+     * @throws IllegalArgumentException If sparsity is not in [0, 1).
+     */
+    public void setSparsity(double sparsity) throws IllegalArgumentException
+    {
+        checkSparsity(sparsity);
+        this.sparsity = sparsity;
+        this.threshold = Double.NaN;
+    }
+
+    /**
+     * Sets the threshold for a single layer.
+     *
+     * @param layer The index of the layer, hidden layers are numbered
+     * from 0 with the output layer last.
+     * @param threshold The largest magnitude of the weights to be pruned.
+     * @throws IllegalArgumentException If threshold is negative.
+     */
+    public void setThreshold(int layer, double threshold)
+            throws IllegalArgumentException
+    {
+        checkThreshold(threshold);
+        layerSparsities.remove(layer);
+        layerThresholds.put(layer, threshold);
+    }
+
+    /**
+     * Sets the sparsity to be reached by a single layer.
+     *
+     * @param layer The index of the layer, hidden layers are numbered
+     * from 0 with the output layer last.
+     * @param sparsity The fraction of the weights to be zero, in [0, 1).
+     * @throws IllegalArgumentException If sparsity is not in [0, 1).
+     */
+    public void setSparsity(int layer, double sparsity)
+            throws IllegalArgumentException
+    {
+        checkSparsity(sparsity);
+        layerThresholds.remove(layer);
+        layerSparsities.put(layer, sparsity);
+    }
+
+    private static void checkThreshold(double threshold)
+    {
+        if(!(threshold >= 0.0))
+            throw new IllegalArgumentException("Threshold cannot be negative...");
+    }
+
+    private static void checkSparsity(double sparsity)
+    {
+        if(!(sparsity >= 0.0 && sparsity < 1.0))
+            throw new IllegalArgumentException("Sparsity has to be in [0, 1)...");
+    }
+
+    /**
+     * Prunes the weights of the network in place.
+     *
+     * @param net The network to be pruned.
+     * @return The number of weights and operations per prediction before
+     * and after pruning.
+     * @throws IllegalStateException If neither a threshold nor a sparsity
+     * applies to some layer.
+     */
+    public PruningReport prune(NeuralNetwork net) throws IllegalStateException
+    {
+        return prune(net, null);
+    }
+
+    /**
+     * Prunes the weights of the network in place, measuring its error on
+     * the evaluation set before and after.
+     *
+     * @param net The network to be pruned.
+     * @param evaluationSet The preprocessed patterns the error is measured
+     * on, e.g, the processed validation set of the teacher, or null.
+     * @return The number of weights, operations per prediction and error
+     * before and after pruning.
+     * @throws IllegalStateException If neither a threshold nor a sparsity
+     * applies to some layer, or if the network has no learning algo to
+     * measure the error with.
+     * @see jneuralnet.core.training.TrainingDataRepository#getProcessedValidationSet()
+     */
+    public PruningReport prune(NeuralNetwork net, TrainingSet evaluationSet)
+            throws IllegalStateException
+    {
+        DenseLayer layers[] = getLayers(net);
+        int numNeurons[] = new int[layers.length];
+        int numWeights[] = new int[layers.length];
+        int nonZerosBefore[] = new int[layers.length];
+        for(int l=0; l<layers.length; l++)
+        {
+            numNeurons[l] = layers[l].getNumNeurons();
+            numWeights[l] = layers[l].getNumNeurons() * layers[l].getNumInputs();
+            nonZerosBefore[l] = layers[l].getNumNonZeroWeights();
+        }
+        double errorBefore = getError(net, evaluationSet);
+
+        double thresholds[] = getThresholds(layers);
+        for(int l=0; l<layers.length; l++)
+        {
+            for(int param=0; param<numWeights[l]; param++)
+            {
+                if(!layers[l].isPruned(param)
+                        && Math.abs(layers[l].getParameter(param)) <= thresholds[l])
+                    layers[l].prune(param);
+            }
+        }
+
+        int nonZerosAfter[] = new int[layers.length];
+        for(int l=0; l<layers.length; l++)
+            nonZerosAfter[l] = layers[l].getNumNonZeroWeights();
+        double errorAfter = getError(net, evaluationSet);
+
+        return new PruningReport(numNeurons, numWeights, nonZerosBefore,
+                nonZerosAfter, errorBefore, errorAfter);
+    }
+
+    /**
+     * Computes the threshold of every layer, a negative value if nothing
+     * is to be pruned.
+     */
+    private double[] getThresholds(DenseLayer layers[])
+    {
+        double thresholds[] = new double[layers.length];
+        boolean isGlobal[] = new boolean[layers.length];
+        ArrayList<DenseLayer> globalLayers = new ArrayList<DenseLayer>();
+        for(int l=0; l<layers.length; l++)
+        {
+            if(layerThresholds.containsKey(l))
+                thresholds[l] = layerThresholds.get(l);
+            else if(layerSparsities.containsKey(l))
+                thresholds[l] = getThreshold(new DenseLayer[] { layers[l] },
+                        layerSparsities.get(l));
+            else if(!Double.isNaN(threshold))
+                thresholds[l] = threshold;
+            else if(!Double.isNaN(sparsity))
+            {
+                isGlobal[l] = true;
+                globalLayers.add(layers[l]);
+            }
+            else
+                throw new IllegalStateException("No threshold or sparsity "
+                        + "is set for layer " + l + "...");
+        }
+
+        if(!globalLayers.isEmpty())
+        {
+            double t = getThreshold(globalLayers.toArray(
+                    new DenseLayer[globalLayers.size()]), sparsity);
+            for(int l=0; l<layers.length; l++)
+            {
+                if(isGlobal[l])
+                    thresholds[l] = t;
+            }
+        }
+        return thresholds;
+    }
+
+    /**
+     * @return The magnitude at or below which the given fraction of the
+     * weights of the layers lies.
+     */
+    private static double getThreshold(DenseLayer layers[], double sparsity)
+    {
+        int total = 0;
+        for(DenseLayer layer : layers)
+            total += layer.getNumNeurons() * layer.getNumInputs();
+
+        int numPruned = (int) Math.round(sparsity * total);
+        if(numPruned == 0)
+            return -1.0;
+
+        double magnitudes[] = new double[total];
+        int k = 0;
+        for(DenseLayer layer : layers)
+        {
+            int numWeights = layer.getNumNeurons() * layer.getNumInputs();
+            for(int param=0; param<numWeights; param++)
+                magnitudes[k++] = Math.abs(layer.getParameter(param));
+        }
+        Arrays.sort(magnitudes);
+        return magnitudes[numPruned - 1];
+    }
+
+    /**
+     * Trains the network for a few epochs with the learning algo of its
+     * teacher to recover the accuracy lost by pruning. Pruned weights stay
+     * zero. Training is done in the calling thread.
+     *
+     * @param net The pruned network.
+     * @param ts The preprocessed training patterns, e.g, the processed
+     * training set of the teacher.
+     * @param epochs The number of passes over the training set.
+     * @return The mean error over the last epoch.
+     * @throws IllegalStateException If the network has no learning algo.
+     * @see jneuralnet.core.training.TrainingDataRepository#getProcessedTrainingSet()
+     */
+    public double fineTune(NeuralNetwork net, TrainingSet ts, int epochs)
+            throws IllegalStateException
+    {
+        AbstractLearningAlgo algo = getLearningAlgo(net);
+        ActivationContext ctx = net.getActivationContext();
+        double input[] = new double[net.getNumInputs()];
+        double expected[] = new double[net.getNumOutputs()];
+        Double actual[] = new Double[expected.length];
+        Double desired[] = new Double[expected.length];
+
+        double error = Double.NaN;
+        for(int epoch=0; epoch<epochs; epoch++)
+        {
+            error = 0.0;
+            ts.shuffle();
+            for(TrainingPattern tp : ts.getTrainingPatterns())
+            {
+                tp.getInputData(input);
+                tp.getOutputData(expected);
+                double output[] = net.getOutputOnPreprocessedData(input, ctx);
+                for(int i=0; i<expected.length; i++)
+                {
+                    actual[i] = output[i];
+                    desired[i] = expected[i];
+                }
+                error += algo.getCostFunction().getErrorValue(desired, actual);
+                algo.trainNet(net, ctx, expected);
+            }
+            error /= ts.getPatternSetSize();
+        }
+        return error;
+    }
+
+    private static AbstractLearningAlgo getLearningAlgo(NeuralNetwork net)
+    {
+        if(net.getTeacher() == null || net.getTeacher().getLearningAlgo() == null)
+            throw new IllegalStateException("Learning algo is not set up...");
+        return net.getTeacher().getLearningAlgo();
+    }
+
+    /**
+     * @return The mean error of the network on the set, NaN if the set is null.
+     */
+    private static double getError(NeuralNetwork net, TrainingSet ts)
+    {
+        if(ts == null || ts.getPatternSetSize() == 0)
+            return Double.NaN;
+
+        AbstractLearningAlgo algo = getLearningAlgo(net);
+        ActivationContext ctx = new ActivationContext(net);
+        double input[] = new double[net.getNumInputs()];
+        Double actual[] = new Double[net.getNumOutputs()];
+        double error = 0.0;
+        for(TrainingPattern tp : ts.getTrainingPatterns())
+        {
+            tp.getInputData(input);
+            double output[] = net.getOutputOnPreprocessedData(input, ctx);
+            for(int i=0; i<output.length; i++)
+                actual[i] = output[i];
+            error += algo.getCostFunction().getErrorValue(tp.getOutputData(), actual);
+        }
+        return error / ts.getPatternSetSize();
+    }
+
+    /**
+     * @return The dense layers of the hidden layers followed by the output layer.
+     */
+    private static DenseLayer[] getLayers(NeuralNetwork net)
+    {
+        ArrayList<NeuronLayer> layers = new ArrayList<NeuronLayer>(net.getHiddenLayers());
+        layers.add(net.getOutputLayer());
+        DenseLayer dense[] = new DenseLayer[layers.size()];
+        for(int l=0; l<dense.length; l++)
+            dense[l] = layers.get(l).getDenseLayer();
+        return dense;
+    }
+}
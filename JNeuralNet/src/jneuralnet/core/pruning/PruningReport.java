@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.pruning;
+
+/**
+ * The outcome of a pruning pass, i.e, the number of non zero weights of
+ * every layer and the cost of a prediction before and after pruning, along
+ * with the error of the network on the evaluation set, if one was given.
+ *
+ * <p>The cost of a prediction is counted in floating point operations,
+ * a multiply and an add per non zero weight and a subtraction per bias.
+ * Activation functions and preprocessing are not counted as they are
+ * unaffected by pruning.
+ *
+ * @author Ragha
+ * @see MagnitudePruner
+ * @version 1.0
+ */
+public class PruningReport
+{
+    private final int numNeurons[];
+    private final int numWeights[];
+    private final int nonZerosBefore[];
+    private final int nonZerosAfter[];
+    private final double errorBefore;
+    private final double errorAfter;
+
+    PruningReport(int numNeurons[], int numWeights[], int nonZerosBefore[],
+            int nonZerosAfter[], double errorBefore, double errorAfter)
+    {
+        this.numNeurons = numNeurons;
+        this.numWeights = numWeights;
+        this.nonZerosBefore = nonZerosBefore;
+        this.nonZerosAfter = nonZerosAfter;
+        this.errorBefore = errorBefore;
+        this.errorAfter = errorAfter;
+    }
+
+    /**
+     * @return The number of layers, i.e, hidden layers + 1.
+     */
+    public int getNumLayers()
+    {
+        return numWeights.length;
+    }
+
+    /**
+     * @param layer The index of the layer, hidden layers are numbered
+     * from 0 with the output layer last.
+     * @return The number of non zero weights in the layer before pruning.
+     */
+    public int getNonZerosBefore(int layer)
+    {
+        return nonZerosBefore[layer];
+    }
+
+    /**
+     * @param layer The index of the layer.
+     * @return The number of non zero weights in the layer after pruning.
+     */
+    public int getNonZerosAfter(int layer)
+    {
+        return nonZerosAfter[layer];
+    }
+
+    /**
+     * @param layer The index of the layer.
+     * @return The fraction of the weights of the layer that are zero
+     * after pruning.
+     */
+    public double getSparsity(int layer)
+    {
+        return 1.0 - (double) nonZerosAfter[layer] / numWeights[layer];
+    }
+
+    /**
+     * @return The fraction of all the weights that are zero after pruning.
+     */
+    public double getSparsity()
+    {
+        long total = 0, nonZeros = 0;
+        for(int l=0; l<numWeights.length; l++)
+        {
+            total += numWeights[l];
+            nonZeros += nonZerosAfter[l];
+        }
+        return 1.0 - (double) nonZeros / total;
+    }
+
+    /**
+     * @return The floating point operations per prediction before pruning.
+     */
+    public long getFlopsBefore()
+    {
+        return getFlops(nonZerosBefore);
+    }
+
+    /**
+     * @return The floating point operations per prediction after pruning.
+     */
+    public long getFlopsAfter()
+    {
+        return getFlops(nonZerosAfter);
+    }
+
+    /**
+     * @return The factor by which pruning reduced the operations per
+     * prediction.
+     */
+    public double getFlopReduction()
+    {
+        return (double) getFlopsBefore() / getFlopsAfter();
+    }
+
+    private long getFlops(int nonZeros[])
+    {
+        long flops = 0;
+        for(int l=0; l<nonZeros.length; l++)
+            flops += 2L * nonZeros[l] + numNeurons[l];
+        return flops;
+    }
+
+    /**
+     * @return The mean error on the evaluation set before pruning, NaN if
+     * no evaluation set was given.
+     */
+    public double getErrorBefore()
+    {
+        return errorBefore;
+    }
+
+    /**
+     * @return The mean error on the evaluation set after pruning, NaN if
+     * no evaluation set was given.
+     */
+    public double getErrorAfter()
+    {
+        return errorAfter;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for(int l=0; l<numWeights.length; l++)
+        {
+            sb.append("layer ").append(l).append(": ")
+                    .append(nonZerosBefore[l]).append(" -> ")
+                    .append(nonZerosAfter[l]).append(" of ")
+                    .append(numWeights[l]).append(" weights\n");
+        }
+        sb.append("flops: ").append(getFlopsBefore()).append(" -> ")
+                .append(getFlopsAfter())
+                .append(String.format(" (%.2fx fewer)", getFlopReduction()));
+        if(!Double.isNaN(errorBefore))
+        {
+            sb.append(String.format("\nerror: %.6f -> %.6f",
+                    errorBefore, errorAfter));
+        }
+        return sb.toString();
+    }
+}
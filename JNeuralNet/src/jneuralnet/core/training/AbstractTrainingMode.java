@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.training;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Set;
+import jneuralnet.core.NeuralNetwork;
+import jneuralnet.core.NeuronLayer;
+import jneuralnet.core.OptimizerState;
+import jneuralnet.core.Pluggable;
+import jneuralnet.core.learning.AbstractLearningAlgo;
+
+/**
+ * Defines how a {@link Teacher} runs an epoch, i.e, which threads feed the
+ * training patterns through the network and when the weights are adapted.
+ * The teacher takes care of shuffling, the validation set, the listeners
+ * and the stop conditions around every epoch.
+ *
+ * <p>By default the teacher uses {@link SerialTraining}, see
+ * {@link Teacher#setTrainingMode(jneuralnet.core.training.AbstractTrainingMode) setTrainingMode(...)}.
+ *
+ * <p> This class extends the <tt>Pluggable</tt> class making it
+ * self descriptive in nature.
+ *
+ * @author Ragha
+ * @see SerialTraining
+ * @see DataParallelTraining
+ * @see HogwildTraining
+ * @see PipelinedTraining
+ * @version 1.0
+ */
+public abstract class AbstractTrainingMode extends Pluggable implements Serializable
+{
+    private static final long serialVersionUID = 2009120101L;
+
+    /**
+     * Trains the network once on every pattern. The error of every pattern
+     * is to be added to <code>error</code> as it is fed forward, before the
+     * weights are adapted for it.
+     *
+     * @param net The neural network to be trained.
+     * @param algo The learning algo to be used.
+     * @param patterns The shuffled training patterns.
+     * @param batchSize The number of patterns per batch, 1 for adapting
+     * the weights after every pattern, see {@link Teacher#ONLINE}.
+     * @param error The error of the epoch.
+     */
+    public abstract void trainEpoch(NeuralNetwork net, AbstractLearningAlgo algo,
+            List<TrainingPattern> patterns, int batchSize, EpochError error);
+
+    /**
+     * Tells if this mode needs an algo supporting batches even if the batch
+     * size is 1, because it only trains through
+     * {@link AbstractLearningAlgo#accumulateGradients(jneuralnet.core.NeuralNetwork, jneuralnet.core.ActivationContext, double[]) accumulateGradients(...)}
+     * or with activation contexts other than the one of the network.
+     *
+     * @return false by default.
+     * @see AbstractLearningAlgo#isBatchSupported()
+     */
+    public boolean isBatchRequired()
+    {
+        return false;
+    }
+
+    /**
+     * Allocates the optimizer state the algo uses in every layer of the
+     * network, for modes adapting the weights from several threads. The
+     * state is otherwise allocated lazily by the first thread needing it,
+     * unsafely for the others.
+     *
+     * @param net The neural network to be trained.
+     * @param algo The learning algo to be used.
+     * @see AbstractLearningAlgo#getOptimizerSlots()
+     */
+    protected static void allocateOptimizerState(NeuralNetwork net,
+            AbstractLearningAlgo algo)
+    {
+        Set<OptimizerState.Slot> slots = algo.getOptimizerSlots();
+        for(NeuronLayer l : net.getHiddenLayers())
+            l.getDenseLayer().getOptimizerState().allocate(slots);
+        net.getOutputLayer().getDenseLayer().getOptimizerState().allocate(slots);
+    }
+
+    /**
+     * Releases the threads and buffers held for training, called by the
+     * teacher when training stops. They are created again by the next
+     * epoch. The default implementation does nothing.
+     */
+    public void release()
+    {
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.training;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import jneuralnet.core.ActivationContext;
+import jneuralnet.core.LayerParallelism;
+import jneuralnet.core.NeuralNetwork;
+import jneuralnet.core.learning.AbstractLearningAlgo;
+
+/**
+ * Splits every batch across several worker threads. Each worker feeds its
+ * share of the patterns through the network with an activation context of
+ * its own and sums their gradients in it. The gradients of the workers are
+ * then added up in the order of the workers, the parameters being split
+ * across the threads, and the weights are adapted once for the batch. The
+ * weights are only read while the workers run, so they need no locking.
+ *
+ * <p>With a deterministic reduction every worker takes a fixed, contiguous
+ * share of the batch, so that a run with the same number of workers is
+ * reproduced exactly. Otherwise the workers take small chunks of the batch
+ * as they become free, which balances patterns of uneven cost better but
+ * sums the gradients in a different order from run to run. Either way the
+ * results differ slightly from serial batch training, which sums the
+ * gradients in a single order.
+ *
+ * <p>The learning algo must support batches. Use a batch size of atleast a
+ * few hundred patterns per worker, or a full batch, so that the hand off
+ * between threads is small against the work of a batch.
+ *
+ * @author Ragha
+ * @see Teacher#setTrainingMode(jneuralnet.core.training.AbstractTrainingMode)
+ * @see AbstractLearningAlgo#accumulateGradients(jneuralnet.core.NeuralNetwork, jneuralnet.core.ActivationContext, double[])
+ * @version 1.0
+ */
+public class DataParallelTraining extends AbstractTrainingMode
+{
+    private static final long serialVersionUID = 2009120103L;
+
+    /**
+     * The number of chunks per worker a batch is split into, if the
+     * reduction need not be deterministic.
+     */
+    private static final int CHUNKS_PER_WORKER = 8;
+
+    private int numWorkers;
+    private boolean isReductionDeterministic;
+
+    //the workers and their buffers, created on the first epoch...
+    private transient LayerParallelism workers;
+    private transient ActivationContext contexts[];
+    private transient EpochError errors[];
+
+    /**
+     * Creates a mode training with as many workers as there are processors,
+     * with a deterministic reduction.
+     */
+    public DataParallelTraining()
+    {
+        this(Runtime.getRuntime().availableProcessors(), true);
+    }
+
+    /**
+     * @param numWorkers The number of threads a batch is split across,
+     * including the thread of the teacher.
+     * @param isReductionDeterministic true if the patterns are to be
+     * split in the same way on every run.
+     * @throws IllegalArgumentException If numWorkers is less than 1.
+     */
+    public DataParallelTraining(int numWorkers, boolean isReductionDeterministic)
+            throws IllegalArgumentException
+    {
+        if(numWorkers < 1)
+            throw new IllegalArgumentException("Number of workers must be atleast 1...");
+        this.numWorkers = numWorkers;
+        this.isReductionDeterministic = isReductionDeterministic;
+    }
+
+    /**
+     * @return The number of threads a batch is split across.
+     */
+    public int getNumWorkers()
+    {
+        return numWorkers;
+    }
+
+    /**
+     * @return true if the patterns are split in the same way on every run.
+     */
+    public boolean isReductionDeterministic()
+    {
+        return isReductionDeterministic;
+    }
+
+    @Override
+    public void trainEpoch(final NeuralNetwork net, final AbstractLearningAlgo algo,
+            final List<TrainingPattern> patterns, int batchSize, EpochError error)
+    {
+        prepare(net);
+        for(EpochError e : errors)
+            e.clear();
+
+        for(int from=0; from<patterns.size(); from+=batchSize)
+        {
+            int to = Math.min(patterns.size(), from + batchSize);
+            accumulateBatch(net, algo, patterns, from, to);
+            reduceGradients();
+            algo.applyGradients(net, contexts[0]);
+        }
+
+        //in the order of the workers, as for the gradients...
+        for(EpochError e : errors)
+            error.add(e);
+    }
+
+    /**
+     * Creates the workers and their contexts, if not done yet or if the
+     * topology of the network changed.
+     */
+    private void prepare(NeuralNetwork net)
+    {
+        if(workers == null)
+            workers = new LayerParallelism(numWorkers, 0);
+        if(contexts == null || !contexts[0].isCompatibleWith(net))
+        {
+            contexts = new ActivationContext[numWorkers];
+            errors = new EpochError[numWorkers];
+            for(int w=0; w<numWorkers; w++)
+            {
+                contexts[w] = new ActivationContext(net);
+                errors[w] = new EpochError();
+            }
+        }
+    }
+
+    /**
+     * Sums the gradients of the patterns in [from, to) in the contexts of
+     * the workers.
+     */
+    private void accumulateBatch(final NeuralNetwork net, final AbstractLearningAlgo algo,
+            final List<TrainingPattern> patterns, final int from, final int to)
+    {
+        final int count = to - from;
+        final int chunk = Math.max(1, count / (numWorkers * CHUNKS_PER_WORKER));
+        final AtomicInteger next = new AtomicInteger(from);
+
+        //every range of the loop is a single worker...
+        workers.run(numWorkers, new LayerParallelism.RangeTask()
+        {
+            public void run(int worker, int end)
+            {
+                ActivationContext ctx = contexts[worker];
+                //the first context is cleared by applying the gradients...
+                if(ctx.getNumAccumulated() > 0)
+                    ctx.clearGradients();
+                double input[] = new double[net.getNumInputs()];
+                double expected[] = new double[net.getNumOutputs()];
+
+                if(isReductionDeterministic)
+                {
+                    accumulate(net, algo, patterns, ctx, errors[worker], input, expected,
+                            from + (int) ((long) count * worker / numWorkers),
+                            from + (int) ((long) count * (worker + 1) / numWorkers));
+                }
+                else
+                {
+                    for(int start = next.getAndAdd(chunk); start < to;
+                            start = next.getAndAdd(chunk))
+                    {
+                        accumulate(net, algo, patterns, ctx, errors[worker], input, expected,
+                                start, Math.min(to, start + chunk));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Sums the gradients of the patterns in [from, to) in a context.
+     */
+    private static void accumulate(NeuralNetwork net, AbstractLearningAlgo algo,
+            List<TrainingPattern> patterns, ActivationContext ctx, EpochError error,
+            double input[], double expected[], int from, int to)
+    {
+        for(int p=from; p<to; p++)
+        {
+            TrainingPattern tp = patterns.get(p);
+            tp.getInputData(input);
+            tp.getOutputData(expected);
+            double output[] = net.getOutputOnPreprocessedData(input, ctx);
+            error.add(algo.getCostFunction(), output, expected);
+            algo.accumulateGradients(net, ctx, expected);
+        }
+    }
+
+    /**
+     * Adds the gradients of every worker to those of the first one, in the
+     * order of the workers, splitting the parameters across the threads.
+     */
+    private void reduceGradients()
+    {
+        final ActivationContext sum = contexts[0];
+        for(int layer=0; layer<sum.getNumLayers(); layer++)
+        {
+            final int index = layer;
+            //allocated here, the threads adding disjoint ranges...
+            int numParameters = sum.getGradients(layer).length;
+            workers.run(numParameters, new LayerParallelism.RangeTask()
+            {
+                public void run(int from, int to)
+                {
+                    for(int w=1; w<contexts.length; w++)
+                    {
+                        if(contexts[w].getNumAccumulated() > 0)
+                            sum.addGradients(contexts[w], index, from, to);
+                    }
+                }
+            });
+        }
+        for(int w=1; w<contexts.length; w++)
+            sum.addNumAccumulated(contexts[w].getNumAccumulated());
+    }
+
+    /**
+     * @return true, the gradients of the workers are always summed.
+     */
+    @Override
+    public boolean isBatchRequired()
+    {
+        return true;
+    }
+
+    /**
+     * Stops the worker threads and drops their contexts.
+     */
+    @Override
+    public void release()
+    {
+        if(workers != null)
+            workers.shutdown();
+        workers = null;
+        contexts = null;
+        errors = null;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "Data Parallel";
+    }
+
+    @Override
+    public String getDescription()
+    {
+        return "Splits every batch across " + numWorkers + " threads and adds " +
+                "up their gradients before adapting the weights once per batch.";
+    }
+
+    @Override
+    public String getAuthor()
+    {
+        return "Ragha";
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final DataParallelTraining other = (DataParallelTraining) obj;
+        if (this.numWorkers != other.numWorkers) {
+            return false;
+        }
+        if (this.isReductionDeterministic != other.isReductionDeterministic) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 5;
+        hash = 41 * hash + this.numWorkers;
+        hash = 41 * hash + (this.isReductionDeterministic ? 1 : 0);
+        return hash;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.training;
+
+import jneuralnet.core.learning.costfunction.AbstractCostFunction;
+
+/**
+ * Sums the training error of the patterns of an epoch as they are fed
+ * forward, i.e, before the weights are adapted for them. A training mode
+ * running several threads keeps one per thread and adds them up in a fixed
+ * order, see {@link #add(jneuralnet.core.training.EpochError) add(...)}.
+ *
+ * @author Ragha
+ * @see AbstractTrainingMode
+ * @version 1.0
+ */
+public final class EpochError
+{
+    private double costError;
+    private double errorPercent;
+    private int numPatterns;
+
+    //reduce obj creation...
+    private Double actual[], desired[];
+
+    /**
+     * Adds the error of a pattern.
+     *
+     * @param costFunction The cost function of the learning algo.
+     * @param actualOutput The output guessed by the network.
+     * @param desiredOutput The expected output of the pattern.
+     */
+    public void add(AbstractCostFunction costFunction, double actualOutput[],
+            double desiredOutput[])
+    {
+        if(actual == null || actual.length != actualOutput.length)
+        {
+            actual = new Double[actualOutput.length];
+            desired = new Double[actualOutput.length];
+        }
+        for(int i=0; i<actual.length; i++)
+        {
+            actual[i] = actualOutput[i];
+            desired[i] = desiredOutput[i];
+        }
+        costError += costFunction.getErrorValue(desired, actual);
+        errorPercent = getErrorPercent(actual, desired);
+        numPatterns++;
+    }
+
+    /**
+     * Adds the errors summed by another instance, as if its patterns
+     * followed those added so far.
+     *
+     * @param other The errors to be added.
+     */
+    public void add(EpochError other)
+    {
+        costError += other.costError;
+        if(other.numPatterns > 0)
+            errorPercent = other.errorPercent;
+        numPatterns += other.numPatterns;
+    }
+
+    /**
+     * @return The cost error summed over the patterns.
+     */
+    public double getCostError()
+    {
+        return costError;
+    }
+
+    /**
+     * @return The percentage error of the last pattern added.
+     */
+    public double getErrorPercent()
+    {
+        return errorPercent;
+    }
+
+    /**
+     * @return The number of patterns added.
+     */
+    public int getNumPatterns()
+    {
+        return numPatterns;
+    }
+
+    /**
+     * Forgets the patterns added so far.
+     */
+    public void clear()
+    {
+        costError = 0.0;
+        errorPercent = 0.0;
+        numPatterns = 0;
+    }
+
+    /**
+     * Calculates the percentage error between guessed and actual ouput.
+     * @param actual The output guessed by the nwural network.
+     * @param desired The required output
+     * @return Average percentage error.
+     */
+    static double getErrorPercent(Double actual[], Double desired[])
+    {
+        double percent = 0.0;
+        for(int i=0; i<actual.length; i++)
+        {
+            double a = actual[i], d = desired[i];
+            if(d == a)
+                percent += 0;
+            else if(d == 0 && a != 0)
+                percent += a * 100;
+            else if(a == 0 && d != 0)
+                percent += d * 100;
+            else if(d > a)
+                percent += Math.abs( ((d - a) / a) * 100 );
+            else
+                percent += Math.abs( ((d - a) / d) * 100 );
+        }
+        percent /= actual.length;
+        return percent;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.training;
+
+import java.util.Arrays;
+import jneuralnet.core.Precision;
+
+/**
+ * A training pattern storing its input and output vectors in single
+ * precision. It takes about a fifth of the memory of a
+ * <code>TrainingPattern</code>, which holds a <tt>Double</tt> object for
+ * every value.
+ *
+ * <p>{@link #getInputData()} and {@link #getOutputData()} create boxed
+ * copies of the vectors on every call, the teacher reads the vectors
+ * through {@link #getInputData(double[])} and {@link #getOutputData(double[])}
+ * instead.
+ *
+ * @author Ragha
+ * @see TrainingSet#toPrecision(jneuralnet.core.Precision)
+ * @see Precision
+ * @version 1.0
+ */
+public class FloatTrainingPattern extends TrainingPattern
+{
+    private static final long serialVersionUID = 2009110601L;
+
+    // The input and output vectors...
+    private float floatInputData[], floatOutputData[];
+
+    public FloatTrainingPattern() {
+
+    }
+
+    /**
+     * Constructs a training pattern with the given input and output vectors
+     * rounded to single precision.
+     * @param inputData The input vector to be used.
+     * @param outputData The output vector to be used.
+     */
+    public FloatTrainingPattern(Double inputData[], Double outputData[])
+    {
+        super(inputData, outputData);
+    }
+
+    /**
+     * Creates a single precision copy of a training pattern.
+     * @param tp The pattern to be copied.
+     */
+    public FloatTrainingPattern(TrainingPattern tp)
+    {
+        this(tp.getInputData(), tp.getOutputData());
+    }
+
+    @Override
+    public void setInputData(Double inputData[])
+    {
+        floatInputData = toFloat(inputData);
+    }
+
+    @Override
+    public Double[] getInputData()
+    {
+        return toDouble(floatInputData);
+    }
+
+    @Override
+    public void setOutputData(Double outputData[])
+    {
+        floatOutputData = toFloat(outputData);
+    }
+
+    @Override
+    public Double[] getOutputData()
+    {
+        return toDouble(floatOutputData);
+    }
+
+    @Override
+    public void getInputData(double dst[])
+    {
+        for(int i=0; i<floatInputData.length; i++)
+            dst[i] = floatInputData[i];
+    }
+
+    @Override
+    public void getOutputData(double dst[])
+    {
+        for(int i=0; i<floatOutputData.length; i++)
+            dst[i] = floatOutputData[i];
+    }
+
+    private static float[] toFloat(Double data[])
+    {
+        float ret[] = new float[data.length];
+        for(int i=0; i<data.length; i++)
+            ret[i] = data[i].floatValue();
+        return ret;
+    }
+
+    private static Double[] toDouble(float data[])
+    {
+        if(data == null)
+            return null;
+
+        Double ret[] = new Double[data.length];
+        for(int i=0; i<data.length; i++)
+            ret[i] = (double) data[i];
+        return ret;
+    }
+
+    @Override
+    public String toString()
+    {
+        String s = "";
+        if(floatInputData != null) {
+            for(float f : floatInputData)
+                s += f +", ";
+            s = s.substring(0, s.length() - 2);
+        }
+
+        s += "; ";
+        if(floatOutputData != null) {
+            for(float f : floatOutputData)
+                s += f +", ";
+            s = s.substring(0, s.length() - 2);
+        }
+
+        return s;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final FloatTrainingPattern other = (FloatTrainingPattern) obj;
+        if (!Arrays.equals(this.floatInputData, other.floatInputData)) {
+            return false;
+        }
+        if (!Arrays.equals(this.floatOutputData, other.floatOutputData)) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 31 * hash + Arrays.hashCode(this.floatInputData);
+        hash = 31 * hash + Arrays.hashCode(this.floatOutputData);
+        return hash;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.training;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import jneuralnet.core.ActivationContext;
+import jneuralnet.core.LayerParallelism;
+import jneuralnet.core.NeuralNetwork;
+import jneuralnet.core.learning.AbstractLearningAlgo;
+
+/**
+ * Trains with several threads adapting the shared weights without any
+ * locking, in the manner of Hogwild! SGD. The threads take the next pattern
+ * of the shuffled training set from a shared index, feed it forward with an
+ * activation context of their own and adapt the weights for it, or for
+ * every batch of the patterns they took if the batch size is above 1. The
+ * threads only wait for one another at the end of an epoch, when the
+ * teacher computes the errors and notifies its listeners.
+ *
+ * <p>This pays off when every pattern changes few of the weights, as for
+ * sparse, high dimensional inputs, since zero inputs leave their weights
+ * alone. With dense data every thread writes every weight and the threads
+ * mostly wait on each other's cache lines.
+ *
+ * <p>The consistency model is as follows:
+ * <ul>
+ * <li>A weight and its optimizer state are read and written with plain
+ * loads and stores. A pattern may be fed forward and back propagated with
+ * weights that other threads are changing, and an update may be based on
+ * a weight that another thread changes before the update is written, in
+ * which case one of the two changes is lost. The Java memory model does
+ * not even guarantee that a double is written atomically (JLS 17.7), so a
+ * weight may in principle hold halves of two different writes. The 64 bit
+ * JVMs in common use do write doubles atomically, but nothing here relies
+ * on it.</li>
+ * <li>The state of momentum, dynamic learning rates and QuickProp is kept
+ * per weight and suffers the same races, which adds noise to these rules.</li>
+ * <li>The optimizer state is allocated before the threads start, so that
+ * none of them works on arrays the others do not see.</li>
+ * <li>Pruned weights stay zero.</li>
+ * <li>The error of a pattern is that of its output as fed forward, with the
+ * weights of that moment.</li>
+ * <li>Every update of an epoch is visible to the teacher, its listeners and
+ * the next epoch, the end of an epoch being a barrier for all threads.</li>
+ * </ul>
+ * Runs are therefore not reproducible, unless a single thread is used,
+ * which then visits the patterns in the order {@link SerialTraining} does
+ * and computes the same updates.
+ *
+ * <p>The threads train with activation contexts of their own, which only
+ * the algos supporting batches allow, so such an algo is required even for
+ * online training, see {@link #isBatchRequired()}.
+ *
+ * @author Ragha
+ * @see DataParallelTraining
+ * @see Teacher#setTrainingMode(jneuralnet.core.training.AbstractTrainingMode)
+ * @version 1.0
+ */
+public class HogwildTraining extends AbstractTrainingMode
+{
+    private static final long serialVersionUID = 2009120201L;
+
+    private int numThreads;
+
+    //the threads and their buffers, created on the first epoch...
+    private transient LayerParallelism threads;
+    private transient ActivationContext contexts[];
+    private transient EpochError errors[];
+
+    /**
+     * Creates a mode training with as many threads as there are processors.
+     */
+    public HogwildTraining()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param numThreads The number of threads adapting the weights,
+     * including the thread of the teacher.
+     * @throws IllegalArgumentException If numThreads is less than 1.
+     */
+    public HogwildTraining(int numThreads) throws IllegalArgumentException
+    {
+        if(numThreads < 1)
+            throw new IllegalArgumentException("Number of threads must be atleast 1...");
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * @return The number of threads adapting the weights.
+     */
+    public int getNumThreads()
+    {
+        return numThreads;
+    }
+
+    /**
+     * @return true, the threads train with contexts of their own, which
+     * only the algos supporting batches allow.
+     * @see AbstractLearningAlgo#trainNet(jneuralnet.core.NeuralNetwork, jneuralnet.core.ActivationContext, double[])
+     */
+    @Override
+    public boolean isBatchRequired()
+    {
+        return true;
+    }
+
+    @Override
+    public void trainEpoch(final NeuralNetwork net, final AbstractLearningAlgo algo,
+            final List<TrainingPattern> patterns, final int batchSize, EpochError error)
+    {
+        if(threads == null)
+            threads = new LayerParallelism(numThreads, 0);
+        if(contexts == null || !contexts[0].isCompatibleWith(net))
+        {
+            contexts = new ActivationContext[numThreads];
+            errors = new EpochError[numThreads];
+            for(int t=0; t<numThreads; t++)
+            {
+                contexts[t] = new ActivationContext(net);
+                errors[t] = new EpochError();
+            }
+        }
+
+        //allocated before the threads start, which publishes it to them...
+        allocateOptimizerState(net, algo);
+
+        final AtomicInteger next = new AtomicInteger();
+        //every range of the loop is a single thread...
+        threads.run(numThreads, new LayerParallelism.RangeTask()
+        {
+            public void run(int thread, int end)
+            {
+                ActivationContext ctx = contexts[thread];
+                EpochError threadError = errors[thread];
+                threadError.clear();
+                double input[] = new double[net.getNumInputs()];
+                double expected[] = new double[net.getNumOutputs()];
+
+                for(int p = next.getAndIncrement(); p < patterns.size();
+                        p = next.getAndIncrement())
+                {
+                    TrainingPattern tp = patterns.get(p);
+                    tp.getInputData(input);
+                    tp.getOutputData(expected);
+                    double output[] = net.getOutputOnPreprocessedData(input, ctx);
+                    threadError.add(algo.getCostFunction(), output, expected);
+
+                    if(batchSize == Teacher.ONLINE)
+                        algo.trainNet(net, ctx, expected);
+                    else
+                    {
+                        algo.accumulateGradients(net, ctx, expected);
+                        if(ctx.getNumAccumulated() == batchSize)
+                            algo.applyGradients(net, ctx);
+                    }
+                }
+                //the remaining patterns form a smaller batch...
+                if(batchSize != Teacher.ONLINE)
+                    algo.applyGradients(net, ctx);
+            }
+        });
+
+        for(EpochError e : errors)
+            error.add(e);
+    }
+
+    /**
+     * Stops the threads and drops their contexts.
+     */
+    @Override
+    public void release()
+    {
+        if(threads != null)
+            threads.shutdown();
+        threads = null;
+        contexts = null;
+        errors = null;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "Hogwild";
+    }
+
+    @Override
+    public String getDescription()
+    {
+        return "Trains with " + numThreads + " threads adapting the shared " +
+                "weights without locking, waiting for each other only at " +
+                "the end of every epoch.";
+    }
+
+    @Override
+    public String getAuthor()
+    {
+        return "Ragha";
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final HogwildTraining other = (HogwildTraining) obj;
+        if (this.numThreads != other.numThreads) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 3;
+        hash = 67 * hash + this.numThreads;
+        return hash;
+    }
+}
@@ -0,0 +1,531 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.training;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import jneuralnet.core.ActivationContext;
+import jneuralnet.core.NeuralNetwork;
+import jneuralnet.core.NeuronLayer;
+import jneuralnet.core.learning.AbstractBPBasedAlgo;
+import jneuralnet.core.learning.AbstractLearningAlgo;
+
+/**
+ * Splits the layers of the network into stages of consecutive layers, each
+ * run by a thread of its own, and streams micro batches of patterns through
+ * them. A micro batch is fed forward stage by stage, its output deltas are
+ * computed by the last stage and it is then back propagated stage by stage,
+ * every stage adapting its layers once for the micro batch as it passes
+ * back through. While one micro batch is back propagated through a stage,
+ * the next ones are fed forward through the stages below it, so the stages
+ * work at the same time. The micro batches are the batches of the teacher,
+ * see {@link Teacher#startTraining(java.lang.Double, long, long, int, int) startTraining(...)},
+ * and should be small against the training set.
+ *
+ * <p>The stages are balanced by their number of weights. A stage is the
+ * only thread reading or writing the weights and optimizer state of its
+ * layers, the deltas it back propagates to the stage below being computed
+ * with its own weights, so no locking is needed. The stages pass the micro
+ * batches through bounded queues, and atmost a given number of micro
+ * batches are in flight at once.
+ *
+ * <p>The staleness of the weights is bounded as follows. The micro batches
+ * pass every stage in the order they were started, forward as well as
+ * backward, and a stage applies the update of a micro batch at the end of
+ * its backward pass. With atmost F micro batches in flight, micro batch k
+ * is only started once micro batch k - F has left the pipeline, so its
+ * forward pass through every stage sees the updates of all the micro
+ * batches up to k - F, and possibly some of the ones after. Its backward
+ * pass through a stage sees the updates of all the micro batches before k.
+ * The weights are not stashed, so the backward pass of a micro batch may use
+ * newer weights than its forward pass, by atmost F - 1 updates. With a
+ * single micro batch in flight the training is exactly that of
+ * {@link SerialTraining} with the same batch size, without any overlap.
+ * With more, the forward and backward passes meet in the stages in an
+ * order that varies with timing, so runs are not reproduced exactly.
+ *
+ * <p>This pays off for deep networks whose layers are too narrow for a
+ * {@link jneuralnet.core.LayerParallelism} to split. The learning algo must
+ * be back propagation based.
+ *
+ * @author Ragha
+ * @see AbstractBPBasedAlgo#propagateDeltas(jneuralnet.core.NeuralNetwork, jneuralnet.core.ActivationContext, int)
+ * @see Teacher#setTrainingMode(jneuralnet.core.training.AbstractTrainingMode)
+ * @version 1.0
+ */
+public class PipelinedTraining extends AbstractTrainingMode
+{
+    private static final long serialVersionUID = 2009120301L;
+
+    private int numStages;
+    private int maxInFlight;
+
+    //the stages and the micro batches, created on the first epoch...
+    private transient ExecutorService pool;
+    private transient Stage stages[];
+    private transient BlockingQueue<MicroBatch> free;
+    private transient volatile Throwable failure;
+
+    /**
+     * Creates a mode with as many stages as micro batches in flight.
+     *
+     * @param numStages The number of threads the layers are split across,
+     * atmost one per layer.
+     * @throws IllegalArgumentException If numStages is less than 1.
+     */
+    public PipelinedTraining(int numStages) throws IllegalArgumentException
+    {
+        this(numStages, numStages);
+    }
+
+    /**
+     * @param numStages The number of threads the layers are split across,
+     * atmost one per layer.
+     * @param maxInFlight The number of micro batches in the pipeline at
+     * once, 1 for no overlap and no stale weights.
+     * @throws IllegalArgumentException If numStages or maxInFlight is less
+     * than 1.
+     */
+    public PipelinedTraining(int numStages, int maxInFlight)
+            throws IllegalArgumentException
+    {
+        if(numStages < 1)
+            throw new IllegalArgumentException("Number of stages must be atleast 1...");
+        if(maxInFlight < 1)
+            throw new IllegalArgumentException("Micro batches in flight must be atleast 1...");
+        this.numStages = numStages;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * @return The number of threads the layers are split across.
+     */
+    public int getNumStages()
+    {
+        return numStages;
+    }
+
+    /**
+     * @return The number of micro batches in the pipeline at once.
+     */
+    public int getMaxInFlight()
+    {
+        return maxInFlight;
+    }
+
+    /**
+     * @return true, the micro batches are applied per stage.
+     */
+    @Override
+    public boolean isBatchRequired()
+    {
+        return true;
+    }
+
+    /**
+     * @throws IllegalStateException If the algo is not back propagation
+     * based or if a stage fails.
+     */
+    @Override
+    public void trainEpoch(NeuralNetwork net, AbstractLearningAlgo algo,
+            List<TrainingPattern> patterns, int batchSize, EpochError error)
+            throws IllegalStateException
+    {
+        if(!(algo instanceof AbstractBPBasedAlgo))
+            throw new IllegalStateException(algo.getName() + " is not back " +
+                    "propagation based...");
+        prepare(net, batchSize);
+        //allocated before the stages start, which publishes it to them...
+        allocateOptimizerState(net, algo);
+
+        failure = null;
+        Future<?> futures[] = new Future<?>[stages.length];
+        for(int s=0; s<stages.length; s++)
+        {
+            stages[s].start(net, (AbstractBPBasedAlgo) algo);
+            futures[s] = pool.submit(stages[s]);
+        }
+
+        boolean isCompleted = false;
+        try
+        {
+            for(int from=0; from<patterns.size(); from+=batchSize)
+            {
+                MicroBatch mb = takeFree();
+                mb.fill(patterns, from, Math.min(patterns.size(), from + batchSize));
+                stages[0].queue.add(mb);
+            }
+            //every micro batch back in the pool ends the epoch...
+            List<MicroBatch> done = new ArrayList<MicroBatch>();
+            while(done.size() < maxInFlight)
+                done.add(takeFree());
+            free.addAll(done);
+            isCompleted = true;
+        }
+        finally
+        {
+            for(Stage stage : stages)
+                stage.queue.add(MicroBatch.STOP);
+            waitFor(futures);
+            //micro batches may be left anywhere, they are created again...
+            if(!isCompleted)
+                stages = null;
+        }
+        error.add(stages[stages.length - 1].error);
+    }
+
+    /**
+     * @return The next micro batch out of the pipeline.
+     * @throws IllegalStateException If a stage failed.
+     */
+    private MicroBatch takeFree() throws IllegalStateException
+    {
+        MicroBatch mb;
+        try
+        {
+            mb = free.take();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while training...", e);
+        }
+        if(mb == MicroBatch.STOP)
+            throw new IllegalStateException("A pipeline stage failed...", failure);
+        return mb;
+    }
+
+    private void waitFor(Future<?> futures[])
+    {
+        for(Future<?> f : futures)
+        {
+            try
+            {
+                f.get();
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while training...", e);
+            }
+            catch(ExecutionException e)
+            {
+                //reported by the stage itself...
+            }
+        }
+    }
+
+    /**
+     * Splits the layers into stages and creates the micro batches, if not
+     * done yet or if the topology of the network or the batch size changed.
+     */
+    private void prepare(NeuralNetwork net, int batchSize)
+    {
+        if(pool == null)
+        {
+            pool = Executors.newCachedThreadPool(new ThreadFactory()
+            {
+                private int count;
+
+                public synchronized Thread newThread(Runnable r)
+                {
+                    Thread t = new Thread(r, "jneuralnet-stage-" + (++count));
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        if(stages != null && free.peek().isCompatibleWith(net, batchSize))
+            return;
+
+        int first[] = getFirstLayers(net);
+        stages = new Stage[first.length - 1];
+        for(int s=0; s<stages.length; s++)
+            stages[s] = new Stage(s, first[s], first[s + 1] - 1, new ActivationContext(net));
+
+        //a micro batch is in one queue atmost, so that no queue blocks...
+        free = new ArrayBlockingQueue<MicroBatch>(maxInFlight + 1);
+        for(int k=0; k<maxInFlight; k++)
+            free.add(new MicroBatch(net, batchSize));
+    }
+
+    /**
+     * Splits the layers so that every stage has about the same number of
+     * weights, every stage having atleast one layer.
+     *
+     * @return The first layer of every stage, followed by the number of
+     * layers.
+     */
+    private int[] getFirstLayers(NeuralNetwork net)
+    {
+        List<NeuronLayer> layers = new ArrayList<NeuronLayer>(net.getHiddenLayers());
+        layers.add(net.getOutputLayer());
+        int count = Math.min(numStages, layers.size());
+
+        long weights[] = new long[layers.size() + 1];
+        for(int l=0; l<layers.size(); l++)
+            weights[l + 1] = weights[l] + layers.get(l).getDenseLayer().getNumParameters();
+
+        int first[] = new int[count + 1];
+        first[count] = layers.size();
+        int l = 0;
+        for(int s=1; s<count; s++)
+        {
+            //the first layer past the share of the stages so far...
+            long share = weights[layers.size()] * s / count;
+            l = Math.max(l + 1, first[s - 1] + 1);
+            while(l < layers.size() - (count - s) && weights[l] < share)
+                l++;
+            first[s] = l;
+        }
+        return first;
+    }
+
+    /**
+     * Stops the stages and drops the micro batches.
+     */
+    @Override
+    public void release()
+    {
+        if(pool != null)
+            pool.shutdown();
+        pool = null;
+        stages = null;
+        free = null;
+    }
+
+    /**
+     * The patterns of a micro batch, with a context per pattern holding its
+     * values from the forward until the backward pass.
+     */
+    private static final class MicroBatch
+    {
+        /**
+         * Ends the loop of a stage, or tells that a stage failed.
+         */
+        static final MicroBatch STOP = new MicroBatch();
+
+        private final ActivationContext contexts[];
+        private final double inputs[][];
+        private final double expected[][];
+        private int size;
+        private boolean isBackward;
+
+        private MicroBatch()
+        {
+            contexts = null;
+            inputs = null;
+            expected = null;
+        }
+
+        MicroBatch(NeuralNetwork net, int capacity)
+        {
+            contexts = new ActivationContext[capacity];
+            inputs = new double[capacity][net.getNumInputs()];
+            expected = new double[capacity][net.getNumOutputs()];
+            for(int i=0; i<capacity; i++)
+                contexts[i] = new ActivationContext(net);
+        }
+
+        boolean isCompatibleWith(NeuralNetwork net, int capacity)
+        {
+            return contexts.length == capacity && contexts[0].isCompatibleWith(net);
+        }
+
+        void fill(List<TrainingPattern> patterns, int from, int to)
+        {
+            size = to - from;
+            for(int i=0; i<size; i++)
+            {
+                patterns.get(from + i).getInputData(inputs[i]);
+                patterns.get(from + i).getOutputData(expected[i]);
+            }
+            isBackward = false;
+        }
+    }
+
+    /**
+     * A thread feeding forward and back propagating the micro batches
+     * through the layers in [firstLayer, lastLayer].
+     */
+    private final class Stage implements Runnable
+    {
+        private final int index;
+        private final int firstLayer, lastLayer;
+        //the gradients of the layers of this stage...
+        private final ActivationContext sums;
+        private final EpochError error = new EpochError();
+        private final BlockingQueue<MicroBatch> queue;
+
+        private NeuralNetwork net;
+        private AbstractBPBasedAlgo algo;
+
+        Stage(int index, int firstLayer, int lastLayer, ActivationContext sums)
+        {
+            this.index = index;
+            this.firstLayer = firstLayer;
+            this.lastLayer = lastLayer;
+            this.sums = sums;
+            queue = new ArrayBlockingQueue<MicroBatch>(maxInFlight + 1);
+        }
+
+        void start(NeuralNetwork net, AbstractBPBasedAlgo algo)
+        {
+            this.net = net;
+            this.algo = algo;
+            error.clear();
+            queue.clear();
+        }
+
+        private boolean isLast()
+        {
+            return index == stages.length - 1;
+        }
+
+        public void run()
+        {
+            try
+            {
+                for(MicroBatch mb = queue.take(); mb != MicroBatch.STOP; mb = queue.take())
+                {
+                    if(!mb.isBackward)
+                    {
+                        forward(mb);
+                        if(!isLast())
+                        {
+                            stages[index + 1].queue.add(mb);
+                            continue;
+                        }
+                        mb.isBackward = true;
+                    }
+                    backward(mb);
+                    if(index > 0)
+                        stages[index - 1].queue.add(mb);
+                    else
+                        free.add(mb);
+                }
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch(RuntimeException e)
+            {
+                fail(e);
+                throw e;
+            }
+            catch(Error e)
+            {
+                fail(e);
+                throw e;
+            }
+        }
+
+        private void fail(Throwable t)
+        {
+            failure = t;
+            free.add(MicroBatch.STOP);
+        }
+
+        private void forward(MicroBatch mb)
+        {
+            int outputLayer = net.getHiddenLayers().size();
+            for(int i=0; i<mb.size; i++)
+            {
+                ActivationContext ctx = mb.contexts[i];
+                double data[] = firstLayer == 0 ? mb.inputs[i] : ctx.getOutputs(firstLayer - 1);
+                for(int l=firstLayer; l<=lastLayer; l++)
+                {
+                    NeuronLayer layer = l == outputLayer ? net.getOutputLayer()
+                            : net.getHiddenLayers().get(l);
+                    data = layer.getOutput(data, ctx, l);
+                }
+                if(isLast())
+                    error.add(algo.getCostFunction(), data, mb.expected[i]);
+            }
+        }
+
+        private void backward(MicroBatch mb)
+        {
+            for(int l=lastLayer; l>=firstLayer; l--)
+            {
+                for(int i=0; i<mb.size; i++)
+                {
+                    ActivationContext ctx = mb.contexts[i];
+                    if(l == net.getHiddenLayers().size())
+                        algo.computeOutputDeltas(net, ctx, mb.expected[i]);
+                    algo.accumulateGradients(ctx, sums, l);
+                    //with the weights of this stage, before adapting them...
+                    if(l > 0)
+                        algo.propagateDeltas(net, ctx, l);
+                }
+            }
+            for(int l=lastLayer; l>=firstLayer; l--)
+                algo.applyGradients(net, sums, l);
+        }
+    }
+
+    @Override
+    public String getName()
+    {
+        return "Pipelined";
+    }
+
+    @Override
+    public String getDescription()
+    {
+        return "Splits the layers into " + numStages + " stages run by " +
+                "threads of their own, streaming micro batches through them.";
+    }
+
+    @Override
+    public String getAuthor()
+    {
+        return "Ragha";
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final PipelinedTraining other = (PipelinedTraining) obj;
+        if (this.numStages != other.numStages) {
+            return false;
+        }
+        if (this.maxInFlight != other.maxInFlight) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 59 * hash + this.numStages;
+        hash = 59 * hash + this.maxInFlight;
+        return hash;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.training;
+
+import java.util.List;
+import jneuralnet.core.ActivationContext;
+import jneuralnet.core.NeuralNetwork;
+import jneuralnet.core.learning.AbstractLearningAlgo;
+
+/**
+ * Trains on the thread of the teacher, one pattern after the other, using
+ * the activation context of the network. This is the default training mode.
+ *
+ * @author Ragha
+ * @see Teacher
+ * @version 1.0
+ */
+public class SerialTraining extends AbstractTrainingMode
+{
+    private static final long serialVersionUID = 2009120102L;
+
+    @Override
+    public void trainEpoch(NeuralNetwork net, AbstractLearningAlgo algo,
+            List<TrainingPattern> patterns, int batchSize, EpochError error)
+    {
+        //the patterns are read without boxing as they may be
+        //stored in single precision...
+        ActivationContext ctx = net.getActivationContext();
+        double input[] = new double[net.getNumInputs()];
+        double expected[] = new double[net.getNumOutputs()];
+
+        for(TrainingPattern tp : patterns)
+        {
+            tp.getInputData(input);
+            tp.getOutputData(expected);
+            double output[] = net.getOutputOnPreprocessedData(input, ctx);
+            error.add(algo.getCostFunction(), output, expected);
+
+            if(batchSize == Teacher.ONLINE)
+                algo.trainNet(net, ctx, expected);
+            else
+            {
+                algo.accumulateGradients(net, ctx, expected);
+                if(ctx.getNumAccumulated() == batchSize)
+                    algo.applyGradients(net, ctx);
+            }
+        }
+        //the remaining patterns form a smaller batch...
+        if(batchSize != Teacher.ONLINE)
+            algo.applyGradients(net, ctx);
+    }
+
+    @Override
+    public String getName()
+    {
+        return "Serial";
+    }
+
+    @Override
+    public String getDescription()
+    {
+        return "Trains on a single thread, one pattern after the other.";
+    }
+
+    @Override
+    public String getAuthor()
+    {
+        return "Ragha";
+    }
+}
@@ -17,6 +17,8 @@ package jneuralnet.core.training;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import jneuralnet.core.*;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
@@ -57,6 +59,16 @@ public class Teacher extends AbstractSerializableBean implements Serializable
     public static final int COST_ERROR = 0;
     public static final int PERCENTAGE_ERROR = 1;
 
+    /**
+     * The batch size training on the whole training set as one batch.
+     */
+    public static final int FULL_BATCH = -1;
+
+    /**
+     * The batch size adapting the weights after every pattern.
+     */
+    public static final int ONLINE = 1;
+
     //The error type to be used for evaluating the error...
     private int stopErrorType;
 
@@ -66,6 +78,9 @@ public class Teacher extends AbstractSerializableBean implements Serializable
     //Learning algo to be trained with...
     private AbstractLearningAlgo learningAlgo;
 
+    //How the epochs are run...
+    private AbstractTrainingMode trainingMode;
+
     //transient because trainListener can reference swing components
     //(like groupLayout) and cause notserializable exception to be thrown...
     private transient List<TrainListenerAdapter> arrListeners;
@@ -73,6 +88,10 @@ public class Teacher extends AbstractSerializableBean implements Serializable
     //Dont want to persist all that thread stuff in XML do you?
     private transient TrainingThread trainerDelegate;
 
+    //The scheduler running the training, null for the training thread...
+    private transient TrainingScheduler trainingScheduler;
+    private transient TrainingJob trainingJob;
+
     //Training data repository associated with this teacher...
     private TrainingDataRepository trainingDataRepository;
 
@@ -129,10 +148,24 @@ public class Teacher extends AbstractSerializableBean implements Serializable
             trainerDelegate.setPriority(Thread.MIN_PRIORITY);
             trainingDataRepository = new TrainingDataRepository(net);
             learningAlgo = DEFAULT_ALGO;
+            trainingMode = new SerialTraining();
             stopErrorType = COST_ERROR;
         }
     }
     
+    /**
+     * Recreates the training thread and the listener list, which are not
+     * serialized, so that a loaded network can be trained and saved again.
+     */
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        arrListeners = new ArrayList<TrainListenerAdapter>();
+        trainerDelegate = new TrainingThread();
+        trainerDelegate.setPriority(Thread.MIN_PRIORITY);
+    }
+
     /**
      * sets the learning algo to be used by the teacher. A null value is not
      * permissible.     
@@ -157,12 +190,47 @@ public class Teacher extends AbstractSerializableBean implements Serializable
         return learningAlgo;
     }
 
+    /**
+     * Sets the training mode, i.e, how the epochs are run. A null value is
+     * not permissible. The mode is taken up by the next call to
+     * {@link #startTraining(java.lang.Double, long, long, int, int) startTraining(...)}.
+     *
+     * @param trainingMode The training mode to be used.
+     * @throws NullPointerException If a null argument is used...
+     * @see SerialTraining
+     * @see DataParallelTraining
+     * @see HogwildTraining
+     * @see PipelinedTraining
+     */
+    public void setTrainingMode(AbstractTrainingMode trainingMode) throws NullPointerException
+    {
+        if(trainingMode != null)
+            set("trainingMode", trainingMode);
+        else
+            throw new NullPointerException("Argument cannot be null");
+    }
+
+    /**
+     *
+     * @return The training mode used by the teacher, {@link SerialTraining}
+     * by default.
+     */
+    public AbstractTrainingMode getTrainingMode()
+    {
+        //teachers serialized before training modes...
+        if(trainingMode == null)
+            trainingMode = new SerialTraining();
+        return trainingMode;
+    }
+
     /**
      * Returns the status of the trainer thread.
      * @return true, if the teacher is currently traininhg the network.
      */
     public boolean isTraining()
     {
+        if(trainingJob != null)
+            return trainingJob.isTraining();
         return trainerDelegate.isTraining;
     }
 
@@ -172,6 +240,8 @@ public class Teacher extends AbstractSerializableBean implements Serializable
      */
     public boolean isPaused()
     {
+        if(trainingJob != null)
+            return trainingJob.getState() == TrainingJob.State.PAUSED;
         return trainerDelegate.isPaused;
     }
 
@@ -181,6 +251,8 @@ public class Teacher extends AbstractSerializableBean implements Serializable
      */
     public boolean isStopped()
     {
+        if(trainingJob != null)
+            return trainingJob.isDone();
         return trainerDelegate.isStopped;
     }
     
@@ -197,6 +269,10 @@ public class Teacher extends AbstractSerializableBean implements Serializable
      * {@link #addTrainListener(jneuralnet.core.training.TrainListenerAdapter) addTrainListener(...)}
      * method.
      *
+     * <p>If a training scheduler is set, the training is queued on it as a
+     * {@link TrainingJob} instead of running on a thread of its own, see
+     * {@link #setTrainingScheduler(jneuralnet.core.training.TrainingScheduler) setTrainingScheduler(...)}.
+     *
      * @param stopError The error below which the training is to be halted.
      * @param minCycles The minimum number of epochs to be run for training.
      * @param maxCycles The maximum no of epochs to be run for training,
@@ -214,18 +290,47 @@ public class Teacher extends AbstractSerializableBean implements Serializable
     public void startTraining(Double stopError, long minCycles,
             long maxCycles, int stopErrorType)
             throws IllegalStateException, IllegalArgumentException
+    {
+        startTraining(stopError, minCycles, maxCycles, stopErrorType, ONLINE);
+    }
+
+    /**
+     * Starts the training thread, adapting the weights once per mini batch
+     * of patterns instead of after every pattern. The error gradients of
+     * the patterns of a batch are summed, see
+     * {@link AbstractLearningAlgo#accumulateGradients(jneuralnet.core.NeuralNetwork, jneuralnet.core.ActivationContext, double[]) accumulateGradients(...)},
+     * and the last batch of an epoch may be smaller. As the gradients are
+     * summed, the learning rates should be about the online ones divided by
+     * the batch size. Otherwise the same as
+     * {@link #startTraining(java.lang.Double, long, long, int) startTraining(...)}.
+     *
+     * @param stopError The error below which the training is to be halted.
+     * @param minCycles The minimum number of epochs to be run for training.
+     * @param maxCycles The maximum no of epochs to be run for training,
+     * a value of -1 indicates indefinite number of cycles until
+     * convergence is acheived.
+     * @param stopErrorType The error type to be used of the stop error.
+     * @param batchSize The number of patterns per batch, {@link #ONLINE}
+     * for training pattern by pattern or {@link #FULL_BATCH} for training
+     * on the whole training set at once.
+     * @throws IllegalArgumentException If minCycles, maxCycles or batchSize
+     * is an absurd value...
+     * @throws IllegalStateException If the associated training data repository
+     * dosent have any training data, if no learning algorithm is set or
+     * if it does not support the batches of the batch size or of the
+     * training mode...
+     *
+     * @see AbstractLearningAlgo#isBatchSupported()
+     * @see #setTrainingMode(jneuralnet.core.training.AbstractTrainingMode)
+     */
+    public void startTraining(Double stopError, long minCycles,
+            long maxCycles, int stopErrorType, int batchSize)
+            throws IllegalStateException, IllegalArgumentException
     {
         if(isTraining())
             return;
-
-        //Thread has completed execution or has been stopped
-        //Re create thread object so that it can be re run...
-        if(trainerDelegate.isStopped)
-            trainerDelegate = new TrainingThread();
-
-        trainerDelegate.stopError = stopError;
-        trainerDelegate.maxCycles = maxCycles;
-        trainerDelegate.minCycles = minCycles;
+        if(trainingJob != null && !trainingJob.isDone())
+            return;
 
         if(stopErrorType == COST_ERROR || stopErrorType == PERCENTAGE_ERROR)
             this.stopErrorType = stopErrorType;
@@ -246,9 +351,32 @@ public class Teacher extends AbstractSerializableBean implements Serializable
             throw new IllegalArgumentException("minCycles atleast has to be 1");
         else if(maxCycles <=0 && maxCycles != -1)
             throw new IllegalArgumentException("maxCycles has to be > 0 or equal to -1");
+        else if(batchSize <= 0 && batchSize != FULL_BATCH)
+            throw new IllegalArgumentException("batchSize has to be > 0 or equal to -1");
+        else if((batchSize != ONLINE || getTrainingMode().isBatchRequired())
+                && !learningAlgo.isBatchSupported())
+            throw new IllegalStateException(learningAlgo.getName() +
+                    " does not support batch training...");
         else        
         {
-            trainerDelegate.cycleCount = 0;
+            TrainingRun run = new TrainingRun(stopError, minCycles, maxCycles,
+                    batchSize, getTrainingMode());
+            if(trainingScheduler != null)
+            {
+                trainingJob = trainingScheduler.submit(run, trainerDelegate.getPriority());
+                return;
+            }
+            trainingJob = null;
+
+            //Thread has completed execution or has been stopped
+            //Re create thread object so that it can be re run...
+            if(trainerDelegate.isStopped)
+            {
+                int priority = trainerDelegate.getPriority();
+                trainerDelegate = new TrainingThread();
+                trainerDelegate.setPriority(priority);
+            }
+            trainerDelegate.trainingRun = run;
             trainerDelegate.isStopped = false;
             trainerDelegate.isPaused = false;            
             trainerDelegate.start();
@@ -260,7 +388,10 @@ public class Teacher extends AbstractSerializableBean implements Serializable
      */
     public void stopTraining()
     {
-        trainerDelegate.stopTraining();
+        if(trainingJob != null)
+            trainingJob.stop();
+        else
+            trainerDelegate.stopTraining();
     }
 
     /**
@@ -268,7 +399,10 @@ public class Teacher extends AbstractSerializableBean implements Serializable
      */
     public void resumeTraining()
     {
-        trainerDelegate.resumeTraining();
+        if(trainingJob != null)
+            trainingJob.resume();
+        else
+            trainerDelegate.resumeTraining();
     }
 
     /**
@@ -278,8 +412,13 @@ public class Teacher extends AbstractSerializableBean implements Serializable
     @SuppressWarnings("empty-statement")
     public void pauseTraining()
     {
-        trainerDelegate.pauseTraining();
-        while(!trainerDelegate.isPauseCompleted);
+        if(trainingJob != null)
+            trainingJob.pause();
+        else
+        {
+            trainerDelegate.pauseTraining();
+            while(!trainerDelegate.isPauseCompleted);
+        }
     }    
 
     /**
@@ -348,104 +487,288 @@ public class Teacher extends AbstractSerializableBean implements Serializable
 
     /**
      * Sets the priority of the trainer thread associated with this teacher.
-     * By default MIN_PRIORITY is used.
+     * By default MIN_PRIORITY is used. With a training scheduler, this is
+     * the priority of the training job.
      * @param priority The priority index between 1 to 10 with 1 being
      * the lowest.
+     * @see TrainingJob#setPriority(int)
      */
     public void setThreadPriority(int priority)
     {
         trainerDelegate.setPriority(priority);
+        if(trainingJob != null)
+            trainingJob.setPriority(priority);
     }
 
     /**
-     * The training thread for this teacher. This class handles thread's 
-     * start, stop, pause and resumes...
+     * Sets the scheduler the training is submitted to, instead of running
+     * on a thread of its own. The scheduler is taken up by the next call to
+     * {@link #startTraining(java.lang.Double, long, long, int, int) startTraining(...)}.
+     *
+     * @param trainingScheduler The scheduler to be used, null for training
+     * on a thread of this teacher.
+     * @see TrainingScheduler
      */
-    private class TrainingThread extends Thread
+    public void setTrainingScheduler(TrainingScheduler trainingScheduler)
+    {
+        this.trainingScheduler = trainingScheduler;
+    }
+
+    /**
+     * @return The scheduler the training is submitted to, null if the
+     * teacher trains on a thread of its own.
+     */
+    public TrainingScheduler getTrainingScheduler()
+    {
+        return trainingScheduler;
+    }
+
+    /**
+     * @return The job of the training last submitted to a scheduler, null
+     * if the last training ran on the thread of this teacher.
+     */
+    public TrainingJob getTrainingJob()
+    {
+        return trainingJob;
+    }
+
+    /**
+     * The state of a training run: the parameters it was started with, the
+     * epoch being trained and the errors of the last epoch. A run advances
+     * a slice of batches at a time, on the training thread or on a thread
+     * of a {@link TrainingScheduler}, but never on two threads at once.
+     */
+    class TrainingRun
     {
         private long cycleCount;
-        private long maxCycles;
-        private long minCycles;
+        private final long maxCycles;
+        private final long minCycles;
+        private final int batchSize;
+        private final AbstractTrainingMode mode;
         
-        private Double stopError;
+        private final Double stopError;
         private Double trainingErrorOnCostFunction = 0.0;
         private Double validationErrorOnCostFunction = 0.0;
         private Double trainingErrorPercent = 0.0;
         private Double validationErrorPercent = 0.0;
 
-        //used to control thread...
-        private volatile boolean isStopped = false;
-        private volatile boolean isPaused = false;
-        private volatile boolean isTraining = false;
-        private volatile boolean isPauseCompleted = false;
-                
+        private TrainingSet trainData;
+        private TrainingSet validationData;
+        private final EpochError error = new EpochError();
+        private int patternsPerBatch;
+
+        //the first pattern of the epoch not trained yet...
+        private int position;
+        private long numBatches;
+
+        TrainingRun(Double stopError, long minCycles, long maxCycles,
+                int batchSize, AbstractTrainingMode mode)
+        {
+            this.stopError = stopError;
+            this.minCycles = minCycles;
+            this.maxCycles = maxCycles;
+            this.batchSize = batchSize;
+            this.mode = mode;
+        }
+
+        Teacher getTeacher()
+        {
+            return Teacher.this;
+        }
+
+        long getCycleCount()
+        {
+            return cycleCount;
+        }
+
         /**
-         * Provides batch training based on set parameters
+         * @return The number of batches trained so far.
          */
-        @Override
-        public void run()
+        long getNumBatches()
         {
-            isTraining = true;
-            TrainingSet trainData = trainingDataRepository.getProcessedTrainingSet();
-            TrainingSet validationData = trainingDataRepository.getProcessedValidationSet();
+            return numBatches;
+        }
 
-            while(true)
-            {
-                trainingErrorOnCostFunction = 0.0;
-                trainingErrorPercent = 0.0;
+        /**
+         * Enters bulk mutation and takes up the processed training data,
+         * called once before the first batch.
+         */
+        void begin()
+        {
+            trainData = trainingDataRepository.getProcessedTrainingSet();
+            validationData = trainingDataRepository.getProcessedValidationSet();
+            neuralNetwork.beginBulkMutation();
+        }
 
+        /**
+         * Trains the next batches of the epoch, the epoch being completed and
+         * reported to the listeners once its last batch is trained.
+         *
+         * @param maxBatches The largest number of batches to be trained.
+         * @return true, if the epoch was completed.
+         */
+        boolean trainBatches(long maxBatches)
+        {
+            List<TrainingPattern> patterns = trainData.getTrainingPatterns();
+            if(position == 0)
+            {
+                patternsPerBatch = batchSize == FULL_BATCH
+                        ? trainData.getPatternSetSize() : batchSize;
                 trainData.shuffle();
-                for(TrainingPattern tp : trainData.getTrainingPatterns())
-                {
-                    Double actualOutput[] = neuralNetwork
-                            .getOutputOnPreprocessedData(tp.getInputData());                    
-                    learningAlgo.trainNet(neuralNetwork, actualOutput, tp.getOutputData());
-                    trainingErrorOnCostFunction += learningAlgo.getCostFunction()
-                            .getErrorValue(tp.getOutputData(), actualOutput);
-                    trainingErrorPercent = getErrorPercent(actualOutput, tp.getOutputData());
-                }
-                trainingErrorOnCostFunction /= trainData.getPatternSetSize();
-                trainingErrorOnCostFunction /= 2;
+                error.clear();
+            }
 
-                validationErrorOnCostFunction = 0.0;
-                validationErrorPercent = 0.0;
-                if(validationData != null)
+            //slices end on batch boundaries, so training an epoch in slices
+            //adapts the weights exactly as training it at once...
+            long remaining = (patterns.size() - position + patternsPerBatch - 1)
+                    / patternsPerBatch;
+            int to = maxBatches >= remaining ? patterns.size()
+                    : position + (int) maxBatches * patternsPerBatch;
+            mode.trainEpoch(neuralNetwork, learningAlgo,
+                    position == 0 && to == patterns.size()
+                    ? patterns : patterns.subList(position, to),
+                    patternsPerBatch, error);
+            numBatches += Math.min(maxBatches, remaining);
+            position = to;
+            if(position < patterns.size())
+                return false;
+
+            position = 0;
+            completeEpoch();
+            return true;
+        }
+
+        private void completeEpoch()
+        {
+            trainingErrorOnCostFunction = error.getCostError();
+            trainingErrorPercent = error.getErrorPercent();
+            trainingErrorOnCostFunction /= trainData.getPatternSetSize();
+            trainingErrorOnCostFunction /= 2;
+
+            validationErrorOnCostFunction = 0.0;
+            validationErrorPercent = 0.0;
+            if(validationData != null)
+            {
+                if(validationData.getPatternSetSize() != 0)
                 {
-                    if(validationData.getPatternSetSize() != 0)
+                    validationData.shuffle();
+                    for(TrainingPattern tp : validationData.getTrainingPatterns())
                     {
-                        validationData.shuffle();
-                        for(TrainingPattern tp : validationData.getTrainingPatterns())
-                        {
-                            Double[] actualOutput = neuralNetwork
-                                    .getOutputOnPreprocessedData(tp.getInputData());
-                            validationErrorOnCostFunction += learningAlgo.getCostFunction()
-                                    .getErrorValue(tp.getOutputData(), actualOutput);
-                            validationErrorPercent = getErrorPercent(actualOutput, tp.getOutputData());
-                        }
-                        validationErrorOnCostFunction /= validationData.getPatternSetSize();
-                        validationErrorOnCostFunction /= 2;
-                    }
-                    else {
-                        validationErrorOnCostFunction = trainingErrorOnCostFunction;
-                        validationErrorPercent = trainingErrorPercent;
+                        Double[] actualOutput = neuralNetwork
+                                .getOutputOnPreprocessedData(tp.getInputData());
+                        validationErrorOnCostFunction += learningAlgo.getCostFunction()
+                                .getErrorValue(tp.getOutputData(), actualOutput);
+                        validationErrorPercent = EpochError.getErrorPercent(
+                                actualOutput, tp.getOutputData());
                     }
+                    validationErrorOnCostFunction /= validationData.getPatternSetSize();
+                    validationErrorOnCostFunction /= 2;
                 }
                 else {
                     validationErrorOnCostFunction = trainingErrorOnCostFunction;
                     validationErrorPercent = trainingErrorPercent;
                 }
+            }
+            else {
+                validationErrorOnCostFunction = trainingErrorOnCostFunction;
+                validationErrorPercent = trainingErrorPercent;
+            }
 
-                cycleCount ++;
-                if(arrListeners.size() > 0)
-                {
-                    for(TrainListenerAdapter listener : arrListeners)
-                    {   
-                        listener.trainCyclePerformed(cycleCount,
-                                trainingErrorOnCostFunction,
-                                validationErrorOnCostFunction,
-                                trainingErrorPercent, validationErrorPercent);
-                    }
+            cycleCount ++;
+            neuralNetwork.fireWeightsChanged();
+            if(arrListeners.size() > 0)
+            {
+                for(TrainListenerAdapter listener : arrListeners)
+                {   
+                    listener.trainCyclePerformed(cycleCount,
+                            trainingErrorOnCostFunction,
+                            validationErrorOnCostFunction,
+                            trainingErrorPercent, validationErrorPercent);
                 }
+            }
+        }
+
+        /**
+         * @return true, if the last completed epoch ends the training.
+         */
+        boolean isConverged()
+        {
+            if(maxCycles != -1)
+            if(cycleCount == maxCycles)
+                return true;
+
+            //Loop termiation condition on success...
+            //while ensuring minCycles...
+            if(stopErrorType == COST_ERROR)
+                return trainingErrorOnCostFunction <= stopError && cycleCount >= minCycles;
+            else
+                return trainingErrorPercent <= stopError && cycleCount >= minCycles;
+        }
+
+        /**
+         * Notifies the listeners that the training is over.
+         */
+        void complete()
+        {
+            for(TrainListenerAdapter listener : arrListeners)
+                listener.trainingCompleted(trainingErrorOnCostFunction);
+        }
+
+        /**
+         * Releases the training mode and leaves bulk mutation, called once
+         * the run is over, even if it failed.
+         */
+        void end()
+        {
+            try
+            {
+                mode.release();
+            }
+            finally
+            {
+                neuralNetwork.endBulkMutation();
+            }
+        }
+    }
+
+    /**
+     * The training thread for this teacher. This class handles thread's 
+     * start, stop, pause and resumes...
+     */
+    private class TrainingThread extends Thread
+    {
+        private TrainingRun trainingRun;
+
+        //used to control thread...
+        private volatile boolean isStopped = false;
+        private volatile boolean isPaused = false;
+        private volatile boolean isTraining = false;
+        private volatile boolean isPauseCompleted = false;
+                
+        /**
+         * Provides batch training based on set parameters
+         */
+        @Override
+        public void run()
+        {
+            //listeners get a single weights event per epoch...
+            trainingRun.begin();
+            try
+            {
+                train();
+            }
+            finally
+            {
+                trainingRun.end();
+            }
+        }
+
+        private void train()
+        {
+            isTraining = true;
+            while(true)
+            {
+                trainingRun.trainBatches(Long.MAX_VALUE);
 
                 if(isStopped)
                 {
@@ -470,58 +793,16 @@ public class Teacher extends AbstractSerializableBean implements Serializable
                     catch(Exception e){}
                 }
 
-                if(maxCycles != -1)
-                if(cycleCount == maxCycles)
+                if(trainingRun.isConverged())
                     break;
-
-                //Loop termiation condition on success...
-                //while ensuring minCycles...
-                if(stopErrorType == COST_ERROR) {
-                    if(trainingErrorOnCostFunction <= stopError && cycleCount >= minCycles)
-                        break;
-                }
-                else {
-                    if(trainingErrorPercent <= stopError && cycleCount >= minCycles)
-                        break;
-                }
             }
 
-            for(TrainListenerAdapter listener : arrListeners)
-                listener.trainingCompleted(trainingErrorOnCostFunction);
+            trainingRun.complete();
 
             isStopped = true;
             isTraining = false;
         }
 
-        //reduce obj creation...
-        double percent;
-
-        /**
-         * Calculates the percentage error between guessed and actual ouput.
-         * @param actual The output guessed by the nwural network.
-         * @param desired The required output
-         * @return Average percentage error.
-         */
-        private Double getErrorPercent(Double actual[], Double desired[])
-        {
-            percent = 0.0;
-            for(int i=0; i<actual.length; i++)
-            {
-                if(desired[i] == actual[i])
-                    percent += 0;
-                else if(desired[i] == 0 && actual[i] != 0)
-                    percent += actual[i] * 100;
-                else if(actual[i] == 0 && desired[i] != 0)
-                    percent += desired[i] * 100;
-                else if(desired[i] > actual[i])
-                    percent += Math.abs( ((desired[i] - actual[i]) / actual[i]) * 100 );
-                else
-                    percent += Math.abs( ((desired[i] - actual[i]) / desired[i]) * 100 );
-            }            
-            percent /= actual.length;
-            return percent;
-        }
-        
         public synchronized void stopTraining()
         {
             isStopped = true;
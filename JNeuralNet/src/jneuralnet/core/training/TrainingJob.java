@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.training;
+
+/**
+ * The training of a {@link Teacher} submitted to a {@link TrainingScheduler}.
+ * A job is queued till a thread of the scheduler runs a slice of its
+ * batches, after which it is queued again, till the training converges, is
+ * stopped or fails. Its state and the time it has run can be inspected at
+ * any time, and its priority and CPU share changed.
+ *
+ * <p>The teacher of the job reports it as training while it is queued or
+ * running, and the teacher's pause, resume and stop methods act on the job.
+ *
+ * @author Ragha
+ * @see Teacher#getTrainingJob()
+ * @version 1.0
+ */
+public final class TrainingJob
+{
+    /**
+     * The states of a training job.
+     */
+    public enum State
+    {
+        /**
+         * Waiting for a thread of the scheduler.
+         */
+        QUEUED,
+
+        /**
+         * Training a slice of batches on a thread of the scheduler.
+         */
+        RUNNING,
+
+        /**
+         * Paused, not scheduled till it is resumed.
+         */
+        PAUSED,
+
+        /**
+         * The training reached the stop error or the maximum epochs.
+         */
+        COMPLETED,
+
+        /**
+         * The training was stopped.
+         */
+        STOPPED,
+
+        /**
+         * The training threw an exception, see {@link TrainingJob#getFailure()}.
+         */
+        FAILED
+    }
+
+    private final TrainingScheduler scheduler;
+    final Teacher.TrainingRun run;
+
+    //guarded by the scheduler...
+    State state = State.QUEUED;
+    int priority;
+    double cpuShare = 1.0;
+    boolean isPauseRequested;
+    boolean isStopRequested;
+    Thread runningThread;
+    Throwable failure;
+    long numEpochs;
+    long numBatches;
+    long cpuTime;
+
+    //the time run, by which the jobs of a priority are picked in turn...
+    long virtualTime;
+
+    //the time run in the current quota window...
+    long windowStart;
+    long windowTime;
+
+    TrainingJob(TrainingScheduler scheduler, Teacher.TrainingRun run, int priority)
+    {
+        this.scheduler = scheduler;
+        this.run = run;
+        this.priority = priority;
+    }
+
+    public Teacher getTeacher()
+    {
+        return run.getTeacher();
+    }
+
+    public TrainingScheduler getScheduler()
+    {
+        return scheduler;
+    }
+
+    public State getState()
+    {
+        synchronized(scheduler)
+        {
+            return state;
+        }
+    }
+
+    /**
+     * @return true, if the job has completed, was stopped or has failed.
+     */
+    public boolean isDone()
+    {
+        synchronized(scheduler)
+        {
+            return state == State.COMPLETED || state == State.STOPPED
+                    || state == State.FAILED;
+        }
+    }
+
+    /**
+     * @return true, if the job is queued or running.
+     */
+    boolean isTraining()
+    {
+        synchronized(scheduler)
+        {
+            return state == State.QUEUED || state == State.RUNNING;
+        }
+    }
+
+    public int getPriority()
+    {
+        synchronized(scheduler)
+        {
+            return priority;
+        }
+    }
+
+    /**
+     * Sets the priority of the job, the queued jobs of the highest priority
+     * being run first.
+     *
+     * @param priority The priority between {@link Thread#MIN_PRIORITY} and
+     * {@link Thread#MAX_PRIORITY}.
+     * @throws IllegalArgumentException If the priority is out of range.
+     */
+    public void setPriority(int priority) throws IllegalArgumentException
+    {
+        if(priority < Thread.MIN_PRIORITY || priority > Thread.MAX_PRIORITY)
+            throw new IllegalArgumentException("priority has to be in [1, 10]");
+        synchronized(scheduler)
+        {
+            this.priority = priority;
+            scheduler.notifyAll();
+        }
+    }
+
+    public double getCpuShare()
+    {
+        synchronized(scheduler)
+        {
+            return cpuShare;
+        }
+    }
+
+    /**
+     * Sets the quota of the job, i.e, the largest fraction of the time of
+     * a thread the job runs for, averaged over
+     * {@link TrainingScheduler#QUOTA_WINDOW} milliseconds. A job over its
+     * quota is not run till the next window even if threads are idle.
+     *
+     * @param cpuShare The fraction in (0, 1], 1 for no quota.
+     * @throws IllegalArgumentException If the fraction is out of range.
+     */
+    public void setCpuShare(double cpuShare) throws IllegalArgumentException
+    {
+        if(!(cpuShare > 0.0 && cpuShare <= 1.0))
+            throw new IllegalArgumentException("cpuShare has to be in (0, 1]");
+        synchronized(scheduler)
+        {
+            this.cpuShare = cpuShare;
+            scheduler.notifyAll();
+        }
+    }
+
+    /**
+     * @return The number of epochs trained.
+     */
+    public long getNumEpochs()
+    {
+        synchronized(scheduler)
+        {
+            return numEpochs;
+        }
+    }
+
+    /**
+     * @return The number of batches trained.
+     */
+    public long getNumBatches()
+    {
+        synchronized(scheduler)
+        {
+            return numBatches;
+        }
+    }
+
+    /**
+     * @return The nanoseconds the job has run for on the scheduler's threads.
+     */
+    public long getCpuTime()
+    {
+        synchronized(scheduler)
+        {
+            return cpuTime;
+        }
+    }
+
+    /**
+     * @return The exception the training failed with, null if it has not
+     * failed.
+     */
+    public Throwable getFailure()
+    {
+        synchronized(scheduler)
+        {
+            return failure;
+        }
+    }
+
+    /**
+     * Pauses the job, waiting for the slice it is running to end. Called
+     * from a listener of the job, it returns at once and the job pauses
+     * after the slice.
+     */
+    public void pause()
+    {
+        scheduler.pause(this);
+    }
+
+    /**
+     * Queues a paused job again.
+     */
+    public void resume()
+    {
+        scheduler.resume(this);
+    }
+
+    /**
+     * Stops the job once the slice it is running ends, or at once if it is
+     * not running. The listeners are told the training has completed, as
+     * when a training thread is stopped.
+     */
+    public void stop()
+    {
+        scheduler.stop(this);
+    }
+
+    /**
+     * Waits for the job to complete, stop or fail.
+     */
+    public void awaitDone() throws InterruptedException
+    {
+        synchronized(scheduler)
+        {
+            while(!isDone())
+                scheduler.wait();
+        }
+    }
+
+    /**
+     * @return The number of batches that run for about the time slice,
+     * estimated from the time taken by the batches so far.
+     */
+    long getSliceBatches(long timeSlice)
+    {
+        if(numBatches == 0)
+            return 1;
+        long nanosPerBatch = Math.max(1, cpuTime / numBatches);
+        return Math.max(1, timeSlice / nanosPerBatch);
+    }
+
+    /**
+     * Starts the quota windows that have begun since the last one, the
+     * time run beyond the quota being carried over.
+     */
+    void rollWindow(long now)
+    {
+        long windows = (now - windowStart) / TrainingScheduler.QUOTA_WINDOW_NANOS;
+        if(windows > 0)
+        {
+            windowStart += windows * TrainingScheduler.QUOTA_WINDOW_NANOS;
+            windowTime = Math.max(0, windowTime - windows * getQuota());
+        }
+    }
+
+    /**
+     * @return true, if the job has used up its quota of the window.
+     */
+    boolean isOverQuota()
+    {
+        return cpuShare < 1.0 && windowTime >= getQuota();
+    }
+
+    /**
+     * @return The nanoseconds the job may run for in a quota window.
+     */
+    private long getQuota()
+    {
+        return (long) (cpuShare * TrainingScheduler.QUOTA_WINDOW_NANOS);
+    }
+
+    /**
+     * Records a slice run by the job.
+     */
+    void sliceRun(long nanos, long batches)
+    {
+        cpuTime += nanos;
+        virtualTime += nanos;
+        windowTime += nanos;
+        numBatches += batches;
+        numEpochs = run.getCycleCount();
+    }
+
+    @Override
+    public String toString()
+    {
+        synchronized(scheduler)
+        {
+            return "TrainingJob[" + state + ", priority " + priority + ", share "
+                    + cpuShare + ", " + numEpochs + " epochs, " + numBatches
+                    + " batches, " + cpuTime / 1000000 + " ms]";
+        }
+    }
+}
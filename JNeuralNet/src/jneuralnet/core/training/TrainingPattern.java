@@ -84,6 +84,26 @@ public class TrainingPattern implements Serializable
     {
         return outputData;
     }    
+
+    /**
+     * Copies the input vector into the given array without boxing.
+     * @param dst The array to hold the input vector.
+     */
+    public void getInputData(double dst[])
+    {
+        for(int i=0; i<inputData.length; i++)
+            dst[i] = inputData[i];
+    }
+
+    /**
+     * Copies the output vector into the given array without boxing.
+     * @param dst The array to hold the output vector.
+     */
+    public void getOutputData(double dst[])
+    {
+        for(int i=0; i<outputData.length; i++)
+            dst[i] = outputData[i];
+    }
     
     @Override
     public String toString()
@@ -120,8 +140,8 @@ public class TrainingPattern implements Serializable
      */
     boolean isValidate(NeuralNetwork nn)
     {
-        if(inputData.length == nn.getNumInputs() &&
-                outputData.length == nn.getNumOutputs())        
+        if(getInputData().length == nn.getNumInputs() &&
+                getOutputData().length == nn.getNumOutputs())        
             return true;        
         else
             return false;        
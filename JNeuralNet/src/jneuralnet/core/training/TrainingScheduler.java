@@ -0,0 +1,423 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.training;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the training of many teachers on a fixed pool of threads, instead of
+ * a thread per teacher. A teacher whose
+ * {@link Teacher#setTrainingScheduler(jneuralnet.core.training.TrainingScheduler) training scheduler}
+ * is set submits its training as a {@link TrainingJob}, which the threads of
+ * the pool run a slice of batches at a time:
+ *
+ * <ul>
+ * <li>The queued jobs of the highest priority are run first; jobs of a lower
+ * priority only run when no job of a higher one is waiting.</li>
+ * <li>The jobs of a priority take turns, the one that has run for the least
+ * time being run next, and a slice takes about the
+ * {@link #setTimeSlice(long) time slice}, the number of batches being
+ * estimated from the time the job's batches took so far.</li>
+ * <li>A job runs for atmost its {@link TrainingJob#setCpuShare(double) CPU share}
+ * of a thread's time in every quota window.</li>
+ * <li>Jobs beyond the number of threads wait in the queue.</li>
+ * </ul>
+ *
+ * <p>Slices end on batch boundaries, so a job adapts the weights exactly as
+ * the teacher's own thread would. A job is paused at the end of a slice,
+ * rather than of an epoch. A job never runs on two threads at once, but its
+ * training mode may use threads of its own, e.g, {@link DataParallelTraining};
+ * {@link SerialTraining} keeps a job on the thread of the scheduler.
+ *
+ * <p>The threads of the pool are daemons and run till
+ * {@link #shutdown()} is called.
+ *
+ * @author Ragha
+ * @see TrainingJob
+ * @version 1.0
+ */
+public class TrainingScheduler
+{
+    /**
+     * The default time slice, in milliseconds.
+     */
+    public static final long DEFAULT_TIME_SLICE = 20;
+
+    /**
+     * The window over which the CPU shares are enforced, in milliseconds.
+     */
+    public static final long QUOTA_WINDOW = 100;
+
+    static final long QUOTA_WINDOW_NANOS = QUOTA_WINDOW * 1000000L;
+
+    private final Thread threads[];
+    private final List<TrainingJob> jobs = new ArrayList<TrainingJob>();
+    private long timeSlice = DEFAULT_TIME_SLICE * 1000000L;
+    private boolean isShutdown;
+
+    /**
+     * Creates a scheduler with a thread per available processor.
+     */
+    public TrainingScheduler()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param numThreads The number of threads of the pool.
+     * @throws IllegalArgumentException If the number is not positive.
+     */
+    public TrainingScheduler(int numThreads) throws IllegalArgumentException
+    {
+        if(numThreads <= 0)
+            throw new IllegalArgumentException("numThreads has to be > 0");
+        threads = new Thread[numThreads];
+        for(int t=0; t<numThreads; t++)
+        {
+            threads[t] = new Thread("jneuralnet-scheduler-" + t) {
+                @Override
+                public void run() {
+                    work();
+                }
+            };
+            threads[t].setDaemon(true);
+            threads[t].start();
+        }
+    }
+
+    public int getNumThreads()
+    {
+        return threads.length;
+    }
+
+    /**
+     * @return The time a slice of a job takes, in milliseconds.
+     */
+    public synchronized long getTimeSlice()
+    {
+        return timeSlice / 1000000L;
+    }
+
+    /**
+     * @param millis The time a slice of a job takes, in milliseconds.
+     * Shorter slices share the threads more evenly, longer ones switch
+     * between the jobs less often.
+     * @throws IllegalArgumentException If the time is not positive.
+     */
+    public synchronized void setTimeSlice(long millis) throws IllegalArgumentException
+    {
+        if(millis <= 0)
+            throw new IllegalArgumentException("The time slice has to be > 0");
+        timeSlice = millis * 1000000L;
+    }
+
+    /**
+     * @return The jobs not done yet, in the order they were submitted.
+     */
+    public synchronized List<TrainingJob> getJobs()
+    {
+        return new ArrayList<TrainingJob>(jobs);
+    }
+
+    /**
+     * @return The number of jobs in the given state, those done not being
+     * kept by the scheduler.
+     */
+    public synchronized int getNumJobs(TrainingJob.State state)
+    {
+        int count = 0;
+        for(TrainingJob job : jobs)
+        {
+            if(job.state == state)
+                count++;
+        }
+        return count;
+    }
+
+    public synchronized boolean isShutdown()
+    {
+        return isShutdown;
+    }
+
+    /**
+     * Stops every job and lets the threads exit once the running slices
+     * have ended. No job can be submitted afterwards.
+     */
+    public void shutdown()
+    {
+        List<TrainingJob> pending;
+        synchronized(this)
+        {
+            if(isShutdown)
+                return;
+            isShutdown = true;
+            pending = new ArrayList<TrainingJob>(jobs);
+            notifyAll();
+        }
+        for(TrainingJob job : pending)
+            stop(job);
+    }
+
+    /**
+     * Waits for the threads to exit after {@link #shutdown()}.
+     */
+    public void awaitTermination() throws InterruptedException
+    {
+        for(Thread thread : threads)
+            thread.join();
+    }
+
+    /**
+     * Queues a training run.
+     *
+     * @throws IllegalStateException If the scheduler is shut down.
+     */
+    synchronized TrainingJob submit(Teacher.TrainingRun run, int priority)
+            throws IllegalStateException
+    {
+        if(isShutdown)
+            throw new IllegalStateException("The training scheduler is shut down");
+        run.begin();
+        TrainingJob job = new TrainingJob(this, run, priority);
+        job.virtualTime = getMinVirtualTime();
+        job.windowStart = System.nanoTime();
+        jobs.add(job);
+        notifyAll();
+        return job;
+    }
+
+    synchronized void pause(TrainingJob job)
+    {
+        if(job.state == TrainingJob.State.QUEUED)
+        {
+            job.state = TrainingJob.State.PAUSED;
+            return;
+        }
+        if(job.state != TrainingJob.State.RUNNING)
+            return;
+
+        job.isPauseRequested = true;
+        if(job.runningThread == Thread.currentThread())
+            return;
+        try
+        {
+            while(job.state == TrainingJob.State.RUNNING && job.isPauseRequested)
+                wait();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    synchronized void resume(TrainingJob job)
+    {
+        job.isPauseRequested = false;
+        if(job.state == TrainingJob.State.PAUSED)
+        {
+            //a resumed job takes its turn, not the turns it missed...
+            job.virtualTime = Math.max(job.virtualTime, getMinVirtualTime());
+            job.state = TrainingJob.State.QUEUED;
+            notifyAll();
+        }
+    }
+
+    void stop(TrainingJob job)
+    {
+        synchronized(this)
+        {
+            if(job.isStopRequested || job.isDone())
+                return;
+            job.isStopRequested = true;
+            //a running job is finished by its thread after the slice...
+            if(job.state == TrainingJob.State.RUNNING)
+                return;
+            job.state = TrainingJob.State.RUNNING;
+            job.runningThread = Thread.currentThread();
+        }
+        finish(job, TrainingJob.State.STOPPED, null);
+    }
+
+    /**
+     * Runs slices of the queued jobs till the scheduler is shut down.
+     */
+    private void work()
+    {
+        while(true)
+        {
+            TrainingJob job;
+            long maxBatches;
+            synchronized(this)
+            {
+                try
+                {
+                    while((job = pick()) == null)
+                    {
+                        if(isShutdown && jobs.isEmpty())
+                            return;
+                        long throttled = getThrottledWait();
+                        if(throttled > 0)
+                            wait(throttled / 1000000L + 1);
+                        else
+                            wait();
+                    }
+                }
+                catch(InterruptedException e)
+                {
+                    return;
+                }
+                job.state = TrainingJob.State.RUNNING;
+                job.runningThread = Thread.currentThread();
+                maxBatches = job.getSliceBatches(timeSlice);
+            }
+            runSlice(job, maxBatches);
+        }
+    }
+
+    private void runSlice(TrainingJob job, long maxBatches)
+    {
+        long batches = job.run.getNumBatches();
+        long start = System.nanoTime();
+        boolean isConverged = false;
+        Throwable failure = null;
+        try
+        {
+            if(job.run.trainBatches(maxBatches))
+                isConverged = job.run.isConverged();
+        }
+        catch(Throwable t)
+        {
+            failure = t;
+        }
+
+        TrainingJob.State next;
+        synchronized(this)
+        {
+            job.sliceRun(System.nanoTime() - start, job.run.getNumBatches() - batches);
+            if(failure != null)
+                next = TrainingJob.State.FAILED;
+            else if(isConverged)
+                next = TrainingJob.State.COMPLETED;
+            else if(job.isStopRequested)
+                next = TrainingJob.State.STOPPED;
+            else if(job.isPauseRequested)
+                next = TrainingJob.State.PAUSED;
+            else
+                next = TrainingJob.State.QUEUED;
+
+            if(next == TrainingJob.State.QUEUED || next == TrainingJob.State.PAUSED)
+            {
+                job.runningThread = null;
+                job.isPauseRequested = false;
+                job.state = next;
+                notifyAll();
+                return;
+            }
+        }
+        finish(job, next, failure);
+    }
+
+    /**
+     * Notifies the listeners of a job that is over and ends its run. The job
+     * stays running on the calling thread till then, so it is not picked
+     * again and its listeners may call it.
+     */
+    private void finish(TrainingJob job, TrainingJob.State state, Throwable failure)
+    {
+        try
+        {
+            if(failure == null)
+                job.run.complete();
+        }
+        catch(Throwable t)
+        {
+            failure = t;
+        }
+        try
+        {
+            job.run.end();
+        }
+        catch(Throwable t)
+        {
+            if(failure == null)
+                failure = t;
+        }
+
+        synchronized(this)
+        {
+            job.state = failure == null ? state : TrainingJob.State.FAILED;
+            job.failure = failure;
+            job.runningThread = null;
+            jobs.remove(job);
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return The queued job within its quota of the highest priority that
+     * has run for the least time, null if there is none.
+     */
+    private TrainingJob pick()
+    {
+        long now = System.nanoTime();
+        TrainingJob best = null;
+        for(TrainingJob job : jobs)
+        {
+            if(job.state != TrainingJob.State.QUEUED)
+                continue;
+            job.rollWindow(now);
+            if(job.isOverQuota())
+                continue;
+            if(best == null || job.priority > best.priority ||
+                    (job.priority == best.priority && job.virtualTime < best.virtualTime))
+                best = job;
+        }
+        return best;
+    }
+
+    /**
+     * @return The nanoseconds till the quota window of a queued job over
+     * its quota ends, 0 if no job is over its quota.
+     */
+    private long getThrottledWait()
+    {
+        long now = System.nanoTime();
+        long wait = 0;
+        for(TrainingJob job : jobs)
+        {
+            if(job.state != TrainingJob.State.QUEUED || !job.isOverQuota())
+                continue;
+            long left = Math.max(1, job.windowStart + QUOTA_WINDOW_NANOS - now);
+            wait = wait == 0 ? left : Math.min(wait, left);
+        }
+        return wait;
+    }
+
+    /**
+     * @return The least time run by the queued and running jobs, so that a
+     * new job takes its turn after them rather than all the turns.
+     */
+    private long getMinVirtualTime()
+    {
+        long min = Long.MAX_VALUE;
+        for(TrainingJob job : jobs)
+        {
+            if(job.state == TrainingJob.State.QUEUED || job.state == TrainingJob.State.RUNNING)
+                min = Math.min(min, job.virtualTime);
+        }
+        return min == Long.MAX_VALUE ? 0 : min;
+    }
+}
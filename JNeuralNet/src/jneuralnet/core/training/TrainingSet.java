@@ -19,6 +19,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import jneuralnet.core.NeuralNetwork;
+import jneuralnet.core.Precision;
 import jneuralnet.core.datastore.AbstractDataStore;
 import jneuralnet.core.preprocessor.AbstractInputPreprocessor;
 import jneuralnet.core.preprocessor.AbstractOutputPreprocessor;
@@ -123,6 +124,33 @@ public class TrainingSet implements Serializable
         Collections.shuffle(patternSet);
     }
 
+    /**
+     * Creates a copy of this set storing the patterns in the given
+     * precision, i.e, as {@link FloatTrainingPattern} objects if the
+     * precision uses float storage and as plain
+     * <code>TrainingPattern</code> objects otherwise. Patterns already
+     * in the required form are shared with the copy.
+     *
+     * @param precision The precision to be used.
+     * @return The converted training set.
+     * @see Precision
+     */
+    public TrainingSet toPrecision(Precision precision)
+    {
+        TrainingSet ts = new TrainingSet();
+        for(TrainingPattern tp : patternSet)
+        {
+            boolean isFloat = tp instanceof FloatTrainingPattern;
+            if(precision.isFloatStorage() == isFloat)
+                ts.add(tp);
+            else if(precision.isFloatStorage())
+                ts.add(new FloatTrainingPattern(tp));
+            else
+                ts.add(new TrainingPattern(tp.getInputData(), tp.getOutputData()));
+        }
+        return ts;
+    }
+
     /**
      * Processes the given set with the processor
      * @param ip
@@ -16,7 +16,12 @@ package jneuralnet.util;
 
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.lang.ref.SoftReference;
 import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * <p>
@@ -35,11 +40,28 @@ import java.lang.reflect.Field;
  * {@code AbstractSerializableBean} bean implementation provides details on
  * how to correctly serialize an {@code AbstractBean} subclass.
  *
+ * <p>
+ * The fields used by {@link #set(String, Object) set(...)} and
+ * {@link #get(String) get(...)} are looked up and made accessible once per
+ * class and field name, and cached for the later calls. The cache holds
+ * neither the classes nor their fields strongly, so it does not keep the
+ * class loader of a bean alive for good, the fields being dropped once
+ * memory runs low.
+ *
  * @see AbstractSerializableBean
  * @author Ragha
  */
 public class AbstractBean
 {
+    /**
+     * The accessible fields resolved so far, by class and field name. A
+     * field refers to its class, so it is only softly referenced, and looked
+     * up again once collected, which only happens when memory runs low.
+     */
+    private static final Map<Class<?>, Map<String, SoftReference<Field>>> fieldCache =
+            Collections.synchronizedMap(
+            new WeakHashMap<Class<?>, Map<String, SoftReference<Field>>>());
+
     protected PropertyChangeSupport pcs = new PropertyChangeSupport(this);
 
     protected AbstractBean()
@@ -154,16 +176,17 @@ public class AbstractBean
      */
     protected void set(String fieldName, Object value)
     {
-        Class cls = this.getClass();
         try
         {
-            Field f = cls.getDeclaredField(fieldName);
-            if(!f.isAccessible())
-                f.setAccessible(true);
-
-            Object old = f.get(this);
-            f.set(this, value);
-            pcs.firePropertyChange(fieldName, old, value);
+            Field f = getField(fieldName);
+            if(pcs.hasListeners(fieldName))
+            {
+                Object old = f.get(this);
+                f.set(this, value);
+                pcs.firePropertyChange(fieldName, old, value);
+            }
+            else
+                f.set(this, value);
         }
         catch(Exception e)
         {
@@ -180,13 +203,9 @@ public class AbstractBean
      */
     protected Object get(String fieldName)
     {
-        Class cls = this.getClass();
-
         try
         {
-            Field f = cls.getDeclaredField(fieldName);
-            if(!f.isAccessible())
-                f.setAccessible(true);
+            Field f = getField(fieldName);
 
             //Class type of the field...
             Class fieldClass = f.getType();            
@@ -205,4 +224,31 @@ public class AbstractBean
             throw new IllegalArgumentException("Invalid field name : '"+fieldName+"'");
         }
     }
+
+    /**
+     * @return The accessible field 'fieldName' declared by the class of this
+     * bean, looked up on the first call only.
+     * @throws NoSuchFieldException If the class declares no such field.
+     */
+    private Field getField(String fieldName) throws NoSuchFieldException
+    {
+        Class<?> cls = this.getClass();
+        Map<String, SoftReference<Field>> fields = fieldCache.get(cls);
+        if(fields == null)
+        {
+            fields = new ConcurrentHashMap<String, SoftReference<Field>>();
+            fieldCache.put(cls, fields);
+        }
+
+        SoftReference<Field> ref = fields.get(fieldName);
+        Field f = ref == null ? null : ref.get();
+        if(f == null)
+        {
+            f = cls.getDeclaredField(fieldName);
+            if(!f.isAccessible())
+                f.setAccessible(true);
+            fields.put(fieldName, new SoftReference<Field>(f));
+        }
+        return f;
+    }
 }
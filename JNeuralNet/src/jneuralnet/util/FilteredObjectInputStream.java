@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An <code>ObjectInputStream</code> reading only the classes of an allow
+ * list, for data that may come from an untrusted source such as a file or
+ * a socket. Every class in the stream must be
+ * <ul>
+ *  <li>one of the given types, a subclass of one or a super type of one,
+ *  the latter only being read as part of an allowed object,</li>
+ *  <li>a boxed primitive, a <code>String</code>, an <code>Enum</code>, an
+ *  <code>ArrayList</code> or a <code>HashMap</code>, whose contents are
+ *  filtered in turn,</li>
+ *  <li>or an array of those or of a primitive type.</li>
+ * </ul>
+ * Classes are loaded without being initialized before they are checked,
+ * and dynamic proxies are rejected. A rejected class fails the read with
+ * an <code>InvalidClassException</code>.
+ *
+ * <p>User defined plugins, e.g, activation functions, are read if they
+ * extend the allowed types, but any other class they hold must be listed too.
+ *
+ * @author Ragha
+ * @version 1.0
+ */
+public class FilteredObjectInputStream extends ObjectInputStream
+{
+    private static final Set<Class<?>> VALUE_TYPES = new HashSet<Class<?>>(
+            Arrays.<Class<?>>asList(Boolean.class, Byte.class, Character.class,
+            Short.class, Integer.class, Long.class, Float.class, Double.class,
+            Number.class, String.class, Enum.class,
+            java.util.ArrayList.class, java.util.HashMap.class));
+
+    private final Class<?> allowedTypes[];
+
+    /**
+     * @param in The stream to read from.
+     * @param allowedTypes The types whose objects may be read.
+     * @throws IOException If the stream header cannot be read.
+     */
+    public FilteredObjectInputStream(InputStream in, Class<?>... allowedTypes)
+            throws IOException
+    {
+        super(in);
+        this.allowedTypes = allowedTypes.clone();
+    }
+
+    /**
+     * @return true if objects of the given class may be read.
+     */
+    public boolean isAllowed(Class<?> cls)
+    {
+        while(cls.isArray())
+            cls = cls.getComponentType();
+        if(cls.isPrimitive() || VALUE_TYPES.contains(cls))
+            return true;
+        for(Class<?> type : allowedTypes)
+        {
+            if(type.isAssignableFrom(cls) || cls.isAssignableFrom(type))
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException,
+            ClassNotFoundException
+    {
+        Class<?> cls = super.resolveClass(desc);
+        if(!isAllowed(cls))
+            throw new InvalidClassException(desc.getName(), "Class is not allowed");
+        return cls;
+    }
+
+    @Override
+    protected Class<?> resolveProxyClass(String[] interfaces) throws IOException,
+            ClassNotFoundException
+    {
+        throw new InvalidClassException(Arrays.toString(interfaces),
+                "Proxy classes are not allowed");
+    }
+}
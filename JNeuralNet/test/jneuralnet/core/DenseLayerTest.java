@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the training state kept by a dense layer.
+ *
+ * @author Ragha
+ */
+public class DenseLayerTest extends TestCase
+{
+    public void testSignLeavesPrevErrGradientAlone()
+    {
+        DenseLayer layer = new DenseLayer(2, 2);
+        assertTrue(layer.isLastErrGradientPositive(0));
+
+        layer.getOptimizerState().set(OptimizerState.Slot.PREV_ERR_GRADIENT, 0, 0.25);
+        layer.setLastErrGradientPositive(0, false);
+        assertFalse(layer.isLastErrGradientPositive(0));
+        assertEquals(0.25, layer.getOptimizerState().get(
+                OptimizerState.Slot.PREV_ERR_GRADIENT, 0), 0.0);
+
+        layer.setLastErrGradientPositive(0, true);
+        assertTrue(layer.isLastErrGradientPositive(0));
+        assertEquals(0.25, layer.getOptimizerState().get(
+                OptimizerState.Slot.PREV_ERR_GRADIENT, 0), 0.0);
+    }
+}
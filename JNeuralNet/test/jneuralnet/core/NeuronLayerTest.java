@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that editing the neurons of a connected layer keeps the weights
+ * of the layer it feeds in step.
+ *
+ * @author Ragha
+ */
+public class NeuronLayerTest extends TestCase
+{
+    private static final double WEIGHTS[] = { 0.25, -0.93, 0.5 };
+
+    private NeuralNetwork net;
+    private NeuronLayer hidden;
+    private DenseLayer output;
+
+    @Override
+    protected void setUp()
+    {
+        net = new NeuralNetwork(2, 1);
+        net.addLayer(new NeuronLayer(3));
+        hidden = net.getHiddenLayers().get(0);
+        output = net.getOutputLayer().getDenseLayer();
+        for(int i=0; i<3; i++)
+            output.setWeight(0, i, WEIGHTS[i]);
+    }
+
+    public void testRemoveMiddleNeuron()
+    {
+        hidden.removeNeuron(1);
+
+        assertEquals(2, hidden.getDenseLayer().getNumNeurons());
+        assertEquals(2, output.getNumInputs());
+        assertEquals(0.25, output.getWeight(0, 0), 0.0);
+        assertEquals(0.5, output.getWeight(0, 1), 0.0);
+
+        Double out[] = net.getOutput(new Double[] { 0.5, -0.5 });
+        assertEquals(1, out.length);
+
+        net.updateConnections();
+        assertEquals(0.25, output.getWeight(0, 0), 0.0);
+        assertEquals(0.5, output.getWeight(0, 1), 0.0);
+    }
+
+    public void testAddNeuron()
+    {
+        hidden.addNeuron(new Neuron());
+
+        assertEquals(4, output.getNumInputs());
+        for(int i=0; i<3; i++)
+            assertEquals(WEIGHTS[i], output.getWeight(0, i), 0.0);
+        assertEquals(1, net.getOutput(new Double[] { 0.5, -0.5 }).length);
+    }
+
+    public void testSetNumNeurons()
+    {
+        hidden.setNumNeurons(2);
+        assertEquals(2, output.getNumInputs());
+        assertEquals(0.25, output.getWeight(0, 0), 0.0);
+        assertEquals(-0.93, output.getWeight(0, 1), 0.0);
+
+        hidden.setNumNeurons(5);
+        assertEquals(5, output.getNumInputs());
+        assertEquals(0.25, output.getWeight(0, 0), 0.0);
+        assertEquals(1, net.getOutput(new Double[] { 0.5, -0.5 }).length);
+    }
+
+    public void testRemoveInputOfLastColumn()
+    {
+        DenseLayer layer = new DenseLayer(2, 1);
+        try
+        {
+            layer.removeInput(0);
+            fail("Expected IllegalArgumentException");
+        }
+        catch(IllegalArgumentException e)
+        {
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core;
+
+import java.io.File;
+import java.util.Arrays;
+import jneuralnet.core.training.TrainingPattern;
+import jneuralnet.core.training.XorFixture;
+import junit.framework.TestCase;
+
+/**
+ * Checks that an off heap layer sums as the dense layer it was copied from,
+ * and that a saved network loaded off the heap feeds forward as the network.
+ *
+ * @author Ragha
+ */
+public class OffHeapLayerTest extends TestCase
+{
+    public void testSumsMatchDenseLayer()
+    {
+        DenseLayer dense = new DenseLayer(5, 3, -1, 1);
+        OffHeapLayer offHeap = new OffHeapLayer(dense);
+        double inputs[] = { 0.3, -0.7, 0.2, 1.0, 0.5, -0.4 };
+        double expected[] = new double[10], actual[] = new double[10];
+
+        for(int call=0; call<3; call++)
+        {
+            dense.computeSums(inputs, expected);
+            offHeap.computeSums(inputs, actual);
+            assertTrue(Arrays.equals(expected, actual));
+
+            dense.computeSums(inputs, 2, expected);
+            offHeap.computeSums(inputs, 2, actual);
+            assertTrue(Arrays.equals(expected, actual));
+        }
+        offHeap.close();
+    }
+
+    public void testClosedLayerThrows()
+    {
+        OffHeapLayer offHeap = new OffHeapLayer(new DenseLayer(2, 2, -1, 1));
+        double sums[] = new double[2];
+        offHeap.computeSums(new double[] { 1, 1 }, sums);
+        offHeap.close();
+        offHeap.close();
+        try
+        {
+            offHeap.computeSums(new double[] { 1, 1 }, sums);
+            fail("A closed layer must not sum");
+        }
+        catch(IllegalStateException e)
+        {
+        }
+    }
+
+    public void testLoadOffHeapMatchesCompiled() throws Exception
+    {
+        NeuralNetwork net = XorFixture.network(3, 11);
+        XorFixture.teacher(net);
+        File file = File.createTempFile("offheap", ".net");
+        try
+        {
+            net.saveNet(file.getPath());
+            CompiledNetwork expected = net.compile();
+            CompiledNetwork loaded = NeuralNetwork.loadOffHeap(file.getPath());
+
+            CompiledNetwork offHeap = net.compile(true);
+            assertEquals(offHeap.getNumOffHeapBytes(), loaded.getNumOffHeapBytes());
+            assertTrue(loaded.getNumOffHeapBytes() > 0);
+            offHeap.close();
+            assertEquals(2, loaded.getNumLayers());
+            for(TrainingPattern tp : XorFixture.patterns())
+            {
+                double input[] = new double[2];
+                tp.getInputData(input);
+                assertTrue(Arrays.equals(expected.getOutput(input),
+                        loaded.getOutput(input)));
+            }
+            loaded.close();
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+}
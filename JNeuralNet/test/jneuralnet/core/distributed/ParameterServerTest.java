@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.distributed;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import jneuralnet.core.NeuralNetwork;
+import jneuralnet.core.training.TrainListenerAdapter;
+import jneuralnet.core.training.TrainingPattern;
+import jneuralnet.core.training.XorFixture;
+import junit.framework.TestCase;
+import org.apache.commons.lang.SerializationUtils;
+
+/**
+ * Runs the server and its workers in this JVM, the workers on threads of
+ * their own.
+ *
+ * @author Ragha
+ */
+public class ParameterServerTest extends TestCase
+{
+    private InetSocketAddress address;
+    private final List<Throwable> workerErrors = new ArrayList<Throwable>();
+
+    private ParameterServer createServer(NeuralNetwork net, int numWorkers,
+            int numEpochs) throws IOException
+    {
+        XorFixture.teacher(net);
+        ParameterServer server = new ParameterServer(net, numWorkers);
+        server.setNumEpochs(numEpochs);
+        server.setBatchSize(2);
+        address = new InetSocketAddress(InetAddress.getByName("127.0.0.1"),
+                server.bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0)));
+        return server;
+    }
+
+    private Thread startWorker(NeuralNetwork net, final int index, int numWorkers)
+    {
+        //the shards of the teacher's training set are in random order...
+        List<TrainingPattern> shard = new ArrayList<TrainingPattern>();
+        List<TrainingPattern> patterns = XorFixture.patterns();
+        for(int p=index; p<patterns.size(); p+=numWorkers)
+            shard.add(patterns.get(p));
+        final ParameterServerWorker worker = new ParameterServerWorker(
+                (NeuralNetwork) SerializationUtils.clone(net), index, shard);
+        Thread thread = new Thread("worker " + index) {
+            @Override
+            public void run() {
+                try {
+                    worker.run(address);
+                }
+                catch(Throwable e) {
+                    synchronized(workerErrors) {
+                        workerErrors.add(e);
+                    }
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    private double[] train(int numWorkers, int numEpochs) throws Exception
+    {
+        NeuralNetwork net = XorFixture.network(4, 1);
+        ParameterServer server = createServer(net, numWorkers, numEpochs);
+        Thread threads[] = new Thread[numWorkers];
+        for(int w=0; w<numWorkers; w++)
+            threads[w] = startWorker(net, w, numWorkers);
+        server.serve();
+        for(Thread t : threads)
+            t.join();
+        assertTrue(workerErrors.toString(), workerErrors.isEmpty());
+        return XorFixture.parameters(net);
+    }
+
+    public void testSingleWorkerIsDeterministic() throws Exception
+    {
+        assertTrue(Arrays.equals(train(1, 20), train(1, 20)));
+    }
+
+    public void testXorConverges() throws Exception
+    {
+        NeuralNetwork net = XorFixture.network(4, 1);
+        ParameterServer server = createServer(net, 2, 3000);
+        final int epochs[] = new int[1];
+        server.addTrainListener(new TrainListenerAdapter() {
+            @Override
+            public void trainCyclePerformed(Long epoch, Double trainErr,
+                    Double valErr, Double trainPct, Double valPct) {
+                epochs[0]++;
+            }
+        });
+        Thread a = startWorker(net, 0, 2), b = startWorker(net, 1, 2);
+        server.serve();
+        a.join();
+        b.join();
+
+        assertTrue(workerErrors.toString(), workerErrors.isEmpty());
+        assertEquals(3000, epochs[0]);
+        assertTrue(XorFixture.maxError(net, XorFixture.patterns()) < 0.2);
+    }
+
+    /**
+     * A connection that never says hello used to count as a finished
+     * worker and end the training early.
+     */
+    public void testStrayConnectionIsNotAWorker() throws Exception
+    {
+        NeuralNetwork net = XorFixture.network(4, 1);
+        ParameterServer server = createServer(net, 1, 50);
+        final int epochs[] = new int[1];
+        server.addTrainListener(new TrainListenerAdapter() {
+            @Override
+            public void trainCyclePerformed(Long epoch, Double trainErr,
+                    Double valErr, Double trainPct, Double valPct) {
+                epochs[0]++;
+            }
+        });
+        SocketChannel stray = SocketChannel.open(address);
+        //garbage before hello...
+        ByteBuffer garbage = Protocol.message(Protocol.PUSH, 4);
+        garbage.putInt(1);
+        Protocol.send(stray, garbage);
+        SocketChannel.open(address).close();
+
+        Thread worker = startWorker(net, 0, 1);
+        server.serve();
+        worker.join();
+        stray.close();
+        assertTrue(workerErrors.toString(), workerErrors.isEmpty());
+        assertEquals(50, epochs[0]);
+    }
+
+    public void testTruncatedPushFailsTheRun() throws Exception
+    {
+        NeuralNetwork net = XorFixture.network(4, 1);
+        ParameterServer server = createServer(net, 1, 1);
+        SocketChannel channel = hello(net);
+        ByteBuffer push = Protocol.message(Protocol.PUSH, 4);
+        push.putInt(0);
+        Protocol.send(channel, push);
+        assertServeFails(server);
+        channel.close();
+    }
+
+    public void testInvalidGradientIndexFailsTheRun() throws Exception
+    {
+        NeuralNetwork net = XorFixture.network(4, 1);
+        ParameterServer server = createServer(net, 1, 1);
+        server.setCompression(GradientCompression.TOP_K);
+        SocketChannel channel = hello(net);
+        ByteBuffer push = Protocol.message(Protocol.PUSH,
+                Protocol.PUSH_HEADER_BYTES + 12);
+        push.putLong(0);
+        push.putInt(0);
+        push.putInt(1);
+        push.putDouble(0.0);
+        push.putDouble(0.0);
+        push.putInt(1);
+        push.putInt(NetworkParameters.getNumParameters(net));
+        push.putFloat(1.0f);
+        Protocol.send(channel, push);
+        assertServeFails(server);
+        channel.close();
+    }
+
+    public void testDisconnectedWorkerFailsTheRun() throws Exception
+    {
+        NeuralNetwork net = XorFixture.network(4, 1);
+        ParameterServer server = createServer(net, 1, 1);
+        hello(net).close();
+        assertServeFails(server);
+    }
+
+    public void testShardFiles() throws Exception
+    {
+        NeuralNetwork net = XorFixture.network(4, 1);
+        XorFixture.teacher(net);
+        List<TrainingPattern> patterns = net.getTeacher()
+                .getTrainingDataRepository().getProcessedTrainingSet()
+                .getTrainingPatterns();
+
+        File netFile = File.createTempFile("jneuralnet-test", ".net");
+        File shardFile = File.createTempFile("jneuralnet-test", ".shard");
+        try
+        {
+            PatternShards.saveWithoutPatterns(net, netFile);
+            NeuralNetwork loaded = NeuralNetwork.loadNet(netFile.getAbsolutePath());
+            assertEquals(0, loaded.getTeacher().getTrainingDataRepository()
+                    .getTotalAvailablePatternSize().intValue());
+            assertTrue(Arrays.equals(XorFixture.parameters(net),
+                    XorFixture.parameters(loaded)));
+
+            PatternShards.write(net, patterns, 0, 3, shardFile);
+            List<TrainingPattern> shard = PatternShards.read(loaded, shardFile);
+            assertEquals(2, shard.size());
+            assertEquals(patterns.get(0), shard.get(0));
+            assertEquals(patterns.get(3), shard.get(1));
+        }
+        finally
+        {
+            netFile.delete();
+            shardFile.delete();
+        }
+    }
+
+    private SocketChannel hello(NeuralNetwork net) throws IOException
+    {
+        SocketChannel channel = SocketChannel.open(address);
+        ByteBuffer hello = Protocol.message(Protocol.HELLO, 8);
+        hello.putInt(0);
+        hello.putInt(NetworkParameters.getNumParameters(net));
+        Protocol.send(channel, hello);
+        return channel;
+    }
+
+    private static void assertServeFails(ParameterServer server)
+    {
+        try
+        {
+            server.serve();
+            fail("Expected IOException");
+        }
+        catch(IOException e)
+        {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Worker 0"));
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.distributed;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import jneuralnet.core.DenseLayer;
+import jneuralnet.core.NeuralNetwork;
+import jneuralnet.core.NeuronLayer;
+import jneuralnet.core.OptimizerState.Slot;
+import jneuralnet.core.learning.BackPropagation;
+import jneuralnet.core.training.TrainingPattern;
+import jneuralnet.core.training.XorFixture;
+import junit.framework.TestCase;
+
+/**
+ * Runs the workers of the sharded layer on threads of this JVM.
+ *
+ * @author Ragha
+ */
+public class ShardedLayerTest extends TestCase
+{
+    private final List<Thread> workers = new ArrayList<Thread>();
+    private final List<Throwable> workerErrors = new ArrayList<Throwable>();
+
+    private void connect(ShardedLayer sharded) throws Exception
+    {
+        final InetAddress host = InetAddress.getByName("127.0.0.1");
+        final int port = sharded.bind(new InetSocketAddress(host, 0));
+        for(int s=0; s<sharded.getNumShards(); s++)
+        {
+            final int shard = s;
+            final int numShards = sharded.getNumShards();
+            Thread thread = new Thread("shard " + s) {
+                @Override
+                public void run() {
+                    try {
+                        new ShardedLayerWorker().run(new InetSocketAddress(host, port),
+                                shard, numShards);
+                    }
+                    catch(Throwable e) {
+                        synchronized(workerErrors) {
+                            workerErrors.add(e);
+                        }
+                    }
+                }
+            };
+            thread.start();
+            workers.add(thread);
+        }
+        sharded.connect();
+    }
+
+    private void close(ShardedLayer sharded) throws Exception
+    {
+        sharded.close();
+        for(Thread t : workers)
+            t.join();
+        assertTrue(workerErrors.toString(), workerErrors.isEmpty());
+    }
+
+    public void testRejectsContextlessAlgo()
+    {
+        NeuralNetwork net = XorFixture.network(4, 1);
+        try
+        {
+            new ShardedLayer(net.getHiddenLayers().get(0), 2, XorFixture.contextlessAlgo());
+            fail("Expected IllegalArgumentException");
+        }
+        catch(IllegalArgumentException e)
+        {
+        }
+    }
+
+    /**
+     * The workers apply the gradients with the algo of the layer, momentum
+     * and dynamic learning rates included, as it would on the whole layer.
+     */
+    public void testUpdatesMatchTheLocalAlgo() throws Exception
+    {
+        NeuralNetwork net = new NeuralNetwork(5, 7);
+        NeuronLayer layer = net.getOutputLayer();
+        DenseLayer dense = layer.getDenseLayer();
+        dense.prune(dense.getWeightIndex(3, 2));
+        DenseLayer local = new DenseLayer(dense);
+        BackPropagation algo = new BackPropagation();
+        algo.setIsMomentumUsed(true);
+        algo.setIsLearningRateDynamic(true);
+
+        ShardedLayer sharded = new ShardedLayer(layer, 3, algo);
+        connect(sharded);
+        Random rand = new Random(3);
+        double input[] = new double[5], output[] = new double[7];
+        double errors[] = new double[7], inputErrors[] = new double[5];
+        double sums[] = new double[7], localOutput[] = new double[7];
+        double localInputErrors[] = new double[5];
+        double gradients[] = new double[local.getNumParameters()];
+        try
+        {
+            for(int step=0; step<10; step++)
+            {
+                for(int i=0; i<input.length; i++)
+                    input[i] = rand.nextDouble();
+                for(int n=0; n<errors.length; n++)
+                    errors[n] = rand.nextGaussian();
+                sharded.forward(input, output);
+                sharded.backward(errors, inputErrors);
+                sharded.applyGradients();
+
+                local.computeSums(input, sums);
+                double deltas[] = new double[7];
+                for(int n=0; n<7; n++)
+                {
+                    localOutput[n] = layer.getNeurons().get(n).getActivation().activate(sums[n]);
+                    deltas[n] = errors[n] * layer.getNeurons().get(n).getActivation()
+                            .derivative(sums[n], localOutput[n]);
+                    for(int i=0; i<5; i++)
+                        gradients[local.getWeightIndex(n, i)] += deltas[n] * input[i];
+                    gradients[local.getBiasIndex(n)] -= deltas[n];
+                }
+                local.propagateDeltas(deltas, localInputErrors);
+                algo.applyGradients(local, gradients);
+                Arrays.fill(gradients, 0.0);
+
+                assertTrue(Arrays.equals(localOutput, output));
+                for(int i=0; i<5; i++)
+                    assertEquals(localInputErrors[i], inputErrors[i], 1e-12);
+            }
+            sharded.collect();
+        }
+        finally
+        {
+            close(sharded);
+        }
+
+        for(int p=0; p<local.getNumParameters(); p++)
+        {
+            assertEquals(local.getParameter(p), dense.getParameter(p), 0.0);
+            assertEquals(local.getOptimizerState().get(Slot.PREV_WEIGHT_CHANGE, p),
+                    dense.getOptimizerState().get(Slot.PREV_WEIGHT_CHANGE, p), 0.0);
+            assertEquals(local.getLearningRate(p), dense.getLearningRate(p), 0.0);
+        }
+        assertEquals(0.0, dense.getParameter(dense.getWeightIndex(3, 2)), 0.0);
+    }
+
+    /**
+     * Trains the hidden layer of XOR sharded and the output layer locally.
+     */
+    public void testXorConverges() throws Exception
+    {
+        NeuralNetwork net = XorFixture.network(4, 1);
+        NeuronLayer hidden = net.getHiddenLayers().get(0);
+        NeuronLayer out = net.getOutputLayer();
+        DenseLayer outDense = out.getDenseLayer();
+        BackPropagation algo = new BackPropagation();
+        List<TrainingPattern> set = XorFixture.patterns();
+
+        ShardedLayer sharded = new ShardedLayer(hidden, 2, algo);
+        connect(sharded);
+        double input[] = new double[2], hiddenOutput[] = new double[4];
+        double sum[] = new double[1], delta[] = new double[1];
+        double hiddenErrors[] = new double[4], inputErrors[] = new double[2];
+        double gradients[] = new double[outDense.getNumParameters()];
+        try
+        {
+            for(int epoch=0; epoch<3000; epoch++)
+            {
+                for(TrainingPattern tp : set)
+                {
+                    tp.getInputData(input);
+                    double expected = tp.getOutputData()[0];
+                    sharded.forward(input, hiddenOutput);
+                    outDense.computeSums(hiddenOutput, sum);
+                    double y = out.getNeurons().get(0).getActivation().activate(sum[0]);
+                    delta[0] = (expected - y) * out.getNeurons().get(0)
+                            .getActivation().derivative(sum[0], y);
+                    outDense.propagateDeltas(delta, hiddenErrors);
+                    sharded.backward(hiddenErrors, inputErrors);
+                    sharded.applyGradients();
+
+                    for(int i=0; i<4; i++)
+                        gradients[outDense.getWeightIndex(0, i)] = delta[0] * hiddenOutput[i];
+                    gradients[outDense.getBiasIndex(0)] = -delta[0];
+                    algo.applyGradients(outDense, gradients);
+                }
+            }
+            sharded.collect();
+        }
+        finally
+        {
+            close(sharded);
+        }
+        assertTrue(XorFixture.maxError(net, set) < 0.2);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.training;
+
+import java.util.Arrays;
+import java.util.List;
+import jneuralnet.core.NeuralNetwork;
+import jneuralnet.core.learning.BackPropagation;
+import junit.framework.TestCase;
+
+/**
+ * @author Ragha
+ */
+public class DataParallelTrainingTest extends TestCase
+{
+    public void testSingleWorkerMatchesSerial()
+    {
+        List<TrainingPattern> set = XorFixture.patterns();
+        NeuralNetwork serial = XorFixture.network(4, 1);
+        NeuralNetwork parallel = XorFixture.network(4, 1);
+
+        XorFixture.train(new SerialTraining(), serial, new BackPropagation(),
+                set, 50, 2);
+        XorFixture.train(new DataParallelTraining(1, true), parallel,
+                new BackPropagation(), set, 50, 2);
+        assertTrue(Arrays.equals(XorFixture.parameters(serial),
+                XorFixture.parameters(parallel)));
+    }
+
+    public void testDeterministicReductionIsReproduced()
+    {
+        List<TrainingPattern> set = XorFixture.patterns();
+        NeuralNetwork first = XorFixture.network(4, 1);
+        NeuralNetwork second = XorFixture.network(4, 1);
+
+        XorFixture.train(new DataParallelTraining(2, true), first,
+                new BackPropagation(), set, 50, 4);
+        XorFixture.train(new DataParallelTraining(2, true), second,
+                new BackPropagation(), set, 50, 4);
+        assertTrue(Arrays.equals(XorFixture.parameters(first),
+                XorFixture.parameters(second)));
+    }
+
+    public void testXorConverges()
+    {
+        List<TrainingPattern> set = XorFixture.patterns();
+        NeuralNetwork net = XorFixture.network(4, 1);
+        XorFixture.train(new DataParallelTraining(2, false), net,
+                new BackPropagation(), set, 5000, 4);
+        assertTrue(XorFixture.maxError(net, set) < 0.2);
+    }
+
+    public void testRejectsNoWorkers()
+    {
+        try
+        {
+            new DataParallelTraining(0, true);
+            fail("Expected IllegalArgumentException");
+        }
+        catch(IllegalArgumentException e)
+        {
+        }
+    }
+
+    public void testOnlineRejectsContextlessAlgo()
+    {
+        Teacher teacher = XorFixture.teacher(XorFixture.network(4, 1));
+        teacher.setTrainingMode(new DataParallelTraining(2, true));
+        teacher.setLearningAlgo(XorFixture.contextlessAlgo());
+        try
+        {
+            teacher.startTraining(0.0, 1, 1, Teacher.COST_ERROR, Teacher.ONLINE);
+            fail("Expected IllegalStateException");
+        }
+        catch(IllegalStateException e)
+        {
+        }
+        assertFalse(teacher.isTraining());
+    }
+}
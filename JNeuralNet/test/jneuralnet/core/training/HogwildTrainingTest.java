@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.training;
+
+import java.util.Arrays;
+import java.util.List;
+import jneuralnet.core.NeuralNetwork;
+import jneuralnet.core.learning.BackPropagation;
+import junit.framework.TestCase;
+
+/**
+ * @author Ragha
+ */
+public class HogwildTrainingTest extends TestCase
+{
+    public void testSingleThreadMatchesSerial()
+    {
+        List<TrainingPattern> set = XorFixture.patterns();
+        NeuralNetwork serial = XorFixture.network(4, 1);
+        NeuralNetwork hogwild = XorFixture.network(4, 1);
+
+        XorFixture.train(new SerialTraining(), serial, new BackPropagation(),
+                set, 50, Teacher.ONLINE);
+        XorFixture.train(new HogwildTraining(1), hogwild, new BackPropagation(),
+                set, 50, Teacher.ONLINE);
+        assertTrue(Arrays.equals(XorFixture.parameters(serial),
+                XorFixture.parameters(hogwild)));
+    }
+
+    public void testXorConverges()
+    {
+        List<TrainingPattern> set = XorFixture.patterns();
+        NeuralNetwork net = XorFixture.network(4, 1);
+        XorFixture.train(new HogwildTraining(2), net, new BackPropagation(),
+                set, 3000, Teacher.ONLINE);
+        assertTrue(XorFixture.maxError(net, set) < 0.2);
+    }
+
+    public void testBatchRequired()
+    {
+        assertTrue(new HogwildTraining(2).isBatchRequired());
+    }
+
+    /**
+     * An algo training only on the context of the network used to get
+     * through and fail inside a worker thread.
+     */
+    public void testOnlineRejectsContextlessAlgo()
+    {
+        Teacher teacher = XorFixture.teacher(XorFixture.network(4, 1));
+        teacher.setTrainingMode(new HogwildTraining(2));
+        teacher.setLearningAlgo(XorFixture.contextlessAlgo());
+        try
+        {
+            teacher.startTraining(0.0, 1, 1, Teacher.COST_ERROR, Teacher.ONLINE);
+            fail("Expected IllegalStateException");
+        }
+        catch(IllegalStateException e)
+        {
+        }
+        assertFalse(teacher.isTraining());
+    }
+}
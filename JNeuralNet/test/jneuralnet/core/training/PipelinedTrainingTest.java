@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.training;
+
+import java.util.Arrays;
+import java.util.List;
+import jneuralnet.core.NeuralNetwork;
+import jneuralnet.core.Neuron;
+import jneuralnet.core.learning.BackPropagation;
+import junit.framework.TestCase;
+
+/**
+ * @author Ragha
+ */
+public class PipelinedTrainingTest extends TestCase
+{
+    public void testSingleMicroBatchInFlightMatchesSerial()
+    {
+        List<TrainingPattern> set = XorFixture.patterns();
+        NeuralNetwork serial = XorFixture.network(4, 1);
+        NeuralNetwork pipelined = XorFixture.network(4, 1);
+
+        XorFixture.train(new SerialTraining(), serial, new BackPropagation(),
+                set, 50, 2);
+        XorFixture.train(new PipelinedTraining(2, 1), pipelined,
+                new BackPropagation(), set, 50, 2);
+        assertTrue(Arrays.equals(XorFixture.parameters(serial),
+                XorFixture.parameters(pipelined)));
+    }
+
+    public void testXorConverges()
+    {
+        List<TrainingPattern> set = XorFixture.patterns();
+        NeuralNetwork net = XorFixture.network(4, 1);
+        XorFixture.train(new PipelinedTraining(2, 2), net,
+                new BackPropagation(), set, 3000, 1);
+        assertTrue(XorFixture.maxError(net, set) < 0.2);
+    }
+
+    public void testTrainsAgainAfterRelease()
+    {
+        List<TrainingPattern> set = XorFixture.patterns();
+        PipelinedTraining mode = new PipelinedTraining(2, 2);
+        NeuralNetwork net = XorFixture.network(4, 1);
+        double first = XorFixture.train(mode, net, new BackPropagation(), set, 10, 1);
+        double second = XorFixture.train(mode, net, new BackPropagation(), set, 10, 1);
+        assertFalse(Double.isNaN(first) || Double.isNaN(second));
+    }
+
+    public void testStageFailureIsReported()
+    {
+        PipelinedTraining mode = new PipelinedTraining(2, 2);
+        try
+        {
+            XorFixture.train(mode, XorFixture.network(4, 1), new FailingAlgo(),
+                    XorFixture.patterns(), 1, 1);
+            fail("Expected IllegalStateException");
+        }
+        catch(IllegalStateException e)
+        {
+            assertTrue(e.getCause() instanceof UnsupportedOperationException);
+        }
+
+        //the pipeline is built again for the next epoch...
+        List<TrainingPattern> set = XorFixture.patterns();
+        NeuralNetwork net = XorFixture.network(4, 1);
+        XorFixture.train(mode, net, new BackPropagation(), set, 3000, 1);
+        assertTrue(XorFixture.maxError(net, set) < 0.2);
+    }
+
+    public void testRejectsInvalidSettings()
+    {
+        try
+        {
+            new PipelinedTraining(0);
+            fail("Expected IllegalArgumentException");
+        }
+        catch(IllegalArgumentException e)
+        {
+        }
+        try
+        {
+            new PipelinedTraining(2, 0);
+            fail("Expected IllegalArgumentException");
+        }
+        catch(IllegalArgumentException e)
+        {
+        }
+    }
+
+    public void testRejectsContextlessAlgo()
+    {
+        NeuralNetwork net = XorFixture.network(4, 1);
+        try
+        {
+            XorFixture.train(new PipelinedTraining(2), net,
+                    XorFixture.contextlessAlgo(), XorFixture.patterns(), 1, 1);
+            fail("Expected IllegalStateException");
+        }
+        catch(IllegalStateException e)
+        {
+        }
+    }
+
+    /**
+     * Fails the last stage on its second pattern.
+     */
+    private static class FailingAlgo extends BackPropagation
+    {
+        private static final long serialVersionUID = 1L;
+        private int count;
+
+        @Override
+        public double getOutputDelta(Neuron n, double sum,
+                double desiredOutput, double actualOutput)
+        {
+            if(++count > 1)
+                throw new UnsupportedOperationException("Failing on purpose");
+            return super.getOutputDelta(n, sum, desiredOutput, actualOutput);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.training;
+
+import java.util.Arrays;
+import java.util.List;
+import jneuralnet.core.NeuralNetwork;
+import jneuralnet.core.Neuron;
+import jneuralnet.core.learning.BackPropagation;
+import junit.framework.TestCase;
+
+/**
+ * @author Ragha
+ */
+public class TrainingSchedulerTest extends TestCase
+{
+    private TrainingScheduler scheduler;
+
+    @Override
+    protected void setUp()
+    {
+        scheduler = new TrainingScheduler(1);
+        scheduler.setTimeSlice(1);
+    }
+
+    @Override
+    protected void tearDown() throws InterruptedException
+    {
+        scheduler.shutdown();
+        scheduler.awaitTermination();
+    }
+
+    /**
+     * Copies of a single pattern, so that the unseeded shuffling of the
+     * teacher does not change the order of the updates.
+     */
+    private static Teacher sameOrderTeacher(NeuralNetwork net)
+    {
+        Teacher teacher = XorFixture.teacher(net);
+        TrainingSet ts = new TrainingSet();
+        for(int p=0; p<4; p++)
+            ts.add(new TrainingPattern(new Double[] { 1.0, 0.0 }, new Double[] { 0.9 }));
+        teacher.getTrainingDataRepository().setTotalAvailableSet(ts);
+        teacher.getTrainingDataRepository().randomlyDistributeSets(100, 0, 0);
+        return teacher;
+    }
+
+    /**
+     * Waits for the training thread of the teacher, which is not training
+     * between two epochs, but only stopped once done.
+     */
+    private static void awaitThread(Teacher teacher) throws InterruptedException
+    {
+        while(!teacher.isStopped())
+            Thread.sleep(5);
+    }
+
+    public void testSlicedJobMatchesTrainingThread() throws InterruptedException
+    {
+        NeuralNetwork threaded = XorFixture.network(4, 1);
+        NeuralNetwork scheduled = XorFixture.network(4, 1);
+        Teacher threadedTeacher = sameOrderTeacher(threaded);
+        Teacher scheduledTeacher = sameOrderTeacher(scheduled);
+        scheduledTeacher.setTrainingScheduler(scheduler);
+
+        threadedTeacher.startTraining(0.0, 200, 200, Teacher.COST_ERROR, Teacher.ONLINE);
+        scheduledTeacher.startTraining(0.0, 200, 200, Teacher.COST_ERROR, Teacher.ONLINE);
+        awaitThread(threadedTeacher);
+        TrainingJob job = scheduledTeacher.getTrainingJob();
+        job.awaitDone();
+
+        assertEquals(TrainingJob.State.COMPLETED, job.getState());
+        assertEquals(200, job.getNumEpochs());
+        assertTrue(Arrays.equals(XorFixture.parameters(threaded),
+                XorFixture.parameters(scheduled)));
+    }
+
+    public void testXorJobsConverge() throws InterruptedException
+    {
+        List<TrainingPattern> set = XorFixture.patterns();
+        NeuralNetwork first = XorFixture.network(4, 1);
+        NeuralNetwork second = XorFixture.network(4, 2);
+        for(NeuralNetwork net : new NeuralNetwork[] { first, second })
+        {
+            Teacher teacher = XorFixture.teacher(net);
+            teacher.setTrainingScheduler(scheduler);
+            teacher.startTraining(0.001, 1, 5000, Teacher.COST_ERROR, Teacher.ONLINE);
+        }
+        first.getTeacher().getTrainingJob().awaitDone();
+        second.getTeacher().getTrainingJob().awaitDone();
+
+        assertEquals(TrainingJob.State.COMPLETED, first.getTeacher().getTrainingJob().getState());
+        assertEquals(TrainingJob.State.COMPLETED, second.getTeacher().getTrainingJob().getState());
+        assertTrue(XorFixture.maxError(first, set) < 0.2);
+        assertTrue(XorFixture.maxError(second, set) < 0.2);
+        assertEquals(0, scheduler.getJobs().size());
+    }
+
+    public void testFailedJobIsReported() throws InterruptedException
+    {
+        Teacher failing = XorFixture.teacher(XorFixture.network(4, 1));
+        failing.setLearningAlgo(new FailingAlgo());
+        failing.setTrainingScheduler(scheduler);
+        failing.startTraining(0.0, 1, 100, Teacher.COST_ERROR, Teacher.ONLINE);
+        TrainingJob job = failing.getTrainingJob();
+        job.awaitDone();
+
+        assertEquals(TrainingJob.State.FAILED, job.getState());
+        assertTrue(job.getFailure() instanceof UnsupportedOperationException);
+        assertFalse(failing.isTraining());
+
+        //the thread of the scheduler keeps running the other jobs...
+        Teacher teacher = XorFixture.teacher(XorFixture.network(4, 1));
+        teacher.setTrainingScheduler(scheduler);
+        teacher.startTraining(0.0, 10, 10, Teacher.COST_ERROR, Teacher.ONLINE);
+        teacher.getTrainingJob().awaitDone();
+        assertEquals(TrainingJob.State.COMPLETED, teacher.getTrainingJob().getState());
+    }
+
+    public void testStopAndShutdown() throws InterruptedException
+    {
+        Teacher teacher = XorFixture.teacher(XorFixture.network(4, 1));
+        teacher.setTrainingScheduler(scheduler);
+        teacher.startTraining(0.0, 1, -1, Teacher.COST_ERROR, Teacher.ONLINE);
+        TrainingJob job = teacher.getTrainingJob();
+        teacher.stopTraining();
+        job.awaitDone();
+        assertEquals(TrainingJob.State.STOPPED, job.getState());
+        assertTrue(teacher.isStopped());
+
+        scheduler.shutdown();
+        try
+        {
+            teacher.startTraining(0.0, 1, 1, Teacher.COST_ERROR, Teacher.ONLINE);
+            fail("Expected IllegalStateException");
+        }
+        catch(IllegalStateException e)
+        {
+        }
+    }
+
+    public void testRejectsInvalidSettings()
+    {
+        try
+        {
+            new TrainingScheduler(0);
+            fail("Expected IllegalArgumentException");
+        }
+        catch(IllegalArgumentException e)
+        {
+        }
+        try
+        {
+            scheduler.setTimeSlice(0);
+            fail("Expected IllegalArgumentException");
+        }
+        catch(IllegalArgumentException e)
+        {
+        }
+
+        Teacher teacher = XorFixture.teacher(XorFixture.network(4, 1));
+        teacher.setTrainingScheduler(scheduler);
+        teacher.startTraining(0.0, 1, -1, Teacher.COST_ERROR, Teacher.ONLINE);
+        TrainingJob job = teacher.getTrainingJob();
+        try
+        {
+            job.setCpuShare(0.0);
+            fail("Expected IllegalArgumentException");
+        }
+        catch(IllegalArgumentException e)
+        {
+        }
+        try
+        {
+            job.setPriority(Thread.MAX_PRIORITY + 1);
+            fail("Expected IllegalArgumentException");
+        }
+        catch(IllegalArgumentException e)
+        {
+        }
+        job.stop();
+    }
+
+    /**
+     * Fails on its second pattern.
+     */
+    private static class FailingAlgo extends BackPropagation
+    {
+        private static final long serialVersionUID = 1L;
+        private int count;
+
+        @Override
+        public double getOutputDelta(Neuron n, double sum,
+                double desiredOutput, double actualOutput)
+        {
+            if(++count > 1)
+                throw new UnsupportedOperationException("Failing on purpose");
+            return super.getOutputDelta(n, sum, desiredOutput, actualOutput);
+        }
+    }
+}
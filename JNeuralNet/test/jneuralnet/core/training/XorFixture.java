@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.core.training;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import jneuralnet.core.DenseLayer;
+import jneuralnet.core.NeuralNetwork;
+import jneuralnet.core.NeuronLayer;
+import jneuralnet.core.learning.AbstractLearningAlgo;
+import jneuralnet.core.preprocessor.CompoundOutputPreprocessor;
+
+/**
+ * The XOR problem and the helpers the tests of the training modes share.
+ *
+ * @author Ragha
+ */
+public final class XorFixture
+{
+    private XorFixture()
+    {
+    }
+
+    /**
+     * @return The four XOR patterns, with targets of 0.1 and 0.9.
+     */
+    public static List<TrainingPattern> patterns()
+    {
+        List<TrainingPattern> patterns = new ArrayList<TrainingPattern>();
+        for(int a=0; a<2; a++)
+            for(int b=0; b<2; b++)
+                patterns.add(new TrainingPattern(new Double[] { (double) a, (double) b },
+                        new Double[] { (a ^ b) == 1 ? 0.9 : 0.1 }));
+        return patterns;
+    }
+
+    /**
+     * @return The 2-hidden-1 network, randomized with the given seed.
+     */
+    public static NeuralNetwork network(int hidden, long seed)
+    {
+        NeuralNetwork net = new NeuralNetwork(2, 1);
+        net.addLayer(new NeuronLayer(hidden));
+        Random rand = new Random(seed);
+        randomize(net.getHiddenLayers().get(0).getDenseLayer(), rand);
+        randomize(net.getOutputLayer().getDenseLayer(), rand);
+        return net;
+    }
+
+    private static void randomize(DenseLayer layer, Random rand)
+    {
+        for(int param=0; param<layer.getNumParameters(); param++)
+            layer.setParameter(param, rand.nextDouble() - 0.5);
+    }
+
+    /**
+     * Puts all the XOR patterns in the training set of the teacher of the
+     * network, leaving the outputs unprocessed.
+     *
+     * @return The teacher of the network.
+     */
+    public static Teacher teacher(NeuralNetwork net)
+    {
+        net.setOutputPreprocessor(new CompoundOutputPreprocessor());
+        TrainingSet ts = new TrainingSet();
+        for(TrainingPattern tp : patterns())
+            ts.add(tp);
+        Teacher teacher = net.getTeacher();
+        teacher.getTrainingDataRepository().setTotalAvailableSet(ts);
+        teacher.getTrainingDataRepository().randomlyDistributeSets(100, 0, 0);
+        return teacher;
+    }
+
+    /**
+     * Trains the network in the given mode, shuffling the patterns with a
+     * fixed seed before every epoch, and releases the mode.
+     *
+     * @return The cost error of the last epoch.
+     */
+    public static double train(AbstractTrainingMode mode, NeuralNetwork net,
+            AbstractLearningAlgo algo, List<TrainingPattern> set, int epochs,
+            int batchSize)
+    {
+        List<TrainingPattern> patterns = new ArrayList<TrainingPattern>(set);
+        Random rand = new Random(7);
+        EpochError error = new EpochError();
+        try
+        {
+            for(int epoch=0; epoch<epochs; epoch++)
+            {
+                Collections.shuffle(patterns, rand);
+                error.clear();
+                mode.trainEpoch(net, algo, patterns, batchSize, error);
+            }
+        }
+        finally
+        {
+            mode.release();
+        }
+        return error.getCostError();
+    }
+
+    /**
+     * @return The largest absolute error of the network on the patterns.
+     */
+    public static double maxError(NeuralNetwork net, List<TrainingPattern> set)
+    {
+        double max = 0;
+        for(TrainingPattern tp : set)
+            max = Math.max(max, Math.abs(net.getOutput(tp.getInputData())[0]
+                    - tp.getOutputData()[0]));
+        return max;
+    }
+
+    /**
+     * @return The parameters of every layer of the network, in order.
+     */
+    public static double[] parameters(NeuralNetwork net)
+    {
+        List<DenseLayer> layers = new ArrayList<DenseLayer>();
+        for(NeuronLayer l : net.getHiddenLayers())
+            layers.add(l.getDenseLayer());
+        layers.add(net.getOutputLayer().getDenseLayer());
+
+        int size = 0;
+        for(DenseLayer l : layers)
+            size += l.getNumParameters();
+        double params[] = new double[size];
+        int i = 0;
+        for(DenseLayer l : layers)
+            for(int param=0; param<l.getNumParameters(); param++)
+                params[i++] = l.getParameter(param);
+        return params;
+    }
+
+    /**
+     * @return A learning algo training only on the activation context of
+     * the network, as the algos not based on back propagation do.
+     */
+    public static AbstractLearningAlgo contextlessAlgo()
+    {
+        return new ContextlessAlgo();
+    }
+
+    private static class ContextlessAlgo extends AbstractLearningAlgo
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void trainNet(NeuralNetwork n, Double actualOutput[],
+                Double expectedOutput[])
+        {
+        }
+
+        @Override
+        public boolean isCostFunctionModifiable()
+        {
+            return false;
+        }
+    }
+}
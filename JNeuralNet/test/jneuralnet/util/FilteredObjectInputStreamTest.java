@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2008-2009 Kotikalapudi Raghavendra. All Rights Reserved.
+ *
+ * Licensed under the Creative Commons License Attribution-NonCommercial-ShareAlike 3.0,
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://creativecommons.org/
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jneuralnet.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import jneuralnet.core.NeuralNetwork;
+import jneuralnet.core.QuantizedNetwork;
+import jneuralnet.core.activation.AbstractActivation;
+import jneuralnet.core.activation.LogisticSigmoid;
+import jneuralnet.core.training.TrainingPattern;
+import jneuralnet.core.training.TrainingSet;
+import jneuralnet.core.training.XorFixture;
+import junit.framework.TestCase;
+
+/**
+ * Checks that only the allowed classes are deserialized.
+ *
+ * @author Ragha
+ */
+public class FilteredObjectInputStreamTest extends TestCase
+{
+    private static byte[] serialize(Object obj) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(obj);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static Object read(byte data[], Class<?>... allowedTypes)
+            throws Exception
+    {
+        return new FilteredObjectInputStream(new ByteArrayInputStream(data),
+                allowedTypes).readObject();
+    }
+
+    public void testReadsAllowedTypes() throws Exception
+    {
+        AbstractActivation acts[] = { new LogisticSigmoid() };
+        Object copy = read(serialize(acts), AbstractActivation.class);
+        assertTrue(((AbstractActivation[]) copy)[0] instanceof LogisticSigmoid);
+        assertEquals(2.5, read(serialize(2.5)));
+    }
+
+    public void testRejectsOtherTypes() throws Exception
+    {
+        ArrayList<Object> list = new ArrayList<Object>();
+        list.add(new Date());
+        try
+        {
+            read(serialize(list), AbstractActivation.class);
+            fail("Date is not allowed");
+        }
+        catch(InvalidClassException e)
+        {
+        }
+    }
+
+    public void testQuantizedNetworkRoundTrip() throws Exception
+    {
+        NeuralNetwork net = XorFixture.network(3, 1);
+        XorFixture.teacher(net);
+        TrainingSet calibration = new TrainingSet();
+        for(TrainingPattern tp : XorFixture.patterns())
+            calibration.add(tp);
+        QuantizedNetwork quantized = QuantizedNetwork.quantize(net, calibration, true);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        quantized.save(bytes);
+        QuantizedNetwork copy = QuantizedNetwork.load(
+                new ByteArrayInputStream(bytes.toByteArray()));
+        double input[] = { 1, 0 };
+        assertEquals(quantized.getCompiledNetwork().getOutput(input)[0],
+                copy.getCompiledNetwork().getOutput(input)[0], 0.0);
+    }
+}